@@ -0,0 +1,422 @@
+package com.examples;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.NotSupportedException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Compresses the response bodies with gzip or deflate, according to the
+ * Accept-Encoding of the request, but only when they are at least a minimum
+ * size, since compressing small bodies costs CPU without saving bytes; it also
+ * decompresses request bodies sent with a gzip or deflate Content-Encoding.
+ *
+ * The size of a body is not known in advance, so its first bytes are buffered
+ * until either the minimum size is reached, and from then on the body is
+ * compressed, or the body ends or is flushed, e.g., by a streaming response,
+ * and it is sent as it is; the flushes reach the client only if Jersey does
+ * not buffer the responses itself, see {@link Main}.
+ *
+ * A decompressed request body larger than a maximum size is rejected with a
+ * 413 (Request Entity Too Large), since a few compressed bytes can expand to
+ * a body that does not fit in memory.
+ *
+ * The compressed bodies are different representations, so their ETag gets
+ * the coding as a suffix, e.g., "3-json-gzip"; the suffix of the negotiated
+ * coding is removed from the If-None-Match of the requests, so that the
+ * resources evaluate it against their own ETags, and it is added back to the
+ * ETag of a 304 (Not Modified).
+ *
+ * It is registered by {@link Main}, so it is not annotated with
+ * {@link javax.ws.rs.ext.Provider}.
+ */
+public class CompressionInterceptor implements ContainerRequestFilter,
+		ContainerResponseFilter, WriterInterceptor, ReaderInterceptor {
+
+	public static final String GZIP = "gzip";
+
+	public static final String DEFLATE = "deflate";
+
+	private static final String IDENTITY = "identity";
+
+	// the encoding negotiated for the response
+	private static final String ENCODING_PROPERTY = CompressionInterceptor.class.getName() + ".encoding";
+
+	// the encoding removed from the If-None-Match of the request
+	private static final String IF_NONE_MATCH_ENCODING_PROPERTY =
+		CompressionInterceptor.class.getName() + ".ifNoneMatchEncoding";
+
+	private final int minSize;
+
+	private final long maxInflatedSize;
+
+	/**
+	 * @param minSize
+	 *            the minimum size in bytes of a response body to compress, a
+	 *            negative value disables response compression
+	 * @param maxInflatedSize
+	 *            the maximum size in bytes of a decompressed request body
+	 */
+	public CompressionInterceptor(int minSize, long maxInflatedSize) {
+		this.minSize = minSize;
+		this.maxInflatedSize = maxInflatedSize;
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) {
+		String ifNoneMatch = requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH);
+		if (minSize < 0 || ifNoneMatch == null)
+			return;
+		String encoding = negotiate(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+		if (encoding == null)
+			return;
+		String suffix = "-" + encoding;
+		List<String> tags = new ArrayList<>();
+		boolean removed = false;
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			try {
+				EntityTag eTag = EntityTag.valueOf(tag);
+				String value = eTag.getValue();
+				if (value.endsWith(suffix)) {
+					tag = new EntityTag(value.substring(0, value.length() - suffix.length()),
+						eTag.isWeak()).toString();
+					removed = true;
+				}
+			} catch (IllegalArgumentException e) {
+				// "*", or a malformed tag, is left as it is
+			}
+			tags.add(tag);
+		}
+		if (removed) {
+			requestContext.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, String.join(", ", tags));
+			requestContext.setProperty(IF_NONE_MATCH_ENCODING_PROPERTY, encoding);
+		}
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext,
+			ContainerResponseContext responseContext) {
+		if (responseContext.getStatus() == Status.NOT_MODIFIED.getStatusCode()) {
+			// the client has the compressed representation
+			String encoding = (String) requestContext.getProperty(IF_NONE_MATCH_ENCODING_PROPERTY);
+			if (encoding != null)
+				addEncodingToETag(responseContext.getHeaders(), encoding);
+			return;
+		}
+		if (minSize < 0 || !responseContext.hasEntity()
+				|| responseContext.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING))
+			return;
+		// the body depends on the Accept-Encoding, even if not compressed
+		responseContext.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		String encoding = negotiate(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+		if (encoding != null)
+			requestContext.setProperty(ENCODING_PROPERTY, encoding);
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+		String encoding = (String) context.getProperty(ENCODING_PROPERTY);
+		if (encoding == null) {
+			context.proceed();
+			return;
+		}
+		ThresholdOutputStream output =
+			new ThresholdOutputStream(context.getOutputStream(), encoding, context.getHeaders());
+		context.setOutputStream(output);
+		try {
+			context.proceed();
+		} catch (IOException | RuntimeException e) {
+			output.discard();
+			throw e;
+		}
+		output.finish();
+	}
+
+	@Override
+	public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+		String encoding = context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+		if (encoding == null)
+			return context.proceed();
+		InputStream inflated;
+		switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+		case GZIP:
+		case "x-gzip":
+			inflated = new GZIPInputStream(context.getInputStream());
+			break;
+		case DEFLATE:
+			inflated = new InflaterInputStream(context.getInputStream());
+			break;
+		case IDENTITY:
+			inflated = null;
+			break;
+		default:
+			throw new NotSupportedException("Unsupported Content-Encoding " + encoding);
+		}
+		context.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+		if (inflated == null)
+			return context.proceed();
+		LimitedInputStream limited = new LimitedInputStream(inflated);
+		context.setInputStream(limited);
+		try {
+			return context.proceed();
+		} catch (IOException | RuntimeException e) {
+			// the reader might have wrapped the exception of the stream
+			if (limited.exceeded)
+				throw tooLarge();
+			throw e;
+		}
+	}
+
+	private WebApplicationException tooLarge() {
+		return new WebApplicationException(
+			"Request body larger than " + maxInflatedSize + " bytes once decompressed",
+			Status.REQUEST_ENTITY_TOO_LARGE);
+	}
+
+	/**
+	 * @param acceptEncoding
+	 * @return the supported encoding with the highest quality, preferring gzip in
+	 *         case of ties, or null if the response must not be compressed
+	 */
+	static String negotiate(String acceptEncoding) {
+		if (acceptEncoding == null)
+			return null;
+		// the quality of the codings not listed is the one of "*", if any
+		Double gzip = null;
+		Double deflate = null;
+		double any = 0;
+		for (String element : acceptEncoding.split(",")) {
+			String[] parts = element.split(";");
+			String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+			double quality = quality(parts);
+			if (coding.equals(GZIP) || coding.equals("x-gzip"))
+				gzip = quality;
+			else if (coding.equals(DEFLATE))
+				deflate = quality;
+			else if (coding.equals("*"))
+				any = quality;
+		}
+		if (gzip == null)
+			gzip = any;
+		if (deflate == null)
+			deflate = any;
+		if (gzip > 0 && gzip >= deflate)
+			return GZIP;
+		if (deflate > 0)
+			return DEFLATE;
+		return null;
+	}
+
+	/**
+	 * Adds the encoding as a suffix to the ETag, if any.
+	 */
+	private static void addEncodingToETag(MultivaluedMap<String, Object> headers, String encoding) {
+		Object eTag = headers.getFirst(HttpHeaders.ETAG);
+		if (eTag == null)
+			return;
+		EntityTag tag = eTag instanceof EntityTag ? (EntityTag) eTag : EntityTag.valueOf(eTag.toString());
+		headers.putSingle(HttpHeaders.ETAG, new EntityTag(tag.getValue() + "-" + encoding, tag.isWeak()));
+	}
+
+	private static double quality(String[] parameters) {
+		for (int i = 1; i < parameters.length; i++) {
+			String parameter = parameters[i].trim();
+			if (parameter.startsWith("q=")) {
+				try {
+					return Double.parseDouble(parameter.substring(2));
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Fails once more than the maximum inflated size has been read.
+	 */
+	private class LimitedInputStream extends FilterInputStream {
+		private long count;
+		private boolean exceeded;
+
+		LimitedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				count(1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0)
+				count(read);
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count(skipped);
+			return skipped;
+		}
+
+		private void count(long read) {
+			count += read;
+			if (count > maxInflatedSize) {
+				exceeded = true;
+				throw tooLarge();
+			}
+		}
+	}
+
+	/**
+	 * Buffers the body until it reaches the minimum size; only then it sets the
+	 * Content-Encoding and starts compressing. If the body is flushed before, it is sent as it is, since what has been
+	 * written so far must reach the client.
+	 */
+	private class ThresholdOutputStream extends OutputStream {
+		private final OutputStream out;
+		private final String encoding;
+		private final MultivaluedMap<String, Object> headers;
+		// null once not buffering
+		private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		// null while buffering, then either out or the compressed stream
+		private OutputStream target;
+		private DeflaterOutputStream compressed;
+
+		ThresholdOutputStream(OutputStream out, String encoding,
+				MultivaluedMap<String, Object> headers) {
+			this.out = out;
+			this.encoding = encoding;
+			this.headers = headers;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (buffer != null) {
+				if (buffer.size() + len < minSize) {
+					buffer.write(b, off, len);
+					return;
+				}
+				startCompressing();
+			}
+			target.write(b, off, len);
+		}
+
+		/**
+		 * Before the minimum size is reached, sends the body as it is from now
+		 * on, unless nothing has been written yet.
+		 */
+		@Override
+		public void flush() throws IOException {
+			if (buffer != null) {
+				if (buffer.size() == 0)
+					return;
+				sendAsItIs();
+			}
+			target.flush();
+		}
+
+		/**
+		 * The entity stream is closed by Jersey, see {@link #finish()}.
+		 */
+		@Override
+		public void close() {
+			// nothing to do
+		}
+
+		/**
+		 * Writes what is still buffered, possibly uncompressed.
+		 */
+		void finish() throws IOException {
+			if (buffer != null)
+				buffer.writeTo(out);
+			else if (compressed != null)
+				compressed.close();
+		}
+
+		/**
+		 * Releases the resources, without writing anything else.
+		 */
+		void discard() {
+			if (compressed == null)
+				return;
+			try {
+				compressed.close();
+			} catch (IOException e) {
+				// the response is already broken
+			}
+		}
+
+		private void sendAsItIs() throws IOException {
+			buffer.writeTo(out);
+			buffer = null;
+			target = out;
+		}
+
+		private void startCompressing() throws IOException {
+			headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+			headers.remove(HttpHeaders.CONTENT_LENGTH);
+			addEncodingToETag(headers, encoding);
+			// the compressed stream must not close the entity stream
+			OutputStream unclosable = new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+				}
+
+				@Override
+				public void flush() throws IOException {
+					out.flush();
+				}
+			};
+			// flushing sends what has been compressed so far, e.g., for streams
+			compressed = GZIP.equals(encoding) ?
+				new GZIPOutputStream(unclosable, true) :
+				new DeflaterOutputStream(unclosable, true);
+			buffer.writeTo(compressed);
+			buffer = null;
+			target = compressed;
+		}
+	}
+}
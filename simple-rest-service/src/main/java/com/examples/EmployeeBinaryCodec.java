@@ -0,0 +1,331 @@
+package com.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.ws.rs.BadRequestException;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeLookup;
+
+/**
+ * Encodes and decodes employees in a compact binary format:
+ *
+ * <ul>
+ * <li>an employee is a header byte, 0x80 with bit 0 set if there is an id and
+ * bit 1 set if there is a name, followed by the id and the name, if present,
+ * and by the salary, as a zig-zag varint</li>
+ * <li>a string is its length in bytes, as a varint, followed by its chars in
+ * CESU-8 (UTF-8 where the two surrogates of a supplementary char are encoded
+ * separately), so that any Java string can be encoded</li>
+ * <li>a list of employees is a sequence of employees followed by a 0 byte, so
+ * that it can be written without knowing its size in advance</li>
+ * <li>an {@link EmployeeLookup} is the list of the found employees followed by
+ * the number of the missing ids, as a varint, and by the missing ids</li>
+ * </ul>
+ *
+ * Varints are unsigned LEB128, as in Protocol Buffers. The buffers are reused
+ * by each thread.
+ */
+final class EmployeeBinaryCodec {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final int EMPLOYEE = 0x80;
+
+	private static final int HAS_ID = 0x01;
+
+	private static final int HAS_NAME = 0x02;
+
+	private static final int END_OF_LIST = 0x00;
+
+	private static final ThreadLocal<byte[]> WRITE_BUFFERS =
+		ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+	private static final ThreadLocal<byte[]> READ_BUFFERS =
+		ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+	private EmployeeBinaryCodec() {
+		// only static methods
+	}
+
+	static void writeEmployee(Employee employee, OutputStream out) throws IOException {
+		Writer writer = new Writer(out);
+		writer.employee(employee);
+		writer.flush();
+	}
+
+	/**
+	 * @param employees
+	 * @param out
+	 * @param flushEvery
+	 *            the output is flushed after this number of employees, so that
+	 *            the employees are sent while they are being iterated
+	 * @throws IOException
+	 */
+	static void writeEmployees(Iterator<Employee> employees, OutputStream out, int flushEvery)
+			throws IOException {
+		Writer writer = new Writer(out);
+		writer.employees(employees, flushEvery);
+		writer.flush();
+	}
+
+	static void writeLookup(EmployeeLookup lookup, OutputStream out) throws IOException {
+		Writer writer = new Writer(out);
+		writer.employees(lookup.getEmployees().iterator(), Integer.MAX_VALUE);
+		writer.varint(lookup.getMissing().size());
+		for (String id : lookup.getMissing()) {
+			writer.string(id);
+		}
+		writer.flush();
+	}
+
+	/**
+	 * @param in
+	 * @return null if there is no content
+	 * @throws BadRequestException
+	 *             if the content is not valid
+	 */
+	static Employee readEmployee(InputStream in) throws IOException {
+		Reader reader = new Reader(in);
+		if (reader.isEmpty())
+			return null;
+		Employee employee = reader.employee(reader.next());
+		reader.end();
+		return employee;
+	}
+
+	/**
+	 * @param in
+	 * @return null if there is no content
+	 * @throws BadRequestException
+	 *             if the content is not valid
+	 */
+	static List<Employee> readEmployees(InputStream in) throws IOException {
+		Reader reader = new Reader(in);
+		if (reader.isEmpty())
+			return null;
+		List<Employee> employees = reader.employees();
+		reader.end();
+		return employees;
+	}
+
+	/**
+	 * @param in
+	 * @return null if there is no content
+	 * @throws BadRequestException
+	 *             if the content is not valid
+	 */
+	static EmployeeLookup readLookup(InputStream in) throws IOException {
+		Reader reader = new Reader(in);
+		if (reader.isEmpty())
+			return null;
+		List<Employee> employees = reader.employees();
+		int count = reader.length();
+		List<String> missing = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			missing.add(reader.string());
+		}
+		reader.end();
+		return new EmployeeLookup(employees, missing);
+	}
+
+	private static class Writer {
+		private final OutputStream out;
+		private final byte[] buffer = WRITE_BUFFERS.get();
+		private int count;
+
+		Writer(OutputStream out) {
+			this.out = out;
+		}
+
+		void employees(Iterator<Employee> employees, int flushEvery) throws IOException {
+			int written = 0;
+			while (employees.hasNext()) {
+				employee(employees.next());
+				if (++written % flushEvery == 0) {
+					flush();
+					out.flush();
+				}
+			}
+			write(END_OF_LIST);
+		}
+
+		void employee(Employee employee) throws IOException {
+			String id = employee.getEmployeeId();
+			String name = employee.getName();
+			write(EMPLOYEE | (id != null ? HAS_ID : 0) | (name != null ? HAS_NAME : 0));
+			if (id != null)
+				string(id);
+			if (name != null)
+				string(name);
+			int salary = employee.getSalary();
+			varint((salary << 1) ^ (salary >> 31));
+		}
+
+		void string(String value) throws IOException {
+			int length = 0;
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+			}
+			varint(length);
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c < 0x80) {
+					write(c);
+				} else if (c < 0x800) {
+					ensure(2);
+					buffer[count++] = (byte) (0xC0 | (c >> 6));
+					buffer[count++] = (byte) (0x80 | (c & 0x3F));
+				} else {
+					ensure(3);
+					buffer[count++] = (byte) (0xE0 | (c >> 12));
+					buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buffer[count++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+		}
+
+		void varint(int value) throws IOException {
+			ensure(5);
+			while ((value & ~0x7F) != 0) {
+				buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[count++] = (byte) value;
+		}
+
+		void write(int b) throws IOException {
+			ensure(1);
+			buffer[count++] = (byte) b;
+		}
+
+		private void ensure(int space) throws IOException {
+			if (count + space > buffer.length)
+				flush();
+		}
+
+		void flush() throws IOException {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private static class Reader {
+		private byte[] bytes = READ_BUFFERS.get();
+		private final int length;
+		private int position;
+
+		Reader(InputStream in) throws IOException {
+			int read = 0;
+			for (int n; (n = in.read(bytes, read, bytes.length - read)) != -1;) {
+				read += n;
+				if (read == bytes.length) {
+					byte[] larger = new byte[bytes.length * 2];
+					System.arraycopy(bytes, 0, larger, 0, read);
+					bytes = larger;
+				}
+			}
+			length = read;
+		}
+
+		boolean isEmpty() {
+			return length == 0;
+		}
+
+		void end() {
+			if (position != length)
+				throw error();
+		}
+
+		List<Employee> employees() {
+			List<Employee> employees = new ArrayList<>();
+			for (int header; (header = next()) != END_OF_LIST;) {
+				employees.add(employee(header));
+			}
+			return employees;
+		}
+
+		Employee employee(int header) {
+			if ((header & ~(HAS_ID | HAS_NAME)) != EMPLOYEE)
+				throw error();
+			Employee employee = new Employee();
+			if ((header & HAS_ID) != 0)
+				employee.setEmployeeId(string());
+			if ((header & HAS_NAME) != 0)
+				employee.setName(string());
+			int salary = varint();
+			employee.setSalary((salary >>> 1) ^ -(salary & 1));
+			return employee;
+		}
+
+		String string() {
+			int size = length();
+			int end = position + size;
+			if (size > length - position)
+				throw error();
+			char[] chars = new char[size];
+			int count = 0;
+			while (position < end) {
+				int b = next();
+				if (b < 0x80) {
+					chars[count++] = (char) b;
+				} else if ((b & 0xE0) == 0xC0) {
+					chars[count++] = (char) (((b & 0x1F) << 6) | continuation(end));
+				} else if ((b & 0xF0) == 0xE0) {
+					int c = (b & 0x0F) << 12;
+					c |= continuation(end) << 6;
+					chars[count++] = (char) (c | continuation(end));
+				} else {
+					throw error();
+				}
+			}
+			return new String(chars, 0, count);
+		}
+
+		private int continuation(int end) {
+			if (position >= end)
+				throw error();
+			int b = next();
+			if ((b & 0xC0) != 0x80)
+				throw error();
+			return b & 0x3F;
+		}
+
+		/**
+		 * A varint that must not be negative.
+		 */
+		int length() {
+			int value = varint();
+			if (value < 0)
+				throw error();
+			return value;
+		}
+
+		private int varint() {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = next();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw error();
+		}
+
+		int next() {
+			if (position == length)
+				throw error();
+			return bytes[position++] & 0xFF;
+		}
+
+		private BadRequestException error() {
+			return new BadRequestException("Malformed binary employee at position " + position);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.stream.Stream;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeLookup;
+
+/**
+ * Reads and writes an {@link Employee}, a list (or a stream) of employees and
+ * an {@link EmployeeLookup} in the compact binary format of
+ * {@link EmployeeBinaryCodec}, with the media type {@link #APPLICATION_EMPLOYEE}.
+ *
+ * A stream of employees is written while it is consumed, flushing the output
+ * every {@value #CHUNK_SIZE} employees, like {@link EmployeeStreamWriter}.
+ */
+@Provider
+@Produces(EmployeeBinaryProvider.APPLICATION_EMPLOYEE)
+@Consumes(EmployeeBinaryProvider.APPLICATION_EMPLOYEE)
+public class EmployeeBinaryProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+	public static final String APPLICATION_EMPLOYEE = "application/x-employee";
+
+	public static final MediaType APPLICATION_EMPLOYEE_TYPE =
+		MediaType.valueOf(APPLICATION_EMPLOYEE);
+
+	// flush the output every CHUNK_SIZE employees of a stream
+	private static final int CHUNK_SIZE = 256;
+
+	@Override
+	public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType) {
+		// we create an ArrayList
+		return type == Employee.class || type == EmployeeLookup.class
+			|| (type.isAssignableFrom(ArrayList.class) && isOfEmployees(genericType));
+	}
+
+	@Override
+	public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
+			InputStream entityStream) throws IOException {
+		if (Employee.class.equals(type))
+			return EmployeeBinaryCodec.readEmployee(entityStream);
+		if (EmployeeLookup.class.equals(type))
+			return EmployeeBinaryCodec.readLookup(entityStream);
+		return EmployeeBinaryCodec.readEmployees(entityStream);
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType) {
+		return type == Employee.class || type == EmployeeLookup.class
+			|| ((Collection.class.isAssignableFrom(type) || Stream.class.isAssignableFrom(type))
+				&& isOfEmployees(genericType));
+	}
+
+	@Override
+	public long getSize(Object t, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType) {
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void writeTo(Object t, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+			OutputStream entityStream) throws IOException {
+		if (t instanceof Employee) {
+			EmployeeBinaryCodec.writeEmployee((Employee) t, entityStream);
+		} else if (t instanceof EmployeeLookup) {
+			EmployeeBinaryCodec.writeLookup((EmployeeLookup) t, entityStream);
+		} else if (t instanceof Stream) {
+			try (Stream<Employee> employees = (Stream<Employee>) t) {
+				EmployeeBinaryCodec.writeEmployees(employees.iterator(), entityStream, CHUNK_SIZE);
+			}
+		} else {
+			EmployeeBinaryCodec.writeEmployees(((Collection<Employee>) t).iterator(), entityStream,
+				Integer.MAX_VALUE);
+		}
+	}
+
+	private static boolean isOfEmployees(Type genericType) {
+		if (!(genericType instanceof ParameterizedType))
+			return false;
+		Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+		return arguments.length == 1 && arguments[0] == Employee.class;
+	}
+}
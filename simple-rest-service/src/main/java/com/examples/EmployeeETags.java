@@ -0,0 +1,48 @@
+package com.examples;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Strong entity tags for the representations of employees, made of the version
+ * of the data (see {@link com.examples.service.EmployeeService#versionOf(String)}
+ * and {@link com.examples.service.EmployeeService#collectionVersion()}) and of
+ * the media type, since the JSON and the XML representations of the same data
+ * are different, e.g., "3-json"; a compressed body also has the coding as a
+ * suffix, e.g., "3-json-gzip", see {@link CompressionInterceptor}.
+ */
+public final class EmployeeETags {
+
+	private EmployeeETags() {
+		// only static methods
+	}
+
+	public static EntityTag of(long version, MediaType mediaType) {
+		return new EntityTag(version + "-" + mediaType.getSubtype());
+	}
+
+	/**
+	 * Whether the value of an If-Match header matches the given version, with
+	 * any media type and coding; weak tags never match.
+	 * 
+	 * @param ifMatch
+	 * @param version
+	 * @return
+	 */
+	public static boolean matches(String ifMatch, long version) {
+		String prefix = version + "-";
+		for (String tag : ifMatch.split(",")) {
+			tag = tag.trim();
+			if ("*".equals(tag))
+				return true;
+			try {
+				EntityTag eTag = EntityTag.valueOf(tag);
+				if (!eTag.isWeak() && eTag.getValue().startsWith(prefix))
+					return true;
+			} catch (IllegalArgumentException e) {
+				// a malformed tag does not match
+			}
+		}
+		return false;
+	}
+}
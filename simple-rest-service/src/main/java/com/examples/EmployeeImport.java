@@ -0,0 +1,220 @@
+package com.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeOperation;
+import com.examples.model.EmployeeOperation.Kind;
+import com.examples.model.EmployeeOperationResult;
+import com.examples.service.EmployeeService;
+
+/**
+ * Imports new employees from NDJSON, one employee per line, e.g.,
+ *
+ * <pre>
+ * {"name":"First Employee","salary":1000}
+ * {"name":"Second Employee","salary":2000}
+ * </pre>
+ *
+ * The input is read while the response is written, one line at a time, and
+ * the employees are added in batches of {@value #BATCH_SIZE}, with
+ * {@link EmployeeService#applyOperations(List)}, so the memory does not depend
+ * on the size of the input, and each line is checked like in a single POST.
+ *
+ * The response is NDJSON too: a line for each line that could not be imported,
+ * with its (1-based) number, the status it would have had on its own and the
+ * message, e.g., {"line":3,"status":400,"message":"Malformed JSON at position 5"},
+ * a progress line after each batch, e.g.,
+ * {"lines":1000,"imported":998,"failed":2}, and a final one with "done":true.
+ * A line that is not valid JSON is reported as soon as it is read, the other
+ * errors when their batch is applied. Blank lines are skipped.
+ *
+ * Since the response is committed while the input is still being read, its
+ * status is always 200 (OK), and an I/O error can only abort the connection.
+ */
+public class EmployeeImport implements StreamingOutput {
+
+	public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+	/**
+	 * The number of employees added with a single call to the service.
+	 */
+	public static final int BATCH_SIZE = 1000;
+
+	/**
+	 * Longer lines are reported as errors, without being read in memory.
+	 */
+	public static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final EmployeeService employeeService;
+
+	private final InputStream in;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private int position;
+
+	private int limit;
+
+	private byte[] line = new byte[256];
+
+	private int lineLength;
+
+	// whether the current line is longer than MAX_LINE_LENGTH
+	private boolean tooLong;
+
+	private final List<EmployeeOperation> batch = new ArrayList<>(BATCH_SIZE);
+
+	private final List<Integer> batchLines = new ArrayList<>(BATCH_SIZE);
+
+	private OutputStream out;
+
+	private int lines;
+
+	private int imported;
+
+	private int failed;
+
+	public EmployeeImport(EmployeeService employeeService, InputStream in) {
+		this.employeeService = employeeService;
+		this.in = in;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException {
+		out = output;
+		while (readLine()) {
+			lines++;
+			if (tooLong) {
+				error(lines, Status.BAD_REQUEST.getStatusCode(),
+					"Line longer than " + MAX_LINE_LENGTH + " bytes");
+				continue;
+			}
+			if (isBlank())
+				continue;
+			Employee employee;
+			try {
+				employee = EmployeeJsonCodec.readEmployee(line, lineLength);
+			} catch (WebApplicationException e) {
+				error(lines, e.getResponse().getStatus(), e.getMessage());
+				continue;
+			}
+			batch.add(new EmployeeOperation(Kind.CREATE, null, employee));
+			batchLines.add(lines);
+			if (batch.size() == BATCH_SIZE)
+				flush();
+		}
+		flush();
+		progress(",\"done\":true}");
+	}
+
+	private void flush() throws IOException {
+		if (batch.isEmpty())
+			return;
+		List<EmployeeOperationResult> results = employeeService.applyOperations(batch);
+		for (int i = 0; i < results.size(); i++) {
+			EmployeeOperationResult result = results.get(i);
+			if (result.getStatus() == Status.CREATED.getStatusCode())
+				imported++;
+			else
+				error(batchLines.get(i), result.getStatus(), result.getMessage());
+		}
+		batch.clear();
+		batchLines.clear();
+		progress("}");
+		out.flush();
+	}
+
+	/**
+	 * The lines are written directly, the messages escaped by
+	 * {@link EmployeeJsonCodec}.
+	 */
+	private void progress(String end) throws IOException {
+		write("{\"lines\":" + lines + ",\"imported\":" + imported
+			+ ",\"failed\":" + failed + end + "\n");
+	}
+
+	private void error(int lineNumber, int status, String message) throws IOException {
+		failed++;
+		write("{\"line\":" + lineNumber + ",\"status\":" + status + ",\"message\":");
+		EmployeeJsonCodec.writeString(message, out);
+		write("}\n");
+	}
+
+	private void write(String ascii) throws IOException {
+		out.write(ascii.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Reads the next line, without the line terminator, in {@link #line}, or
+	 * only sets {@link #tooLong} if it is too long.
+	 *
+	 * @return false if there are no more lines
+	 * @throws IOException
+	 */
+	private boolean readLine() throws IOException {
+		lineLength = 0;
+		tooLong = false;
+		if (position == limit && !fill())
+			return false;
+		while (true) {
+			int start = position;
+			while (position < limit && buffer[position] != '\n') {
+				position++;
+			}
+			append(start, position);
+			if (position < limit) {
+				// skip the '\n'
+				position++;
+				break;
+			}
+			if (!fill())
+				break;
+		}
+		if (lineLength > 0 && line[lineLength - 1] == '\r')
+			lineLength--;
+		return true;
+	}
+
+	private boolean fill() throws IOException {
+		int read = in.read(buffer);
+		position = 0;
+		limit = Math.max(read, 0);
+		return read > 0;
+	}
+
+	private void append(int start, int end) {
+		int length = end - start;
+		if (tooLong || lineLength + length > MAX_LINE_LENGTH) {
+			tooLong = true;
+			return;
+		}
+		if (lineLength + length > line.length) {
+			byte[] larger = new byte[Math.min(Math.max(line.length * 2, lineLength + length),
+				MAX_LINE_LENGTH)];
+			System.arraycopy(line, 0, larger, 0, lineLength);
+			line = larger;
+		}
+		System.arraycopy(buffer, start, line, lineLength, length);
+		lineLength += length;
+	}
+
+	private boolean isBlank() {
+		for (int i = 0; i < lineLength; i++) {
+			if (line[i] != ' ' && line[i] != '\t')
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,531 @@
+package com.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.ws.rs.BadRequestException;
+
+import com.examples.model.Employee;
+
+/**
+ * Encodes and decodes employees in JSON directly from and to bytes, without
+ * reflection and without intermediate objects, producing exactly the same
+ * bytes as MOXy: the properties are "id", "name" and "salary", in this order,
+ * null properties are omitted, and the same characters are escaped (quotes,
+ * backslashes, control characters, the C1 range and surrogates).
+ *
+ * The buffers are reused by each thread.
+ */
+final class EmployeeJsonCodec {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final byte[] ID = bytes("\"id\":\"");
+
+	private static final byte[] NAME = bytes("\"name\":\"");
+
+	private static final byte[] SALARY = bytes("\"salary\":");
+
+	private static final byte[] HEX = bytes("0123456789ABCDEF");
+
+	private static final ThreadLocal<byte[]> WRITE_BUFFERS =
+		ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+	private static final ThreadLocal<byte[]> READ_BUFFERS =
+		ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+	private EmployeeJsonCodec() {
+		// only static methods
+	}
+
+	static void writeEmployee(Employee employee, OutputStream out) throws IOException {
+		Writer writer = new Writer(out);
+		writer.employee(employee);
+		writer.flush();
+	}
+
+	static void writeEmployees(Collection<Employee> employees, OutputStream out) throws IOException {
+		Writer writer = new Writer(out);
+		writer.write('[');
+		boolean first = true;
+		for (Employee employee : employees) {
+			if (!first)
+				writer.write(',');
+			writer.employee(employee);
+			first = false;
+		}
+		writer.write(']');
+		writer.flush();
+	}
+
+	/**
+	 * @param in
+	 * @return null if there is no content or the content is null
+	 * @throws BadRequestException
+	 *             if the content is not valid
+	 */
+	static Employee readEmployee(InputStream in) throws IOException {
+		Reader reader = new Reader(in);
+		if (reader.isNull())
+			return null;
+		Employee employee = reader.employee();
+		reader.end();
+		return employee;
+	}
+
+	/**
+	 * Like {@link #readEmployee(InputStream)}, from the first length bytes of
+	 * the array, e.g., a line of NDJSON.
+	 */
+	static Employee readEmployee(byte[] bytes, int length) {
+		Reader reader = new Reader(bytes, length);
+		if (reader.isNull())
+			return null;
+		Employee employee = reader.employee();
+		reader.end();
+		return employee;
+	}
+
+	/**
+	 * @param in
+	 * @return null if there is no content or the content is null
+	 * @throws BadRequestException
+	 *             if the content is not valid
+	 */
+	static List<Employee> readEmployees(InputStream in) throws IOException {
+		Reader reader = new Reader(in);
+		if (reader.isNull())
+			return null;
+		List<Employee> employees = reader.employees();
+		reader.end();
+		return employees;
+	}
+
+	/**
+	 * Writes the value as a JSON string, in quotes, escaped like the strings of
+	 * the employees.
+	 */
+	static void writeString(String value, OutputStream out) throws IOException {
+		Writer writer = new Writer(out);
+		writer.write('"');
+		writer.string(value);
+		writer.write('"');
+		writer.flush();
+	}
+
+	private static byte[] bytes(String ascii) {
+		return ascii.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static class Writer {
+		private final OutputStream out;
+		private final byte[] buffer = WRITE_BUFFERS.get();
+		private int count;
+
+		Writer(OutputStream out) {
+			this.out = out;
+		}
+
+		void employee(Employee employee) throws IOException {
+			write('{');
+			if (employee.getEmployeeId() != null) {
+				write(ID);
+				string(employee.getEmployeeId());
+				write('"');
+				write(',');
+			}
+			if (employee.getName() != null) {
+				write(NAME);
+				string(employee.getName());
+				write('"');
+				write(',');
+			}
+			write(SALARY);
+			number(employee.getSalary());
+			write('}');
+		}
+
+		private void string(String value) throws IOException {
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c < 0x80) {
+					if (c >= 0x20 && c != '"' && c != '\\' && c != 0x7F)
+						write(c);
+					else
+						escape(c);
+				} else if (c <= 0x9F || Character.isSurrogate(c)) {
+					escape(c);
+				} else if (c < 0x800) {
+					ensure(2);
+					buffer[count++] = (byte) (0xC0 | (c >> 6));
+					buffer[count++] = (byte) (0x80 | (c & 0x3F));
+				} else {
+					ensure(3);
+					buffer[count++] = (byte) (0xE0 | (c >> 12));
+					buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					buffer[count++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+		}
+
+		private void escape(char c) throws IOException {
+			ensure(6);
+			buffer[count++] = '\\';
+			switch (c) {
+			case '"':
+			case '\\':
+				buffer[count++] = (byte) c;
+				return;
+			case '\b':
+				buffer[count++] = 'b';
+				return;
+			case '\t':
+				buffer[count++] = 't';
+				return;
+			case '\n':
+				buffer[count++] = 'n';
+				return;
+			case '\f':
+				buffer[count++] = 'f';
+				return;
+			case '\r':
+				buffer[count++] = 'r';
+				return;
+			default:
+				buffer[count++] = 'u';
+				buffer[count++] = HEX[(c >> 12) & 0xF];
+				buffer[count++] = HEX[(c >> 8) & 0xF];
+				buffer[count++] = HEX[(c >> 4) & 0xF];
+				buffer[count++] = HEX[c & 0xF];
+			}
+		}
+
+		private void number(int value) throws IOException {
+			// at most a sign and 10 digits
+			ensure(11);
+			long remaining = value;
+			if (remaining < 0) {
+				buffer[count++] = '-';
+				remaining = -remaining;
+			}
+			int digits = 1;
+			for (long bound = 10; bound <= remaining; bound *= 10) {
+				digits++;
+			}
+			for (int i = count + digits - 1; i >= count; i--) {
+				buffer[i] = (byte) ('0' + remaining % 10);
+				remaining /= 10;
+			}
+			count += digits;
+		}
+
+		void write(int b) throws IOException {
+			ensure(1);
+			buffer[count++] = (byte) b;
+		}
+
+		private void write(byte[] bytes) throws IOException {
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, buffer, count, bytes.length);
+			count += bytes.length;
+		}
+
+		private void ensure(int space) throws IOException {
+			if (count + space > buffer.length)
+				flush();
+		}
+
+		void flush() throws IOException {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private static class Reader {
+		private byte[] bytes = READ_BUFFERS.get();
+		private final int length;
+		private int position;
+
+		Reader(InputStream in) throws IOException {
+			int read = 0;
+			for (int n; (n = in.read(bytes, read, bytes.length - read)) != -1;) {
+				read += n;
+				if (read == bytes.length) {
+					byte[] larger = new byte[bytes.length * 2];
+					System.arraycopy(bytes, 0, larger, 0, read);
+					bytes = larger;
+				}
+			}
+			length = read;
+		}
+
+		Reader(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+		}
+
+		boolean isNull() {
+			skipWhitespace();
+			if (position == length)
+				return true;
+			if (lookingAt("null")) {
+				position += 4;
+				return true;
+			}
+			return false;
+		}
+
+		void end() {
+			skipWhitespace();
+			if (position != length)
+				throw error();
+		}
+
+		List<Employee> employees() {
+			List<Employee> employees = new ArrayList<>();
+			expect('[');
+			if (peek() == ']') {
+				position++;
+				return employees;
+			}
+			do {
+				if (!isNull())
+					employees.add(employee());
+			} while (next(',', ']'));
+			return employees;
+		}
+
+		Employee employee() {
+			Employee employee = new Employee();
+			expect('{');
+			if (peek() == '}') {
+				position++;
+				return employee;
+			}
+			do {
+				String key = string();
+				expect(':');
+				switch (key) {
+				case "id":
+					employee.setEmployeeId(nullableString());
+					break;
+				case "name":
+					employee.setName(nullableString());
+					break;
+				case "salary":
+					employee.setSalary(salary());
+					break;
+				default:
+					skipValue();
+				}
+			} while (next(',', '}'));
+			return employee;
+		}
+
+		/**
+		 * Like MOXy, the salary can also be a string, and null is 0.
+		 */
+		private int salary() {
+			String value;
+			if (isNull())
+				return 0;
+			if (peek() == '"') {
+				value = string();
+			} else {
+				int start = position;
+				skipNumber();
+				value = new String(bytes, start, position - start, StandardCharsets.US_ASCII);
+			}
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				throw new BadRequestException("Invalid salary " + value);
+			}
+		}
+
+		private String nullableString() {
+			return isNull() ? null : string();
+		}
+
+		private String string() {
+			expect('"');
+			int start = position;
+			// fast path, without escapes
+			while (position < length && bytes[position] != '"' && bytes[position] != '\\') {
+				position++;
+			}
+			if (position == length)
+				throw error();
+			String value = new String(bytes, start, position - start, StandardCharsets.UTF_8);
+			if (bytes[position] == '"') {
+				position++;
+				return value;
+			}
+			StringBuilder builder = new StringBuilder(value);
+			while (true) {
+				if (position == length)
+					throw error();
+				byte b = bytes[position++];
+				if (b == '"')
+					return builder.toString();
+				if (b != '\\') {
+					int segmentStart = position - 1;
+					while (position < length && bytes[position] != '"' && bytes[position] != '\\') {
+						position++;
+					}
+					builder.append(new String(bytes, segmentStart, position - segmentStart,
+						StandardCharsets.UTF_8));
+					continue;
+				}
+				if (position == length)
+					throw error();
+				byte escaped = bytes[position++];
+				switch (escaped) {
+				case '"':
+				case '\\':
+				case '/':
+					builder.append((char) escaped);
+					break;
+				case 'b':
+					builder.append('\b');
+					break;
+				case 'f':
+					builder.append('\f');
+					break;
+				case 'n':
+					builder.append('\n');
+					break;
+				case 'r':
+					builder.append('\r');
+					break;
+				case 't':
+					builder.append('\t');
+					break;
+				case 'u':
+					builder.append(unicode());
+					break;
+				default:
+					throw error();
+				}
+			}
+		}
+
+		private char unicode() {
+			if (position + 4 > length)
+				throw error();
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(bytes[position++], 16);
+				if (digit < 0)
+					throw error();
+				value = value * 16 + digit;
+			}
+			return (char) value;
+		}
+
+		private void skipValue() {
+			switch (peek()) {
+			case '"':
+				string();
+				return;
+			case '{':
+				position++;
+				if (peek() == '}') {
+					position++;
+					return;
+				}
+				do {
+					string();
+					expect(':');
+					skipValue();
+				} while (next(',', '}'));
+				return;
+			case '[':
+				position++;
+				if (peek() == ']') {
+					position++;
+					return;
+				}
+				do {
+					skipValue();
+				} while (next(',', ']'));
+				return;
+			default:
+				for (String literal : new String[] { "null", "true", "false" }) {
+					if (lookingAt(literal)) {
+						position += literal.length();
+						return;
+					}
+				}
+				skipNumber();
+			}
+		}
+
+		private void skipNumber() {
+			int start = position;
+			while (position < length && isNumberByte(bytes[position])) {
+				position++;
+			}
+			if (position == start)
+				throw error();
+		}
+
+		private static boolean isNumberByte(byte b) {
+			return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+		}
+
+		/**
+		 * @return true if the separator follows, false if the closing character
+		 *         follows
+		 */
+		private boolean next(char separator, char closing) {
+			byte b = peek();
+			position++;
+			if (b == separator)
+				return true;
+			if (b == closing)
+				return false;
+			position--;
+			throw error();
+		}
+
+		private void expect(char c) {
+			if (peek() != c)
+				throw error();
+			position++;
+		}
+
+		private byte peek() {
+			skipWhitespace();
+			if (position == length)
+				throw error();
+			return bytes[position];
+		}
+
+		private boolean lookingAt(String literal) {
+			if (position + literal.length() > length)
+				return false;
+			for (int i = 0; i < literal.length(); i++) {
+				if (bytes[position + i] != literal.charAt(i))
+					return false;
+			}
+			return true;
+		}
+
+		private void skipWhitespace() {
+			while (position < length && (bytes[position] == ' ' || bytes[position] == '\t'
+					|| bytes[position] == '\n' || bytes[position] == '\r')) {
+				position++;
+			}
+		}
+
+		private BadRequestException error() {
+			return new BadRequestException("Malformed JSON at position " + position);
+		}
+	}
+}
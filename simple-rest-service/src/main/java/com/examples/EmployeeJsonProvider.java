@@ -0,0 +1,83 @@
+package com.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import com.examples.model.Employee;
+
+/**
+ * Reads and writes an {@link Employee} and a list of employees in JSON with
+ * {@link EmployeeJsonCodec}, instead of MOXy, producing the same output.
+ *
+ * It is registered by {@link Main} only if enabled, so it is not annotated
+ * with {@link javax.ws.rs.ext.Provider}; its priority makes it take precedence
+ * over MOXy, which handles the same types and media type.
+ */
+@Priority(Priorities.USER - 1000)
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class EmployeeJsonProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+	@Override
+	public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType) {
+		// we create an ArrayList
+		return type == Employee.class
+			|| (type.isAssignableFrom(ArrayList.class) && isCollectionOfEmployees(genericType));
+	}
+
+	@Override
+	public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
+			InputStream entityStream) throws IOException {
+		if (Employee.class.equals(type))
+			return EmployeeJsonCodec.readEmployee(entityStream);
+		return EmployeeJsonCodec.readEmployees(entityStream);
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType) {
+		return type == Employee.class
+			|| (Collection.class.isAssignableFrom(type) && isCollectionOfEmployees(genericType));
+	}
+
+	@Override
+	public long getSize(Object t, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType) {
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void writeTo(Object t, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+			OutputStream entityStream) throws IOException {
+		if (t instanceof Employee)
+			EmployeeJsonCodec.writeEmployee((Employee) t, entityStream);
+		else
+			EmployeeJsonCodec.writeEmployees((Collection<Employee>) t, entityStream);
+	}
+
+	private static boolean isCollectionOfEmployees(Type genericType) {
+		if (!(genericType instanceof ParameterizedType))
+			return false;
+		Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+		return arguments.length == 1 && arguments[0] == Employee.class;
+	}
+}
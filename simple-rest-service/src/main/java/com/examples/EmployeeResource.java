@@ -1,39 +1,177 @@
 package com.examples;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+
+import org.glassfish.hk2.api.IterableProvider;
 
 import com.examples.model.Employee;
+import com.examples.model.EmployeeLookup;
+import com.examples.model.EmployeeOperation;
+import com.examples.model.EmployeeOperationResult;
+import com.examples.model.EmployeeStatistics;
+import com.examples.repository.EmployeePage;
 import com.examples.service.EmployeeService;
 
 /**
  * Root resource (exposed at "employees" path)
+ * 
+ * Besides XML and JSON, employees can be sent and received in the compact
+ * binary format of {@link EmployeeBinaryProvider}, with the media type
+ * "application/x-employee", except for the batch of operations.
  */
 @Path("employees")
 public class EmployeeResource {
 
+	// used when only the cursor is specified
+	private static final int DEFAULT_PAGE_LIMIT = 100;
+
+	private static final int DEFAULT_SEARCH_LIMIT = 10;
+
+	private static final List<Variant> VARIANTS = Variant
+		.mediaTypes(MediaType.APPLICATION_XML_TYPE, MediaType.APPLICATION_JSON_TYPE,
+			EmployeeBinaryProvider.APPLICATION_EMPLOYEE_TYPE)
+		.build();
+
 	@Inject
 	private EmployeeService employeeService;
 
+	// get() returns null when the cache is disabled
+	@Inject
+	private IterableProvider<EmployeeResponseCache> responseCache;
+
+	@Context
+	private Providers providers;
+
+	/**
+	 * Without query parameters returns all the employees; if "limit" and/or
+	 * "cursor" are specified returns a single page, and, if there are other
+	 * employees, a "next" link for the following page, e.g.,
+	 * http://localhost:8080/myapp/employees?limit=10
+	 * 
+	 * With "stream=true" all the employees are written while they are read from
+	 * the repository (see {@link EmployeeStreamWriter}), e.g.,
+	 * http://localhost:8080/myapp/employees?stream=true
+	 * 
+	 * With "minSalary" and/or "maxSalary" (both inclusive) returns only the
+	 * employees in that salary range, sorted by salary, or by name with
+	 * "sort=name", e.g.,
+	 * http://localhost:8080/myapp/employees?minSalary=1000&maxSalary=2000; also
+	 * "sort" alone returns all the employees sorted. These cannot be combined
+	 * with paging or streaming.
+	 * 
+	 * With "filter" returns, streaming them, only the employees that satisfy the
+	 * filter expression (see {@link com.examples.service.EmployeeFilter}), e.g.,
+	 * http://localhost:8080/myapp/employees?filter=salary%3E1000%20and%20name~%22First%22;
+	 * this cannot be combined with the other parameters.
+	 * 
+	 * Otherwise all the employees are taken from the {@link EmployeeResponseCache},
+	 * if enabled, and the response has an ETag and a Last-Modified header, so that
+	 * a conditional request can get a 304 (Not Modified).
+	 * 
+	 * @param limit
+	 * @param cursor
+	 * @param stream
+	 * @param minSalary
+	 * @param maxSalary
+	 * @param sort
+	 * @param filter
+	 * @param uriInfo
+	 * @param request
+	 * @return
+	 */
 	@GET
-	@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
-	public List<Employee> getAllEmployees() {
-		return employeeService.allEmployees();
+	@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON,
+		EmployeeBinaryProvider.APPLICATION_EMPLOYEE })
+	public Response getAllEmployees(
+			@QueryParam("limit") Integer limit,
+			@QueryParam("cursor") String cursor,
+			@QueryParam("stream") boolean stream,
+			@QueryParam("minSalary") Integer minSalary,
+			@QueryParam("maxSalary") Integer maxSalary,
+			@QueryParam("sort") String sort,
+			@QueryParam("filter") String filter,
+			@Context UriInfo uriInfo,
+			@Context Request request) {
+		if (filter != null) {
+			if (limit != null || cursor != null || minSalary != null || maxSalary != null
+					|| sort != null)
+				throw new BadRequestException(
+					"Filters cannot be combined with paging, salary ranges or sorting");
+			return Response
+				.ok(new GenericEntity<Stream<Employee>>(employeeService.filterEmployees(filter)) {})
+				.build();
+		}
+		if (minSalary != null || maxSalary != null || sort != null) {
+			if (limit != null || cursor != null || stream)
+				throw new BadRequestException(
+					"Salary ranges and sorting cannot be combined with paging or streaming");
+			return Response
+				.ok(new GenericEntity<List<Employee>>(
+					employeeService.employeesBySalary(minSalary, maxSalary, sort)) {})
+				.build();
+		}
+		if (limit == null && cursor == null) {
+			if (stream) {
+				return Response
+					.ok(new GenericEntity<Stream<Employee>>(employeeService.streamAllEmployees()) {})
+					.build();
+			}
+			// the version must be read before the data
+			return conditionalGet(request, null,
+				employeeService.collectionVersion(),
+				employeeService.collectionLastModified(),
+				() -> new GenericEntity<List<Employee>>(employeeService.allEmployees()) {});
+		}
+		int pageLimit = limit != null ? limit : DEFAULT_PAGE_LIMIT;
+		EmployeePage page = employeeService.employeesPage(cursor, pageLimit);
+		ResponseBuilder response = Response
+			.ok(new GenericEntity<List<Employee>>(page.getEmployees()) {});
+		if (page.getNextCursor() != null) {
+			response.link(uriInfo.getAbsolutePathBuilder()
+				.queryParam("limit", pageLimit)
+				.queryParam("cursor", page.getNextCursor())
+				.build(), "next");
+		}
+		return response.build();
 	}
 
 	@GET
@@ -42,9 +180,61 @@ public class EmployeeResource {
 	// Allows to type http://localhost:8080/myapp/employees/ID1
 	// ID1 will be treated as parameter "id" and passed to this method
 	@Path("{id}")
-	@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
-	public Employee getOneEmployee(@PathParam("id") String id) {
-		return employeeService.getEmployeeById(id);
+	@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON,
+		EmployeeBinaryProvider.APPLICATION_EMPLOYEE })
+	public Response getOneEmployee(@PathParam("id") String id, @Context Request request) {
+		// the version must be read before the data; for a missing employee
+		// it is a 404, before evaluating the preconditions
+		return conditionalGet(request, id,
+			employeeService.versionOf(id),
+			employeeService.lastModifiedOf(id),
+			() -> new GenericEntity<>(employeeService.getEmployeeById(id), Employee.class));
+	}
+
+	/**
+	 * Returns, in a single response, the employees with the given ids, which can
+	 * be passed comma separated and/or repeated, and the ids that were not found,
+	 * e.g., http://localhost:8080/myapp/employees/lookup?ids=ID1,ID2
+	 * 
+	 * @param ids
+	 * @return
+	 */
+	@GET
+	@Path("lookup")
+	@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON,
+		EmployeeBinaryProvider.APPLICATION_EMPLOYEE })
+	public EmployeeLookup lookupEmployees(@QueryParam("ids") List<String> ids) {
+		return employeeService.lookupEmployees(
+			ids.stream()
+				.flatMap(param -> Arrays.stream(param.split(",")))
+				.map(String::trim)
+				.filter(id -> !id.isEmpty())
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Returns at most "limit" (default {@value #DEFAULT_SEARCH_LIMIT}) employees
+	 * whose name matches the query "q", e.g., for a type-ahead,
+	 * http://localhost:8080/myapp/employees/search?q=sec+emp
+	 * 
+	 * Each word of the query, ignoring the case, must be the beginning of a word
+	 * of the name, or, with "match=token", a whole word of the name.
+	 * 
+	 * @param query
+	 * @param match
+	 * @param limit
+	 * @return
+	 */
+	@GET
+	@Path("search")
+	@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON,
+		EmployeeBinaryProvider.APPLICATION_EMPLOYEE })
+	public List<Employee> searchEmployees(
+			@QueryParam("q") String query,
+			@QueryParam("match") String match,
+			@QueryParam("limit") Integer limit) {
+		return employeeService.searchEmployees(query, match,
+			limit != null ? limit : DEFAULT_SEARCH_LIMIT);
 	}
 
 	// returns the number of employees
@@ -54,7 +244,21 @@ public class EmployeeResource {
 	@Path("count")
 	@Produces(MediaType.TEXT_PLAIN)
 	public String getCount() {
-		return String.valueOf(employeeService.allEmployees().size());
+		return String.valueOf(employeeService.countEmployees());
+	}
+
+	/**
+	 * Returns the count, the sum, the minimum, the maximum, the mean and a
+	 * histogram of the salaries, see {@link EmployeeStatistics}, e.g.,
+	 * http://localhost:8080/myapp/employees/statistics
+	 * 
+	 * @return
+	 */
+	@GET
+	@Path("statistics")
+	@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+	public EmployeeStatistics getStatistics() {
+		return employeeService.salaryStatistics();
 	}
 
 	/**
@@ -66,8 +270,8 @@ public class EmployeeResource {
 	 * @throws URISyntaxException
 	 */
 	@POST
-	@Consumes(MediaType.APPLICATION_JSON)
-	@Produces(MediaType.APPLICATION_JSON)
+	@Consumes({ MediaType.APPLICATION_JSON, EmployeeBinaryProvider.APPLICATION_EMPLOYEE })
+	@Produces({ MediaType.APPLICATION_JSON, EmployeeBinaryProvider.APPLICATION_EMPLOYEE })
 	public Response addEmployee(Employee employee, @Context UriInfo uriInfo) throws URISyntaxException {
 		Employee saved = employeeService.addEmployee(employee);
 		return Response
@@ -77,34 +281,154 @@ public class EmployeeResource {
 			.build();
 	}
 
+	/**
+	 * Applies a batch of creations, replacements and deletions, e.g.,
+	 * 
+	 * <pre>
+	 * [{"op":"create","employee":{"name":"An Employee","salary":1000}},
+	 *  {"op":"delete","id":"ID2"}]
+	 * </pre>
+	 * 
+	 * The response contains the result of each operation, in the same order, with
+	 * the status it would have had on its own and the (generated) id.
+	 * 
+	 * @param operations
+	 * @return
+	 */
+	@POST
+	@Path("batch")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	public List<EmployeeOperationResult> applyOperations(List<EmployeeOperation> operations) {
+		return employeeService.applyOperations(operations);
+	}
+
+	/**
+	 * Imports new employees from NDJSON, one employee per line, reporting the
+	 * progress and the lines that could not be imported, see
+	 * {@link EmployeeImport}.
+	 * 
+	 * @param input
+	 * @return
+	 */
+	@POST
+	@Path("import")
+	@Consumes(EmployeeImport.APPLICATION_NDJSON)
+	@Produces(EmployeeImport.APPLICATION_NDJSON)
+	public StreamingOutput importEmployees(InputStream input) {
+		return new EmployeeImport(employeeService, input);
+	}
+
 	/**
 	 * Replaces an existing Employee given its id, with the values of the passed
 	 * Employee.
 	 * 
+	 * With an If-Match header, the Employee is replaced only if it has not changed
+	 * since the ETag was obtained, otherwise the response is a 412 (Precondition
+	 * Failed).
+	 * 
 	 * @param id
 	 * @param employee
+	 * @param ifMatch
 	 * @return
 	 */
 	@PUT
 	@Path("{id}")
-	@Consumes(MediaType.APPLICATION_JSON)
-	@Produces(MediaType.APPLICATION_JSON)
-	public Employee replaceEmployee(@PathParam("id") String id, Employee employee) {
-		return employeeService.replaceEmployeeById(id, employee);
+	@Consumes({ MediaType.APPLICATION_JSON, EmployeeBinaryProvider.APPLICATION_EMPLOYEE })
+	@Produces({ MediaType.APPLICATION_JSON, EmployeeBinaryProvider.APPLICATION_EMPLOYEE })
+	public Employee replaceEmployee(@PathParam("id") String id, Employee employee,
+			@HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+		if (ifMatch == null)
+			return employeeService.replaceEmployeeById(id, employee);
+		return employeeService.replaceEmployeeById(id, employee,
+			version -> EmployeeETags.matches(ifMatch, version));
 	}
 
 	/**
 	 * Deletes the Employee with the given id.
 	 * 
+	 * With an If-Match header, the Employee is deleted only if it exists and has
+	 * not changed since the ETag was obtained, otherwise the response is a 412
+	 * (Precondition Failed).
+	 * 
 	 * @param id
+	 * @param ifMatch
 	 * @return
 	 */
 	@DELETE
 	@Path("/{id}")
-	@Produces(MediaType.APPLICATION_JSON)
-	public Response deleteEmployee(@PathParam("id") String id) {
+	@Produces({ MediaType.APPLICATION_JSON, EmployeeBinaryProvider.APPLICATION_EMPLOYEE })
+	public Response deleteEmployee(@PathParam("id") String id,
+			@HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+		Employee deleted = ifMatch == null ?
+			employeeService.deleteEmployeeById(id) :
+			employeeService.deleteEmployeeById(id,
+				version -> EmployeeETags.matches(ifMatch, version));
 		return Response
-			.accepted(employeeService.deleteEmployeeById(id))
+			.accepted(deleted)
+			.build();
+	}
+
+	/**
+	 * Returns a 304 (Not Modified), without even getting the entity, if the client
+	 * already has the given version, otherwise the entity, possibly taken from the
+	 * cache, together with its ETag and Last-Modified.
+	 * 
+	 * @param request
+	 * @param id
+	 *            the id of the employee, or null for all the employees
+	 * @param version
+	 *            it must be read before the entity
+	 * @param lastModified
+	 * @param entity
+	 * @return
+	 */
+	private Response conditionalGet(Request request, String id, long version,
+			long lastModified, Supplier<GenericEntity<?>> entity) {
+		MediaType mediaType = selectMediaType(request);
+		EntityTag eTag = EmployeeETags.of(version, mediaType);
+		Date modified = new Date(lastModified);
+		ResponseBuilder response = request.evaluatePreconditions(modified, eTag);
+		if (response != null)
+			return response.build();
+		EmployeeResponseCache cache = responseCache.get();
+		if (cache == null) {
+			response = Response.ok(entity.get(), mediaType);
+		} else {
+			response = Response.ok(
+				cache.get(id, version, mediaType, () -> encode(entity.get(), mediaType)),
+				mediaType);
+		}
+		return response
+			.tag(eTag)
+			.lastModified(modified)
 			.build();
 	}
+
+	/**
+	 * The same media type Jersey selects according to the &#64;Produces of the
+	 * GET methods.
+	 */
+	private MediaType selectMediaType(Request request) {
+		return request.selectVariant(VARIANTS).getMediaType();
+	}
+
+	/**
+	 * Encodes the entity with the same {@link MessageBodyWriter} Jersey would use
+	 * for writing it in the response.
+	 */
+	private byte[] encode(GenericEntity<?> entity, MediaType mediaType) {
+		Annotation[] annotations = new Annotation[0];
+		@SuppressWarnings("unchecked")
+		MessageBodyWriter<Object> writer = (MessageBodyWriter<Object>) providers
+			.getMessageBodyWriter(entity.getRawType(), entity.getType(), annotations, mediaType);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			writer.writeTo(entity.getEntity(), entity.getRawType(), entity.getType(),
+				annotations, mediaType, new MultivaluedHashMap<>(), bytes);
+		} catch (IOException e) {
+			throw new InternalServerErrorException(e);
+		}
+		return bytes.toByteArray();
+	}
 }
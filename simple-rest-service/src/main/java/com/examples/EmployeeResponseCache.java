@@ -0,0 +1,229 @@
+package com.examples;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * A cache of already encoded response bodies, for a single employee (given its
+ * id) or for the whole list of employees (with a null id), for each media type.
+ *
+ * Each body is stored together with the version of the data it was encoded
+ * from (see {@link com.examples.service.EmployeeService#versionOf(String)} and
+ * {@link com.examples.service.EmployeeService#collectionVersion()}), and it is
+ * used only as long as the version does not change: a body is invalidated
+ * exactly when the data it was encoded from changes. A body is encoded once
+ * per version: concurrent requests for the same version wait for the first
+ * one to encode it.
+ *
+ * The total bytes of the bodies are bounded: when they are exceeded, bodies are
+ * evicted with the clock algorithm, i.e., a hand goes around the bodies,
+ * evicting the ones that have not been used since it last passed, so that the
+ * bodies used often, e.g., the list, stay in the cache.
+ */
+public class EmployeeResponseCache {
+
+	private static class Key {
+		private final String id;
+		private final MediaType mediaType;
+
+		Key(String id, MediaType mediaType) {
+			this.id = id;
+			this.mediaType = mediaType;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(id, mediaType);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return Objects.equals(id, other.id) && mediaType.equals(other.mediaType);
+		}
+	}
+
+	private static class Body {
+		private static final int ENCODING = 0;
+		private static final int COUNTED = 1;
+		private static final int REMOVED = 2;
+
+		private final long version;
+		private final CompletableFuture<byte[]> bytes = new CompletableFuture<>();
+		// whether its bytes are counted in the total, which happens only
+		// if it is encoded before being removed from the cache
+		private final AtomicInteger state = new AtomicInteger(ENCODING);
+		// set by each hit, cleared by the clock hand
+		private volatile boolean used;
+
+		Body(long version) {
+			this.version = version;
+		}
+	}
+
+	private final long maxBytes;
+
+	private final ConcurrentMap<Key, Body> bodies = new ConcurrentHashMap<>();
+
+	private final AtomicLong bytes = new AtomicLong();
+
+	// the clock hand, guarded by this
+	private Iterator<Map.Entry<Key, Body>> hand = Collections.emptyIterator();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxBytes
+	 *            the maximum total bytes of the cached bodies
+	 */
+	public EmployeeResponseCache(long maxBytes) {
+		if (maxBytes < 1)
+			throw new IllegalArgumentException("Invalid cache size " + maxBytes);
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the body for the given id and media type, if it was encoded from
+	 * the given version, otherwise it encodes it and caches it.
+	 *
+	 * @param id
+	 *            the id of the employee, or null for the whole list
+	 * @param version
+	 *            the current version of the data, which must be read before
+	 *            the data is read by the encoder
+	 * @param mediaType
+	 * @param encoder
+	 *            exceptions thrown by the encoder are propagated and nothing is
+	 *            cached
+	 * @return the encoded body
+	 */
+	public byte[] get(String id, long version, MediaType mediaType, Supplier<byte[]> encoder) {
+		Key key = new Key(id, mediaType);
+		Body body = bodies.get(key);
+		if (body == null || body.version != version) {
+			Body encoding = new Body(version);
+			Body[] replaced = new Body[1];
+			body = bodies.compute(key, (k, existing) -> {
+				// if another thread cached the same or a more recent
+				// version we must not replace it
+				if (existing != null && existing.version >= version)
+					return existing;
+				replaced[0] = existing;
+				return encoding;
+			});
+			if (replaced[0] != null)
+				remove(replaced[0]);
+			if (body == encoding) {
+				misses.increment();
+				return encode(key, encoding, encoder);
+			}
+		}
+		if (body.version != version) {
+			// e.g., a slow reader that read the version before a change
+			misses.increment();
+			return encoder.get();
+		}
+		hits.increment();
+		body.used = true;
+		try {
+			return body.bytes.join();
+		} catch (CompletionException | CancellationException e) {
+			// the other request failed, this one might not
+			return encoder.get();
+		}
+	}
+
+	private byte[] encode(Key key, Body body, Supplier<byte[]> encoder) {
+		byte[] encoded;
+		try {
+			encoded = encoder.get();
+		} catch (RuntimeException | Error e) {
+			bodies.remove(key, body);
+			remove(body);
+			body.bytes.completeExceptionally(e);
+			throw e;
+		}
+		body.bytes.complete(encoded);
+		if (body.state.compareAndSet(Body.ENCODING, Body.COUNTED)
+				&& bytes.addAndGet(encoded.length) > maxBytes)
+			evict();
+		return encoded;
+	}
+
+	/**
+	 * Must be called after the body has been removed from the map.
+	 */
+	private void remove(Body body) {
+		if (body.state.getAndSet(Body.REMOVED) == Body.COUNTED)
+			bytes.addAndGet(-body.bytes.join().length);
+	}
+
+	/**
+	 * Moves the hand until the bodies fit in {@link #maxBytes}; the bodies used
+	 * since the last pass are skipped, unless the hand has already gone around
+	 * all of them twice.
+	 */
+	private synchronized void evict() {
+		long steps = 0;
+		while (bytes.get() > maxBytes && !bodies.isEmpty()) {
+			if (!hand.hasNext())
+				hand = bodies.entrySet().iterator();
+			if (!hand.hasNext())
+				continue;
+			Map.Entry<Key, Body> entry = hand.next();
+			Body body = entry.getValue();
+			if (body.used && steps++ < 2L * bodies.size()) {
+				body.used = false;
+				continue;
+			}
+			if (bodies.remove(entry.getKey(), body)) {
+				remove(body);
+				evictions.increment();
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public int size() {
+		return bodies.size();
+	}
+
+	/**
+	 * @return the total bytes of the cached bodies
+	 */
+	public long bytes() {
+		return bytes.get();
+	}
+}
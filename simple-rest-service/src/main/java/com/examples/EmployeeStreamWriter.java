@@ -0,0 +1,124 @@
+package com.examples;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.eclipse.persistence.jaxb.MarshallerProperties;
+
+import com.examples.model.Employee;
+
+/**
+ * Writes a {@code Stream<Employee>} one employee at a time, without building
+ * the whole document in memory, so that time-to-first-byte and memory do not
+ * depend on the number of employees.
+ *
+ * Each employee is marshalled with the same JAXB implementation Jersey uses for
+ * a {@code List<Employee>} (the JDK one for XML and MOXy for JSON), so the
+ * output is the same.
+ *
+ * Since the response is committed while the stream is still being consumed,
+ * an error in the middle of the stream can only abort the connection.
+ */
+@Provider
+@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+public class EmployeeStreamWriter implements MessageBodyWriter<Stream<Employee>> {
+
+	// flush the output every CHUNK_SIZE employees
+	private static final int CHUNK_SIZE = 256;
+
+	private static final byte[] XML_START =
+		("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+			+ "<employees>").getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] XML_END =
+		"</employees>".getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] JSON_START = { '[' };
+
+	private static final byte[] JSON_END = { ']' };
+
+	// created on the first use of each media type, so that a missing JAXB
+	// implementation only affects the responses that need it
+	private volatile JAXBContext xmlContext;
+
+	private volatile JAXBContext jsonContext;
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType) {
+		if (!Stream.class.isAssignableFrom(type) || !(genericType instanceof ParameterizedType))
+			return false;
+		Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+		return arguments.length == 1 && arguments[0] == Employee.class;
+	}
+
+	@Override
+	public long getSize(Stream<Employee> employees, Class<?> type, Type genericType,
+			Annotation[] annotations, MediaType mediaType) {
+		return -1;
+	}
+
+	@Override
+	public void writeTo(Stream<Employee> employees, Class<?> type, Type genericType,
+			Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+			throws IOException {
+		boolean json = MediaType.APPLICATION_JSON_TYPE.isCompatible(mediaType);
+		try (Stream<Employee> toClose = employees) {
+			Marshaller marshaller = json ? jsonMarshaller() : xmlMarshaller();
+			entityStream.write(json ? JSON_START : XML_START);
+			int written = 0;
+			for (Iterator<Employee> it = employees.iterator(); it.hasNext();) {
+				if (json && written > 0)
+					entityStream.write(',');
+				marshaller.marshal(it.next(), entityStream);
+				if (++written % CHUNK_SIZE == 0)
+					entityStream.flush();
+			}
+			entityStream.write(json ? JSON_END : XML_END);
+		} catch (JAXBException e) {
+			throw new WebApplicationException(e);
+		}
+	}
+
+	private Marshaller xmlMarshaller() throws JAXBException {
+		JAXBContext context = xmlContext;
+		if (context == null) {
+			// creating it twice is harmless
+			context = JAXBContext.newInstance(Employee.class);
+			xmlContext = context;
+		}
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+		return marshaller;
+	}
+
+	private Marshaller jsonMarshaller() throws JAXBException {
+		JAXBContext context = jsonContext;
+		if (context == null) {
+			context = JAXBContextFactory.createContext(new Class<?>[] { Employee.class }, null);
+			jsonContext = context;
+		}
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON);
+		marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+		return marshaller;
+	}
+}
@@ -1,21 +1,38 @@
 package com.examples;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.URI;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.inject.Singleton;
+import javax.ws.rs.ProcessingException;
 
 import org.glassfish.grizzly.http.server.HttpServer;
-import org.glassfish.hk2.api.TypeLiteral;
+import org.glassfish.grizzly.http.server.NetworkListener;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.ServerProperties;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
 
-import com.examples.model.Employee;
+import com.examples.repository.CachingEmployeeRepository;
+import com.examples.repository.CachingEmployeeRepository.WritePolicy;
+import com.examples.repository.ConcurrentInMemoryEmployeeRepository;
 import com.examples.repository.EmployeeRepository;
-import com.examples.repository.InMemoryEmployeeRepository;
+import com.examples.repository.EmployeeSnapshot;
+import com.examples.repository.FileEmployeeRepository;
+import com.examples.repository.FileEmployeeRepository.FsyncPolicy;
+import com.examples.repository.JdbcEmployeeRepository;
+import com.examples.repository.OffHeapEmployeeRepository;
+import com.examples.repository.ShardedEmployeeRepository;
+import com.examples.repository.VersionedEmployeeRepository;
 import com.examples.service.EmployeeService;
 import com.examples.service.EmployeeServiceImpl;
 
@@ -24,6 +41,8 @@ import com.examples.service.EmployeeServiceImpl;
  *
  */
 public class Main {
+	private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
+
 	// Base URI the Grizzly HTTP server will listen on
 	public static final String BASE_URI =
 		"http://0.0.0.0:"
@@ -37,6 +56,7 @@ public class Main {
 	 * @return Grizzly HTTP server.
 	 */
 	public static HttpServer startServer() {
+		EmployeeRepository repository = repository();
 		// create a resource config that scans for JAX-RS resources and providers
 		// in com.examples package
 		final ResourceConfig rc = new ResourceConfig()
@@ -51,18 +71,206 @@ public class Main {
 						.to(EmployeeService.class)
 						.in(Singleton.class);
 						// all requests must be handled with the same repository
-					bind(InMemoryEmployeeRepository.class)
-						.to(EmployeeRepository.class);
-					bindAsContract(new TypeLiteral<LinkedHashMap<String, Employee>>() {})
-						.to(new TypeLiteral<Map<String, Employee>>() {});
+					// the service does not serialize reads, so the
+					// repository must be safe for concurrent access
+					if (repository != null)
+						bind(repository)
+							.to(EmployeeRepository.class);
+					else
+						bind(ConcurrentInMemoryEmployeeRepository.class)
+							.to(EmployeeRepository.class);
+					// 0 disables the cache of encoded responses
+					long responseCacheBytes = Long.getLong(
+						"simple.rest.service.response.cache.bytes", 64 * 1024 * 1024);
+					if (responseCacheBytes > 0)
+						bind(new EmployeeResponseCache(responseCacheBytes))
+							.to(EmployeeResponseCache.class);
+				}
+			})
+			// Jersey ignores the flushes of the first 8 KB of a response, which
+			// it buffers for setting the Content-Length, so the streaming ones,
+			// e.g., the progress of an import, would be delayed; responses are
+			// sent chunked instead
+			.property(ServerProperties.OUTBOUND_CONTENT_LENGTH_BUFFER, 0)
+			// a negative size disables the compression of the responses,
+			// but compressed requests are still accepted
+			.register(new CompressionInterceptor(
+				Integer.getInteger("simple.rest.service.compression.min.size", 1024),
+				Long.getLong("simple.rest.service.compression.max.inflated.size",
+					32 * 1024 * 1024)));
+
+		// employees are written and read in JSON by MOXy, unless the
+		// dedicated provider is enabled with "employee"
+		if ("employee".equals(System.getProperty("simple.rest.service.json.provider", "moxy")))
+			rc.register(EmployeeJsonProvider.class);
+
+		if (repository instanceof Closeable)
+			rc.register(new ContainerLifecycleListener() {
+				@Override
+				public void onStartup(Container container) {
+					// nothing to do
+				}
+
+				@Override
+				public void onReload(Container container) {
+					// nothing to do
+				}
+
+				@Override
+				public void onShutdown(Container container) {
+					if (repository instanceof CachingEmployeeRepository)
+						LOGGER.info(() -> "Repository cache: "
+							+ ((CachingEmployeeRepository) repository).describe());
+					try {
+						((Closeable) repository).close();
+					} catch (IOException e) {
+						LOGGER.log(Level.SEVERE, "Failed to close the repository", e);
+					}
 				}
 			});
 
-		// create and start a new instance of grizzly http server
+		// create a new instance of grizzly http server
 		// exposing the Jersey application at BASE_URI
-		return GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc);
+		HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc, false);
+		// tune it before starting it
+		ServerConfiguration configuration = new ServerConfiguration();
+		for (NetworkListener listener : server.getListeners()) {
+			configuration.applyTo(listener);
+			LOGGER.info(() -> "Listener " + listener.getName() + ": "
+				+ ServerConfiguration.describe(listener));
+		}
+		try {
+			server.start();
+		} catch (IOException e) {
+			server.shutdownNow();
+			throw new ProcessingException("Failed to start the Grizzly HTTP server", e);
+		}
+		return server;
+	}
+
+	/**
+	 * The repository selected with the system properties, in this order:
+	 * "simple.rest.service.jdbc.url", "simple.rest.service.data.dir",
+	 * "simple.rest.service.snapshot"; otherwise, if
+	 * "simple.rest.service.repository.versioned" is true, a
+	 * {@link VersionedEmployeeRepository}, or, if
+	 * "simple.rest.service.repository.offheap" is true, an
+	 * {@link OffHeapEmployeeRepository}, or, if
+	 * "simple.rest.service.repository.shards" is greater than 1, a
+	 * {@link ShardedEmployeeRepository} with that number of shards.
+	 * 
+	 * Any of them, including the in-memory one, can be wrapped in a
+	 * {@link CachingEmployeeRepository} by setting its maximum size with
+	 * "simple.rest.service.repository.cache.size" and its
+	 * {@link WritePolicy} with "simple.rest.service.repository.cache.writes"
+	 * (write_through or invalidate).
+	 * 
+	 * @return null if none of them is set, for the in-memory repository with
+	 *         the initial employees
+	 */
+	private static EmployeeRepository repository() {
+		EmployeeRepository repository = jdbcRepository();
+		if (repository == null)
+			repository = fileRepository();
+		if (repository == null)
+			repository = snapshotRepository();
+		if (repository == null && Boolean.getBoolean("simple.rest.service.repository.versioned"))
+			repository = new VersionedEmployeeRepository();
+		if (repository == null && Boolean.getBoolean("simple.rest.service.repository.offheap"))
+			repository = new OffHeapEmployeeRepository();
+		// 1 keeps all the employees in a single map
+		int shards = Integer.getInteger("simple.rest.service.repository.shards", 1);
+		if (repository == null && shards > 1)
+			repository = new ShardedEmployeeRepository(shards);
+		// 0 disables the cache
+		int cacheSize = Integer.getInteger("simple.rest.service.repository.cache.size", 0);
+		if (cacheSize > 0) {
+			WritePolicy writePolicy = WritePolicy.valueOf(System.getProperty(
+				"simple.rest.service.repository.cache.writes", "write_through")
+				.toUpperCase(Locale.ROOT));
+			repository = new CachingEmployeeRepository(
+				repository != null ? repository : new ConcurrentInMemoryEmployeeRepository(),
+				cacheSize, writePolicy);
+		}
+		return repository;
 	}
 
+	/**
+	 * The employees are kept in a database if the system property
+	 * "simple.rest.service.jdbc.url" specifies its JDBC URL; the credentials
+	 * can be specified with "simple.rest.service.jdbc.user" and
+	 * "simple.rest.service.jdbc.password", and the size of the pool of
+	 * connections with "simple.rest.service.jdbc.pool.size".
+	 * 
+	 * @return null if the URL is not specified
+	 */
+	private static JdbcEmployeeRepository jdbcRepository() {
+		String url = System.getProperty("simple.rest.service.jdbc.url");
+		if (url == null)
+			return null;
+		Properties info = new Properties();
+		String user = System.getProperty("simple.rest.service.jdbc.user");
+		if (user != null)
+			info.setProperty("user", user);
+		String password = System.getProperty("simple.rest.service.jdbc.password");
+		if (password != null)
+			info.setProperty("password", password);
+		try {
+			return new JdbcEmployeeRepository(url, info,
+				Integer.getInteger("simple.rest.service.jdbc.pool.size", 10),
+				Long.getLong("simple.rest.service.jdbc.pool.timeout.ms", 5000));
+		} catch (IllegalStateException e) {
+			throw new ProcessingException("Failed to open the database " + url, e);
+		}
+	}
+
+	/**
+	 * The employees are kept in memory only, unless the system property
+	 * "simple.rest.service.data.dir" specifies the directory of a
+	 * {@link FileEmployeeRepository}, whose policy for forcing the log to disk
+	 * can be specified with "simple.rest.service.fsync" (always, group or os).
+	 * 
+	 * @return null if the employees are kept in memory only
+	 */
+	private static FileEmployeeRepository fileRepository() {
+		String directory = System.getProperty("simple.rest.service.data.dir");
+		if (directory == null)
+			return null;
+		FsyncPolicy fsyncPolicy = FsyncPolicy.valueOf(
+			System.getProperty("simple.rest.service.fsync", "always").toUpperCase(Locale.ROOT));
+		try {
+			return new FileEmployeeRepository(Paths.get(directory), fsyncPolicy,
+				Long.getLong("simple.rest.service.group.commit.ms", 5),
+				Long.getLong("simple.rest.service.snapshot.threshold", 64L * 1024 * 1024));
+		} catch (IOException e) {
+			throw new ProcessingException("Failed to open the repository in " + directory, e);
+		}
+	}
+
+	/**
+	 * The employees kept in memory only are the initial ones, unless the system
+	 * property "simple.rest.service.snapshot" specifies a file written by
+	 * {@link EmployeeSnapshot} to load them from.
+	 * 
+	 * @return null if the employees are the initial ones
+	 */
+	private static ConcurrentInMemoryEmployeeRepository snapshotRepository() {
+		String snapshot = System.getProperty("simple.rest.service.snapshot");
+		if (snapshot == null)
+			return null;
+		long start = System.nanoTime();
+		try {
+			ConcurrentInMemoryEmployeeRepository repository =
+				EmployeeSnapshot.load(Paths.get(snapshot));
+			LOGGER.info(() -> String.format("Loaded %s in %d ms", snapshot,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+			return repository;
+		} catch (IOException e) {
+			throw new ProcessingException("Failed to load the snapshot " + snapshot, e);
+		}
+	}
+
+
 	/**
 	 * Main method.
 	 * 
@@ -70,7 +278,9 @@ public class Main {
 	 * @throws IOException
 	 */
 	public static void main(String[] args) throws IOException {
-		startServer();
+		HttpServer server = startServer();
+		// e.g., on Ctrl-C, so that the repository is closed
+		Runtime.getRuntime().addShutdownHook(new Thread(server::shutdownNow));
 		System.out.println(String.format(
 				"Jersey app started with WADL available at " + "%sapplication.wadl\n",
 				BASE_URI));
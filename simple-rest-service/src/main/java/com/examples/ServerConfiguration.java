@@ -0,0 +1,104 @@
+package com.examples;
+
+import org.glassfish.grizzly.http.KeepAlive;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+
+/**
+ * The tuning of the Grizzly transport and network listener, read from system
+ * properties, like "simple.rest.service.port"; a property that is not set
+ * leaves the Grizzly default:
+ * 
+ * <ul>
+ * <li>simple.rest.service.worker.threads: the size of the worker thread
+ * pool</li>
+ * <li>simple.rest.service.worker.queue.limit: the maximum number of tasks
+ * waiting for a worker thread, -1 for no limit</li>
+ * <li>simple.rest.service.selector.runners: the number of selector
+ * threads</li>
+ * <li>simple.rest.service.keepalive.max.requests: the maximum number of
+ * requests on a keep-alive connection, -1 for no limit</li>
+ * <li>simple.rest.service.keepalive.idle.timeout: the seconds an idle
+ * keep-alive connection is kept open, -1 for no timeout</li>
+ * <li>simple.rest.service.max.header.size: the maximum size in bytes of the
+ * request headers</li>
+ * <li>simple.rest.service.tcp.nodelay: whether TCP_NODELAY is set on the
+ * connections</li>
+ * <li>simple.rest.service.backlog: the maximum number of pending
+ * connections</li>
+ * </ul>
+ */
+public class ServerConfiguration {
+
+	private static final String PREFIX = "simple.rest.service.";
+
+	private final Integer workerThreads = Integer.getInteger(PREFIX + "worker.threads");
+
+	private final Integer workerQueueLimit = Integer.getInteger(PREFIX + "worker.queue.limit");
+
+	private final Integer selectorRunners = Integer.getInteger(PREFIX + "selector.runners");
+
+	private final Integer keepAliveMaxRequests = Integer.getInteger(PREFIX + "keepalive.max.requests");
+
+	private final Integer keepAliveIdleTimeout = Integer.getInteger(PREFIX + "keepalive.idle.timeout");
+
+	private final Integer maxHeaderSize = Integer.getInteger(PREFIX + "max.header.size");
+
+	private final Boolean tcpNoDelay = booleanProperty(PREFIX + "tcp.nodelay");
+
+	private final Integer backlog = Integer.getInteger(PREFIX + "backlog");
+
+	/**
+	 * Must be called before the listener is started.
+	 * 
+	 * @param listener
+	 */
+	public void applyTo(NetworkListener listener) {
+		TCPNIOTransport transport = listener.getTransport();
+		if (workerThreads != null || workerQueueLimit != null) {
+			ThreadPoolConfig workerPool = transport.getWorkerThreadPoolConfig().copy();
+			if (workerThreads != null)
+				workerPool.setCorePoolSize(workerThreads).setMaxPoolSize(workerThreads);
+			if (workerQueueLimit != null)
+				workerPool.setQueueLimit(workerQueueLimit);
+			transport.setWorkerThreadPoolConfig(workerPool);
+		}
+		if (selectorRunners != null)
+			transport.setSelectorRunnersCount(selectorRunners);
+		if (tcpNoDelay != null)
+			transport.setTcpNoDelay(tcpNoDelay);
+		if (backlog != null)
+			transport.setServerConnectionBackLog(backlog);
+		KeepAlive keepAlive = listener.getKeepAlive();
+		if (keepAliveMaxRequests != null)
+			keepAlive.setMaxRequestsCount(keepAliveMaxRequests);
+		if (keepAliveIdleTimeout != null)
+			keepAlive.setIdleTimeoutInSeconds(keepAliveIdleTimeout);
+		if (maxHeaderSize != null)
+			listener.setMaxHttpHeaderSize(maxHeaderSize);
+	}
+
+	/**
+	 * @param listener
+	 * @return the effective values of the tuning parameters of the listener
+	 */
+	public static String describe(NetworkListener listener) {
+		TCPNIOTransport transport = listener.getTransport();
+		ThreadPoolConfig workerPool = transport.getWorkerThreadPoolConfig();
+		KeepAlive keepAlive = listener.getKeepAlive();
+		return "worker threads: " + workerPool.getCorePoolSize() + "-" + workerPool.getMaxPoolSize()
+			+ ", worker queue limit: " + workerPool.getQueueLimit()
+			+ ", selector runners: " + transport.getSelectorRunnersCount()
+			+ ", keep-alive max requests: " + keepAlive.getMaxRequestsCount()
+			+ ", keep-alive idle timeout: " + keepAlive.getIdleTimeoutInSeconds() + "s"
+			+ ", max header size: " + listener.getMaxHttpHeaderSize()
+			+ ", TCP_NODELAY: " + transport.isTcpNoDelay()
+			+ ", backlog: " + transport.getServerConnectionBackLog();
+	}
+
+	private static Boolean booleanProperty(String name) {
+		String value = System.getProperty(name);
+		return value != null ? Boolean.valueOf(value) : null;
+	}
+}
@@ -0,0 +1,74 @@
+package com.examples.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The result of looking up many employees by id at once: the employees that
+ * were found and the ids that were not found, e.g., in JSON
+ * 
+ * <pre>
+ * {"employees":[{"id":"ID1","name":"First Employee","salary":1000}],"missing":["ID9"]}
+ * </pre>
+ */
+@XmlRootElement
+public class EmployeeLookup {
+
+	private List<Employee> employees = new ArrayList<>();
+	private List<String> missing = new ArrayList<>();
+
+	public EmployeeLookup() {
+
+	}
+
+	public EmployeeLookup(List<Employee> employees, List<String> missing) {
+		this.employees = employees;
+		this.missing = missing;
+	}
+
+	@XmlElement(name = "employees")
+	public List<Employee> getEmployees() {
+		return employees;
+	}
+
+	public void setEmployees(List<Employee> employees) {
+		this.employees = employees;
+	}
+
+	@XmlElement(name = "missing")
+	public List<String> getMissing() {
+		return missing;
+	}
+
+	public void setMissing(List<String> missing) {
+		this.missing = missing;
+	}
+
+	@Override
+	public String toString() {
+		return "EmployeeLookup [employees=" + employees +
+				", missing=" + missing + "]";
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(employees, missing);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		EmployeeLookup other = (EmployeeLookup) obj;
+		return Objects.equals(employees, other.employees)
+				&& Objects.equals(missing, other.missing);
+	}
+}
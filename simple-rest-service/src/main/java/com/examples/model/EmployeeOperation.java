@@ -0,0 +1,73 @@
+package com.examples.model;
+
+import javax.xml.bind.annotation.XmlEnumValue;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A single write operation of a batch: the creation of a new employee, the
+ * replacement of an existing employee given its id, or the deletion of an
+ * employee given its id, e.g., in JSON
+ * 
+ * <pre>
+ * {"op":"create","employee":{"name":"An Employee","salary":1000}}
+ * {"op":"replace","id":"ID1","employee":{"name":"An Employee","salary":2000}}
+ * {"op":"delete","id":"ID2"}
+ * </pre>
+ */
+@XmlRootElement
+public class EmployeeOperation {
+
+	public enum Kind {
+		@XmlEnumValue("create")
+		CREATE,
+		@XmlEnumValue("replace")
+		REPLACE,
+		@XmlEnumValue("delete")
+		DELETE
+	}
+
+	private Kind op;
+	private String id;
+	private Employee employee;
+
+	public EmployeeOperation() {
+
+	}
+
+	public EmployeeOperation(Kind op, String id, Employee employee) {
+		this.op = op;
+		this.id = id;
+		this.employee = employee;
+	}
+
+	public Kind getOp() {
+		return op;
+	}
+
+	public void setOp(Kind op) {
+		this.op = op;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Employee getEmployee() {
+		return employee;
+	}
+
+	public void setEmployee(Employee employee) {
+		this.employee = employee;
+	}
+
+	@Override
+	public String toString() {
+		return "EmployeeOperation [op=" + op +
+				", id=" + id +
+				", employee=" + employee + "]";
+	}
+}
@@ -0,0 +1,77 @@
+package com.examples.model;
+
+import java.util.Objects;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The result of a single {@link EmployeeOperation} of a batch: the HTTP status
+ * the operation would have had if performed on its own, the id of the involved
+ * employee (generated, for a creation) and, in case of error, a message.
+ */
+@XmlRootElement
+public class EmployeeOperationResult {
+
+	private int status;
+	private String id;
+	private String message;
+
+	public EmployeeOperationResult() {
+
+	}
+
+	public EmployeeOperationResult(int status, String id, String message) {
+		this.status = status;
+		this.id = id;
+		this.message = message;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	@Override
+	public String toString() {
+		return "EmployeeOperationResult [status=" + status +
+				", id=" + id +
+				", message=" + message + "]";
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(status, id, message);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		EmployeeOperationResult other = (EmployeeOperationResult) obj;
+		return status == other.status && Objects.equals(id, other.id)
+				&& Objects.equals(message, other.message);
+	}
+}
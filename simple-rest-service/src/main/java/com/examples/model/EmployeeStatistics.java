@@ -0,0 +1,125 @@
+package com.examples.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * The statistics of the salaries of all the employees, e.g., in JSON
+ * 
+ * <pre>
+ * {"count":3,"sum":6000,"min":1000,"max":3000,"mean":2000.0,
+ *  "histogram":[{"min":512,"max":1023,"count":1},{"min":1024,"max":2047,"count":1},
+ *   {"min":2048,"max":4095,"count":1}]}
+ * </pre>
+ * 
+ * Without employees, min, max and mean are not present; the histogram
+ * contains only the buckets with at least an employee.
+ */
+@XmlRootElement
+@XmlType(propOrder = { "count", "sum", "min", "max", "mean", "histogram" })
+public class EmployeeStatistics {
+
+	private long count;
+	private long sum;
+	private Integer min;
+	private Integer max;
+	private Double mean;
+	private List<SalaryBucket> histogram = new ArrayList<>();
+
+	public EmployeeStatistics() {
+
+	}
+
+	public EmployeeStatistics(long count, long sum, Integer min, Integer max,
+			List<SalaryBucket> histogram) {
+		this.count = count;
+		this.sum = sum;
+		this.min = min;
+		this.max = max;
+		this.mean = count > 0 ? (double) sum / count : null;
+		this.histogram = histogram;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	public long getSum() {
+		return sum;
+	}
+
+	public void setSum(long sum) {
+		this.sum = sum;
+	}
+
+	public Integer getMin() {
+		return min;
+	}
+
+	public void setMin(Integer min) {
+		this.min = min;
+	}
+
+	public Integer getMax() {
+		return max;
+	}
+
+	public void setMax(Integer max) {
+		this.max = max;
+	}
+
+	public Double getMean() {
+		return mean;
+	}
+
+	public void setMean(Double mean) {
+		this.mean = mean;
+	}
+
+	@XmlElement(name = "histogram")
+	public List<SalaryBucket> getHistogram() {
+		return histogram;
+	}
+
+	public void setHistogram(List<SalaryBucket> histogram) {
+		this.histogram = histogram;
+	}
+
+	@Override
+	public String toString() {
+		return "EmployeeStatistics [count=" + count + ", sum=" + sum +
+				", min=" + min + ", max=" + max + ", mean=" + mean +
+				", histogram=" + histogram + "]";
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(count, sum, min, max, mean, histogram);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		EmployeeStatistics other = (EmployeeStatistics) obj;
+		return count == other.count
+				&& sum == other.sum
+				&& Objects.equals(min, other.min)
+				&& Objects.equals(max, other.max)
+				&& Objects.equals(mean, other.mean)
+				&& Objects.equals(histogram, other.histogram);
+	}
+}
@@ -0,0 +1,77 @@
+package com.examples.model;
+
+import java.util.Objects;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * A bucket of the salary histogram of {@link EmployeeStatistics}: the number of
+ * employees with a salary between min and max, both inclusive.
+ */
+@XmlRootElement
+@XmlType(propOrder = { "min", "max", "count" })
+public class SalaryBucket {
+
+	private int min;
+	private int max;
+	private long count;
+
+	public SalaryBucket() {
+
+	}
+
+	public SalaryBucket(int min, int max, long count) {
+		this.min = min;
+		this.max = max;
+		this.count = count;
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public void setMin(int min) {
+		this.min = min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public void setMax(int max) {
+		this.max = max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	@Override
+	public String toString() {
+		return "SalaryBucket [min=" + min + ", max=" + max + ", count=" + count + "]";
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(min, max, count);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SalaryBucket other = (SalaryBucket) obj;
+		return min == other.min
+				&& max == other.max
+				&& count == other.count;
+	}
+}
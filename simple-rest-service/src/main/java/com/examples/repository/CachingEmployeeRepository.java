@@ -0,0 +1,400 @@
+package com.examples.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
+
+/**
+ * A decorator of a repository that caches the employees found by id, including
+ * the ids that are not found (negative caching), so that repeated lookups do
+ * not reach a slow repository.
+ *
+ * The number of cached ids is bounded: the cache is split in segments, each
+ * one with its own lock, and when a segment is full its least recently used id
+ * is evicted.
+ *
+ * All the writes must go through this repository: depending on the
+ * {@link WritePolicy}, a saved or deleted employee is stored in the cache or
+ * removed from it. Each segment counts its writes, so that a lookup that races
+ * with a write to the same segment does not cache what it read, since it could
+ * be stale, and concurrent writes to the same segment are removed from the
+ * cache instead of being stored.
+ *
+ * The other queries, e.g., {@link #findAll()}, are not cached.
+ */
+public class CachingEmployeeRepository implements EmployeeRepository, Closeable {
+
+	/**
+	 * How the cache is updated when an employee is saved or deleted.
+	 */
+	public enum WritePolicy {
+		/**
+		 * The saved employee is cached, and a deleted one is cached as missing.
+		 */
+		WRITE_THROUGH,
+		/**
+		 * The id is removed from the cache, so that the next lookup reads it
+		 * from the repository.
+		 */
+		INVALIDATE
+	}
+
+	private static final int MAX_SEGMENTS = 16;
+
+	/**
+	 * A bounded map in access order, guarded by its own monitor.
+	 */
+	private class Segment extends LinkedHashMap<String, Optional<Employee>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		// incremented by each write, so that a lookup can tell whether
+		// a write happened while it was reading the repository
+		private long generation;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Optional<Employee>> eldest) {
+			if (size() <= capacity)
+				return false;
+			evictions.increment();
+			return true;
+		}
+	}
+
+	private final EmployeeRepository delegate;
+
+	private final WritePolicy writePolicy;
+
+	private final Segment[] segments;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param delegate
+	 *            the cached repository
+	 * @param maxSize
+	 *            the maximum number of cached ids
+	 * @param writePolicy
+	 */
+	public CachingEmployeeRepository(EmployeeRepository delegate, int maxSize,
+			WritePolicy writePolicy) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Invalid cache size " + maxSize);
+		this.delegate = delegate;
+		this.writePolicy = writePolicy;
+		int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize));
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			// the capacities add up to maxSize
+			segments[i] = new Segment(maxSize / count + (i < maxSize % count ? 1 : 0));
+		}
+	}
+
+	@Override
+	public List<Employee> findAll() {
+		return delegate.findAll();
+	}
+
+	@Override
+	public Stream<Employee> streamAll() {
+		return delegate.streamAll();
+	}
+
+	@Override
+	public EmployeePage findPage(String cursor, int limit) {
+		return delegate.findPage(cursor, limit);
+	}
+
+	@Override
+	public long count() {
+		return delegate.count();
+	}
+
+	@Override
+	public EmployeeStatistics statistics() {
+		return delegate.statistics();
+	}
+
+	@Override
+	public List<Employee> findBySalaryRange(int minSalary, int maxSalary) {
+		return delegate.findBySalaryRange(minSalary, maxSalary);
+	}
+
+	@Override
+	public List<Employee> searchByName(String query, boolean prefix, int limit) {
+		return delegate.searchByName(query, prefix, limit);
+	}
+
+	@Override
+	public Optional<Employee> findOne(String id) {
+		Segment segment = segmentOf(id);
+		Optional<Employee> cached;
+		long generation;
+		synchronized (segment) {
+			cached = segment.get(id);
+			generation = segment.generation;
+		}
+		if (cached != null) {
+			hits.increment();
+			return cached;
+		}
+		misses.increment();
+		Optional<Employee> found = delegate.findOne(id);
+		cacheIfUnchanged(segment, generation, id, found);
+		return found;
+	}
+
+	/**
+	 * The ids that are not cached are found with a single call to the
+	 * repository.
+	 */
+	@Override
+	public List<Employee> findAllById(Collection<String> ids) {
+		List<Optional<Employee>> results = new ArrayList<>(ids.size());
+		List<String> missing = new ArrayList<>();
+		long[] generations = generations();
+		for (String id : ids) {
+			Segment segment = segmentOf(id);
+			Optional<Employee> cached;
+			synchronized (segment) {
+				cached = segment.get(id);
+			}
+			if (cached != null) {
+				hits.increment();
+			} else {
+				misses.increment();
+				missing.add(id);
+			}
+			results.add(cached);
+		}
+		if (!missing.isEmpty()) {
+			Map<String, Employee> found = new LinkedHashMap<>();
+			for (Employee employee : delegate.findAllById(missing)) {
+				found.put(employee.getEmployeeId(), employee);
+			}
+			int index = 0;
+			for (String id : ids) {
+				if (results.get(index) == null) {
+					Optional<Employee> result = Optional.ofNullable(found.get(id));
+					results.set(index, result);
+					int segment = segmentIndex(id);
+					cacheIfUnchanged(segments[segment], generations[segment], id, result);
+				}
+				index++;
+			}
+		}
+		List<Employee> employees = new ArrayList<>(results.size());
+		for (Optional<Employee> result : results) {
+			result.ifPresent(employees::add);
+		}
+		return employees;
+	}
+
+	@Override
+	public Employee save(Employee employee) {
+		return saveAll(Collections.singletonList(employee)).get(0);
+	}
+
+	@Override
+	public List<Employee> saveAll(List<Employee> employees) {
+		List<String> ids = new ArrayList<>(employees.size());
+		for (Employee employee : employees) {
+			// generated ids are known only after saving
+			if (employee.getEmployeeId() != null)
+				ids.add(employee.getEmployeeId());
+		}
+		long[] generations = beginWrite(ids);
+		Map<String, Optional<Employee>> written = new LinkedHashMap<>();
+		try {
+			List<Employee> saved = delegate.saveAll(employees);
+			for (Employee employee : saved) {
+				written.put(employee.getEmployeeId(), Optional.of(employee));
+			}
+			return saved;
+		} finally {
+			endWrite(generations, ids, written);
+		}
+	}
+
+	@Override
+	public Employee deleteById(String id) {
+		return deleteAll(Collections.singletonList(id)).get(0);
+	}
+
+	@Override
+	public List<Employee> deleteAll(List<String> ids) {
+		long[] generations = beginWrite(ids);
+		Map<String, Optional<Employee>> written = new LinkedHashMap<>();
+		try {
+			List<Employee> deleted = delegate.deleteAll(ids);
+			for (String id : ids) {
+				written.put(id, Optional.empty());
+			}
+			return deleted;
+		} finally {
+			endWrite(generations, ids, written);
+		}
+	}
+
+	/**
+	 * Closes the cached repository, if it can be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (delegate instanceof Closeable)
+			((Closeable) delegate).close();
+	}
+
+	/**
+	 * @return the lookups of an id found in the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the lookups of an id that had to be read from the repository
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the ids removed from the cache to make room for others
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the size, the hits, the misses and the evictions of the cache
+	 */
+	public String describe() {
+		long hits = getHits();
+		long misses = getMisses();
+		return "cached ids: " + size()
+			+ ", hits: " + hits
+			+ ", misses: " + misses
+			+ String.format(Locale.ROOT, ", hit ratio: %.1f%%",
+				hits + misses > 0 ? hits * 100.0 / (hits + misses) : 0.0)
+			+ ", evictions: " + getEvictions();
+	}
+
+	/**
+	 * @return the number of cached ids, including the missing ones
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Removes the ids that are going to be written, so that they are not read
+	 * from the cache while they are being written.
+	 *
+	 * @return the generations of the segments after the removal
+	 */
+	private long[] beginWrite(Collection<String> ids) {
+		for (String id : ids) {
+			Segment segment = segmentOf(id);
+			synchronized (segment) {
+				segment.generation++;
+				segment.remove(id);
+			}
+		}
+		return generations();
+	}
+
+	/**
+	 * Caches the written employees, or removes them, according to the policy;
+	 * if another write to the same segment happened in the meantime it is not
+	 * known which one was the last one, so they are removed.
+	 *
+	 * @param ids
+	 *            the ids passed to {@link #beginWrite(Collection)}
+	 * @param written
+	 *            the employees as written, empty if the write failed
+	 */
+	private void endWrite(long[] generations, List<String> ids,
+			Map<String, Optional<Employee>> written) {
+		Map<Integer, List<String>> idsBySegment = new HashMap<>();
+		for (String id : ids) {
+			idsBySegment.computeIfAbsent(segmentIndex(id), key -> new ArrayList<>()).add(id);
+		}
+		for (String id : written.keySet()) {
+			idsBySegment.computeIfAbsent(segmentIndex(id), key -> new ArrayList<>()).add(id);
+		}
+		idsBySegment.forEach((index, segmentIds) -> {
+			Segment segment = segments[index];
+			synchronized (segment) {
+				boolean unchanged = segment.generation == generations[index];
+				for (String id : segmentIds) {
+					Optional<Employee> employee = written.get(id);
+					if (unchanged && employee != null && writePolicy == WritePolicy.WRITE_THROUGH)
+						segment.put(id, employee);
+					else
+						segment.remove(id);
+				}
+				// lookups that started before cannot cache what they read
+				segment.generation++;
+			}
+		});
+	}
+
+	private long[] generations() {
+		long[] generations = new long[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				generations[i] = segments[i].generation;
+			}
+		}
+		return generations;
+	}
+
+	private void cacheIfUnchanged(Segment segment, long generation, String id,
+			Optional<Employee> employee) {
+		synchronized (segment) {
+			if (segment.generation == generation)
+				segment.put(id, employee);
+		}
+	}
+
+	private Segment segmentOf(String id) {
+		return segments[segmentIndex(id)];
+	}
+
+	private int segmentIndex(String id) {
+		int hash = id.hashCode();
+		// spread the higher bits, like HashMap does
+		return (hash ^ (hash >>> 16)) & (segments.length - 1);
+	}
+}
@@ -0,0 +1,531 @@
+package com.examples.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
+
+/**
+ * An in-memory repository that can be safely used concurrently without any
+ * external locking.
+ *
+ * Generated ids are never reused, not even after a deletion, and
+ * {@link #findAll()} returns the employees in insertion order (replacing an
+ * employee does not change its position), like a LinkedHashMap would do.
+ *
+ * The employees are also indexed by salary, so that
+ * {@link #findBySalaryRange(int, int)} visits only the employees in the range,
+ * and by the tokens of their names, so that
+ * {@link #searchByName(String, boolean, int)} visits only the employees with a
+ * matching token; the salary statistics are kept up to date, so that
+ * {@link #count()} and {@link #statistics()} do not visit the employees.
+ */
+public class ConcurrentInMemoryEmployeeRepository implements EmployeeRepository {
+
+	static final String ID_PREFIX = "ID";
+
+	/**
+	 * An employee together with its insertion position.
+	 */
+	private static class Entry {
+		private final long position;
+		private volatile Employee employee;
+
+		Entry(long position, Employee employee) {
+			this.position = position;
+			this.employee = employee;
+		}
+	}
+
+	/**
+	 * An employee together with its insertion position, as read at some point,
+	 * for merging the results of many repositories that share the positions.
+	 */
+	static final class Positioned {
+		final long position;
+		final Employee employee;
+
+		Positioned(long position, Employee employee) {
+			this.position = position;
+			this.employee = employee;
+		}
+	}
+
+	/**
+	 * The key of an entry in the salary index; the position makes it unique and
+	 * orders the employees with the same salary.
+	 */
+	private static class SalaryKey implements Comparable<SalaryKey> {
+		private final int salary;
+		private final long position;
+
+		SalaryKey(int salary, long position) {
+			this.salary = salary;
+			this.position = position;
+		}
+
+		@Override
+		public int compareTo(SalaryKey other) {
+			int result = Integer.compare(salary, other.salary);
+			return result != 0 ? result : Long.compare(position, other.position);
+		}
+	}
+
+	private final ConcurrentMap<String, Entry> employees;
+
+	private final ConcurrentNavigableMap<Long, Entry> insertionOrder = new ConcurrentSkipListMap<>();
+
+	// updated, like the insertion order, while holding the lock of the
+	// map on the employee's id
+	private final ConcurrentNavigableMap<SalaryKey, Entry> salaryIndex =
+		new ConcurrentSkipListMap<>();
+
+	// the name index: the entries with a token, by insertion position, and
+	// the sorted tokens, for finding the ones with a prefix; a token is
+	// added and removed while holding the lock of the map on the token
+	private final ConcurrentMap<String, ConcurrentNavigableMap<Long, Entry>> postings =
+		new ConcurrentHashMap<>();
+
+	private final ConcurrentNavigableMap<String, Boolean> tokens = new ConcurrentSkipListMap<>();
+
+	private final SalaryStatistics statistics = new SalaryStatistics();
+
+	// the last number used for generating an id
+	private final AtomicLong idSequence;
+
+	private final AtomicLong positions;
+
+	public ConcurrentInMemoryEmployeeRepository() {
+		this(16, new AtomicLong(), new AtomicLong());
+		// initialize the "db" with some contents
+		initialEmployees().forEach(this::save);
+	}
+
+	private ConcurrentInMemoryEmployeeRepository(int expectedSize) {
+		this(expectedSize, new AtomicLong(), new AtomicLong());
+	}
+
+	private ConcurrentInMemoryEmployeeRepository(int expectedSize, AtomicLong idSequence,
+			AtomicLong positions) {
+		employees = new ConcurrentHashMap<>(expectedSize);
+		this.idSequence = idSequence;
+		this.positions = positions;
+	}
+
+	/**
+	 * A repository without the initial contents, e.g., to be filled from a file.
+	 */
+	static ConcurrentInMemoryEmployeeRepository empty() {
+		return empty(16);
+	}
+
+	/**
+	 * @param expectedSize
+	 *            the number of employees it will be filled with, to avoid
+	 *            resizing
+	 */
+	static ConcurrentInMemoryEmployeeRepository empty(int expectedSize) {
+		return new ConcurrentInMemoryEmployeeRepository(expectedSize);
+	}
+
+	/**
+	 * An empty repository that shares the generation of ids and of insertion
+	 * positions with other ones, e.g., the shards of a
+	 * {@link ShardedEmployeeRepository}, so that ids are unique and positions
+	 * are comparable across all of them.
+	 */
+	static ConcurrentInMemoryEmployeeRepository shard(AtomicLong idSequence,
+			AtomicLong positions) {
+		return new ConcurrentInMemoryEmployeeRepository(16, idSequence, positions);
+	}
+
+	/**
+	 * The initial contents of a new repository, without ids, so that they are
+	 * generated when saved.
+	 */
+	static List<Employee> initialEmployees() {
+		return Arrays.asList(
+			new Employee(null, "First Employee", 1000),
+			new Employee(null, "Second Employee", 2000),
+			new Employee(null, "Third Employee", 3000));
+	}
+
+	@Override
+	public List<Employee> findAll() {
+		return streamAll()
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * The stream is weakly consistent: it reflects the employees at some point
+	 * at or since its creation.
+	 */
+	@Override
+	public Stream<Employee> streamAll() {
+		return insertionOrder.values().stream()
+			.map(entry -> entry.employee);
+	}
+
+	@Override
+	public Optional<Employee> findOne(String id) {
+		return Optional.ofNullable(employees.get(id))
+			.map(entry -> entry.employee);
+	}
+
+	@Override
+	public long count() {
+		return statistics.count();
+	}
+
+	/**
+	 * The minimum and the maximum salaries are the first and the last ones in
+	 * the salary index.
+	 */
+	@Override
+	public EmployeeStatistics statistics() {
+		Map.Entry<SalaryKey, Entry> min = salaryIndex.firstEntry();
+		Map.Entry<SalaryKey, Entry> max = salaryIndex.lastEntry();
+		return statistics.statistics(
+			min != null ? min.getKey().salary : null,
+			max != null ? max.getKey().salary : null);
+	}
+
+	/**
+	 * Visits only the employees in the range, in the salary index; like
+	 * {@link #streamAll()}, the result is weakly consistent.
+	 */
+	@Override
+	public List<Employee> findBySalaryRange(int minSalary, int maxSalary) {
+		return findBySalaryRange(minSalary, maxSalary, (position, employee) -> employee);
+	}
+
+	/**
+	 * Like {@link #findBySalaryRange(int, int)}, with the positions.
+	 */
+	List<Positioned> findPositionedBySalaryRange(int minSalary, int maxSalary) {
+		return findBySalaryRange(minSalary, maxSalary, Positioned::new);
+	}
+
+	private <T> List<T> findBySalaryRange(int minSalary, int maxSalary,
+			BiFunction<Long, Employee, T> result) {
+		List<T> found = new ArrayList<>();
+		if (minSalary > maxSalary)
+			return found;
+		for (Entry entry : salaryIndex
+				.subMap(new SalaryKey(minSalary, Long.MIN_VALUE), true,
+					new SalaryKey(maxSalary, Long.MAX_VALUE), true)
+				.values()) {
+			Employee employee = entry.employee;
+			// the salary of an employee being replaced might be out of range
+			if (employee.getSalary() >= minSalary && employee.getSalary() <= maxSalary)
+				found.add(result.apply(entry.position, employee));
+		}
+		return found;
+	}
+
+	/**
+	 * Visits, in the name index, only the employees with a token matching the
+	 * longest token of the query, which are returned in alphabetical order of
+	 * such token and then in insertion order; like {@link #streamAll()}, the
+	 * result is weakly consistent.
+	 */
+	@Override
+	public List<Employee> searchByName(String query, boolean prefix, int limit) {
+		return searchByName(query, prefix, limit, (position, employee) -> employee);
+	}
+
+	/**
+	 * Like {@link #searchByName(String, boolean, int)}, with the positions.
+	 */
+	List<Positioned> searchPositionedByName(String query, boolean prefix, int limit) {
+		return searchByName(query, prefix, limit, Positioned::new);
+	}
+
+	private <T> List<T> searchByName(String query, boolean prefix, int limit,
+			BiFunction<Long, Employee, T> result) {
+		List<T> found = new ArrayList<>();
+		List<String> queryTokens = EmployeeNameTokens.tokens(query);
+		if (queryTokens.isEmpty())
+			return found;
+		String token = EmployeeNameTokens.mostSelective(queryTokens);
+		// tokens are made of letters and digits, so the ones with the
+		// prefix are less than the prefix followed by the greatest char
+		Iterator<String> matching = prefix ?
+			tokens.subMap(token, true, token + Character.MAX_VALUE, false).keySet().iterator() :
+			Collections.singleton(token).iterator();
+		// an employee can have many tokens with the same prefix
+		Set<Long> positions = new HashSet<>();
+		while (found.size() < limit && matching.hasNext()) {
+			ConcurrentNavigableMap<Long, Entry> posting = postings.get(matching.next());
+			if (posting == null)
+				continue;
+			Iterator<Entry> candidates = posting.values().iterator();
+			while (found.size() < limit && candidates.hasNext()) {
+				Entry entry = candidates.next();
+				Employee employee = entry.employee;
+				// also the name of an employee being replaced might not match
+				if (EmployeeNameTokens.matches(
+						EmployeeNameTokens.tokens(employee.getName()), queryTokens, prefix)
+						&& positions.add(entry.position))
+					found.add(result.apply(entry.position, employee));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * The cursor is the insertion position of the last employee of the previous
+	 * page, so pages are stable even in case of insertions and deletions, and
+	 * only the employees of the page are visited.
+	 */
+	@Override
+	public EmployeePage findPage(String cursor, int limit) {
+		long after = 0;
+		if (cursor != null) {
+			try {
+				after = Long.parseLong(cursor);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+			}
+		}
+		List<Employee> employeesInPage = new ArrayList<>();
+		long last = after;
+		Iterator<Entry> entries =
+			insertionOrder.tailMap(after, false).values().iterator();
+		while (employeesInPage.size() < limit && entries.hasNext()) {
+			Entry entry = entries.next();
+			employeesInPage.add(entry.employee);
+			last = entry.position;
+		}
+		return new EmployeePage(employeesInPage,
+			entries.hasNext() ? String.valueOf(last) : null);
+	}
+
+	/**
+	 * The employees after the given insertion position, in insertion order,
+	 * weakly consistent like {@link #streamAll()}.
+	 */
+	Iterator<Positioned> positionedAfter(long position) {
+		Iterator<Entry> entries = insertionOrder.tailMap(position, false).values().iterator();
+		return new Iterator<Positioned>() {
+			@Override
+			public boolean hasNext() {
+				return entries.hasNext();
+			}
+
+			@Override
+			public Positioned next() {
+				Entry entry = entries.next();
+				return new Positioned(entry.position, entry.employee);
+			}
+		};
+	}
+
+	/**
+	 * If the passed employee has no id, then it is generated automatically.
+	 *
+	 * @param employee
+	 * @return the saved employee
+	 */
+	@Override
+	public Employee save(Employee employee) {
+		String id = employee.getEmployeeId();
+		if (id == null) {
+			// another thread might have used the generated id explicitly
+			do {
+				employee.setEmployeeId(generateId());
+			} while (!insert(employee));
+			return employee;
+		}
+		advanceIdSequence(id);
+		employees.compute(id, (key, existing) -> {
+			if (existing == null)
+				return newEntry(employee);
+			Employee previous = existing.employee;
+			existing.employee = employee;
+			if (previous.getSalary() != employee.getSalary()) {
+				salaryIndex.put(salaryKey(existing), existing);
+				salaryIndex.remove(new SalaryKey(previous.getSalary(), existing.position));
+				statistics.add(employee.getSalary());
+				statistics.remove(previous.getSalary());
+			}
+			if (!Objects.equals(previous.getName(), employee.getName())) {
+				List<String> tokens = EmployeeNameTokens.tokens(employee.getName());
+				indexName(existing, tokens);
+				for (String token : EmployeeNameTokens.tokens(previous.getName())) {
+					if (!tokens.contains(token))
+						unindexName(existing, token);
+				}
+			}
+			return existing;
+		});
+		return employee;
+	}
+
+	@Override
+	public Employee deleteById(String id) {
+		Entry[] removed = new Entry[1];
+		employees.computeIfPresent(id, (key, existing) -> {
+			insertionOrder.remove(existing.position);
+			salaryIndex.remove(salaryKey(existing));
+			statistics.remove(existing.employee.getSalary());
+			for (String token : EmployeeNameTokens.tokens(existing.employee.getName())) {
+				unindexName(existing, token);
+			}
+			removed[0] = existing;
+			return null;
+		});
+		return removed[0] != null ? removed[0].employee : null;
+	}
+
+	/**
+	 * Adds an employee with the given insertion position, while filling a new
+	 * repository, possibly from many threads, before it is used; once it is
+	 * filled {@link #loaded(long, long)} must be called.
+	 *
+	 * @return false if there is already an employee with the same id
+	 */
+	boolean load(long position, Employee employee) {
+		Entry entry = new Entry(position, employee);
+		if (employees.putIfAbsent(employee.getEmployeeId(), entry) != null)
+			return false;
+		insertionOrder.put(position, entry);
+		salaryIndex.put(salaryKey(entry), entry);
+		indexName(entry, EmployeeNameTokens.tokens(employee.getName()));
+		statistics.add(employee.getSalary());
+		advanceIdSequence(employee.getEmployeeId());
+		return true;
+	}
+
+	/**
+	 * Completes the filling with {@link #load(long, Employee)}.
+	 *
+	 * @param lastPosition
+	 *            the greatest position that was loaded
+	 * @param idSequence
+	 *            the last number used for generating an id
+	 */
+	void loaded(long lastPosition, long idSequence) {
+		positions.accumulateAndGet(lastPosition, Math::max);
+		advanceIdSequence(idSequence);
+	}
+
+	/**
+	 * Generates a new id, which might have already been used explicitly.
+	 */
+	String generateId() {
+		return ID_PREFIX + idSequence.incrementAndGet();
+	}
+
+	/**
+	 * The last number used for generating an id.
+	 */
+	long idSequence() {
+		return idSequence.get();
+	}
+
+	/**
+	 * Ids will be generated with a number greater than the given one.
+	 */
+	void advanceIdSequence(long number) {
+		idSequence.accumulateAndGet(number, Math::max);
+	}
+
+	/**
+	 * Saves the employee, which must have an id, only if there is no employee
+	 * with that id.
+	 *
+	 * @return whether it was saved
+	 */
+	boolean insert(Employee employee) {
+		boolean[] inserted = new boolean[1];
+		employees.computeIfAbsent(employee.getEmployeeId(), key -> {
+			inserted[0] = true;
+			return newEntry(employee);
+		});
+		return inserted[0];
+	}
+
+	/**
+	 * Must be called while holding the lock of the map on the employee's id, so
+	 * that a concurrent deletion cannot leave the entry in the insertion order,
+	 * in the indexes or in the statistics.
+	 */
+	private Entry newEntry(Employee employee) {
+		Entry entry = new Entry(positions.incrementAndGet(), employee);
+		insertionOrder.put(entry.position, entry);
+		salaryIndex.put(salaryKey(entry), entry);
+		indexName(entry, EmployeeNameTokens.tokens(employee.getName()));
+		statistics.add(employee.getSalary());
+		return entry;
+	}
+
+	private void indexName(Entry entry, List<String> nameTokens) {
+		for (String token : nameTokens) {
+			postings.compute(token, (key, posting) -> {
+				if (posting == null) {
+					posting = new ConcurrentSkipListMap<>();
+					tokens.put(key, Boolean.TRUE);
+				}
+				posting.put(entry.position, entry);
+				return posting;
+			});
+		}
+	}
+
+	private void unindexName(Entry entry, String token) {
+		postings.computeIfPresent(token, (key, posting) -> {
+			posting.remove(entry.position);
+			if (!posting.isEmpty())
+				return posting;
+			tokens.remove(key);
+			return null;
+		});
+	}
+
+	private static SalaryKey salaryKey(Entry entry) {
+		return new SalaryKey(entry.employee.getSalary(), entry.position);
+	}
+
+	/**
+	 * An explicit id that looks like a generated one moves the sequence forward,
+	 * so that it won't be generated later.
+	 */
+	private void advanceIdSequence(String id) {
+		advanceIdSequence(generatedIdNumber(id));
+	}
+
+	/**
+	 * @return the number of an id that looks like a generated one, -1 for other
+	 *         ids
+	 */
+	static long generatedIdNumber(String id) {
+		if (!id.startsWith(ID_PREFIX))
+			return -1;
+		String number = id.substring(ID_PREFIX.length());
+		if (number.isEmpty() || number.length() > 18)
+			return -1;
+		for (int i = 0; i < number.length(); i++) {
+			if (!Character.isDigit(number.charAt(i)))
+				return -1;
+		}
+		return Long.parseLong(number);
+	}
+}
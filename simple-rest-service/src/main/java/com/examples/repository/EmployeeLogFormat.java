@@ -0,0 +1,75 @@
+package com.examples.repository;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.examples.model.Employee;
+
+/**
+ * The binary encoding of the records of the log of
+ * {@link FileEmployeeRepository}, with {@link DataOutput} and
+ * {@link DataInput}.
+ *
+ * A record of the log is the length of its body, the CRC32 of its body and the
+ * body: the type of the record, {@link #SAVE} followed by an employee or
+ * {@link #DELETE} followed by an id.
+ *
+ * An employee is its id, whether it has a name, the name, if any, and the
+ * salary; a string is its number of chars followed by chunks in modified
+ * UTF-8, each of at most {@value #CHUNK_SIZE} chars, so that any string can be
+ * encoded.
+ */
+final class EmployeeLogFormat {
+
+	static final byte SAVE = 1;
+
+	static final byte DELETE = 2;
+
+	/**
+	 * The length and the checksum preceding the body of a record.
+	 */
+	static final int RECORD_HEADER_SIZE = 8;
+
+	// a char takes at most 3 bytes, and writeUTF writes at most 65535 bytes
+	private static final int CHUNK_SIZE = 65535 / 3;
+
+	private EmployeeLogFormat() {
+		// only static methods
+	}
+
+	static void writeEmployee(DataOutput out, Employee employee) throws IOException {
+		writeString(out, employee.getEmployeeId());
+		String name = employee.getName();
+		out.writeBoolean(name != null);
+		if (name != null)
+			writeString(out, name);
+		out.writeInt(employee.getSalary());
+	}
+
+	static Employee readEmployee(DataInput in) throws IOException {
+		String id = readString(in);
+		String name = in.readBoolean() ? readString(in) : null;
+		return new Employee(id, name, in.readInt());
+	}
+
+	static void writeString(DataOutput out, String value) throws IOException {
+		out.writeInt(value.length());
+		for (int start = 0; start < value.length(); start += CHUNK_SIZE) {
+			out.writeUTF(value.substring(start, Math.min(start + CHUNK_SIZE, value.length())));
+		}
+	}
+
+	static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			throw new IOException("Invalid string length " + length);
+		if (length <= CHUNK_SIZE)
+			return length == 0 ? "" : in.readUTF();
+		StringBuilder builder = new StringBuilder(length);
+		while (builder.length() < length) {
+			builder.append(in.readUTF());
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,84 @@
+package com.examples.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How names are split in tokens for searching them: the sequences of letters
+ * and digits, in lower case; e.g., "Mary-Ann O'Brien" has the tokens "mary",
+ * "ann", "o" and "brien".
+ */
+final class EmployeeNameTokens {
+
+	private EmployeeNameTokens() {
+		// only static methods
+	}
+
+	/**
+	 * @param text
+	 *            can be null
+	 * @return the distinct tokens, in the order they appear
+	 */
+	static List<String> tokens(String text) {
+		List<String> tokens = new ArrayList<>(2);
+		if (text == null)
+			return tokens;
+		String lowerCase = text.toLowerCase(Locale.ROOT);
+		int start = -1;
+		int i = 0;
+		while (i <= lowerCase.length()) {
+			int codePoint = i < lowerCase.length() ? lowerCase.codePointAt(i) : ' ';
+			if (Character.isLetterOrDigit(codePoint)) {
+				if (start < 0)
+					start = i;
+			} else if (start >= 0) {
+				String token = lowerCase.substring(start, i);
+				if (!tokens.contains(token))
+					tokens.add(token);
+				start = -1;
+			}
+			i += Character.charCount(codePoint);
+		}
+		return tokens;
+	}
+
+	/**
+	 * @param nameTokens
+	 *            the tokens of a name
+	 * @param queryTokens
+	 *            the tokens of a search query
+	 * @param prefix
+	 *            whether a query token matches a name token that starts with
+	 *            it, or only an equal one
+	 * @return whether each query token matches a token of the name
+	 */
+	static boolean matches(List<String> nameTokens, List<String> queryTokens, boolean prefix) {
+		for (String queryToken : queryTokens) {
+			if (!matches(nameTokens, queryToken, prefix))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The query token that most likely matches the fewest names, that is, the
+	 * longest one.
+	 */
+	static String mostSelective(List<String> queryTokens) {
+		String selective = queryTokens.get(0);
+		for (String queryToken : queryTokens) {
+			if (queryToken.length() > selective.length())
+				selective = queryToken;
+		}
+		return selective;
+	}
+
+	private static boolean matches(List<String> nameTokens, String queryToken, boolean prefix) {
+		for (String nameToken : nameTokens) {
+			if (prefix ? nameToken.startsWith(queryToken) : nameToken.equals(queryToken))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,31 @@
+package com.examples.repository;
+
+import java.util.List;
+
+import com.examples.model.Employee;
+
+/**
+ * A page of employees, together with the cursor for requesting the next page.
+ */
+public class EmployeePage {
+
+	private final List<Employee> employees;
+
+	private final String nextCursor;
+
+	public EmployeePage(List<Employee> employees, String nextCursor) {
+		this.employees = employees;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<Employee> getEmployees() {
+		return employees;
+	}
+
+	/**
+	 * @return the cursor for the next page, or null if this is the last page
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
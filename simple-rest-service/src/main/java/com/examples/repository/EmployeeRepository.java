@@ -1,9 +1,17 @@
 package com.examples.repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IntSummaryStatistics;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
 
 public interface EmployeeRepository {
 
@@ -14,4 +22,185 @@ public interface EmployeeRepository {
 	Employee save(Employee employee);
 
 	Employee deleteById(String id);
-}
\ No newline at end of file
+
+	/**
+	 * Finds all the employees with the given ids; this default implementation
+	 * finds them one by one, implementations can do that in a single batch.
+	 * 
+	 * @param ids
+	 * @return the found employees, in the same order of the ids; ids that are
+	 *         not found are skipped
+	 */
+	default List<Employee> findAllById(Collection<String> ids) {
+		return ids.stream()
+			.map(this::findOne)
+			.filter(Optional::isPresent)
+			.map(Optional::get)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Saves all the employees, like {@link #save(Employee)}; this default
+	 * implementation saves them one by one, implementations can do that in a
+	 * single batch.
+	 * 
+	 * @param employees
+	 * @return the saved employees, in the same order
+	 */
+	default List<Employee> saveAll(List<Employee> employees) {
+		return employees.stream()
+			.map(this::save)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Deletes all the employees with the given ids, like
+	 * {@link #deleteById(String)}; this default implementation deletes them one
+	 * by one, implementations can do that in a single batch.
+	 * 
+	 * @param ids
+	 * @return the deleted employees, in the same order of the ids, with null for
+	 *         the ids that were not found
+	 */
+	default List<Employee> deleteAll(List<String> ids) {
+		return ids.stream()
+			.map(this::deleteById)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns the employees in the same order of {@link #findAll()}; this default
+	 * implementation simply streams the result of {@link #findAll()},
+	 * implementations should avoid copying all the employees.
+	 * 
+	 * The returned stream should be closed.
+	 * 
+	 * @return
+	 */
+	default Stream<Employee> streamAll() {
+		return findAll().stream();
+	}
+
+	/**
+	 * Returns the number of employees; this default implementation counts all
+	 * the employees, implementations should keep a counter.
+	 * 
+	 * @return
+	 */
+	default long count() {
+		try (Stream<Employee> employees = streamAll()) {
+			return employees.count();
+		}
+	}
+
+	/**
+	 * Returns the statistics of the salaries of all the employees; this default
+	 * implementation scans all the employees, implementations should keep them
+	 * up to date while employees are saved and deleted.
+	 * 
+	 * @return
+	 */
+	default EmployeeStatistics statistics() {
+		SalaryStatistics statistics = new SalaryStatistics();
+		IntSummaryStatistics summary = new IntSummaryStatistics();
+		try (Stream<Employee> employees = streamAll()) {
+			employees.forEach(employee -> {
+				statistics.add(employee.getSalary());
+				summary.accept(employee.getSalary());
+			});
+		}
+		return statistics.statistics(summary.getMin(), summary.getMax());
+	}
+
+	/**
+	 * Returns the employees with a salary between the given bounds, in ascending
+	 * order of salary and, for the same salary, in the same order of
+	 * {@link #findAll()}.
+	 * 
+	 * This default implementation scans and sorts all the employees;
+	 * implementations should use an index, so that only the employees in the
+	 * range are visited.
+	 * 
+	 * @param minSalary
+	 *            inclusive
+	 * @param maxSalary
+	 *            inclusive
+	 * @return
+	 */
+	default List<Employee> findBySalaryRange(int minSalary, int maxSalary) {
+		try (Stream<Employee> employees = streamAll()) {
+			return employees
+				.filter(employee -> employee.getSalary() >= minSalary
+					&& employee.getSalary() <= maxSalary)
+				.sorted(Comparator.comparingInt(Employee::getSalary))
+				.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Returns at most limit employees whose name matches the query: the name and
+	 * the query are split in tokens, the sequences of letters and digits
+	 * ignoring the case, and each token of the query must be equal to a token of
+	 * the name, or, with prefix, the beginning of a token of the name, e.g.,
+	 * "sec emp" matches "Second Employee".
+	 * 
+	 * This default implementation scans all the employees, in the same order of
+	 * {@link #findAll()}; implementations should use an index, and can return
+	 * the matching employees in a different order.
+	 * 
+	 * @param query
+	 * @param prefix
+	 * @param limit
+	 *            the maximum number of employees, must be positive
+	 * @return no employees if the query has no tokens
+	 */
+	default List<Employee> searchByName(String query, boolean prefix, int limit) {
+		List<String> queryTokens = EmployeeNameTokens.tokens(query);
+		if (queryTokens.isEmpty())
+			return new ArrayList<>();
+		try (Stream<Employee> employees = streamAll()) {
+			return employees
+				.filter(employee -> EmployeeNameTokens.matches(
+					EmployeeNameTokens.tokens(employee.getName()), queryTokens, prefix))
+				.limit(limit)
+				.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Returns at most limit employees, in the same order of {@link #findAll()},
+	 * following the position denoted by the cursor.
+	 * 
+	 * This default implementation uses the position in {@link #findAll()} as the
+	 * cursor, so it copies all the employees and pages are not stable in case of
+	 * deletions; implementations should provide a better one.
+	 * 
+	 * @param cursor
+	 *            the cursor returned with the previous page, or null for the first
+	 *            page
+	 * @param limit
+	 *            the maximum number of employees, must be positive
+	 * @return the page
+	 * @throws IllegalArgumentException
+	 *             if the cursor is not valid
+	 */
+	default EmployeePage findPage(String cursor, int limit) {
+		List<Employee> all = findAll();
+		int from = 0;
+		if (cursor != null) {
+			try {
+				from = Integer.parseInt(cursor);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+			}
+			if (from < 0)
+				throw new IllegalArgumentException("Invalid cursor " + cursor);
+		}
+		int to = (int) Math.min((long) from + limit, all.size());
+		if (from >= to)
+			return new EmployeePage(Collections.emptyList(), null);
+		return new EmployeePage(
+			all.subList(from, to),
+			to < all.size() ? String.valueOf(to) : null);
+	}
+}
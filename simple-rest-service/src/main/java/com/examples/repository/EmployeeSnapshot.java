@@ -0,0 +1,341 @@
+package com.examples.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import com.examples.model.Employee;
+
+/**
+ * A compact binary snapshot of all the employees of a repository, which can be
+ * loaded quickly into a {@link ConcurrentInMemoryEmployeeRepository}: the file
+ * is memory-mapped and its segments are decoded in parallel, directly into the
+ * repository.
+ *
+ * The file starts with a header of {@value #HEADER_SIZE} bytes: the magic
+ * number "EMPS", the version, the last number used for generating an id, the
+ * number of employees, the number of segments, the CRC32 of the index and the
+ * position of the index; the index, at the end of the file, has an entry for
+ * each segment: its position, its length, its number of employees and its
+ * CRC32.
+ *
+ * A segment holds at most {@value #SEGMENT_EMPLOYEES} employees, in order, each
+ * one encoded as its id, its name and its salary, a zig-zag varint. A string is
+ * a varint, 0 for null or ((length &lt;&lt; 1) | wide) + 1, followed by the
+ * chars, one byte each (ISO-8859-1) or, if wide, two bytes each (UTF-16), so
+ * that any string is encoded without loss.
+ */
+public final class EmployeeSnapshot {
+
+	private static final int MAGIC = 0x454D5053;
+
+	// 1 was the stream format used by the first version of FileEmployeeRepository
+	private static final int VERSION = 2;
+
+	static final int HEADER_SIZE = 40;
+
+	private static final int INDEX_ENTRY_SIZE = 20;
+
+	static final int SEGMENT_EMPLOYEES = 65536;
+
+	private EmployeeSnapshot() {
+		// only static methods
+	}
+
+	/**
+	 * Writes the employees in a new file, or replaces an existing one, and
+	 * forces it to disk.
+	 *
+	 * @param file
+	 * @param employees
+	 *            they must have distinct ids
+	 * @throws IOException
+	 */
+	public static void write(Path file, Collection<Employee> employees) throws IOException {
+		write(file, 0, employees);
+	}
+
+	/**
+	 * @param idSequence
+	 *            the last number used for generating an id, so that ids of
+	 *            deleted employees are not generated again after loading
+	 */
+	static void write(Path file, long idSequence, Collection<Employee> employees)
+			throws IOException {
+		int segments = (employees.size() + SEGMENT_EMPLOYEES - 1) / SEGMENT_EMPLOYEES;
+		ByteBuffer index = ByteBuffer.allocate(segments * INDEX_ENTRY_SIZE);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = HEADER_SIZE;
+			SegmentWriter segment = new SegmentWriter();
+			Iterator<Employee> iterator = employees.iterator();
+			for (int s = 0; s < segments; s++) {
+				segment.reset();
+				int count = 0;
+				while (count < SEGMENT_EMPLOYEES && iterator.hasNext()) {
+					segment.writeEmployee(iterator.next());
+					count++;
+				}
+				ByteBuffer bytes = segment.bytes();
+				int length = bytes.remaining();
+				index.putLong(position).putInt(length).putInt(count)
+					.putInt(crc(bytes.duplicate()));
+				writeFully(channel, bytes, position);
+				position += length;
+			}
+			index.flip();
+			int indexCrc = crc(index.duplicate());
+			long indexPosition = position;
+			writeFully(channel, index, indexPosition);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+				.putInt(MAGIC)
+				.putInt(VERSION)
+				.putLong(idSequence)
+				.putLong(employees.size())
+				.putInt(segments)
+				.putInt(indexCrc)
+				.putLong(indexPosition);
+			header.flip();
+			writeFully(channel, header, 0);
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Loads the employees in a new repository, decoding the segments in
+	 * parallel; the order of the employees is preserved.
+	 *
+	 * @param file
+	 * @return the repository with the employees of the snapshot
+	 * @throws IOException
+	 *             if the file cannot be read or it is not a valid snapshot
+	 */
+	public static ConcurrentInMemoryEmployeeRepository load(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_SIZE)
+				throw invalid(file, "too short");
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC)
+				throw invalid(file, "not a snapshot");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw invalid(file, "unsupported version " + version);
+			long idSequence = header.getLong();
+			long count = header.getLong();
+			int segments = header.getInt();
+			int indexCrc = header.getInt();
+			long indexPosition = header.getLong();
+			if (count < 0 || segments < 0 || indexPosition < HEADER_SIZE
+					|| indexPosition + (long) segments * INDEX_ENTRY_SIZE != size)
+				throw invalid(file, "invalid header");
+			ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexPosition,
+				(long) segments * INDEX_ENTRY_SIZE);
+			if (crc(index.duplicate()) != indexCrc)
+				throw invalid(file, "invalid checksum of the index");
+			// the insertion position of the first employee of each segment
+			long[] firstPositions = new long[segments];
+			long total = 0;
+			for (int s = 0; s < segments; s++) {
+				firstPositions[s] = total + 1;
+				total += index.getInt(s * INDEX_ENTRY_SIZE + 12);
+			}
+			if (total != count)
+				throw invalid(file, "invalid index");
+			ConcurrentInMemoryEmployeeRepository repository =
+				ConcurrentInMemoryEmployeeRepository.empty((int) Math.min(count, Integer.MAX_VALUE));
+			try {
+				IntStream.range(0, segments).parallel().forEach(s -> {
+					try {
+						loadSegment(file, channel, index, s, firstPositions[s], repository);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			repository.loaded(count, idSequence);
+			return repository;
+		}
+	}
+
+	private static void loadSegment(Path file, FileChannel channel, ByteBuffer index, int segment,
+			long firstPosition, ConcurrentInMemoryEmployeeRepository repository) throws IOException {
+		int entry = segment * INDEX_ENTRY_SIZE;
+		long position = index.getLong(entry);
+		int length = index.getInt(entry + 8);
+		int count = index.getInt(entry + 12);
+		if (position < HEADER_SIZE || length < 0 || position + length > channel.size())
+			throw invalid(file, "invalid segment " + segment);
+		ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		if (crc(bytes.duplicate()) != index.getInt(entry + 16))
+			throw invalid(file, "invalid checksum of segment " + segment);
+		SegmentReader reader = new SegmentReader(bytes);
+		try {
+			for (int i = 0; i < count; i++) {
+				Employee employee = reader.readEmployee();
+				if (!repository.load(firstPosition + i, employee))
+					throw invalid(file, "duplicate id " + employee.getEmployeeId());
+			}
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw invalid(file, "invalid segment " + segment);
+		}
+		if (bytes.hasRemaining())
+			throw invalid(file, "invalid segment " + segment);
+	}
+
+	private static IOException invalid(Path file, String reason) {
+		return new IOException("Invalid snapshot " + file + ": " + reason);
+	}
+
+	private static int crc(ByteBuffer bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer bytes, long position)
+			throws IOException {
+		while (bytes.hasRemaining()) {
+			position += channel.write(bytes, position);
+		}
+	}
+
+	/**
+	 * Encodes the employees of a segment in a growing buffer; also used for the
+	 * records of the {@link OffHeapEmployeeRepository}.
+	 */
+	static class SegmentWriter {
+
+		private byte[] buffer = new byte[1 << 16];
+
+		private int length;
+
+		void reset() {
+			length = 0;
+		}
+
+		ByteBuffer bytes() {
+			return ByteBuffer.wrap(buffer, 0, length);
+		}
+
+		void writeEmployee(Employee employee) {
+			writeString(employee.getEmployeeId());
+			writeString(employee.getName());
+			int salary = employee.getSalary();
+			writeVarint((salary << 1) ^ (salary >> 31));
+		}
+
+		private void writeString(String value) {
+			if (value == null) {
+				writeVarint(0);
+				return;
+			}
+			int chars = value.length();
+			boolean wide = false;
+			for (int i = 0; i < chars && !wide; i++) {
+				wide = value.charAt(i) > 0xFF;
+			}
+			writeVarint(((chars << 1) | (wide ? 1 : 0)) + 1);
+			ensureCapacity(wide ? chars * 2 : chars);
+			for (int i = 0; i < chars; i++) {
+				char c = value.charAt(i);
+				if (wide)
+					buffer[length++] = (byte) (c >>> 8);
+				buffer[length++] = (byte) c;
+			}
+		}
+
+		private void writeVarint(int value) {
+			ensureCapacity(5);
+			while ((value & ~0x7F) != 0) {
+				buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[length++] = (byte) value;
+		}
+
+		private void ensureCapacity(int bytes) {
+			if (length + bytes > buffer.length) {
+				byte[] larger = new byte[Math.max(buffer.length * 2, length + bytes)];
+				System.arraycopy(buffer, 0, larger, 0, length);
+				buffer = larger;
+			}
+		}
+	}
+
+	/**
+	 * Decodes the employees of a mapped segment, from the position of the
+	 * buffer.
+	 *
+	 * Malformed contents make it throw {@link BufferUnderflowException} or
+	 * {@link IllegalArgumentException}.
+	 */
+	static class SegmentReader {
+
+		private final ByteBuffer bytes;
+
+		private byte[] latin1 = new byte[64];
+
+		SegmentReader(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+
+		Employee readEmployee() {
+			String id = readString();
+			if (id == null)
+				throw new IllegalArgumentException("Missing id");
+			String name = readString();
+			int salary = readVarint();
+			return new Employee(id, name, (salary >>> 1) ^ -(salary & 1));
+		}
+
+		int position() {
+			return bytes.position();
+		}
+
+		String readString() {
+			int header = readVarint();
+			if (header == 0)
+				return null;
+			header--;
+			int chars = header >>> 1;
+			if ((header & 1) == 0) {
+				if (chars > bytes.remaining())
+					throw new BufferUnderflowException();
+				if (latin1.length < chars)
+					latin1 = new byte[Math.max(latin1.length * 2, chars)];
+				bytes.get(latin1, 0, chars);
+				return new String(latin1, 0, chars, StandardCharsets.ISO_8859_1);
+			}
+			if (chars > bytes.remaining() / 2)
+				throw new BufferUnderflowException();
+			char[] value = new char[chars];
+			for (int i = 0; i < chars; i++) {
+				value[i] = bytes.getChar();
+			}
+			return new String(value);
+		}
+
+		private int readVarint() {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				byte b = bytes.get();
+				value |= (b & 0x7F) << shift;
+				if (b >= 0)
+					return value;
+			}
+			throw new IllegalArgumentException("Malformed varint");
+		}
+	}
+}
@@ -0,0 +1,716 @@
+package com.examples.repository;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
+
+/**
+ * A repository that keeps the employees in memory, in a
+ * {@link ConcurrentInMemoryEmployeeRepository}, and makes them durable in a
+ * directory, so that they survive a restart.
+ *
+ * Every change is first appended to a write-ahead log and then applied in
+ * memory; when the repository is opened, the state is recovered by loading the
+ * latest snapshot and replaying the log written after it. A record that was
+ * only partially written at the end of the log, e.g., because of a crash, is
+ * discarded.
+ *
+ * When the current log segment exceeds a given size a snapshot of all the
+ * employees is written in the background and a new log segment is started;
+ * once the snapshot is durable, the older snapshots and log segments are
+ * deleted, so the time for recovering is bounded by the size of a snapshot and
+ * of a log segment.
+ *
+ * When a write returns depends on the {@link FsyncPolicy}; changes are visible
+ * to readers as soon as they are in memory, possibly before being durable.
+ * Writes are serialized, but only for appending to the log, not for waiting
+ * for the fsync, so concurrent writes share fsyncs.
+ *
+ * If the log cannot be written the repository stops accepting writes, since
+ * the state in memory and the state on disk could diverge.
+ *
+ * The files in the directory are "wal-N.log", the log segments, and
+ * "snapshot-N.dat", the snapshot of the employees written in the log segments
+ * before N (see {@link EmployeeLogFormat} and {@link EmployeeSnapshot} for
+ * their format).
+ */
+public class FileEmployeeRepository implements EmployeeRepository, Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(FileEmployeeRepository.class.getName());
+
+	/**
+	 * When a write returns with respect to the fsync of the log.
+	 */
+	public enum FsyncPolicy {
+		/**
+		 * After the log is forced to disk, possibly together with other
+		 * concurrent writes.
+		 */
+		ALWAYS,
+		/**
+		 * After the log is forced to disk by a background thread, periodically
+		 * (group commit), so that many writes share a single fsync.
+		 */
+		GROUP,
+		/**
+		 * After the log is written to the operating system, which decides when
+		 * to write it to disk: a crash of the process loses nothing, a crash of
+		 * the system can lose the latest writes.
+		 */
+		OS
+	}
+
+	/**
+	 * Gives access to its buffer, to avoid copying it.
+	 */
+	private static class Bytes extends ByteArrayOutputStream {
+		byte[] buffer() {
+			return buf;
+		}
+	}
+
+	private static final String LOG_PREFIX = "wal-";
+
+	private static final String LOG_SUFFIX = ".log";
+
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+	private static final String SNAPSHOT_SUFFIX = ".dat";
+
+	private final Path directory;
+
+	private final FsyncPolicy fsyncPolicy;
+
+	private final long snapshotThreshold;
+
+	private final ConcurrentInMemoryEmployeeRepository memory;
+
+	// serializes the writes, for appending to the log in the same order
+	// the changes are applied in memory
+	private final Lock writeLock = new ReentrantLock();
+
+	// serializes the fsyncs and the switch to a new log segment
+	private final Lock syncLock = new ReentrantLock();
+
+	private final Condition syncedCondition = syncLock.newCondition();
+
+	// reused for encoding the records, while holding the write lock
+	private final Bytes recordBytes = new Bytes();
+
+	private final DataOutputStream recordOutput = new DataOutputStream(recordBytes);
+
+	private final Bytes bodyBytes = new Bytes();
+
+	private final DataOutputStream bodyOutput = new DataOutputStream(bodyBytes);
+
+	private final ExecutorService snapshotExecutor;
+
+	private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+
+	private ScheduledExecutorService groupCommitExecutor;
+
+	private volatile FileChannel log;
+
+	private long logNumber;
+
+	// the bytes in the current log segment
+	private long logSize;
+
+	// the position, in all the bytes ever appended since opening, of the end of
+	// the last appended record, and of the last record that is durable
+	private volatile long appended;
+
+	private long synced;
+
+	private volatile IOException failure;
+
+	private volatile boolean closed;
+
+	/**
+	 * Opens the repository in the given directory, creating it if it does not
+	 * exist, recovering the employees saved in it; a new repository is
+	 * initialized with the same contents as the in-memory ones.
+	 *
+	 * @param directory
+	 * @param fsyncPolicy
+	 * @param groupCommitMillis
+	 *            the interval between fsyncs with {@link FsyncPolicy#GROUP}
+	 * @param snapshotThreshold
+	 *            the size in bytes of a log segment that triggers a snapshot
+	 * @throws IOException
+	 */
+	public FileEmployeeRepository(Path directory, FsyncPolicy fsyncPolicy, long groupCommitMillis,
+			long snapshotThreshold) throws IOException {
+		this.directory = directory;
+		this.fsyncPolicy = fsyncPolicy;
+		this.snapshotThreshold = snapshotThreshold;
+		Files.createDirectories(directory);
+		TreeMap<Long, Path> logs = new TreeMap<>();
+		TreeMap<Long, Path> snapshots = new TreeMap<>();
+		scan(logs, snapshots);
+		memory = snapshots.isEmpty() ? ConcurrentInMemoryEmployeeRepository.empty()
+			: EmployeeSnapshot.load(snapshots.lastEntry().getValue());
+		boolean isNew = recover(logs, snapshots);
+		openLog(logNumber);
+		snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> daemon(runnable,
+			"employee-snapshot"));
+		if (fsyncPolicy == FsyncPolicy.GROUP) {
+			groupCommitExecutor = Executors.newSingleThreadScheduledExecutor(
+				runnable -> daemon(runnable, "employee-group-commit"));
+			groupCommitExecutor.scheduleWithFixedDelay(this::groupCommit,
+				groupCommitMillis, groupCommitMillis, TimeUnit.MILLISECONDS);
+		}
+		if (isNew)
+			saveAll(ConcurrentInMemoryEmployeeRepository.initialEmployees());
+	}
+
+	@Override
+	public List<Employee> findAll() {
+		return memory.findAll();
+	}
+
+	@Override
+	public Stream<Employee> streamAll() {
+		return memory.streamAll();
+	}
+
+	@Override
+	public EmployeePage findPage(String cursor, int limit) {
+		return memory.findPage(cursor, limit);
+	}
+
+	@Override
+	public long count() {
+		return memory.count();
+	}
+
+	@Override
+	public EmployeeStatistics statistics() {
+		return memory.statistics();
+	}
+
+	@Override
+	public List<Employee> findBySalaryRange(int minSalary, int maxSalary) {
+		return memory.findBySalaryRange(minSalary, maxSalary);
+	}
+
+	@Override
+	public List<Employee> searchByName(String query, boolean prefix, int limit) {
+		return memory.searchByName(query, prefix, limit);
+	}
+
+	@Override
+	public Optional<Employee> findOne(String id) {
+		return memory.findOne(id);
+	}
+
+	/**
+	 * If the passed employee has no id, then it is generated automatically.
+	 *
+	 * @param employee
+	 * @return the saved employee
+	 * @throws UncheckedIOException
+	 *             if the log cannot be written
+	 */
+	@Override
+	public Employee save(Employee employee) {
+		return saveAll(Collections.singletonList(employee)).get(0);
+	}
+
+	/**
+	 * The employees are appended to the log with a single write, and become
+	 * durable together.
+	 */
+	@Override
+	public List<Employee> saveAll(List<Employee> employees) {
+		long position;
+		writeLock.lock();
+		try {
+			checkWritable();
+			recordBytes.reset();
+			for (Employee employee : employees) {
+				if (employee.getEmployeeId() == null)
+					employee.setEmployeeId(newId());
+				appendRecord(EmployeeLogFormat.SAVE, employee, null);
+			}
+			position = appendToLog();
+			for (Employee employee : employees) {
+				memory.save(employee);
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		awaitDurable(position);
+		return employees;
+	}
+
+	@Override
+	public Employee deleteById(String id) {
+		return deleteAll(Collections.singletonList(id)).get(0);
+	}
+
+	/**
+	 * Only the employees that exist are appended to the log, with a single
+	 * write, and become durable together.
+	 */
+	@Override
+	public List<Employee> deleteAll(List<String> ids) {
+		List<Employee> deleted = new ArrayList<>(ids.size());
+		long position;
+		writeLock.lock();
+		try {
+			checkWritable();
+			recordBytes.reset();
+			// the same id could be repeated
+			List<String> toDelete = new ArrayList<>();
+			for (String id : ids) {
+				if (memory.findOne(id).isPresent() && !toDelete.contains(id)) {
+					appendRecord(EmployeeLogFormat.DELETE, null, id);
+					toDelete.add(id);
+				}
+			}
+			position = toDelete.isEmpty() ? 0 : appendToLog();
+			for (String id : ids) {
+				deleted.add(memory.deleteById(id));
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		awaitDurable(position);
+		return deleted;
+	}
+
+	/**
+	 * Writes a snapshot of all the employees and deletes the log segments and
+	 * the snapshots it makes useless; this is done automatically in the
+	 * background when the current log segment exceeds the threshold.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void snapshot() throws IOException {
+		List<Employee> employees;
+		long idSequence;
+		long number;
+		writeLock.lock();
+		try {
+			checkWritable();
+			// a consistent view: the employees contain all the changes
+			// in the previous log segments, and none of the next one
+			employees = memory.findAll();
+			idSequence = memory.idSequence();
+			number = logNumber + 1;
+			switchLog(number);
+		} finally {
+			writeLock.unlock();
+		}
+		writeSnapshot(number, idSequence, employees);
+		for (Path file : files()) {
+			Long fileNumber = number(file, LOG_PREFIX, LOG_SUFFIX);
+			if (fileNumber == null)
+				fileNumber = number(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+			if (fileNumber != null && fileNumber < number)
+				Files.delete(file);
+		}
+		LOGGER.fine(() -> "Snapshot " + number + " of " + employees.size() + " employees");
+	}
+
+	/**
+	 * Makes all the writes durable and closes the log; the repository cannot be
+	 * written anymore.
+	 */
+	@Override
+	public void close() throws IOException {
+		writeLock.lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+		} finally {
+			writeLock.unlock();
+		}
+		if (groupCommitExecutor != null)
+			groupCommitExecutor.shutdown();
+		snapshotExecutor.shutdown();
+		try {
+			snapshotExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		syncLock.lock();
+		try {
+			if (failure == null)
+				sync();
+			log.close();
+			syncedCondition.signalAll();
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding the write lock.
+	 */
+	private String newId() {
+		String id;
+		// an explicit id could have been used
+		do {
+			id = memory.generateId();
+		} while (memory.findOne(id).isPresent());
+		return id;
+	}
+
+	/**
+	 * Encodes a record in {@link #recordBytes}, preceded by its length and
+	 * checksum.
+	 */
+	private void appendRecord(byte type, Employee employee, String id) {
+		try {
+			bodyBytes.reset();
+			bodyOutput.writeByte(type);
+			if (employee != null)
+				EmployeeLogFormat.writeEmployee(bodyOutput, employee);
+			else
+				EmployeeLogFormat.writeString(bodyOutput, id);
+			CRC32 crc = new CRC32();
+			crc.update(bodyBytes.buffer(), 0, bodyBytes.size());
+			recordOutput.writeInt(bodyBytes.size());
+			recordOutput.writeInt((int) crc.getValue());
+			recordOutput.write(bodyBytes.buffer(), 0, bodyBytes.size());
+		} catch (IOException e) {
+			// cannot happen with a ByteArrayOutputStream
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Appends the encoded records to the log, while holding the write lock.
+	 *
+	 * @return the position of the end of the records
+	 */
+	private long appendToLog() {
+		ByteBuffer buffer = ByteBuffer.wrap(recordBytes.buffer(), 0, recordBytes.size());
+		int length = buffer.remaining();
+		try {
+			while (buffer.hasRemaining()) {
+				log.write(buffer);
+			}
+		} catch (IOException e) {
+			throw fail(e);
+		}
+		logSize += length;
+		appended += length;
+		if (logSize >= snapshotThreshold && snapshotScheduled.compareAndSet(false, true)) {
+			snapshotExecutor.execute(() -> {
+				try {
+					if (!closed)
+						snapshot();
+				} catch (IOException | RuntimeException e) {
+					LOGGER.log(Level.WARNING, "Failed to write a snapshot", e);
+				} finally {
+					snapshotScheduled.set(false);
+				}
+			});
+		}
+		return appended;
+	}
+
+	private void awaitDurable(long position) {
+		switch (fsyncPolicy) {
+		case ALWAYS:
+			syncLock.lock();
+			try {
+				// another write might have already forced it
+				if (synced < position)
+					sync();
+			} finally {
+				syncLock.unlock();
+			}
+			break;
+		case GROUP:
+			syncLock.lock();
+			try {
+				while (synced < position) {
+					if (failure != null)
+						throw new UncheckedIOException("The log cannot be written anymore", failure);
+					syncedCondition.await();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new UncheckedIOException(new InterruptedIOException(
+					"Interrupted while waiting for the log to be durable"));
+			} finally {
+				syncLock.unlock();
+			}
+			break;
+		case OS:
+			break;
+		}
+	}
+
+	private void groupCommit() {
+		syncLock.lock();
+		try {
+			if (synced < appended && failure == null)
+				sync();
+		} catch (UncheckedIOException e) {
+			LOGGER.log(Level.SEVERE, "Failed to force the log", e);
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	/**
+	 * Forces the log to disk, while holding the sync lock.
+	 */
+	private void sync() {
+		// what is appended after this is not necessarily forced
+		long position = appended;
+		try {
+			log.force(false);
+		} catch (IOException e) {
+			UncheckedIOException exception = fail(e);
+			// waiting writes must not wait forever
+			syncedCondition.signalAll();
+			throw exception;
+		}
+		synced = position;
+		syncedCondition.signalAll();
+	}
+
+	/**
+	 * Forces the current log segment and starts a new one, while holding the
+	 * write lock.
+	 */
+	private void switchLog(long number) throws IOException {
+		syncLock.lock();
+		try {
+			sync();
+			log.close();
+			openLog(number);
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	private void openLog(long number) throws IOException {
+		log = FileChannel.open(logFile(number), StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		logNumber = number;
+		logSize = log.size();
+		syncDirectory();
+	}
+
+	private UncheckedIOException fail(IOException e) {
+		failure = e;
+		return new UncheckedIOException("The log cannot be written anymore", e);
+	}
+
+	private void checkWritable() {
+		if (failure != null)
+			throw new UncheckedIOException("The log cannot be written anymore", failure);
+		if (closed)
+			throw new IllegalStateException("The repository is closed");
+	}
+
+	/**
+	 * Collects the log segments and the snapshots by number, and deletes the
+	 * snapshots that were not completed.
+	 */
+	private void scan(TreeMap<Long, Path> logs, TreeMap<Long, Path> snapshots) throws IOException {
+		for (Path file : files()) {
+			Long number = number(file, LOG_PREFIX, LOG_SUFFIX);
+			if (number != null)
+				logs.put(number, file);
+			number = number(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+			if (number != null)
+				snapshots.put(number, file);
+			else if (file.getFileName().toString().endsWith(".tmp"))
+				// a snapshot that was not completed
+				Files.delete(file);
+		}
+	}
+
+	/**
+	 * Replays the log segments after the latest snapshot, which has already
+	 * been loaded.
+	 *
+	 * @return true if there were no files
+	 */
+	private boolean recover(TreeMap<Long, Path> logs, TreeMap<Long, Path> snapshots)
+			throws IOException {
+		if (logs.isEmpty() && snapshots.isEmpty())
+			return true;
+		long first = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+		long replayed = 0;
+		for (Long number : logs.tailMap(first).keySet()) {
+			replayed += replay(logs.get(number), number.equals(logs.lastKey()));
+		}
+		// new writes go to a new log segment
+		logNumber = Math.max(first, logs.isEmpty() ? 0 : logs.lastKey() + 1);
+		long employees = memory.streamAll().count();
+		long bytes = replayed;
+		LOGGER.info(() -> "Recovered " + employees + " employees from " + directory
+			+ ", replaying " + bytes + " bytes of log");
+		return false;
+	}
+
+	/**
+	 * Applies the records of a log segment; an incomplete or corrupted record at
+	 * the end of the last segment is truncated.
+	 *
+	 * @return the number of valid bytes
+	 */
+	private long replay(Path file, boolean last) throws IOException {
+		long size = Files.size(file);
+		long valid = 0;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(file)))) {
+			byte[] body = new byte[256];
+			CRC32 crc = new CRC32();
+			while (true) {
+				int first = in.read();
+				if (first == -1)
+					return valid;
+				int length;
+				try {
+					length = (first << 24) | (in.readUnsignedByte() << 16)
+						| (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+					int checksum = in.readInt();
+					if (length < 0 || valid + EmployeeLogFormat.RECORD_HEADER_SIZE + length > size)
+						throw new IOException("Invalid record length " + length);
+					if (body.length < length)
+						body = new byte[length];
+					in.readFully(body, 0, length);
+					crc.reset();
+					crc.update(body, 0, length);
+					if ((int) crc.getValue() != checksum)
+						throw new IOException("Invalid checksum");
+				} catch (IOException e) {
+					if (!last)
+						throw new IOException("Corrupted log " + file + " at " + valid, e);
+					truncate(file, valid, e);
+					return valid;
+				}
+				apply(new DataInputStream(new ByteArrayInputStream(body, 0, length)));
+				valid += EmployeeLogFormat.RECORD_HEADER_SIZE + length;
+			}
+		}
+	}
+
+	private void truncate(Path file, long size, IOException cause) throws IOException {
+		LOGGER.warning(() -> "Truncating " + file + " at " + size + ": " + cause.getMessage());
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+			channel.force(true);
+		}
+	}
+
+	private void apply(DataInputStream record) throws IOException {
+		byte type = record.readByte();
+		switch (type) {
+		case EmployeeLogFormat.SAVE:
+			memory.save(EmployeeLogFormat.readEmployee(record));
+			break;
+		case EmployeeLogFormat.DELETE:
+			memory.deleteById(EmployeeLogFormat.readString(record));
+			break;
+		default:
+			throw new IOException("Invalid record type " + type);
+		}
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file, which is then renamed, so that
+	 * a snapshot file is always complete.
+	 */
+	private void writeSnapshot(long number, long idSequence, List<Employee> employees)
+			throws IOException {
+		Path snapshot = directory.resolve(fileName(SNAPSHOT_PREFIX, number, SNAPSHOT_SUFFIX));
+		Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+		EmployeeSnapshot.write(temporary, idSequence, employees);
+		Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory();
+	}
+
+	/**
+	 * Makes the creation, renaming and deletion of files durable, where
+	 * supported.
+	 */
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not supported, e.g., on Windows
+		}
+	}
+
+	private List<Path> files() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			stream.forEach(files::add);
+		}
+		return files;
+	}
+
+	private Path logFile(long number) {
+		return directory.resolve(fileName(LOG_PREFIX, number, LOG_SUFFIX));
+	}
+
+	private static String fileName(String prefix, long number, String suffix) {
+		return prefix + number + suffix;
+	}
+
+	/**
+	 * @return the number in the name of the file, or null if the name does not
+	 *         have the given prefix and suffix
+	 */
+	private static Long number(Path file, String prefix, String suffix) {
+		String name = file.getFileName().toString();
+		if (!name.startsWith(prefix) || !name.endsWith(suffix))
+			return null;
+		try {
+			return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static Thread daemon(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,188 @@
+package com.examples.repository;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of JDBC connections, each one with a cache of its prepared
+ * statements.
+ *
+ * Connections are opened lazily, up to the maximum size; when they are all in
+ * use, {@link #borrow()} waits for one to be released, up to the timeout.
+ */
+final class JdbcConnectionPool implements AutoCloseable {
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+	/**
+	 * A connection of the pool, returned to it by {@link #close()}.
+	 */
+	final class PooledConnection implements AutoCloseable {
+
+		private final Connection connection;
+
+		private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+		private boolean broken;
+
+		private PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		Connection connection() {
+			return connection;
+		}
+
+		/**
+		 * @return the statement for the given SQL, prepared only the first time
+		 *         on this connection
+		 * @throws SQLException
+		 */
+		PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement statement = statements.get(sql);
+			if (statement == null) {
+				statement = connection.prepareStatement(sql);
+				statements.put(sql, statement);
+			}
+			return statement;
+		}
+
+		/**
+		 * To be called after a failure, so that the connection is not reused if
+		 * it does not work anymore.
+		 */
+		void failed() {
+			try {
+				broken = !connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+			} catch (SQLException e) {
+				broken = true;
+			}
+		}
+
+		/**
+		 * Returns the connection to the pool, or closes it if it does not
+		 * work anymore.
+		 */
+		@Override
+		public void close() {
+			release(this);
+		}
+	}
+
+	private final String url;
+
+	private final Properties info;
+
+	private final long timeoutMillis;
+
+	private final BlockingQueue<PooledConnection> idle;
+
+	// the connections that can still be borrowed, idle or not yet opened
+	private final Semaphore available;
+
+	private volatile boolean closed;
+
+	/**
+	 * @param url
+	 * @param info
+	 *            the properties passed to the driver, e.g., "user" and "password"
+	 * @param maxSize
+	 *            the maximum number of open connections
+	 * @param timeoutMillis
+	 *            the maximum time for waiting for a connection
+	 */
+	JdbcConnectionPool(String url, Properties info, int maxSize, long timeoutMillis) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("Invalid pool size " + maxSize);
+		this.url = url;
+		this.info = info;
+		this.timeoutMillis = timeoutMillis;
+		idle = new ArrayBlockingQueue<>(maxSize);
+		available = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * @return a connection in auto-commit mode, which must be closed to return
+	 *         it to the pool
+	 * @throws SQLTransientConnectionException
+	 *             if no connection becomes available within the timeout
+	 * @throws SQLException
+	 *             if a new connection cannot be opened
+	 */
+	PooledConnection borrow() throws SQLException {
+		if (closed)
+			throw new SQLException("The pool is closed");
+		try {
+			if (!available.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+				throw new SQLTransientConnectionException(
+					"No connection available within " + timeoutMillis + " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+		}
+		PooledConnection pooled = idle.poll();
+		if (pooled != null)
+			return pooled;
+		try {
+			return new PooledConnection(DriverManager.getConnection(url, info));
+		} catch (SQLException | RuntimeException e) {
+			available.release();
+			throw e;
+		}
+	}
+
+	private void release(PooledConnection pooled) {
+		try {
+			if (closed || pooled.broken || !reusable(pooled.connection))
+				closeQuietly(pooled.connection);
+			else
+				idle.add(pooled);
+		} finally {
+			available.release();
+		}
+		// the pool might have been closed while adding it
+		if (closed && idle.remove(pooled))
+			closeQuietly(pooled.connection);
+	}
+
+	/**
+	 * A connection is reused only if it was left in auto-commit mode.
+	 */
+	private static boolean reusable(Connection connection) {
+		try {
+			return !connection.isClosed() && connection.getAutoCommit();
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the idle connections; the borrowed ones are closed when released.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		PooledConnection pooled;
+		while ((pooled = idle.poll()) != null) {
+			closeQuietly(pooled.connection);
+		}
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// nothing else to do
+		}
+	}
+}
@@ -0,0 +1,608 @@
+package com.examples.repository;
+
+import java.io.Closeable;
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
+import com.examples.repository.JdbcConnectionPool.PooledConnection;
+
+/**
+ * A repository that keeps the employees in a relational database, through
+ * JDBC, with a bounded pool of connections, each one caching its prepared
+ * statements.
+ *
+ * The employees are kept in the table "employee", created if it does not
+ * exist, whose "position" column, an identity, gives the insertion order:
+ * replacing an employee does not change its position, and it is used as the
+ * cursor of the pages (keyset pagination), so pages are stable even in case of
+ * insertions and deletions. {@link #findAll()} and {@link #streamAll()} read
+ * the employees in pages too, so that they do not keep a connection and its
+ * result set for long.
+ *
+ * Ids are generated from the table "employee_id", in blocks of
+ * {@value #ID_BLOCK_SIZE}, so they are never reused, even after a restart;
+ * when the table is created the repository is initialized with the same
+ * contents as the in-memory ones.
+ *
+ * Only standard SQL is used, so that any database with identity columns
+ * should work; the tests use H2. Failures of the database are thrown as
+ * {@link IllegalStateException}.
+ */
+public class JdbcEmployeeRepository implements EmployeeRepository, Closeable {
+
+	/**
+	 * The maximum length of a name.
+	 */
+	public static final int MAX_NAME_LENGTH = 10000;
+
+	static final int ID_BLOCK_SIZE = 100;
+
+	// the employees read at once by findAll and streamAll
+	static final int PAGE_SIZE = 1000;
+
+	private static final String ID_PREFIX = "ID";
+
+	// the SQLState class of integrity constraint violations
+	private static final String CONSTRAINT_VIOLATION = "23";
+
+	private static final String CREATE_EMPLOYEE_TABLE =
+		"CREATE TABLE IF NOT EXISTS employee ("
+			+ "position BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+			+ "id VARCHAR(255) NOT NULL UNIQUE, "
+			+ "name VARCHAR(" + MAX_NAME_LENGTH + "), "
+			+ "salary INT NOT NULL)";
+
+	private static final String CREATE_SALARY_INDEX =
+		"CREATE INDEX IF NOT EXISTS employee_salary ON employee (salary, position)";
+
+	private static final String CREATE_ID_TABLE =
+		"CREATE TABLE IF NOT EXISTS employee_id (next_id BIGINT NOT NULL)";
+
+	private static final String SELECT_NEXT_ID = "SELECT next_id FROM employee_id";
+
+	private static final String INSERT_NEXT_ID = "INSERT INTO employee_id (next_id) VALUES (?)";
+
+	private static final String RESERVE_IDS = "UPDATE employee_id SET next_id = next_id + ?";
+
+	private static final String SELECT_ONE =
+		"SELECT position, id, name, salary FROM employee WHERE id = ?";
+
+	private static final String SELECT_PAGE =
+		"SELECT position, id, name, salary FROM employee WHERE position > ? ORDER BY position";
+
+	private static final String SELECT_SALARY_RANGE =
+		"SELECT position, id, name, salary FROM employee WHERE salary BETWEEN ? AND ? "
+			+ "ORDER BY salary, position";
+
+	private static final String SELECT_NAME_LIKE =
+		"SELECT position, id, name, salary FROM employee WHERE LOWER(name) LIKE ? "
+			+ "ORDER BY position";
+
+	private static final String COUNT = "SELECT COUNT(*) FROM employee";
+
+	private static final String COUNT_BY_SALARY =
+		"SELECT salary, COUNT(*) FROM employee GROUP BY salary ORDER BY salary";
+
+	private static final String INSERT =
+		"INSERT INTO employee (id, name, salary) VALUES (?, ?, ?)";
+
+	private static final String UPDATE =
+		"UPDATE employee SET name = ?, salary = ? WHERE id = ?";
+
+	private static final String DELETE = "DELETE FROM employee WHERE id = ?";
+
+	@FunctionalInterface
+	private interface Work<T> {
+		T run(PooledConnection connection) throws SQLException;
+	}
+
+	/**
+	 * Thrown by the work of a transaction that must be rolled back, when the
+	 * batches of {@link JdbcEmployeeRepository#saveAll(List)} fail.
+	 */
+	private static class BatchFailedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		BatchFailedException() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * A page with the position of its last employee.
+	 */
+	private static class Page {
+		private final List<Employee> employees;
+		private final long last;
+		private final boolean hasNext;
+
+		Page(List<Employee> employees, long last, boolean hasNext) {
+			this.employees = employees;
+			this.last = last;
+			this.hasNext = hasNext;
+		}
+	}
+
+	private final JdbcConnectionPool pool;
+
+	// the next generated id and the end (exclusive) of the reserved block
+	private long nextId;
+
+	private long idLimit;
+
+	/**
+	 * Connects to the database, creating the tables if they do not exist.
+	 *
+	 * @param url
+	 *            the JDBC URL
+	 * @param info
+	 *            the properties passed to the driver, e.g., "user" and "password"
+	 * @param poolSize
+	 *            the maximum number of open connections
+	 * @param poolTimeoutMillis
+	 *            the maximum time for waiting for a connection
+	 * @throws IllegalStateException
+	 *             if the database cannot be initialized
+	 */
+	public JdbcEmployeeRepository(String url, Properties info, int poolSize, long poolTimeoutMillis) {
+		pool = new JdbcConnectionPool(url, info, poolSize, poolTimeoutMillis);
+		try {
+			initialize();
+		} catch (RuntimeException e) {
+			pool.close();
+			throw e;
+		}
+	}
+
+	private void initialize() {
+		boolean isNew = transaction(connection -> {
+			try (Statement statement = connection.connection().createStatement()) {
+				statement.executeUpdate(CREATE_EMPLOYEE_TABLE);
+				statement.executeUpdate(CREATE_SALARY_INDEX);
+				statement.executeUpdate(CREATE_ID_TABLE);
+			}
+			try (ResultSet resultSet = connection.prepare(SELECT_NEXT_ID).executeQuery()) {
+				if (resultSet.next())
+					return false;
+			}
+			PreparedStatement insert = connection.prepare(INSERT_NEXT_ID);
+			insert.setLong(1, 1);
+			insert.executeUpdate();
+			return true;
+		});
+		if (isNew)
+			saveAll(ConcurrentInMemoryEmployeeRepository.initialEmployees());
+	}
+
+	@Override
+	public List<Employee> findAll() {
+		try (Stream<Employee> employees = streamAll()) {
+			return employees.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * The employees are read lazily, in pages of {@value #PAGE_SIZE}, so the
+	 * stream is weakly consistent: it reflects the employees at some point at
+	 * or since its creation.
+	 */
+	@Override
+	public Stream<Employee> streamAll() {
+		Iterator<Employee> iterator = new Iterator<Employee>() {
+			private Page page;
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				if (page == null || (index == page.employees.size() && page.hasNext)) {
+					page = findPage(page == null ? 0 : page.last, PAGE_SIZE);
+					index = 0;
+				}
+				return index < page.employees.size();
+			}
+
+			@Override
+			public Employee next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return page.employees.get(index++);
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+			Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	@Override
+	public Optional<Employee> findOne(String id) {
+		return execute(connection -> findOne(connection, id));
+	}
+
+	/**
+	 * The cursor is the position of the last employee of the previous page.
+	 */
+	@Override
+	public EmployeePage findPage(String cursor, int limit) {
+		long after = 0;
+		if (cursor != null) {
+			try {
+				after = Long.parseLong(cursor);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+			}
+		}
+		Page page = findPage(after, limit);
+		return new EmployeePage(page.employees,
+			page.hasNext ? String.valueOf(page.last) : null);
+	}
+
+	@Override
+	public long count() {
+		return execute(connection -> {
+			try (ResultSet resultSet = connection.prepare(COUNT).executeQuery()) {
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+		});
+	}
+
+	/**
+	 * The database reads the index on the salary, rather than the employees,
+	 * and returns a row for each distinct salary.
+	 */
+	@Override
+	public EmployeeStatistics statistics() {
+		return execute(connection -> {
+			SalaryStatistics statistics = new SalaryStatistics();
+			Integer min = null;
+			Integer max = null;
+			try (ResultSet resultSet = connection.prepare(COUNT_BY_SALARY).executeQuery()) {
+				while (resultSet.next()) {
+					int salary = resultSet.getInt(1);
+					if (min == null)
+						min = salary;
+					max = salary;
+					statistics.add(salary, resultSet.getLong(2));
+				}
+			}
+			return statistics.statistics(min, max);
+		});
+	}
+
+	/**
+	 * Uses an index on the salary, created together with the table.
+	 */
+	@Override
+	public List<Employee> findBySalaryRange(int minSalary, int maxSalary) {
+		return execute(connection -> {
+			PreparedStatement select = connection.prepare(SELECT_SALARY_RANGE);
+			select.setInt(1, minSalary);
+			select.setInt(2, maxSalary);
+			List<Employee> employees = new ArrayList<>();
+			try (ResultSet resultSet = select.executeQuery()) {
+				while (resultSet.next()) {
+					employees.add(employee(resultSet));
+				}
+			}
+			return employees;
+		});
+	}
+
+	/**
+	 * The database selects the names containing the longest token of the query,
+	 * which are then checked for all the tokens; such a LIKE pattern cannot use
+	 * an index, so the table is scanned, but only until enough employees are
+	 * found.
+	 */
+	@Override
+	public List<Employee> searchByName(String query, boolean prefix, int limit) {
+		List<String> queryTokens = EmployeeNameTokens.tokens(query);
+		if (queryTokens.isEmpty())
+			return new ArrayList<>();
+		return execute(connection -> {
+			PreparedStatement select = connection.prepare(SELECT_NAME_LIKE);
+			// tokens have no wildcards to escape
+			select.setString(1, "%" + EmployeeNameTokens.mostSelective(queryTokens) + "%");
+			List<Employee> employees = new ArrayList<>();
+			try (ResultSet resultSet = select.executeQuery()) {
+				while (employees.size() < limit && resultSet.next()) {
+					Employee employee = employee(resultSet);
+					if (EmployeeNameTokens.matches(
+							EmployeeNameTokens.tokens(employee.getName()), queryTokens, prefix))
+						employees.add(employee);
+				}
+			}
+			return employees;
+		});
+	}
+
+	/**
+	 * If the passed employee has no id, then it is generated automatically.
+	 *
+	 * @param employee
+	 * @return the saved employee
+	 */
+	@Override
+	public Employee save(Employee employee) {
+		boolean generated = employee.getEmployeeId() == null;
+		while (true) {
+			if (generated)
+				employee.setEmployeeId(newId());
+			if (execute(connection -> save(connection, employee, generated)))
+				return employee;
+			// the generated id had been used explicitly
+		}
+	}
+
+	/**
+	 * The employees are saved in a single transaction, with a batch of updates
+	 * and a batch of inserts; if a batch fails, e.g., because of a concurrent
+	 * change, the transaction is rolled back and they are saved one by one.
+	 */
+	@Override
+	public List<Employee> saveAll(List<Employee> employees) {
+		if (employees.isEmpty())
+			return employees;
+		List<Employee> existing = new ArrayList<>();
+		List<Employee> generated = new ArrayList<>();
+		for (Employee employee : employees) {
+			if (employee.getEmployeeId() != null) {
+				existing.add(employee);
+			} else {
+				// before the transaction, which must not wait for another connection
+				employee.setEmployeeId(newId());
+				generated.add(employee);
+			}
+		}
+		Set<Employee> toInsert = Collections.newSetFromMap(new IdentityHashMap<>());
+		toInsert.addAll(generated);
+		try {
+			saveBatches(employees, existing, toInsert);
+		} catch (BatchFailedException e) {
+			// nothing has been saved, since the transaction has been rolled back
+			generated.forEach(employee -> employee.setEmployeeId(null));
+			employees.forEach(this::save);
+		}
+		return employees;
+	}
+
+	/**
+	 * @throws BatchFailedException
+	 *             if the batches cannot be applied, after rolling back the
+	 *             transaction
+	 */
+	private void saveBatches(List<Employee> employees, List<Employee> existing,
+			Set<Employee> toInsert) {
+		transaction(connection -> {
+			if (!existing.isEmpty()) {
+				PreparedStatement update = connection.prepare(UPDATE);
+				for (Employee employee : existing) {
+					setNameAndSalary(update, 1, employee);
+					update.setString(3, employee.getEmployeeId());
+					update.addBatch();
+				}
+				int[] counts = update.executeBatch();
+				for (int i = 0; i < counts.length; i++) {
+					if (counts[i] == 0)
+						toInsert.add(existing.get(i));
+					else if (counts[i] != 1)
+						// the driver does not tell which ones were updated
+						throw new BatchFailedException();
+				}
+			}
+			PreparedStatement insert = connection.prepare(INSERT);
+			for (Employee employee : employees) {
+				if (!toInsert.contains(employee))
+					continue;
+				insert.setString(1, employee.getEmployeeId());
+				setNameAndSalary(insert, 2, employee);
+				insert.addBatch();
+			}
+			try {
+				insert.executeBatch();
+			} catch (BatchUpdateException e) {
+				if (isConstraintViolation(e))
+					throw new BatchFailedException();
+				throw e;
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public Employee deleteById(String id) {
+		return deleteAll(Collections.singletonList(id)).get(0);
+	}
+
+	/**
+	 * The employees are deleted in a single transaction, with a batch of
+	 * deletes.
+	 */
+	@Override
+	public List<Employee> deleteAll(List<String> ids) {
+		return transaction(connection -> {
+			List<Employee> found = new ArrayList<>(ids.size());
+			Set<String> seen = new HashSet<>();
+			PreparedStatement delete = connection.prepare(DELETE);
+			for (String id : ids) {
+				Employee employee = seen.add(id) ? findOne(connection, id).orElse(null) : null;
+				found.add(employee);
+				if (employee != null) {
+					delete.setString(1, id);
+					delete.addBatch();
+				}
+			}
+			if (found.stream().anyMatch(employee -> employee != null)) {
+				int[] counts = delete.executeBatch();
+				int batchIndex = 0;
+				for (int i = 0; i < found.size(); i++) {
+					// deleted concurrently in the meantime
+					if (found.get(i) != null && counts[batchIndex++] == 0)
+						found.set(i, null);
+				}
+			}
+			return found;
+		});
+	}
+
+	/**
+	 * Closes the connections of the pool.
+	 */
+	@Override
+	public void close() {
+		pool.close();
+	}
+
+	private Optional<Employee> findOne(PooledConnection connection, String id) throws SQLException {
+		PreparedStatement select = connection.prepare(SELECT_ONE);
+		select.setString(1, id);
+		try (ResultSet resultSet = select.executeQuery()) {
+			return resultSet.next() ? Optional.of(employee(resultSet)) : Optional.empty();
+		}
+	}
+
+	private Page findPage(long after, int limit) {
+		return execute(connection -> {
+			PreparedStatement select = connection.prepare(SELECT_PAGE);
+			// one more, to know whether there is a next page
+			select.setMaxRows(limit < Integer.MAX_VALUE ? limit + 1 : 0);
+			select.setLong(1, after);
+			List<Employee> employees = new ArrayList<>(Math.min(limit, PAGE_SIZE));
+			long last = after;
+			boolean hasNext = false;
+			try (ResultSet resultSet = select.executeQuery()) {
+				while (resultSet.next()) {
+					if (employees.size() == limit) {
+						hasNext = true;
+						break;
+					}
+					last = resultSet.getLong(1);
+					employees.add(employee(resultSet));
+				}
+			}
+			return new Page(employees, last, hasNext);
+		});
+	}
+
+	/**
+	 * Updates the employee, if the id was not generated, or inserts it.
+	 *
+	 * @return false if the generated id is already used
+	 */
+	private boolean save(PooledConnection connection, Employee employee, boolean generated)
+			throws SQLException {
+		if (!generated) {
+			PreparedStatement update = connection.prepare(UPDATE);
+			setNameAndSalary(update, 1, employee);
+			update.setString(3, employee.getEmployeeId());
+			if (update.executeUpdate() > 0)
+				return true;
+		}
+		PreparedStatement insert = connection.prepare(INSERT);
+		insert.setString(1, employee.getEmployeeId());
+		setNameAndSalary(insert, 2, employee);
+		try {
+			insert.executeUpdate();
+			return true;
+		} catch (SQLException e) {
+			if (!isConstraintViolation(e))
+				throw e;
+			// unless generated, it was inserted concurrently in the meantime
+			return !generated && save(connection, employee, false);
+		}
+	}
+
+	/**
+	 * Reserves a new block of ids in the database when the current one is
+	 * exhausted.
+	 */
+	private synchronized String newId() {
+		if (nextId == idLimit) {
+			long limit = transaction(connection -> {
+				PreparedStatement reserve = connection.prepare(RESERVE_IDS);
+				reserve.setLong(1, ID_BLOCK_SIZE);
+				reserve.executeUpdate();
+				try (ResultSet resultSet = connection.prepare(SELECT_NEXT_ID).executeQuery()) {
+					resultSet.next();
+					return resultSet.getLong(1);
+				}
+			});
+			idLimit = limit;
+			nextId = limit - ID_BLOCK_SIZE;
+		}
+		return ID_PREFIX + nextId++;
+	}
+
+	private static void setNameAndSalary(PreparedStatement statement, int index, Employee employee)
+			throws SQLException {
+		if (employee.getName() != null)
+			statement.setString(index, employee.getName());
+		else
+			statement.setNull(index, Types.VARCHAR);
+		statement.setInt(index + 1, employee.getSalary());
+	}
+
+	private static Employee employee(ResultSet resultSet) throws SQLException {
+		return new Employee(resultSet.getString(2), resultSet.getString(3), resultSet.getInt(4));
+	}
+
+	private static boolean isConstraintViolation(SQLException e) {
+		return e.getSQLState() != null && e.getSQLState().startsWith(CONSTRAINT_VIOLATION);
+	}
+
+	/**
+	 * Runs the work with a connection of the pool in auto-commit mode.
+	 */
+	private <T> T execute(Work<T> work) {
+		try (PooledConnection connection = pool.borrow()) {
+			try {
+				return work.run(connection);
+			} catch (SQLException | RuntimeException e) {
+				connection.failed();
+				throw e;
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException("Failed to access the database: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Runs the work in a transaction, which is rolled back if the work throws
+	 * an exception.
+	 */
+	private <T> T transaction(Work<T> work) {
+		return execute(connection -> {
+			connection.connection().setAutoCommit(false);
+			try {
+				T result = work.run(connection);
+				connection.connection().commit();
+				return result;
+			} catch (SQLException | RuntimeException e) {
+				connection.connection().rollback();
+				throw e;
+			} finally {
+				connection.connection().setAutoCommit(true);
+			}
+		});
+	}
+}
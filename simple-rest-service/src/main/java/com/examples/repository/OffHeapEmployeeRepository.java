@@ -0,0 +1,626 @@
+package com.examples.repository;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.examples.model.Employee;
+import com.examples.repository.EmployeeSnapshot.SegmentReader;
+import com.examples.repository.EmployeeSnapshot.SegmentWriter;
+
+/**
+ * An in-memory repository that keeps the employees outside of the Java heap,
+ * in direct buffers, so that millions of employees do not make the garbage
+ * collector trace and copy millions of objects; {@link Employee} objects are
+ * created only when they are returned, e.g., while a response is being
+ * written.
+ *
+ * The direct buffers are:
+ * <ul>
+ * <li>the arena: chunks where each saved employee is appended as a record,
+ * its insertion position followed by the employee, encoded like in an
+ * {@link EmployeeSnapshot}; a replaced or deleted record is garbage</li>
+ * <li>the {@link OffHeapIndex}, from the hash of an id to the offset of its
+ * record</li>
+ * <li>the {@link OffHeapOrder}, with the offset of the record of each
+ * insertion position, so that {@link #findAll()} returns the employees in
+ * insertion order (replacing an employee does not change its position)</li>
+ * </ul>
+ *
+ * Each write also does a bounded step of the pending maintenance, so that no
+ * write pauses for a pass over all the employees:
+ * <ul>
+ * <li>when the garbage is more than half of the arena, it moves the live
+ * records of at most {@value #COMPACTION_STEP} bytes of the chunk with the
+ * most garbage to the end of the arena, and the chunk is freed once all its
+ * records have been visited</li>
+ * <li>when most of the positions are deleted, it renumbers some of the live
+ * ones, see {@link OffHeapOrder}</li>
+ * <li>when the index is resized, it moves some of its slots, see
+ * {@link OffHeapIndex}</li>
+ * </ul>
+ * What remains proportional to the number of employees is allocating the
+ * new direct buffers of the order and of the index, which the JVM fills with
+ * zeros, and copying the order when it grows.
+ *
+ * Reads share a read lock and writes take a write lock;
+ * {@link #streamAll()} takes the read lock for each batch of
+ * {@value #BATCH_SIZE} employees, so it is weakly consistent.
+ */
+public class OffHeapEmployeeRepository implements EmployeeRepository {
+
+	/**
+	 * The default size of a chunk of the arena, which is also the maximum size
+	 * of a record.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+	static final int BATCH_SIZE = 1024;
+
+	/**
+	 * The bytes of a chunk visited by each write while compacting.
+	 */
+	static final int COMPACTION_STEP = 64 * 1024;
+
+	private static final int POSITION_SIZE = Long.BYTES;
+
+	/**
+	 * A chunk of the arena.
+	 */
+	private static final class Chunk {
+		private final ByteBuffer buffer;
+		// where the next record is appended
+		private int end;
+		// the bytes of the records that are garbage, and of the unused
+		// end, once the chunk is full
+		private int garbage;
+
+		Chunk(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+	}
+
+	private final int chunkSize;
+
+	// null for the chunks that have been freed, whose indexes are reused
+	private final List<Chunk> chunks = new ArrayList<>();
+
+	private final Deque<Integer> freeChunks = new ArrayDeque<>();
+
+	// the buffer of the last chunk that has been freed, for the next chunk
+	private ByteBuffer spare;
+
+	// the chunk where records are appended
+	private int current = -1;
+
+	// the bytes of the arena, except the free space of the current chunk
+	private long arenaBytes;
+
+	private long garbageBytes;
+
+	// the chunk being compacted, or -1, and the next record to visit
+	private int compacting = -1;
+
+	private int compactingOffset;
+
+	private final OffHeapIndex index = new OffHeapIndex(
+		(offset, id) -> id.equals(reader(offset).readString()));
+
+	private final OffHeapOrder order = new OffHeapOrder(
+		(offset, position) -> chunk(offset).buffer.putLong(chunkOffset(offset), position));
+
+	private int size;
+
+	// the last number used for generating an id
+	private long idSequence;
+
+	private final SegmentWriter encoder = new SegmentWriter();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	public OffHeapEmployeeRepository() {
+		this(DEFAULT_CHUNK_SIZE);
+		// initialize the "db" with some contents
+		saveAll(ConcurrentInMemoryEmployeeRepository.initialEmployees());
+	}
+
+	/**
+	 * An empty repository.
+	 *
+	 * @param chunkSize
+	 *            the size of a chunk of the arena
+	 */
+	OffHeapEmployeeRepository(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public List<Employee> findAll() {
+		List<Employee> employees = new ArrayList<>(size());
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			for (long position = order.after(OffHeapOrder.START); position < order.end();
+					position = order.next(position)) {
+				long offset = order.offsetOf(position);
+				if (offset != OffHeapOrder.DELETED)
+					employees.add(employee(offset));
+			}
+		} finally {
+			read.unlock();
+		}
+		return employees;
+	}
+
+	/**
+	 * The employees are created a batch at a time, while the stream is
+	 * consumed.
+	 */
+	@Override
+	public Stream<Employee> streamAll() {
+		Iterator<Employee> employees = new Iterator<Employee>() {
+			// the position of the last employee read, possibly renumbered since
+			private long last = OffHeapOrder.START;
+			private boolean done;
+			private Iterator<Employee> batch = new ArrayList<Employee>().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!batch.hasNext() && !done) {
+					List<Employee> read = new ArrayList<>(BATCH_SIZE);
+					try {
+						last = readAfter(last, BATCH_SIZE, read, null);
+					} catch (IllegalArgumentException e) {
+						throw new ConcurrentModificationException(
+							"The positions have been renumbered twice while streaming", e);
+					}
+					done = read.isEmpty();
+					batch = read.iterator();
+				}
+				return batch.hasNext();
+			}
+
+			@Override
+			public Employee next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return batch.next();
+			}
+		};
+		return StreamSupport.stream(
+			Spliterators.spliteratorUnknownSize(employees, Spliterator.ORDERED), false);
+	}
+
+	@Override
+	public Optional<Employee> findOne(String id) {
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			long slot = index.find(id, hash(id));
+			return slot != OffHeapIndex.MISSING ? Optional.of(employee(index.offset(slot)))
+				: Optional.empty();
+		} finally {
+			read.unlock();
+		}
+	}
+
+	@Override
+	public List<Employee> findAllById(Collection<String> ids) {
+		List<Employee> found = new ArrayList<>();
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			for (String id : ids) {
+				long slot = index.find(id, hash(id));
+				if (slot != OffHeapIndex.MISSING)
+					found.add(employee(index.offset(slot)));
+			}
+		} finally {
+			read.unlock();
+		}
+		return found;
+	}
+
+	@Override
+	public long count() {
+		return size();
+	}
+
+	/**
+	 * The cursor is the insertion position of the last employee of the previous
+	 * page, so pages are stable even in case of insertions and deletions, and
+	 * only the employees of the page are visited.
+	 */
+	@Override
+	public EmployeePage findPage(String cursor, int limit) {
+		long after = OffHeapOrder.START;
+		if (cursor != null) {
+			try {
+				after = Long.parseLong(cursor);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+			}
+			if (after < 0)
+				throw new IllegalArgumentException("Invalid cursor " + cursor);
+		}
+		List<Employee> employeesInPage = new ArrayList<>();
+		boolean[] more = new boolean[1];
+		long last = readAfter(after, limit, employeesInPage, more);
+		return new EmployeePage(employeesInPage, more[0] ? String.valueOf(last) : null);
+	}
+
+	/**
+	 * If the passed employee has no id, then it is generated automatically.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the encoded employee does not fit in a chunk
+	 */
+	@Override
+	public Employee save(Employee employee) {
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			return write(employee);
+		} finally {
+			write.unlock();
+		}
+	}
+
+	@Override
+	public Employee deleteById(String id) {
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			return delete(id);
+		} finally {
+			write.unlock();
+		}
+	}
+
+	/**
+	 * Saves all the employees taking the lock only once.
+	 */
+	@Override
+	public List<Employee> saveAll(List<Employee> employees) {
+		List<Employee> saved = new ArrayList<>(employees.size());
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			for (Employee employee : employees) {
+				saved.add(write(employee));
+			}
+		} finally {
+			write.unlock();
+		}
+		return saved;
+	}
+
+	/**
+	 * Deletes all the employees taking the lock only once.
+	 */
+	@Override
+	public List<Employee> deleteAll(List<String> ids) {
+		List<Employee> deleted = new ArrayList<>(ids.size());
+		Lock write = lock.writeLock();
+		write.lock();
+		try {
+			for (String id : ids) {
+				deleted.add(delete(id));
+			}
+		} finally {
+			write.unlock();
+		}
+		return deleted;
+	}
+
+	/**
+	 * @return the bytes of the direct buffers: the arena, including the
+	 *         garbage, the index and the order
+	 */
+	public long offHeapBytes() {
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			long chunkBytes = (long) (chunks.size() - freeChunks.size()) * chunkSize;
+			if (spare != null)
+				chunkBytes += chunkSize;
+			return chunkBytes + index.bytes() + order.bytes();
+		} finally {
+			read.unlock();
+		}
+	}
+
+	/**
+	 * @return the bytes of the records that are garbage
+	 */
+	long garbageBytes() {
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			return garbageBytes;
+		} finally {
+			read.unlock();
+		}
+	}
+
+	private int size() {
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			return size;
+		} finally {
+			read.unlock();
+		}
+	}
+
+	/**
+	 * Reads at most limit employees after the given position.
+	 *
+	 * @param after
+	 *            a position, also before the last renumbering, or
+	 *            {@link OffHeapOrder#START}
+	 * @param more
+	 *            if not null, set to whether there are other employees
+	 * @return the position of the last employee read, or the last position
+	 *         visited, possibly the given one, if none was read
+	 * @throws IllegalArgumentException
+	 *             if the position has been renumbered more than once
+	 */
+	private long readAfter(long after, int limit, List<Employee> employees, boolean[] more) {
+		Lock read = lock.readLock();
+		read.lock();
+		try {
+			long last = after;
+			long position = order.after(after);
+			for (; position < order.end() && employees.size() < limit;
+					position = order.next(position)) {
+				long offset = order.offsetOf(position);
+				if (offset != OffHeapOrder.DELETED)
+					employees.add(employee(offset));
+				last = position;
+			}
+			if (more != null) {
+				for (; position < order.end() && !more[0]; position = order.next(position)) {
+					more[0] = order.offsetOf(position) != OffHeapOrder.DELETED;
+				}
+			}
+			return last;
+		} finally {
+			read.unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding the write lock.
+	 */
+	private Employee write(Employee employee) {
+		String id = employee.getEmployeeId();
+		if (id == null) {
+			// another write might have used the generated id explicitly
+			do {
+				id = ConcurrentInMemoryEmployeeRepository.ID_PREFIX + ++idSequence;
+			} while (index.find(id, hash(id)) != OffHeapIndex.MISSING);
+			employee.setEmployeeId(id);
+		} else {
+			idSequence = Math.max(idSequence,
+				ConcurrentInMemoryEmployeeRepository.generatedIdNumber(id));
+		}
+		long hash = hash(id);
+		long slot = index.find(id, hash);
+		if (slot != OffHeapIndex.MISSING) {
+			long existing = index.offset(slot);
+			long position = positionOf(existing);
+			long offset = append(position, employee);
+			garbage(existing);
+			order.move(position, offset);
+			index.update(slot, offset);
+		} else {
+			long offset = append(order.reserve(), employee);
+			order.add(offset);
+			index.add(hash, offset);
+			size++;
+		}
+		maintain();
+		return employee;
+	}
+
+	/**
+	 * Must be called while holding the write lock.
+	 */
+	private Employee delete(String id) {
+		long slot = index.find(id, hash(id));
+		if (slot == OffHeapIndex.MISSING)
+			return null;
+		long offset = index.offset(slot);
+		Employee deleted = employee(offset);
+		order.delete(positionOf(offset));
+		index.remove(slot);
+		size--;
+		garbage(offset);
+		maintain();
+		return deleted;
+	}
+
+	/**
+	 * Does a step of the compaction, of the renumbering and of the resize of
+	 * the index, which go on also without new garbage.
+	 */
+	private void maintain() {
+		compact();
+		order.step();
+		index.step();
+	}
+
+	/**
+	 * @return the offset of the new record
+	 */
+	private long append(long position, Employee employee) {
+		encoder.reset();
+		encoder.writeEmployee(employee);
+		ByteBuffer bytes = encoder.bytes();
+		int recordSize = POSITION_SIZE + bytes.remaining();
+		if (recordSize > chunkSize)
+			throw new IllegalArgumentException(
+				"Employee too large: " + recordSize + " bytes");
+		if (current < 0 || chunks.get(current).end + recordSize > chunkSize)
+			newChunk();
+		Chunk chunk = chunks.get(current);
+		chunk.buffer.putLong(chunk.end, position);
+		ByteBuffer target = chunk.buffer.duplicate();
+		target.position(chunk.end + POSITION_SIZE);
+		target.put(bytes);
+		long offset = ((long) current << 32) | chunk.end;
+		chunk.end += recordSize;
+		arenaBytes += recordSize;
+		return offset;
+	}
+
+	private void newChunk() {
+		if (current >= 0) {
+			// the rest of the previous chunk is not used
+			Chunk full = chunks.get(current);
+			int unused = chunkSize - full.end;
+			full.garbage += unused;
+			garbageBytes += unused;
+			arenaBytes += unused;
+		}
+		ByteBuffer buffer = spare != null ? spare : ByteBuffer.allocateDirect(chunkSize);
+		spare = null;
+		Chunk chunk = new Chunk(buffer);
+		if (freeChunks.isEmpty()) {
+			current = chunks.size();
+			chunks.add(chunk);
+		} else {
+			current = freeChunks.pop();
+			chunks.set(current, chunk);
+		}
+	}
+
+	/**
+	 * The record at the offset is not used anymore.
+	 */
+	private void garbage(long offset) {
+		int recordSize = recordSize(offset);
+		chunk(offset).garbage += recordSize;
+		garbageBytes += recordSize;
+	}
+
+	/**
+	 * When the garbage is more than half of the arena, moves the live records
+	 * of the next {@value #COMPACTION_STEP} bytes of the chunk with the most
+	 * garbage, which is freed when all its records have been visited.
+	 */
+	private void compact() {
+		if (compacting < 0) {
+			if (garbageBytes <= chunkSize || garbageBytes * 2 <= arenaBytes)
+				return;
+			compacting = chunkWithMostGarbage();
+			compactingOffset = 0;
+			if (compacting < 0)
+				return;
+		}
+		Chunk chunk = chunks.get(compacting);
+		int end = Math.min(chunk.end, compactingOffset + COMPACTION_STEP);
+		while (compactingOffset < chunk.end && compactingOffset < end) {
+			int start = compactingOffset;
+			SegmentReader reader = reader(chunk.buffer, start);
+			Employee employee = reader.readEmployee();
+			int recordSize = reader.position() - start;
+			compactingOffset += recordSize;
+			long offset = ((long) compacting << 32) | start;
+			long position = chunk.buffer.getLong(start);
+			if (order.offsetOf(position) != offset)
+				continue;
+			long moved = append(position, employee);
+			order.move(position, moved);
+			String id = employee.getEmployeeId();
+			index.update(index.find(id, hash(id)), moved);
+			chunk.garbage += recordSize;
+			garbageBytes += recordSize;
+		}
+		if (compactingOffset >= chunk.end) {
+			// all the records, and the unused end, are garbage now
+			garbageBytes -= chunkSize;
+			arenaBytes -= chunkSize;
+			chunks.set(compacting, null);
+			freeChunks.push(compacting);
+			spare = chunk.buffer;
+			compacting = -1;
+		}
+	}
+
+	/**
+	 * @return the index of the chunk with the most garbage, except the current
+	 *         one, or -1 if there's none
+	 */
+	private int chunkWithMostGarbage() {
+		int found = -1;
+		for (int i = 0; i < chunks.size(); i++) {
+			Chunk chunk = chunks.get(i);
+			if (i != current && chunk != null
+					&& (found < 0 || chunk.garbage > chunks.get(found).garbage))
+				found = i;
+		}
+		return found;
+	}
+
+	private Employee employee(long offset) {
+		return reader(offset).readEmployee();
+	}
+
+	private int recordSize(long offset) {
+		ByteBuffer chunk = chunk(offset).buffer;
+		int start = chunkOffset(offset);
+		SegmentReader reader = reader(chunk, start);
+		reader.readEmployee();
+		return reader.position() - start;
+	}
+
+	/**
+	 * @return a reader of the employee in the record at the offset
+	 */
+	private SegmentReader reader(long offset) {
+		return reader(chunk(offset).buffer, chunkOffset(offset));
+	}
+
+	private static SegmentReader reader(ByteBuffer chunk, int recordOffset) {
+		ByteBuffer bytes = chunk.duplicate();
+		bytes.position(recordOffset + POSITION_SIZE);
+		return new SegmentReader(bytes);
+	}
+
+	private long positionOf(long offset) {
+		return chunk(offset).buffer.getLong(chunkOffset(offset));
+	}
+
+	private Chunk chunk(long offset) {
+		return chunks.get((int) (offset >>> 32));
+	}
+
+	private static int chunkOffset(long offset) {
+		return (int) offset;
+	}
+
+	private static long hash(String id) {
+		// the murmur3 finalizer spreads the hash code to the lower bits
+		long h = id.hashCode();
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
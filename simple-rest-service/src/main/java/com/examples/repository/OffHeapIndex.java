@@ -0,0 +1,193 @@
+package com.examples.repository;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The index of an {@link OffHeapEmployeeRepository}: an open addressing hash
+ * table, with linear probing, in a direct buffer, whose slots hold the hash of
+ * an id and the offset of its record, where the id is compared.
+ *
+ * At most 3/4 of the slots are used, including the deleted ones; when there
+ * are more, the table is resized incrementally: a new table is allocated, and
+ * each {@link #step()} moves the entries of the next
+ * {@value #RESIZING_STEP} slots of the previous table, where lookups go on
+ * until all its slots have been visited.
+ *
+ * It is not thread safe.
+ */
+final class OffHeapIndex {
+
+	/**
+	 * Whether the record at the offset is the one of the id.
+	 */
+	@FunctionalInterface
+	interface Ids {
+		boolean hasId(long offset, String id);
+	}
+
+	/**
+	 * The result of {@link #find(String, long)} for a missing id.
+	 */
+	static final long MISSING = -1;
+
+	static final int RESIZING_STEP = 1024;
+
+	private static final int SLOT_SIZE = 16;
+
+	private static final int MAX_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_SIZE);
+
+	private static final long EMPTY = 0;
+
+	private static final long DELETED = -1;
+
+	// a slot of the previous table
+	private static final long PREVIOUS = 1L << 32;
+
+	private final Ids ids;
+
+	// (hash, offset + 1), with EMPTY and DELETED as offsets
+	private ByteBuffer slots;
+
+	private int capacity;
+
+	private int deletedSlots;
+
+	// in both tables
+	private int size;
+
+	// while resizing, the previous table, and the next of its slots to move
+	private ByteBuffer previous;
+
+	private int previousCapacity;
+
+	private int moved;
+
+	OffHeapIndex(Ids ids) {
+		this.ids = ids;
+		capacity = 16;
+		slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+	}
+
+	/**
+	 * @return the slot of the id, or {@link #MISSING}
+	 */
+	long find(String id, long hash) {
+		int slot = probe(slots, capacity, id, hash);
+		if (slot >= 0)
+			return slot;
+		if (previous != null) {
+			slot = probe(previous, previousCapacity, id, hash);
+			if (slot >= 0)
+				return PREVIOUS | slot;
+		}
+		return MISSING;
+	}
+
+	/**
+	 * @return the offset of the record in the slot
+	 */
+	long offset(long slot) {
+		return tableOf(slot).getLong(offsetIndex(slot)) - 1;
+	}
+
+	void update(long slot, long offset) {
+		tableOf(slot).putLong(offsetIndex(slot), offset + 1);
+	}
+
+	void remove(long slot) {
+		tableOf(slot).putLong(offsetIndex(slot), DELETED);
+		if ((slot & PREVIOUS) == 0)
+			deletedSlots++;
+		size--;
+	}
+
+	/**
+	 * Adds an id that is not in the index.
+	 */
+	void add(long hash, long offset) {
+		if ((size + deletedSlots + 1) * 4L > capacity * 3L) {
+			// a resize is still going on only if too many slots have been
+			// used in the meantime
+			while (previous != null) {
+				step();
+			}
+			int newCapacity = size * 4L + 4 > capacity * 3L / 2 ? capacity * 2 : capacity;
+			if (newCapacity > MAX_CAPACITY)
+				throw new IllegalStateException("Too many employees");
+			previous = slots;
+			previousCapacity = capacity;
+			moved = 0;
+			slots = ByteBuffer.allocateDirect(newCapacity * SLOT_SIZE);
+			capacity = newCapacity;
+			deletedSlots = 0;
+		}
+		put(hash, offset + 1);
+		size++;
+	}
+
+	/**
+	 * Goes on with the resize, if any; it must be called after each write.
+	 */
+	void step() {
+		if (previous == null)
+			return;
+		int stop = Math.min(previousCapacity, moved + RESIZING_STEP);
+		for (; moved < stop; moved++) {
+			long offset = previous.getLong(moved * SLOT_SIZE + Long.BYTES);
+			if (offset == EMPTY || offset == DELETED)
+				continue;
+			put(previous.getLong(moved * SLOT_SIZE), offset);
+			// the slots still to move are found as before
+			previous.putLong(moved * SLOT_SIZE + Long.BYTES, DELETED);
+		}
+		if (moved == previousCapacity)
+			previous = null;
+	}
+
+	/**
+	 * @return the bytes of the direct buffers
+	 */
+	long bytes() {
+		return slots.capacity() + (previous != null ? previous.capacity() : 0);
+	}
+
+	private int probe(ByteBuffer table, int tableCapacity, String id, long hash) {
+		int mask = tableCapacity - 1;
+		for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+			long offset = table.getLong(slot * SLOT_SIZE + Long.BYTES);
+			if (offset == EMPTY)
+				return -1;
+			if (offset != DELETED && table.getLong(slot * SLOT_SIZE) == hash
+					&& ids.hasId(offset - 1, id))
+				return slot;
+		}
+	}
+
+	/**
+	 * Puts the entry in the first slot that is not used, in the current table.
+	 */
+	private void put(long hash, long storedOffset) {
+		int mask = capacity - 1;
+		int slot = (int) hash & mask;
+		while (true) {
+			long existing = slots.getLong(slot * SLOT_SIZE + Long.BYTES);
+			if (existing == EMPTY)
+				break;
+			if (existing == DELETED) {
+				deletedSlots--;
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		slots.putLong(slot * SLOT_SIZE, hash);
+		slots.putLong(slot * SLOT_SIZE + Long.BYTES, storedOffset);
+	}
+
+	private ByteBuffer tableOf(long slot) {
+		return (slot & PREVIOUS) != 0 ? previous : slots;
+	}
+
+	private static int offsetIndex(long slot) {
+		return (int) slot * SLOT_SIZE + Long.BYTES;
+	}
+}
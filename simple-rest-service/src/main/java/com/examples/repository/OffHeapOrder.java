@@ -0,0 +1,290 @@
+package com.examples.repository;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The insertion order of the records of an {@link OffHeapEmployeeRepository}:
+ * a direct buffer with the offset of the record of each position, or
+ * {@link #DELETED}, starting from the first position still in use.
+ *
+ * When most of the positions are deleted, the live ones are renumbered
+ * incrementally: each {@link #step()} visits at most
+ * {@value #RENUMBERING_STEP} positions, copying the live ones to a new buffer,
+ * with new positions greater than all the previous ones, which are written to
+ * the records with the {@link PositionWriter}. In the meantime, reads go on
+ * with the previous buffer, which is kept up to date, and new positions come
+ * after the room for the live ones in the new buffer; the renumbering ends
+ * when all the previous positions have been visited.
+ *
+ * A position before the last renumbering is translated by
+ * {@link #after(long)}, so that a cursor goes on where it was, as long as the
+ * positions have not been renumbered twice in the meantime.
+ *
+ * It is not thread safe.
+ */
+final class OffHeapOrder {
+
+	/**
+	 * Writes the new position of a record.
+	 */
+	@FunctionalInterface
+	interface PositionWriter {
+		void write(long offset, long position);
+	}
+
+	static final long DELETED = -1;
+
+	/**
+	 * The position before the first one.
+	 */
+	static final long START = -1;
+
+	/**
+	 * The positions are renumbered only if there are more deleted positions
+	 * than this and than the live ones.
+	 */
+	static final int MIN_RENUMBERED_POSITIONS = 4096;
+
+	static final int RENUMBERING_STEP = 1024;
+
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE / Long.BYTES * Long.BYTES;
+
+	private static final ByteBuffer NONE = ByteBuffer.allocateDirect(0);
+
+	private final PositionWriter writer;
+
+	// the offsets of the positions from base
+	private ByteBuffer offsets;
+
+	private long base;
+
+	// the next position
+	private long end;
+
+	private int live;
+
+	// the positions before the last renumbering that were renumbered, in
+	// order, starting from base, and the first of such positions
+	private ByteBuffer previousPositions = NONE;
+
+	private int previousCount;
+
+	private long previousBase;
+
+	// while renumbering, the new offsets of the positions from nextBase, which
+	// is the end of the previous positions: first the room for the live ones,
+	// then the new ones; null otherwise
+	private ByteBuffer nextOffsets;
+
+	private long nextBase;
+
+	private int room;
+
+	// the previous positions that have been renumbered, in order
+	private ByteBuffer renumbered;
+
+	private int renumberedCount;
+
+	// the next previous position to visit
+	private long visited;
+
+	OffHeapOrder(PositionWriter writer) {
+		this.writer = writer;
+		offsets = ByteBuffer.allocateDirect(16 * Long.BYTES);
+	}
+
+	/**
+	 * Makes room for the next position, before its record is written.
+	 *
+	 * @return the next position, after all the others
+	 * @throws IllegalStateException
+	 *             if there are too many positions
+	 */
+	long reserve() {
+		if (nextOffsets != null)
+			nextOffsets = ensureCapacity(nextOffsets, end - nextBase);
+		else
+			offsets = ensureCapacity(offsets, end - base);
+		return end;
+	}
+
+	/**
+	 * Adds the record at the position returned by {@link #reserve()}.
+	 */
+	void add(long offset) {
+		long position = end++;
+		live++;
+		put(position, offset);
+	}
+
+	/**
+	 * The record of the position has been moved to the offset.
+	 */
+	void move(long position, long offset) {
+		put(position, offset);
+	}
+
+	void delete(long position) {
+		put(position, DELETED);
+		live--;
+	}
+
+	/**
+	 * @return the offset of the record of the position, or {@link #DELETED}
+	 */
+	long offsetOf(long position) {
+		if (position < base || position >= end)
+			return DELETED;
+		if (nextOffsets == null || position < nextBase)
+			return offsets.getLong(index(position - base));
+		long index = position - nextBase;
+		if (index >= renumberedCount && index < room)
+			return DELETED;
+		return nextOffsets.getLong(index(index));
+	}
+
+	/**
+	 * @param position
+	 *            a position, possibly before the last renumbering, or
+	 *            {@link #START}
+	 * @return the first position after the given one, or {@link #end()}
+	 * @throws IllegalArgumentException
+	 *             if the position has been renumbered more than once
+	 */
+	long after(long position) {
+		return next(position == START ? base - 1 : translate(position));
+	}
+
+	/**
+	 * @return the position after the given one, or {@link #end()}
+	 */
+	long next(long position) {
+		position++;
+		// while renumbering, the previous positions come before the new ones
+		if (nextOffsets != null && position >= nextBase && position < nextBase + room)
+			return nextBase + room;
+		return position;
+	}
+
+	long end() {
+		return end;
+	}
+
+	/**
+	 * Goes on with the renumbering, or starts it if most of the positions are
+	 * deleted; it must be called after each write.
+	 */
+	void step() {
+		if (nextOffsets == null) {
+			long deleted = end - base - live;
+			if (deleted <= live || deleted <= MIN_RENUMBERED_POSITIONS)
+				return;
+			startRenumbering();
+		}
+		long stop = Math.min(nextBase, visited + RENUMBERING_STEP);
+		for (; visited < stop; visited++) {
+			long offset = offsets.getLong(index(visited - base));
+			if (offset == DELETED)
+				continue;
+			int rank = renumberedCount++;
+			renumbered.putLong(rank * Long.BYTES, visited);
+			nextOffsets.putLong(rank * Long.BYTES, offset);
+			writer.write(offset, nextBase + rank);
+		}
+		if (visited == nextBase)
+			endRenumbering();
+	}
+
+	/**
+	 * @return the bytes of the direct buffers
+	 */
+	long bytes() {
+		long bytes = offsets.capacity() + previousPositions.capacity();
+		if (nextOffsets != null)
+			bytes += nextOffsets.capacity() + renumbered.capacity();
+		return bytes;
+	}
+
+	private void startRenumbering() {
+		nextBase = end;
+		room = live;
+		nextOffsets = ByteBuffer.allocateDirect(
+			(int) Math.min(MAX_CAPACITY, Math.max(16, room * 2L) * Long.BYTES));
+		renumbered = ByteBuffer.allocateDirect(room * Long.BYTES);
+		renumberedCount = 0;
+		visited = base;
+		end = nextBase + room;
+	}
+
+	private void endRenumbering() {
+		// the room of the live positions deleted before being renumbered
+		for (int rank = renumberedCount; rank < room; rank++) {
+			nextOffsets.putLong(rank * Long.BYTES, DELETED);
+		}
+		previousPositions = renumbered;
+		previousCount = renumberedCount;
+		previousBase = base;
+		offsets = nextOffsets;
+		base = nextBase;
+		nextOffsets = null;
+		renumbered = null;
+	}
+
+	private void put(long position, long offset) {
+		if (nextOffsets == null || position < nextBase) {
+			offsets.putLong(index(position - base), offset);
+			return;
+		}
+		long index = position - nextBase;
+		nextOffsets.putLong(index(index), offset);
+		if (index < renumberedCount) {
+			// the previous position is read until the end of the renumbering
+			offsets.putLong(index(renumbered.getLong(index(index)) - base), offset);
+		}
+	}
+
+	/**
+	 * @return the position, after the last renumbering, of the last live
+	 *         position at or before the given one, possibly base - 1
+	 */
+	private long translate(long position) {
+		if (position >= base)
+			return position;
+		if (position < previousBase)
+			throw new IllegalArgumentException("Expired cursor " + position);
+		// the number of renumbered positions up to the given one
+		int low = 0;
+		int high = previousCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (previousPositions.getLong(middle * Long.BYTES) <= position)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return base + low - 1;
+	}
+
+	private static int index(long index) {
+		return (int) index * Long.BYTES;
+	}
+
+	/**
+	 * @return the buffer, or a copy with double the capacity, so that it
+	 *         contains the index
+	 */
+	private static ByteBuffer ensureCapacity(ByteBuffer buffer, long index) {
+		long needed = (index + 1) * Long.BYTES;
+		if (needed <= buffer.capacity())
+			return buffer;
+		if (needed > MAX_CAPACITY)
+			throw new IllegalStateException("Too many employees");
+		ByteBuffer larger = ByteBuffer.allocateDirect(
+			(int) Math.min(MAX_CAPACITY, Math.max(needed, buffer.capacity() * 2L)));
+		ByteBuffer source = buffer.duplicate();
+		source.clear();
+		larger.put(source);
+		larger.clear();
+		return larger;
+	}
+}
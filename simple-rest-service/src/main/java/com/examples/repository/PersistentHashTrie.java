@@ -0,0 +1,444 @@
+package com.examples.repository;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.ToLongFunction;
+
+/**
+ * An immutable hash array mapped trie: a map whose updates return a new map
+ * that shares all the nodes but the ones on the path to the updated key, so
+ * that a version can be read by any number of threads without locking while
+ * newer versions are being built.
+ *
+ * The keys are mapped to 64 bit hashes, consumed 6 bits per level starting from
+ * the most significant ones, so the values are iterated in ascending (unsigned)
+ * order of their hashes; with the identity as hash function, e.g., for
+ * positions, that is the order of the keys. Keys with the same hash are kept
+ * in a collision node, in the order they were added.
+ *
+ * Many updates can be applied through an {@link Editor}, which copies each node
+ * only the first time it is changed, instead of once per update.
+ *
+ * @param <K>
+ * @param <V>
+ */
+final class PersistentHashTrie<K, V> {
+
+	private static final int BITS = 6;
+
+	private static final int MASK = (1 << BITS) - 1;
+
+	// the first level takes the 4 most significant bits
+	private static final int TOP_SHIFT = 60;
+
+	/**
+	 * The token of the nodes created by an {@link Editor}, which can be changed
+	 * in place only while the editor is active.
+	 */
+	private static final class Edit {
+		private boolean active = true;
+	}
+
+	private static final class Node {
+		private final Edit edit;
+		private long bitmap;
+		// sub nodes, leaves and collisions, in order of their chunk
+		private Object[] children;
+
+		Node(Edit edit, long bitmap, Object[] children) {
+			this.edit = edit;
+			this.bitmap = bitmap;
+			this.children = children;
+		}
+
+		int index(long bit) {
+			return Long.bitCount(bitmap & (bit - 1));
+		}
+
+		Node editable(Edit edit) {
+			if (ownedBy(edit))
+				return this;
+			return new Node(edit, bitmap, children.clone());
+		}
+
+		Node with(Edit edit, long bitmap, Object[] children) {
+			if (!ownedBy(edit))
+				return new Node(edit, bitmap, children);
+			this.bitmap = bitmap;
+			this.children = children;
+			return this;
+		}
+
+		private boolean ownedBy(Edit edit) {
+			return edit != null && this.edit == edit && edit.active;
+		}
+	}
+
+	private static final class Leaf {
+		private final long hash;
+		private final Object key;
+		private final Object value;
+
+		Leaf(long hash, Object key, Object value) {
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private static final class Collision {
+		private final long hash;
+		private final Leaf[] leaves;
+
+		Collision(long hash, Leaf[] leaves) {
+			this.hash = hash;
+			this.leaves = leaves;
+		}
+	}
+
+	private final ToLongFunction<? super K> hashFunction;
+
+	private final Node root;
+
+	private final int size;
+
+	private PersistentHashTrie(ToLongFunction<? super K> hashFunction, Node root, int size) {
+		this.hashFunction = hashFunction;
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * @param hashFunction
+	 *            maps equal keys to the same hash, and different keys to
+	 *            different hashes as much as possible, especially in the most
+	 *            significant bits
+	 * @return an empty trie
+	 */
+	static <K, V> PersistentHashTrie<K, V> empty(ToLongFunction<? super K> hashFunction) {
+		return new PersistentHashTrie<>(hashFunction, new Node(null, 0, new Object[0]), 0);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param key
+	 * @return null if there is no value for the key
+	 */
+	V get(K key) {
+		return get(root, hashFunction.applyAsLong(key), key);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> V get(Node root, long hash, Object key) {
+		Node node = root;
+		for (int shift = TOP_SHIFT; ; shift -= BITS) {
+			long bit = bit(hash, shift);
+			if ((node.bitmap & bit) == 0)
+				return null;
+			Object child = node.children[node.index(bit)];
+			if (child instanceof Node) {
+				node = (Node) child;
+			} else if (child instanceof Leaf) {
+				Leaf leaf = (Leaf) child;
+				return leaf.hash == hash && leaf.key.equals(key) ? (V) leaf.value : null;
+			} else {
+				Collision collision = (Collision) child;
+				if (collision.hash != hash)
+					return null;
+				for (Leaf leaf : collision.leaves) {
+					if (leaf.key.equals(key))
+						return (V) leaf.value;
+				}
+				return null;
+			}
+		}
+	}
+
+	PersistentHashTrie<K, V> put(K key, V value) {
+		Editor<K, V> editor = edit();
+		editor.put(key, value);
+		return editor.done();
+	}
+
+	PersistentHashTrie<K, V> remove(K key) {
+		Editor<K, V> editor = edit();
+		editor.remove(key);
+		return editor.done();
+	}
+
+	/**
+	 * @return an editor that starts from this version, which is not changed
+	 */
+	Editor<K, V> edit() {
+		return new Editor<>(this);
+	}
+
+	/**
+	 * @return the values, in ascending order of their hashes
+	 */
+	Iterator<V> values() {
+		return new Values<>(root, 0, false);
+	}
+
+	/**
+	 * @param hash
+	 * @return the values with a greater hash, in ascending order of their
+	 *         hashes, visiting only the nodes that contain them
+	 */
+	Iterator<V> valuesAfter(long hash) {
+		return new Values<>(root, hash, true);
+	}
+
+	/**
+	 * Applies many updates, then returns the new version with {@link #done()};
+	 * it must be used by a single thread.
+	 */
+	static final class Editor<K, V> {
+		private final ToLongFunction<? super K> hashFunction;
+		private final Edit edit = new Edit();
+		private Node root;
+		private int size;
+
+		private Editor(PersistentHashTrie<K, V> trie) {
+			hashFunction = trie.hashFunction;
+			root = trie.root;
+			size = trie.size;
+		}
+
+		/**
+		 * @return the value for the key, including the updates so far
+		 */
+		V get(K key) {
+			return PersistentHashTrie.get(root, hashFunction.applyAsLong(key), key);
+		}
+
+		void put(K key, V value) {
+			boolean[] added = new boolean[1];
+			root = PersistentHashTrie.put(root, TOP_SHIFT,
+				new Leaf(hashFunction.applyAsLong(key), key, value), edit, added);
+			if (added[0])
+				size++;
+		}
+
+		void remove(K key) {
+			boolean[] removed = new boolean[1];
+			Node node = PersistentHashTrie.remove(root, TOP_SHIFT,
+				hashFunction.applyAsLong(key), key, edit, removed);
+			root = node != null ? node : new Node(edit, 0, new Object[0]);
+			if (removed[0])
+				size--;
+		}
+
+		/**
+		 * @return the new version; the editor cannot be used anymore
+		 */
+		PersistentHashTrie<K, V> done() {
+			edit.active = false;
+			return new PersistentHashTrie<>(hashFunction, root, size);
+		}
+	}
+
+	private static long bit(long hash, int shift) {
+		return 1L << ((int) (hash >>> shift) & MASK);
+	}
+
+	private static Node put(Node node, int shift, Leaf leaf, Edit edit, boolean[] added) {
+		long bit = bit(leaf.hash, shift);
+		int index = node.index(bit);
+		if ((node.bitmap & bit) == 0) {
+			added[0] = true;
+			Object[] children = new Object[node.children.length + 1];
+			System.arraycopy(node.children, 0, children, 0, index);
+			children[index] = leaf;
+			System.arraycopy(node.children, index, children, index + 1,
+				node.children.length - index);
+			return node.with(edit, node.bitmap | bit, children);
+		}
+		Object child = node.children[index];
+		Object updatedChild;
+		if (child instanceof Node) {
+			updatedChild = put((Node) child, shift - BITS, leaf, edit, added);
+		} else if (child instanceof Leaf) {
+			Leaf existing = (Leaf) child;
+			if (existing.hash != leaf.hash) {
+				added[0] = true;
+				updatedChild = split(existing, existing.hash, leaf, shift - BITS, edit);
+			} else if (existing.key.equals(leaf.key)) {
+				updatedChild = leaf;
+			} else {
+				added[0] = true;
+				updatedChild = new Collision(leaf.hash, new Leaf[] { existing, leaf });
+			}
+		} else {
+			Collision collision = (Collision) child;
+			if (collision.hash != leaf.hash) {
+				added[0] = true;
+				updatedChild = split(collision, collision.hash, leaf, shift - BITS, edit);
+			} else {
+				updatedChild = putInCollision(collision, leaf, added);
+			}
+		}
+		if (updatedChild == child)
+			return node;
+		Node updated = node.editable(edit);
+		updated.children[index] = updatedChild;
+		return updated;
+	}
+
+	/**
+	 * A node with an existing child and a leaf with a different hash.
+	 */
+	private static Node split(Object existing, long existingHash, Leaf leaf, int shift, Edit edit) {
+		int existingChunk = (int) (existingHash >>> shift) & MASK;
+		int chunk = (int) (leaf.hash >>> shift) & MASK;
+		if (existingChunk == chunk)
+			return new Node(edit, 1L << chunk,
+				new Object[] { split(existing, existingHash, leaf, shift - BITS, edit) });
+		Object[] children = existingChunk < chunk ?
+			new Object[] { existing, leaf } : new Object[] { leaf, existing };
+		return new Node(edit, (1L << existingChunk) | (1L << chunk), children);
+	}
+
+	private static Collision putInCollision(Collision collision, Leaf leaf, boolean[] added) {
+		Leaf[] leaves = collision.leaves;
+		for (int i = 0; i < leaves.length; i++) {
+			if (leaves[i].key.equals(leaf.key)) {
+				Leaf[] updated = leaves.clone();
+				updated[i] = leaf;
+				return new Collision(leaf.hash, updated);
+			}
+		}
+		added[0] = true;
+		Leaf[] updated = new Leaf[leaves.length + 1];
+		System.arraycopy(leaves, 0, updated, 0, leaves.length);
+		updated[leaves.length] = leaf;
+		return new Collision(leaf.hash, updated);
+	}
+
+	/**
+	 * @return null if the node becomes empty
+	 */
+	private static Node remove(Node node, int shift, long hash, Object key, Edit edit,
+			boolean[] removed) {
+		long bit = bit(hash, shift);
+		if ((node.bitmap & bit) == 0)
+			return node;
+		int index = node.index(bit);
+		Object child = node.children[index];
+		Object updatedChild;
+		if (child instanceof Node) {
+			updatedChild = remove((Node) child, shift - BITS, hash, key, edit, removed);
+		} else if (child instanceof Leaf) {
+			Leaf leaf = (Leaf) child;
+			if (leaf.hash != hash || !leaf.key.equals(key))
+				return node;
+			removed[0] = true;
+			updatedChild = null;
+		} else {
+			updatedChild = removeFromCollision((Collision) child, hash, key, removed);
+		}
+		if (updatedChild == child)
+			return node;
+		if (updatedChild != null) {
+			Node updated = node.editable(edit);
+			updated.children[index] = updatedChild;
+			return updated;
+		}
+		if (node.children.length == 1)
+			return null;
+		Object[] children = new Object[node.children.length - 1];
+		System.arraycopy(node.children, 0, children, 0, index);
+		System.arraycopy(node.children, index + 1, children, index, children.length - index);
+		return node.with(edit, node.bitmap & ~bit, children);
+	}
+
+	/**
+	 * @return the only remaining leaf, if there is only one
+	 */
+	private static Object removeFromCollision(Collision collision, long hash, Object key,
+			boolean[] removed) {
+		if (collision.hash != hash)
+			return collision;
+		Leaf[] leaves = collision.leaves;
+		for (int i = 0; i < leaves.length; i++) {
+			if (leaves[i].key.equals(key)) {
+				removed[0] = true;
+				if (leaves.length == 2)
+					return leaves[1 - i];
+				Leaf[] updated = new Leaf[leaves.length - 1];
+				System.arraycopy(leaves, 0, updated, 0, i);
+				System.arraycopy(leaves, i + 1, updated, i, updated.length - i);
+				return new Collision(hash, updated);
+			}
+		}
+		return collision;
+	}
+
+	/**
+	 * A depth-first visit, with the nodes and leaves still to be visited in a
+	 * stack, the next one on top.
+	 */
+	private static final class Values<V> implements Iterator<V> {
+		private final Deque<Object> pending = new ArrayDeque<>();
+
+		Values(Node root, long after, boolean bounded) {
+			if (!bounded) {
+				pending.push(root);
+				return;
+			}
+			// the children after the path to the bound are pushed before,
+			// so that they are visited after, the ones deeper in the path
+			Node node = root;
+			for (int shift = TOP_SHIFT; node != null; shift -= BITS) {
+				int chunk = (int) (after >>> shift) & MASK;
+				Object onPath = null;
+				long remaining = node.bitmap;
+				for (int i = node.children.length - 1; i >= 0; i--) {
+					Object child = node.children[i];
+					// the chunk of the last child is the highest bit
+					int childChunk = Long.SIZE - 1 - Long.numberOfLeadingZeros(remaining);
+					remaining &= ~(1L << childChunk);
+					if (childChunk > chunk)
+						pending.push(child);
+					else if (childChunk == chunk)
+						onPath = child;
+				}
+				node = null;
+				if (onPath instanceof Node) {
+					node = (Node) onPath;
+				} else if (onPath != null) {
+					long hash = onPath instanceof Leaf ?
+						((Leaf) onPath).hash : ((Collision) onPath).hash;
+					if (Long.compareUnsigned(hash, after) > 0)
+						pending.push(onPath);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!pending.isEmpty() && !(pending.peek() instanceof Leaf)) {
+				Object top = pending.pop();
+				Object[] children = top instanceof Node ?
+					((Node) top).children : ((Collision) top).leaves;
+				for (int i = children.length - 1; i >= 0; i--) {
+					pending.push(children[i]);
+				}
+			}
+			return !pending.isEmpty();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return (V) ((Leaf) pending.pop()).value;
+		}
+	}
+}
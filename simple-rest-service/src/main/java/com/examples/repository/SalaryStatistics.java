@@ -0,0 +1,111 @@
+package com.examples.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.examples.model.EmployeeStatistics;
+import com.examples.model.SalaryBucket;
+
+/**
+ * The count, the sum and the histogram of the salaries, updated as employees
+ * are added and removed; the counters are {@link LongAdder}s, so concurrent
+ * updates do not contend on the same memory location, and reading them never
+ * visits the employees.
+ *
+ * The histogram has power of 2 buckets: the negative salaries, 0, 1, 2-3, 4-7
+ * and so on, up to 2^30-{@link Integer#MAX_VALUE}.
+ *
+ * The counters are read one by one, so while employees are being saved the
+ * statistics might be slightly inconsistent with each other.
+ */
+class SalaryStatistics {
+
+	private static final int BUCKETS = 33;
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+	SalaryStatistics() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	void add(int salary) {
+		add(salary, 1);
+	}
+
+	/**
+	 * @param times
+	 *            the number of employees with the salary, negative for removing
+	 *            them
+	 */
+	void add(int salary, long times) {
+		count.add(times);
+		sum.add(salary * times);
+		buckets[bucket(salary)].add(times);
+	}
+
+	void remove(int salary) {
+		add(salary, -1);
+	}
+
+	/**
+	 * Adds the employees counted in other statistics, e.g., of another
+	 * repository.
+	 */
+	void add(EmployeeStatistics statistics) {
+		count.add(statistics.getCount());
+		sum.add(statistics.getSum());
+		for (SalaryBucket bucket : statistics.getHistogram()) {
+			buckets[bucket(bucket.getMin())].add(bucket.getCount());
+		}
+	}
+
+	long count() {
+		return count.sum();
+	}
+
+	/**
+	 * @param min
+	 *            the minimum salary, which is not tracked here, ignored without
+	 *            employees
+	 * @param max
+	 *            the maximum salary, ignored without employees
+	 */
+	EmployeeStatistics statistics(Integer min, Integer max) {
+		List<SalaryBucket> histogram = new ArrayList<>();
+		for (int i = 0; i < BUCKETS; i++) {
+			long employees = buckets[i].sum();
+			if (employees > 0)
+				histogram.add(new SalaryBucket(bucketMin(i), bucketMax(i), employees));
+		}
+		long employees = count.sum();
+		return new EmployeeStatistics(employees, sum.sum(),
+			employees > 0 ? min : null, employees > 0 ? max : null, histogram);
+	}
+
+	private static int bucket(int salary) {
+		if (salary < 0)
+			return 0;
+		// 1 for 0, 2 for 1, 3 for 2-3, and so on
+		return 33 - Integer.numberOfLeadingZeros(salary);
+	}
+
+	private static int bucketMin(int bucket) {
+		if (bucket == 0)
+			return Integer.MIN_VALUE;
+		return bucket == 1 ? 0 : 1 << (bucket - 2);
+	}
+
+	private static int bucketMax(int bucket) {
+		if (bucket == 0)
+			return -1;
+		// the last one overflows to Integer.MAX_VALUE
+		return bucket == 1 ? 0 : (1 << (bucket - 1)) - 1;
+	}
+}
@@ -0,0 +1,275 @@
+package com.examples.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
+import com.examples.repository.ConcurrentInMemoryEmployeeRepository.Positioned;
+
+/**
+ * An in-memory repository that splits the employees over a fixed number of
+ * independent {@link ConcurrentInMemoryEmployeeRepository} shards, by the hash
+ * of their id, so that writes to different shards do not contend on the same
+ * maps and indexes.
+ *
+ * Operations on a single id go to its shard only. The shards share the
+ * generation of ids and of insertion positions, so {@link #findAll()} and the
+ * other queries merge the employees of all the shards in the same order of a
+ * single {@link ConcurrentInMemoryEmployeeRepository}; the queries that visit
+ * many employees, like {@link #findAll()}, {@link #findBySalaryRange(int, int)}
+ * and {@link #searchByName(String, boolean, int)}, query the shards in
+ * parallel, in the common {@link java.util.concurrent.ForkJoinPool}.
+ *
+ * Like the shards, the results are weakly consistent.
+ */
+public class ShardedEmployeeRepository implements EmployeeRepository {
+
+	private static final Comparator<Positioned> BY_POSITION =
+		Comparator.comparingLong(positioned -> positioned.position);
+
+	private static final Comparator<Positioned> BY_SALARY =
+		Comparator.<Positioned> comparingInt(positioned -> positioned.employee.getSalary())
+			.thenComparing(BY_POSITION);
+
+	private final ConcurrentInMemoryEmployeeRepository[] shards;
+
+	/**
+	 * A repository with the initial employees.
+	 * 
+	 * @param shards
+	 *            the number of shards
+	 * @throws IllegalArgumentException
+	 *             if the number of shards is not positive
+	 */
+	public ShardedEmployeeRepository(int shards) {
+		if (shards < 1)
+			throw new IllegalArgumentException("Invalid number of shards " + shards);
+		this.shards = new ConcurrentInMemoryEmployeeRepository[shards];
+		AtomicLong idSequence = new AtomicLong();
+		AtomicLong positions = new AtomicLong();
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = ConcurrentInMemoryEmployeeRepository.shard(idSequence, positions);
+		}
+		ConcurrentInMemoryEmployeeRepository.initialEmployees().forEach(this::save);
+	}
+
+	public int getShards() {
+		return shards.length;
+	}
+
+	@Override
+	public List<Employee> findAll() {
+		List<Positioned> all = new ArrayList<>();
+		inParallel(shard -> {
+			List<Positioned> employees = new ArrayList<>();
+			shard.positionedAfter(0).forEachRemaining(employees::add);
+			return employees;
+		}).forEach(all::addAll);
+		// each shard is already sorted, and the sort takes advantage of that
+		all.sort(BY_POSITION);
+		return employees(all);
+	}
+
+	/**
+	 * Merges the shards while the stream is consumed, without copying the
+	 * employees.
+	 */
+	@Override
+	public Stream<Employee> streamAll() {
+		return StreamSupport.stream(
+			Spliterators.spliteratorUnknownSize(mergeAfter(0), Spliterator.ORDERED), false);
+	}
+
+	@Override
+	public Optional<Employee> findOne(String id) {
+		return shardFor(id).findOne(id);
+	}
+
+	@Override
+	public long count() {
+		long count = 0;
+		for (ConcurrentInMemoryEmployeeRepository shard : shards) {
+			count += shard.count();
+		}
+		return count;
+	}
+
+	@Override
+	public EmployeeStatistics statistics() {
+		SalaryStatistics statistics = new SalaryStatistics();
+		Integer min = null;
+		Integer max = null;
+		for (ConcurrentInMemoryEmployeeRepository shard : shards) {
+			EmployeeStatistics shardStatistics = shard.statistics();
+			statistics.add(shardStatistics);
+			if (shardStatistics.getMin() != null && (min == null || shardStatistics.getMin() < min))
+				min = shardStatistics.getMin();
+			if (shardStatistics.getMax() != null && (max == null || shardStatistics.getMax() > max))
+				max = shardStatistics.getMax();
+		}
+		return statistics.statistics(min, max);
+	}
+
+	@Override
+	public List<Employee> findBySalaryRange(int minSalary, int maxSalary) {
+		List<Positioned> found = new ArrayList<>();
+		inParallel(shard -> shard.findPositionedBySalaryRange(minSalary, maxSalary))
+			.forEach(found::addAll);
+		// each shard is already sorted, and the sort takes advantage of that
+		found.sort(BY_SALARY);
+		return employees(found);
+	}
+
+	/**
+	 * Differently from {@link ConcurrentInMemoryEmployeeRepository}, the found
+	 * employees are in insertion order.
+	 */
+	@Override
+	public List<Employee> searchByName(String query, boolean prefix, int limit) {
+		List<Positioned> found = new ArrayList<>();
+		inParallel(shard -> shard.searchPositionedByName(query, prefix, limit))
+			.forEach(found::addAll);
+		found.sort(BY_POSITION);
+		return employees(found.subList(0, Math.min(limit, found.size())));
+	}
+
+	/**
+	 * The cursor is the insertion position of the last employee of the previous
+	 * page, like in {@link ConcurrentInMemoryEmployeeRepository}.
+	 */
+	@Override
+	public EmployeePage findPage(String cursor, int limit) {
+		long after = 0;
+		if (cursor != null) {
+			try {
+				after = Long.parseLong(cursor);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+			}
+		}
+		List<Employee> employeesInPage = new ArrayList<>();
+		long last = after;
+		PositionedMerge merge = mergeAfter(after);
+		while (employeesInPage.size() < limit && merge.hasNext()) {
+			Positioned positioned = merge.nextPositioned();
+			employeesInPage.add(positioned.employee);
+			last = positioned.position;
+		}
+		return new EmployeePage(employeesInPage,
+			merge.hasNext() ? String.valueOf(last) : null);
+	}
+
+	/**
+	 * If the passed employee has no id, then it is generated automatically,
+	 * unique across all the shards.
+	 */
+	@Override
+	public Employee save(Employee employee) {
+		if (employee.getEmployeeId() != null)
+			return shardFor(employee.getEmployeeId()).save(employee);
+		// another thread might have used the generated id explicitly
+		do {
+			employee.setEmployeeId(shards[0].generateId());
+		} while (!shardFor(employee.getEmployeeId()).insert(employee));
+		return employee;
+	}
+
+	@Override
+	public Employee deleteById(String id) {
+		return shardFor(id).deleteById(id);
+	}
+
+	private ConcurrentInMemoryEmployeeRepository shardFor(String id) {
+		int h = id.hashCode();
+		// spread the higher bits, like HashMap does
+		return shards[Math.floorMod(h ^ (h >>> 16), shards.length)];
+	}
+
+	/**
+	 * @return the results of the shards, in the order of the shards
+	 */
+	private <T> List<T> inParallel(Function<ConcurrentInMemoryEmployeeRepository, T> query) {
+		return IntStream.range(0, shards.length)
+			.parallel()
+			.mapToObj(i -> query.apply(shards[i]))
+			.collect(Collectors.toList());
+	}
+
+	private PositionedMerge mergeAfter(long position) {
+		List<Iterator<Positioned>> iterators = new ArrayList<>();
+		for (ConcurrentInMemoryEmployeeRepository shard : shards) {
+			iterators.add(shard.positionedAfter(position));
+		}
+		return new PositionedMerge(iterators);
+	}
+
+	private static List<Employee> employees(List<Positioned> found) {
+		return found.stream()
+			.map(positioned -> positioned.employee)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Merges iterators sorted by position, keeping the next employee of each of
+	 * them in a heap.
+	 */
+	private static class PositionedMerge implements Iterator<Employee> {
+
+		private static class Head {
+			private final Positioned positioned;
+			private final Iterator<Positioned> rest;
+
+			Head(Positioned positioned, Iterator<Positioned> rest) {
+				this.positioned = positioned;
+				this.rest = rest;
+			}
+		}
+
+		private final PriorityQueue<Head> heads;
+
+		PositionedMerge(List<Iterator<Positioned>> iterators) {
+			heads = new PriorityQueue<>(Math.max(iterators.size(), 1),
+				Comparator.comparing(head -> head.positioned, BY_POSITION));
+			for (Iterator<Positioned> iterator : iterators) {
+				advance(iterator);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !heads.isEmpty();
+		}
+
+		@Override
+		public Employee next() {
+			return nextPositioned().employee;
+		}
+
+		Positioned nextPositioned() {
+			Head head = heads.poll();
+			if (head == null)
+				throw new NoSuchElementException();
+			advance(head.rest);
+			return head.positioned;
+		}
+
+		private void advance(Iterator<Positioned> iterator) {
+			if (iterator.hasNext())
+				heads.add(new Head(iterator.next(), iterator));
+		}
+	}
+}
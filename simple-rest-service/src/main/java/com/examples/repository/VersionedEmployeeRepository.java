@@ -0,0 +1,350 @@
+package com.examples.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.examples.model.Employee;
+
+/**
+ * An in-memory repository whose contents are an immutable {@link Version},
+ * made of {@link PersistentHashTrie}s, so that reads never wait: they just
+ * read the current version, and all the reads on the same version, e.g.,
+ * {@link #streamAll()} or {@link #findPage(String, int)}, see a consistent
+ * snapshot, taken in constant time, without copying the employees.
+ *
+ * A write builds a new version from the current one, copying only the nodes
+ * on the paths to the changed employees. Writes are combined: each one is
+ * queued, and whoever holds the write lock applies all the queued ones to a
+ * single new version and publishes it, so concurrent writes share the copied
+ * nodes, and a large batch never has to start again because of smaller ones.
+ * {@link #saveAll(List)} and {@link #deleteAll(List)} build a single version
+ * for all the employees, so each node is copied once per batch, and the batch
+ * is atomic.
+ *
+ * Like {@link ConcurrentInMemoryEmployeeRepository}, generated ids are never
+ * reused, and {@link #findAll()} returns the employees in insertion order.
+ */
+public class VersionedEmployeeRepository implements EmployeeRepository {
+
+	// spreads the hash code of an id to the most significant bits,
+	// which select the first levels of the trie
+	private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * An employee together with its insertion position.
+	 */
+	private static final class Entry {
+		private final long position;
+		private final Employee employee;
+
+		Entry(long position, Employee employee) {
+			this.position = position;
+			this.employee = employee;
+		}
+	}
+
+	/**
+	 * The employees by id and by insertion position, which is also their
+	 * order in the trie.
+	 */
+	private static final class Version {
+		private final PersistentHashTrie<String, Entry> byId;
+		private final PersistentHashTrie<Long, Entry> byPosition;
+		private final long lastPosition;
+		// the last number used for generating an id
+		private final long idSequence;
+
+		Version(PersistentHashTrie<String, Entry> byId, PersistentHashTrie<Long, Entry> byPosition,
+				long lastPosition, long idSequence) {
+			this.byId = byId;
+			this.byPosition = byPosition;
+			this.lastPosition = lastPosition;
+			this.idSequence = idSequence;
+		}
+	}
+
+	/**
+	 * The writes that build the next version.
+	 */
+	private static final class Writes {
+		private final PersistentHashTrie.Editor<String, Entry> byId;
+		private final PersistentHashTrie.Editor<Long, Entry> byPosition;
+		// the employees whose id has been generated
+		private final List<Employee> generated = new ArrayList<>();
+		private long lastPosition;
+		private long idSequence;
+
+		Writes(Version version) {
+			byId = version.byId.edit();
+			byPosition = version.byPosition.edit();
+			lastPosition = version.lastPosition;
+			idSequence = version.idSequence;
+		}
+
+		Employee save(Employee employee) {
+			String id = employee.getEmployeeId();
+			if (id == null) {
+				// an explicit id might have been used after the last generated one
+				do {
+					id = ConcurrentInMemoryEmployeeRepository.ID_PREFIX + ++idSequence;
+				} while (byId.get(id) != null);
+				employee.setEmployeeId(id);
+				generated.add(employee);
+			} else {
+				idSequence = Math.max(idSequence,
+					ConcurrentInMemoryEmployeeRepository.generatedIdNumber(id));
+			}
+			Entry existing = byId.get(id);
+			// replacing an employee does not change its position
+			Entry entry = new Entry(existing != null ? existing.position : ++lastPosition, employee);
+			byId.put(id, entry);
+			byPosition.put(entry.position, entry);
+			return employee;
+		}
+
+		Employee delete(String id) {
+			Entry existing = byId.get(id);
+			if (existing == null)
+				return null;
+			byId.remove(id);
+			byPosition.remove(existing.position);
+			return existing.employee;
+		}
+
+		Version done() {
+			return new Version(byId.done(), byPosition.done(), lastPosition, idSequence);
+		}
+
+		/**
+		 * Before applying the same writes again, e.g., without a failed one.
+		 */
+		void discard() {
+			generated.forEach(employee -> employee.setEmployeeId(null));
+		}
+	}
+
+	/**
+	 * A write waiting to be applied, with its outcome once it is done.
+	 */
+	private static final class PendingWrite<T> {
+		private final Function<Writes, T> writes;
+		private T result;
+		private RuntimeException failure;
+		private boolean done;
+
+		PendingWrite(Function<Writes, T> writes) {
+			this.writes = writes;
+		}
+
+		void apply(Writes next) {
+			result = writes.apply(next);
+		}
+
+		T get() {
+			if (failure != null)
+				throw failure;
+			return result;
+		}
+	}
+
+	private final AtomicReference<Version> current = new AtomicReference<>(new Version(
+		PersistentHashTrie.empty(VersionedEmployeeRepository::hash),
+		PersistentHashTrie.empty(Long::longValue), 0, 0));
+
+	private final Queue<PendingWrite<?>> pending = new ConcurrentLinkedQueue<>();
+
+	// held by the thread applying the pending writes
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	private final AtomicLong versions = new AtomicLong();
+
+	public VersionedEmployeeRepository() {
+		// initialize the "db" with some contents
+		saveAll(ConcurrentInMemoryEmployeeRepository.initialEmployees());
+	}
+
+	@Override
+	public List<Employee> findAll() {
+		Version version = current.get();
+		List<Employee> employees = new ArrayList<>(version.byPosition.size());
+		version.byPosition.values().forEachRemaining(entry -> employees.add(entry.employee));
+		return employees;
+	}
+
+	/**
+	 * The stream reads the version that is current when it is created, without
+	 * copying it.
+	 */
+	@Override
+	public Stream<Employee> streamAll() {
+		Version version = current.get();
+		Iterator<Entry> entries = version.byPosition.values();
+		return StreamSupport.stream(Spliterators.spliterator(entries,
+				version.byPosition.size(), Spliterator.ORDERED | Spliterator.NONNULL), false)
+			.map(entry -> entry.employee);
+	}
+
+	@Override
+	public Optional<Employee> findOne(String id) {
+		return Optional.ofNullable(current.get().byId.get(id))
+			.map(entry -> entry.employee);
+	}
+
+	@Override
+	public List<Employee> findAllById(Collection<String> ids) {
+		Version version = current.get();
+		List<Employee> found = new ArrayList<>();
+		for (String id : ids) {
+			Entry entry = version.byId.get(id);
+			if (entry != null)
+				found.add(entry.employee);
+		}
+		return found;
+	}
+
+	@Override
+	public long count() {
+		return current.get().byId.size();
+	}
+
+	/**
+	 * The cursor is the insertion position of the last employee of the previous
+	 * page, so pages are stable even in case of insertions and deletions, and
+	 * only the employees of the page are visited.
+	 */
+	@Override
+	public EmployeePage findPage(String cursor, int limit) {
+		long after = 0;
+		if (cursor != null) {
+			try {
+				after = Long.parseLong(cursor);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+			}
+			if (after < 0)
+				throw new IllegalArgumentException("Invalid cursor " + cursor);
+		}
+		List<Employee> employeesInPage = new ArrayList<>();
+		long last = after;
+		Iterator<Entry> entries = current.get().byPosition.valuesAfter(after);
+		while (employeesInPage.size() < limit && entries.hasNext()) {
+			Entry entry = entries.next();
+			employeesInPage.add(entry.employee);
+			last = entry.position;
+		}
+		return new EmployeePage(employeesInPage,
+			entries.hasNext() ? String.valueOf(last) : null);
+	}
+
+	/**
+	 * If the passed employee has no id, then it is generated automatically.
+	 */
+	@Override
+	public Employee save(Employee employee) {
+		return write(writes -> writes.save(employee));
+	}
+
+	@Override
+	public Employee deleteById(String id) {
+		return write(writes -> writes.delete(id));
+	}
+
+	/**
+	 * All the employees are saved atomically, in a single new version.
+	 */
+	@Override
+	public List<Employee> saveAll(List<Employee> employees) {
+		return write(writes -> employees.stream()
+			.map(writes::save)
+			.collect(Collectors.toList()));
+	}
+
+	/**
+	 * All the employees are deleted atomically, in a single new version.
+	 */
+	@Override
+	public List<Employee> deleteAll(List<String> ids) {
+		return write(writes -> ids.stream()
+			.map(writes::delete)
+			.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Queues the writes, then waits for the write lock: by then, they have
+	 * usually been applied by the previous holder, together with the others
+	 * queued in the meantime; otherwise, this thread applies all the queued
+	 * ones. The writes must not have other side effects than generating ids.
+	 */
+	private <T> T write(Function<Writes, T> writes) {
+		PendingWrite<T> write = new PendingWrite<>(writes);
+		pending.add(write);
+		writeLock.lock();
+		try {
+			if (!write.done)
+				applyPending();
+		} finally {
+			writeLock.unlock();
+		}
+		return write.get();
+	}
+
+	/**
+	 * Applies the queued writes, in order, to a single new version; the ones
+	 * failing are left out, without changing it.
+	 */
+	private void applyPending() {
+		List<PendingWrite<?>> batch = new ArrayList<>();
+		for (PendingWrite<?> write; (write = pending.poll()) != null;) {
+			batch.add(write);
+		}
+		Version version = current.get();
+		while (true) {
+			Writes next = new Writes(version);
+			PendingWrite<?> failed = null;
+			for (PendingWrite<?> write : batch) {
+				try {
+					write.apply(next);
+				} catch (RuntimeException e) {
+					write.failure = e;
+					failed = write;
+					break;
+				}
+			}
+			if (failed == null) {
+				current.set(next.done());
+				versions.incrementAndGet();
+				batch.forEach(write -> write.done = true);
+				return;
+			}
+			// start again without the failed write, and with no generated ids
+			next.discard();
+			failed.done = true;
+			batch.remove(failed);
+		}
+	}
+
+	/**
+	 * @return the number of versions published so far
+	 */
+	long versions() {
+		return versions.get();
+	}
+
+	private static long hash(String id) {
+		return id.hashCode() * GOLDEN_RATIO;
+	}
+}
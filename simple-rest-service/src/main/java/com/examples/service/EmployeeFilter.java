@@ -0,0 +1,253 @@
+package com.examples.service;
+
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.examples.model.Employee;
+
+/**
+ * Compiles a filter expression into a {@link Predicate} over employees, e.g.,
+ *
+ * <pre>
+ * salary &gt; 1000 and name ~ "First"
+ * not (id = "ID1" or salary &lt;= 0)
+ * </pre>
+ *
+ * A comparison is a field, an operator and a value:
+ * <ul>
+ * <li>"salary" with an integer and =, !=, &lt;, &lt;=, &gt;, &gt;=</li>
+ * <li>"id" and "name" with a string in double quotes (with \" and \\ for a
+ * quote and a backslash), and = (equal), != (not equal) or ~ (contains,
+ * ignoring the case); a missing name is not equal to, and does not contain,
+ * any string</li>
+ * </ul>
+ * Comparisons can be combined with "not", "and" and "or", in decreasing order
+ * of precedence, and parentheses; keywords and fields are case insensitive.
+ *
+ * The expression is parsed only once, into a tree of lambdas, so evaluating the
+ * predicate does not depend on the text anymore.
+ */
+public final class EmployeeFilter {
+
+	/**
+	 * The maximum length of an expression, which also bounds the nesting of
+	 * parentheses.
+	 */
+	public static final int MAX_LENGTH = 1000;
+
+	private final String text;
+
+	// the position of the next char to read
+	private int position;
+
+	private EmployeeFilter(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @param expression
+	 * @return the predicate
+	 * @throws IllegalArgumentException
+	 *             if the expression is not valid, with its position in the
+	 *             message
+	 */
+	public static Predicate<Employee> compile(String expression) {
+		if (expression.length() > MAX_LENGTH)
+			throw new IllegalArgumentException(
+				"Invalid filter: longer than " + MAX_LENGTH + " chars");
+		EmployeeFilter filter = new EmployeeFilter(expression);
+		Predicate<Employee> predicate = filter.or();
+		filter.skipSpaces();
+		if (filter.position < expression.length())
+			throw filter.error("expected and, or, or the end of the filter");
+		return predicate;
+	}
+
+	private Predicate<Employee> or() {
+		Predicate<Employee> predicate = and();
+		while (keyword("or")) {
+			predicate = predicate.or(and());
+		}
+		return predicate;
+	}
+
+	private Predicate<Employee> and() {
+		Predicate<Employee> predicate = unary();
+		while (keyword("and")) {
+			predicate = predicate.and(unary());
+		}
+		return predicate;
+	}
+
+	private Predicate<Employee> unary() {
+		if (keyword("not"))
+			return unary().negate();
+		if (symbol("(")) {
+			Predicate<Employee> predicate = or();
+			if (!symbol(")"))
+				throw error("expected )");
+			return predicate;
+		}
+		return comparison();
+	}
+
+	private Predicate<Employee> comparison() {
+		skipSpaces();
+		int start = position;
+		String field = word();
+		switch (field.toLowerCase(Locale.ROOT)) {
+		case "salary":
+			return salaryComparison();
+		case "id":
+			return stringComparison(Employee::getEmployeeId);
+		case "name":
+			return stringComparison(Employee::getName);
+		default:
+			position = start;
+			throw error("expected id, name, salary, not or (");
+		}
+	}
+
+	private Predicate<Employee> salaryComparison() {
+		skipSpaces();
+		int start = position;
+		String operator = operator();
+		long value = number();
+		switch (operator) {
+		case "=":
+			return employee -> employee.getSalary() == value;
+		case "!=":
+			return employee -> employee.getSalary() != value;
+		case "<":
+			return employee -> employee.getSalary() < value;
+		case "<=":
+			return employee -> employee.getSalary() <= value;
+		case ">":
+			return employee -> employee.getSalary() > value;
+		case ">=":
+			return employee -> employee.getSalary() >= value;
+		default:
+			position = start;
+			throw error("expected =, !=, <, <=, > or >=");
+		}
+	}
+
+	private Predicate<Employee> stringComparison(Function<Employee, String> field) {
+		skipSpaces();
+		int start = position;
+		String operator = operator();
+		String value = string();
+		switch (operator) {
+		case "=":
+			return employee -> value.equals(field.apply(employee));
+		case "!=":
+			return employee -> !value.equals(field.apply(employee));
+		case "~":
+			return employee -> containsIgnoreCase(field.apply(employee), value);
+		default:
+			position = start;
+			throw error("expected =, != or ~");
+		}
+	}
+
+	private static boolean containsIgnoreCase(String string, String part) {
+		if (string == null)
+			return false;
+		for (int i = 0; i <= string.length() - part.length(); i++) {
+			if (string.regionMatches(true, i, part, 0, part.length()))
+				return true;
+		}
+		return false;
+	}
+
+	private String operator() {
+		skipSpaces();
+		int start = position;
+		while (position < text.length() && "=!<>~".indexOf(text.charAt(position)) >= 0) {
+			position++;
+		}
+		if (start == position)
+			throw error("expected an operator");
+		return text.substring(start, position);
+	}
+
+	private long number() {
+		skipSpaces();
+		int start = position;
+		if (position < text.length() && text.charAt(position) == '-')
+			position++;
+		while (position < text.length() && Character.isDigit(text.charAt(position))) {
+			position++;
+		}
+		try {
+			return Long.parseLong(text.substring(start, position));
+		} catch (NumberFormatException e) {
+			position = start;
+			throw error("expected an integer");
+		}
+	}
+
+	private String string() {
+		skipSpaces();
+		if (position == text.length() || text.charAt(position) != '"')
+			throw error("expected a string in double quotes");
+		StringBuilder value = new StringBuilder();
+		position++;
+		while (position < text.length()) {
+			char c = text.charAt(position++);
+			if (c == '"')
+				return value.toString();
+			if (c == '\\') {
+				if (position == text.length())
+					break;
+				c = text.charAt(position++);
+				if (c != '"' && c != '\\') {
+					position -= 2;
+					throw error("expected \\\" or \\\\");
+				}
+			}
+			value.append(c);
+		}
+		throw error("unterminated string");
+	}
+
+	private String word() {
+		int start = position;
+		while (position < text.length() && Character.isLetter(text.charAt(position))) {
+			position++;
+		}
+		return text.substring(start, position);
+	}
+
+	/**
+	 * Consumes the keyword, ignoring the case, if it is the next word.
+	 */
+	private boolean keyword(String keyword) {
+		skipSpaces();
+		int start = position;
+		if (word().equalsIgnoreCase(keyword))
+			return true;
+		position = start;
+		return false;
+	}
+
+	private boolean symbol(String symbol) {
+		skipSpaces();
+		if (!text.startsWith(symbol, position))
+			return false;
+		position += symbol.length();
+		return true;
+	}
+
+	private void skipSpaces() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+	}
+
+	private IllegalArgumentException error(String expected) {
+		return new IllegalArgumentException(
+			"Invalid filter at position " + position + ": " + expected);
+	}
+}
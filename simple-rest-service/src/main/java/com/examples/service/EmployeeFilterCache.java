@@ -0,0 +1,76 @@
+package com.examples.service;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import com.examples.model.Employee;
+
+/**
+ * A cache of the predicates compiled by {@link EmployeeFilter}, keyed by the
+ * text of the expression, so that filters used again and again, e.g., by a
+ * dashboard, are parsed only once.
+ *
+ * Invalid expressions are not cached. The number of predicates is bounded:
+ * when the cache is full an arbitrary predicate is evicted.
+ */
+public class EmployeeFilterCache {
+
+	private final int maxSize;
+
+	private final ConcurrentMap<String, Predicate<Employee>> predicates =
+		new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	public EmployeeFilterCache(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Invalid cache size " + maxSize);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param expression
+	 * @return the compiled predicate, possibly taken from the cache
+	 * @throws IllegalArgumentException
+	 *             if the expression is not valid
+	 */
+	public Predicate<Employee> get(String expression) {
+		Predicate<Employee> predicate = predicates.get(expression);
+		if (predicate != null) {
+			hits.increment();
+			return predicate;
+		}
+		misses.increment();
+		predicate = EmployeeFilter.compile(expression);
+		if (predicates.size() >= maxSize)
+			evictOne();
+		// compiling the same expression twice is harmless
+		predicates.put(expression, predicate);
+		return predicate;
+	}
+
+	private void evictOne() {
+		Iterator<String> expressions = predicates.keySet().iterator();
+		if (expressions.hasNext()) {
+			expressions.next();
+			expressions.remove();
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public int size() {
+		return predicates.size();
+	}
+}
@@ -1,19 +1,168 @@
 package com.examples.service;
 
 import java.util.List;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.NotFoundException;
 
 import com.examples.model.Employee;
+import com.examples.model.EmployeeLookup;
+import com.examples.model.EmployeeOperation;
+import com.examples.model.EmployeeOperationResult;
+import com.examples.model.EmployeeStatistics;
+import com.examples.repository.EmployeePage;
 
 public interface EmployeeService {
 
 	List<Employee> allEmployees();
 
+	EmployeePage employeesPage(String cursor, int limit);
+
+	/**
+	 * Searches the employees by name, see
+	 * {@link com.examples.repository.EmployeeRepository#searchByName(String, boolean, int)}.
+	 * 
+	 * @param query
+	 * @param match
+	 *            "prefix" or "token", null for "prefix"
+	 * @param limit
+	 * @return
+	 * @throws BadRequestException
+	 *             if the query has no letters or digits, the match is not valid
+	 *             or the limit is not valid
+	 */
+	List<Employee> searchEmployees(String query, String match, int limit);
+
+	Stream<Employee> streamAllEmployees();
+
+	/**
+	 * Returns the employees that satisfy the filter, see {@link EmployeeFilter}
+	 * for the syntax, in the same order of {@link #allEmployees()}; the filter is
+	 * compiled only once, and then reused for the same text.
+	 * 
+	 * @param filter
+	 * @return the matching employees, lazily, to be closed
+	 * @throws BadRequestException
+	 *             if the filter is missing or not valid
+	 */
+	Stream<Employee> filterEmployees(String filter);
+
+	long countEmployees();
+
+	/**
+	 * @return the statistics of the salaries, without visiting the employees if
+	 *         the repository keeps them up to date
+	 */
+	EmployeeStatistics salaryStatistics();
+
+	/**
+	 * Returns the employees with a salary in the given range, sorted by salary
+	 * or by name; employees with the same salary, or the same name, are in the
+	 * same order of {@link #allEmployees()}.
+	 * 
+	 * @param minSalary
+	 *            inclusive, null for no lower bound
+	 * @param maxSalary
+	 *            inclusive, null for no upper bound
+	 * @param sort
+	 *            "salary" or "name", null for "salary"
+	 * @return
+	 * @throws BadRequestException
+	 *             if the range is empty or the sort is not valid
+	 */
+	List<Employee> employeesBySalary(Integer minSalary, Integer maxSalary, String sort);
+
 	Employee getEmployeeById(String id);
 
 	Employee addEmployee(Employee employee);
 
 	Employee replaceEmployeeById(String id, Employee employee);
 
+	/**
+	 * Like {@link #replaceEmployeeById(String, Employee)}, but only if the current
+	 * version of the existing employee satisfies the precondition, which is
+	 * checked atomically with the replacement.
+	 * 
+	 * @param id
+	 * @param employee
+	 * @param precondition
+	 * @return
+	 * @throws ClientErrorException
+	 *             with status 412 if the precondition is not satisfied or the
+	 *             employee does not exist
+	 */
+	Employee replaceEmployeeById(String id, Employee employee, LongPredicate precondition);
+
 	Employee deleteEmployeeById(String id);
 
+	/**
+	 * Like {@link #deleteEmployeeById(String)}, but only if the current version of
+	 * the existing employee satisfies the precondition, which is checked
+	 * atomically with the deletion.
+	 * 
+	 * @param id
+	 * @param precondition
+	 * @return
+	 * @throws ClientErrorException
+	 *             with status 412 if the precondition is not satisfied or the
+	 *             employee does not exist
+	 */
+	Employee deleteEmployeeById(String id, LongPredicate precondition);
+
+	/**
+	 * Looks up all the employees with the given ids at once; ids that are not
+	 * found are reported in the result, instead of causing a 404.
+	 * 
+	 * @param ids
+	 *            duplicates are looked up only once
+	 * @return
+	 * @throws BadRequestException
+	 *             if there are no ids or too many ids
+	 */
+	EmployeeLookup lookupEmployees(List<String> ids);
+
+	/**
+	 * Applies all the operations, in order, holding the locks for all the
+	 * involved ids only once; an operation that fails does not prevent the
+	 * others from being applied.
+	 * 
+	 * @param operations
+	 * @return the result of each operation, in the same order
+	 * @throws BadRequestException
+	 *             if there are no operations or too many operations
+	 */
+	List<EmployeeOperationResult> applyOperations(List<EmployeeOperation> operations);
+
+	/**
+	 * @param id
+	 * @return the current version of the employee with the given id, which
+	 *         changes each time such employee is changed
+	 * @throws NotFoundException
+	 *             if there's no employee with the given id
+	 */
+	long versionOf(String id);
+
+	/**
+	 * @param id
+	 * @return the time, in milliseconds, of the last change of the employee with
+	 *         the given id
+	 * @throws NotFoundException
+	 *             if there's no employee with the given id
+	 */
+	long lastModifiedOf(String id);
+
+	/**
+	 * @return the current version of the collection of employees, which changes
+	 *         each time any employee is changed
+	 */
+	long collectionVersion();
+
+	/**
+	 * @return the time, in milliseconds, of the last change of any employee
+	 */
+	long collectionLastModified();
+
 }
\ No newline at end of file
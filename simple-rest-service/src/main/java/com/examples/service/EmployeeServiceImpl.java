@@ -1,30 +1,222 @@
 package com.examples.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.inject.Inject;
 import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
 
 import com.examples.model.Employee;
+import com.examples.model.EmployeeLookup;
+import com.examples.model.EmployeeOperation;
+import com.examples.model.EmployeeOperation.Kind;
+import com.examples.model.EmployeeOperationResult;
+import com.examples.model.EmployeeStatistics;
+import com.examples.repository.EmployeePage;
 import com.examples.repository.EmployeeRepository;
 
+/**
+ * Reads do not take any lock, so the repository must be safe for concurrent
+ * access.
+ *
+ * Writes are serialized per id using lock striping: the id is mapped to one of
+ * a fixed number of locks, so writes to different ids (most likely) run in
+ * parallel, while a check-then-act sequence on the same id, like in
+ * {@link #replaceEmployeeById(String, Employee)}, is still atomic with respect
+ * to other writes to that id.
+ */
 public class EmployeeServiceImpl implements EmployeeService {
 
+	// must be a power of 2
+	private static final int LOCK_STRIPES = 64;
+
+	/**
+	 * The maximum number of employees in a page, to bound the cost of a single
+	 * request.
+	 */
+	public static final int MAX_PAGE_LIMIT = 1000;
+
+	/**
+	 * The maximum number of ids that can be looked up at once.
+	 */
+	public static final int MAX_LOOKUP_SIZE = 1000;
+
+	/**
+	 * The maximum number of operations in a batch, to bound the time the locks
+	 * are held.
+	 */
+	public static final int MAX_BATCH_SIZE = 1000;
+
+	/**
+	 * The number of compiled filters kept in the {@link EmployeeFilterCache}.
+	 */
+	public static final int FILTER_CACHE_SIZE = 1000;
+
+	// the number of employees filtered in parallel at a time
+	private static final int FILTER_CHUNK_SIZE = 4096;
+
+	private static final String SORT_BY_SALARY = "salary";
+
+	private static final String SORT_BY_NAME = "name";
+
+	private static final String MATCH_PREFIX = "prefix";
+
+	private static final String MATCH_TOKEN = "token";
+
 	private EmployeeRepository employeeRepository;
 
+	private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+	private final EmployeeVersions versions = new EmployeeVersions();
+
+	private final EmployeeFilterCache filters = new EmployeeFilterCache(FILTER_CACHE_SIZE);
+
 	@Inject
 	public EmployeeServiceImpl(EmployeeRepository employeeRepository) {
 		this.employeeRepository = employeeRepository;
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
 	}
 
 	@Override
-	public synchronized List<Employee> allEmployees() {
+	public List<Employee> allEmployees() {
 		return employeeRepository.findAll();
 	}
 
 	@Override
-	public synchronized Employee getEmployeeById(String id) {
+	public Stream<Employee> streamAllEmployees() {
+		return employeeRepository.streamAll();
+	}
+
+	@Override
+	public long countEmployees() {
+		return employeeRepository.count();
+	}
+
+	@Override
+	public EmployeeStatistics salaryStatistics() {
+		return employeeRepository.statistics();
+	}
+
+	@Override
+	public List<Employee> employeesBySalary(Integer minSalary, Integer maxSalary, String sort) {
+		int min = minSalary != null ? minSalary : Integer.MIN_VALUE;
+		int max = maxSalary != null ? maxSalary : Integer.MAX_VALUE;
+		if (min > max)
+			throw new BadRequestException("The minimum salary is greater than the maximum salary");
+		if (sort != null && !sort.equals(SORT_BY_SALARY) && !sort.equals(SORT_BY_NAME))
+			throw new BadRequestException(
+				"Sort must be " + SORT_BY_SALARY + " or " + SORT_BY_NAME);
+		List<Employee> employees = employeeRepository.findBySalaryRange(min, max);
+		if (SORT_BY_NAME.equals(sort)) {
+			employees = new ArrayList<>(employees);
+			// stable, so the same names stay in the order of the salary
+			employees.sort(Comparator.comparing(Employee::getName,
+				Comparator.nullsLast(Comparator.naturalOrder())));
+		}
+		return employees;
+	}
+
+	@Override
+	public EmployeePage employeesPage(String cursor, int limit) {
+		if (limit < 1 || limit > MAX_PAGE_LIMIT)
+			throw new BadRequestException(
+				"Page limit must be between 1 and " + MAX_PAGE_LIMIT);
+		try {
+			return employeeRepository.findPage(cursor, limit);
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage());
+		}
+	}
+
+	@Override
+	public List<Employee> searchEmployees(String query, String match, int limit) {
+		if (query == null || query.codePoints().noneMatch(Character::isLetterOrDigit))
+			throw new BadRequestException("Missing search query");
+		if (match != null && !match.equals(MATCH_PREFIX) && !match.equals(MATCH_TOKEN))
+			throw new BadRequestException(
+				"Match must be " + MATCH_PREFIX + " or " + MATCH_TOKEN);
+		if (limit < 1 || limit > MAX_PAGE_LIMIT)
+			throw new BadRequestException(
+				"Search limit must be between 1 and " + MAX_PAGE_LIMIT);
+		return employeeRepository.searchByName(query, !MATCH_TOKEN.equals(match), limit);
+	}
+
+	/**
+	 * The employees are read from {@link EmployeeRepository#streamAll()} in
+	 * chunks, only when the matches of the previous chunk have been consumed,
+	 * and each chunk is filtered in parallel, in the common
+	 * {@link java.util.concurrent.ForkJoinPool}; so the memory needed does not
+	 * depend on the number of employees, and the order is preserved.
+	 */
+	@Override
+	public Stream<Employee> filterEmployees(String filter) {
+		if (filter == null || filter.trim().isEmpty())
+			throw new BadRequestException("Missing filter");
+		Predicate<Employee> predicate;
+		try {
+			predicate = filters.get(filter);
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage());
+		}
+		Stream<Employee> source = employeeRepository.streamAll();
+		Iterator<Employee> employees = source.iterator();
+		Iterator<Employee> matches = new Iterator<Employee>() {
+			private Iterator<Employee> chunk = new ArrayList<Employee>().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!chunk.hasNext() && employees.hasNext()) {
+					List<Employee> read = new ArrayList<>(FILTER_CHUNK_SIZE);
+					while (read.size() < FILTER_CHUNK_SIZE && employees.hasNext()) {
+						read.add(employees.next());
+					}
+					chunk = read.parallelStream()
+						.filter(predicate)
+						.collect(Collectors.toList())
+						.iterator();
+				}
+				return chunk.hasNext();
+			}
+
+			@Override
+			public Employee next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return chunk.next();
+			}
+		};
+		return StreamSupport
+			.stream(Spliterators.spliteratorUnknownSize(matches, Spliterator.ORDERED), false)
+			.onClose(source::close);
+	}
+
+	@Override
+	public Employee getEmployeeById(String id) {
 		return employeeRepository
 			.findOne(id)
 			.orElseThrow(
@@ -32,18 +224,70 @@ public class EmployeeServiceImpl implements EmployeeService {
 	}
 
 	@Override
-	public synchronized Employee addEmployee(Employee employee) {
+	public EmployeeLookup lookupEmployees(List<String> ids) {
+		if (ids == null || ids.isEmpty())
+			throw new BadRequestException("Missing ids");
+		Set<String> distinct = new LinkedHashSet<>(ids);
+		if (distinct.size() > MAX_LOOKUP_SIZE)
+			throw new BadRequestException(
+				"At most " + MAX_LOOKUP_SIZE + " ids are allowed");
+		List<Employee> found = employeeRepository.findAllById(distinct);
+		Set<String> foundIds = found.stream()
+			.map(Employee::getEmployeeId)
+			.collect(Collectors.toSet());
+		List<String> missing = distinct.stream()
+			.filter(id -> !foundIds.contains(id))
+			.collect(Collectors.toList());
+		return new EmployeeLookup(found, missing);
+	}
+
+	@Override
+	public Employee addEmployee(Employee employee) {
 		sanityChecks(employee);
-		return employeeRepository.save(employee);
+		// the new id is generated by the repository, so there's
+		// no other write for the same id to synchronize with
+		Employee saved = employeeRepository.save(employee);
+		versions.changed(saved.getEmployeeId());
+		return saved;
 	}
 
 	@Override
-	public synchronized Employee replaceEmployeeById(String id, Employee employee) {
+	public Employee replaceEmployeeById(String id, Employee employee) {
+		return replace(id, employee, null);
+	}
+
+	/**
+	 * A precondition on an employee that does not exist always fails.
+	 */
+	@Override
+	public Employee replaceEmployeeById(String id, Employee employee, LongPredicate precondition) {
+		return replace(id, employee, precondition);
+	}
+
+	/**
+	 * @param precondition
+	 *            null if there is none
+	 */
+	private Employee replace(String id, Employee employee, LongPredicate precondition) {
 		sanityChecks(employee);
-		if (!employeeRepository.findOne(id).isPresent())
-			throw new NotFoundException("Employee not found with id " + id);
-		employee.setEmployeeId(id);
-		return employeeRepository.save(employee);
+		Lock lock = lockFor(id);
+		lock.lock();
+		try {
+			if (!employeeRepository.findOne(id).isPresent()) {
+				if (precondition != null)
+					throw new ClientErrorException(
+						"Employee not found with id " + id, Status.PRECONDITION_FAILED);
+				throw new NotFoundException("Employee not found with id " + id);
+			}
+			if (precondition != null)
+				checkPrecondition(id, precondition);
+			employee.setEmployeeId(id);
+			Employee saved = employeeRepository.save(employee);
+			versions.changed(id);
+			return saved;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	private void sanityChecks(Employee employee) {
@@ -55,9 +299,243 @@ public class EmployeeServiceImpl implements EmployeeService {
 		}
 	}
 
+	private void checkPrecondition(String id, LongPredicate precondition) {
+		if (!precondition.test(versions.versionOf(id)))
+			throw new ClientErrorException(
+				"Employee with id " + id + " has been modified",
+				Status.PRECONDITION_FAILED);
+	}
+
+	@Override
+	public Employee deleteEmployeeById(String id) {
+		Lock lock = lockFor(id);
+		lock.lock();
+		try {
+			return delete(id);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A precondition on an employee that does not exist always fails.
+	 */
+	@Override
+	public Employee deleteEmployeeById(String id, LongPredicate precondition) {
+		Lock lock = lockFor(id);
+		lock.lock();
+		try {
+			if (!employeeRepository.findOne(id).isPresent())
+				throw new ClientErrorException(
+					"Employee not found with id " + id, Status.PRECONDITION_FAILED);
+			checkPrecondition(id, precondition);
+			return delete(id);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock for the id.
+	 */
+	private Employee delete(String id) {
+		Employee deleted = employeeRepository.deleteById(id);
+		if (deleted != null)
+			versions.deleted(id);
+		return deleted;
+	}
+
+	@Override
+	public List<EmployeeOperationResult> applyOperations(List<EmployeeOperation> operations) {
+		if (operations == null || operations.isEmpty())
+			throw new BadRequestException("Missing operations");
+		if (operations.size() > MAX_BATCH_SIZE)
+			throw new BadRequestException(
+				"At most " + MAX_BATCH_SIZE + " operations are allowed");
+		// new employees get new ids, so only the locks for existing
+		// ids are needed, acquired in a fixed order to avoid deadlocks
+		SortedSet<Integer> stripes = new TreeSet<>();
+		for (EmployeeOperation operation : operations) {
+			if (operation != null && operation.getId() != null)
+				stripes.add(stripeFor(operation.getId()));
+		}
+		for (int stripe : stripes) {
+			locks[stripe].lock();
+		}
+		try {
+			return new Batch(operations).apply();
+		} finally {
+			for (int stripe : stripes) {
+				locks[stripe].unlock();
+			}
+		}
+	}
+
+	/**
+	 * Applies the operations in order, but consecutive saves (creations and
+	 * replacements) and consecutive deletions are sent to the repository in a
+	 * single call.
+	 *
+	 * Must be used while holding the locks for all the involved ids.
+	 */
+	private class Batch {
+		private final List<EmployeeOperation> operations;
+
+		private final EmployeeOperationResult[] results;
+
+		// whether an employee exists, taking into consideration
+		// also the operations that have not been sent yet
+		private final Map<String, Boolean> exists = new HashMap<>();
+
+		private List<Employee> toSave = new ArrayList<>();
+
+		private List<Integer> toSaveIndexes = new ArrayList<>();
+
+		private List<String> toDelete = new ArrayList<>();
+
+		private List<Integer> toDeleteIndexes = new ArrayList<>();
+
+		Batch(List<EmployeeOperation> operations) {
+			this.operations = operations;
+			this.results = new EmployeeOperationResult[operations.size()];
+		}
+
+		List<EmployeeOperationResult> apply() {
+			for (int i = 0; i < operations.size(); i++) {
+				EmployeeOperation operation = operations.get(i);
+				try {
+					add(i, operation);
+				} catch (WebApplicationException e) {
+					results[i] = new EmployeeOperationResult(
+						e.getResponse().getStatus(),
+						operation != null ? operation.getId() : null,
+						e.getMessage());
+				}
+			}
+			flushSaves();
+			flushDeletes();
+			return Arrays.asList(results);
+		}
+
+		private void add(int index, EmployeeOperation operation) {
+			if (operation == null || operation.getOp() == null)
+				throw new BadRequestException("Missing operation");
+			String id = operation.getId();
+			switch (operation.getOp()) {
+			case CREATE:
+				if (id != null)
+					throw new BadRequestException("Unexpected id specification for Employee");
+				sanityChecks(operation.getEmployee());
+				save(index, operation.getEmployee());
+				break;
+			case REPLACE:
+				checkId(id);
+				Employee employee = operation.getEmployee();
+				sanityChecks(employee);
+				if (!exists(id))
+					throw new NotFoundException("Employee not found with id " + id);
+				employee.setEmployeeId(id);
+				save(index, employee);
+				break;
+			case DELETE:
+				checkId(id);
+				flushSaves();
+				toDelete.add(id);
+				toDeleteIndexes.add(index);
+				exists.put(id, false);
+				break;
+			}
+		}
+
+		private void checkId(String id) {
+			if (id == null)
+				throw new BadRequestException("Missing id");
+		}
+
+		private boolean exists(String id) {
+			return exists.computeIfAbsent(id,
+				key -> employeeRepository.findOne(key).isPresent());
+		}
+
+		private void save(int index, Employee employee) {
+			flushDeletes();
+			toSave.add(employee);
+			toSaveIndexes.add(index);
+			if (employee.getEmployeeId() != null)
+				exists.put(employee.getEmployeeId(), true);
+		}
+
+		private void flushSaves() {
+			if (toSave.isEmpty())
+				return;
+			List<Employee> saved = employeeRepository.saveAll(toSave);
+			for (int i = 0; i < saved.size(); i++) {
+				int index = toSaveIndexes.get(i);
+				String id = saved.get(i).getEmployeeId();
+				versions.changed(id);
+				Status status = operations.get(index).getOp() == Kind.CREATE ?
+					Status.CREATED : Status.OK;
+				results[index] = new EmployeeOperationResult(status.getStatusCode(), id, null);
+			}
+			toSave = new ArrayList<>();
+			toSaveIndexes = new ArrayList<>();
+		}
+
+		private void flushDeletes() {
+			if (toDelete.isEmpty())
+				return;
+			List<Employee> deleted = employeeRepository.deleteAll(toDelete);
+			for (int i = 0; i < deleted.size(); i++) {
+				String id = toDelete.get(i);
+				if (deleted.get(i) != null)
+					versions.deleted(id);
+				// like a single deletion, also when the employee does not exist
+				results[toDeleteIndexes.get(i)] =
+					new EmployeeOperationResult(Status.ACCEPTED.getStatusCode(), id, null);
+			}
+			toDelete = new ArrayList<>();
+			toDeleteIndexes = new ArrayList<>();
+		}
+	}
+
+	@Override
+	public long versionOf(String id) {
+		checkExists(id);
+		return versions.versionOf(id);
+	}
+
 	@Override
-	public synchronized Employee deleteEmployeeById(String id) {
-		return employeeRepository.deleteById(id);
+	public long lastModifiedOf(String id) {
+		checkExists(id);
+		return versions.lastModifiedOf(id);
+	}
+
+	/**
+	 * Only the employees that are not tracked by the versions are looked up.
+	 */
+	private void checkExists(String id) {
+		if (!versions.isTracked(id) && !employeeRepository.findOne(id).isPresent())
+			throw new NotFoundException("Employee not found with id " + id);
+	}
+
+	@Override
+	public long collectionVersion() {
+		return versions.collectionVersion();
+	}
+
+	@Override
+	public long collectionLastModified() {
+		return versions.collectionLastModified();
+	}
+
+	private Lock lockFor(String id) {
+		return locks[stripeFor(id)];
+	}
+
+	private int stripeFor(String id) {
+		int h = id.hashCode();
+		// spread the higher bits, like HashMap does
+		return (h ^ (h >>> 16)) & (LOCK_STRIPES - 1);
 	}
 
 }
@@ -0,0 +1,118 @@
+package com.examples.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps track of the changes to the employees: every change gets a new version,
+ * taken from a single increasing counter, which is also the version of the
+ * collection of all the employees, and the time of the change.
+ *
+ * The counter starts from the creation time of this object, in milliseconds,
+ * shifted by 20 bits, so that the versions of a process are greater than the
+ * ones of the previous processes, e.g., before a restart with a durable
+ * repository, and an ETag obtained from a previous process never matches
+ * different data (unless the previous process made more than 2^20 changes per
+ * millisecond, or the clock went back).
+ *
+ * Only the employees changed since the creation of this object are tracked,
+ * and a deleted employee is not tracked anymore, so the memory does not grow
+ * with the ids ever written. The version of an employee that is not tracked is
+ * the initial one, and its last modification time is the creation time of this
+ * object: whether such an employee exists must be checked elsewhere (see
+ * {@link #isTracked(String)}). Since a deletion changes the version of the
+ * collection, an employee created again gets a version it never had before.
+ *
+ * A change must be recorded after the data has been written, and a version must
+ * be read before reading the data: this way, data read with a version is never
+ * older than that version.
+ */
+public class EmployeeVersions {
+
+	private static class Stamp {
+		private final long version;
+		private final long lastModified;
+
+		Stamp(long version, long lastModified) {
+			this.version = version;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private static final int EPOCH_SHIFT = 20;
+
+	private final Stamp initial;
+
+	private final AtomicReference<Stamp> collection;
+
+	private final ConcurrentMap<String, Stamp> stamps = new ConcurrentHashMap<>();
+
+	public EmployeeVersions() {
+		long now = System.currentTimeMillis();
+		initial = new Stamp(now << EPOCH_SHIFT, now);
+		collection = new AtomicReference<>(initial);
+	}
+
+	/**
+	 * @param id
+	 * @return whether the employee has changed since the creation of this
+	 *         object, and has not been deleted afterwards, so that it exists
+	 */
+	public boolean isTracked(String id) {
+		return stamps.containsKey(id);
+	}
+
+	public long versionOf(String id) {
+		return stamps.getOrDefault(id, initial).version;
+	}
+
+	/**
+	 * @param id
+	 * @return the time of the last change, in milliseconds
+	 */
+	public long lastModifiedOf(String id) {
+		return stamps.getOrDefault(id, initial).lastModified;
+	}
+
+	public long collectionVersion() {
+		return collection.get().version;
+	}
+
+	/**
+	 * @return the time of the last change to any employee, in milliseconds
+	 */
+	public long collectionLastModified() {
+		return collection.get().lastModified;
+	}
+
+	/**
+	 * Changes to the same id must not be recorded concurrently.
+	 *
+	 * @param id
+	 * @return the new version of the employee
+	 */
+	public long changed(String id) {
+		Stamp stamp = nextStamp();
+		stamps.put(id, stamp);
+		return stamp.version;
+	}
+
+	/**
+	 * Changes to the same id must not be recorded concurrently.
+	 *
+	 * @param id
+	 * @return the new version of the collection
+	 */
+	public long deleted(String id) {
+		Stamp stamp = nextStamp();
+		stamps.remove(id);
+		return stamp.version;
+	}
+
+	private Stamp nextStamp() {
+		long now = System.currentTimeMillis();
+		return collection.updateAndGet(
+			current -> new Stamp(current.version + 1, Math.max(now, current.lastModified)));
+	}
+}
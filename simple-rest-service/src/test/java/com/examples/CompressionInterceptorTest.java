@@ -0,0 +1,312 @@
+package com.examples;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.ServerProperties;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.restassured.RestAssured;
+
+public class CompressionInterceptorTest extends JerseyTest {
+
+	private static final int MIN_SIZE = 100;
+
+	private static final int MAX_INFLATED_SIZE = 10000;
+
+	// released by the client once it has read the flushed prefix
+	private static final CountDownLatch PREFIX_READ = new CountDownLatch(1);
+
+	/**
+	 * A mock REST resource returning a text of the given length, also with an
+	 * ETag or flushing a prefix, and echoing the text it receives.
+	 */
+	@Path("testpath")
+	public static class MockResource {
+		@GET
+		@Path("text/{length}")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String text(@PathParam("length") int length) {
+			return CompressionInterceptorTest.text(length);
+		}
+
+		@GET
+		@Path("tagged/{length}")
+		@Produces(MediaType.TEXT_PLAIN)
+		public Response tagged(@PathParam("length") int length, @Context Request request) {
+			EntityTag eTag = new EntityTag("1");
+			ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+			if (notModified != null)
+				return notModified.build();
+			return Response.ok(CompressionInterceptorTest.text(length)).tag(eTag).build();
+		}
+
+		@GET
+		@Path("flushed/{length}")
+		@Produces(MediaType.TEXT_PLAIN)
+		public StreamingOutput flushed(@PathParam("length") int length) {
+			return out -> {
+				out.write("prefix\n".getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				try {
+					PREFIX_READ.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				out.write(CompressionInterceptorTest.text(length).getBytes(StandardCharsets.UTF_8));
+			};
+		}
+
+		@POST
+		@Path("echo")
+		@Consumes(MediaType.TEXT_PLAIN)
+		@Produces(MediaType.TEXT_PLAIN)
+		public String echo(String text) {
+			return text;
+		}
+	}
+
+	@Override
+	protected Application configure() {
+		return new ResourceConfig()
+			// like Main, so that the flushes reach the client
+			.property(ServerProperties.OUTBOUND_CONTENT_LENGTH_BUFFER, 0)
+			.register(new CompressionInterceptor(MIN_SIZE, MAX_INFLATED_SIZE))
+			.register(MockResource.class);
+	}
+
+	@Before
+	public void configureRestAssured() {
+		RestAssured.baseURI = getBaseUri().toString();
+	}
+
+	@Test
+	public void testSmallBodiesAreNotCompressed() {
+		Response response = target("testpath/text/" + (MIN_SIZE - 1)).request()
+			.acceptEncoding("gzip")
+			.get();
+		assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING)).isNull();
+		assertThat(response.getHeaderString(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+		assertThat(response.readEntity(String.class)).isEqualTo(text(MIN_SIZE - 1));
+	}
+
+	@Test
+	public void testBodiesAreNotCompressedWithoutAcceptEncoding() {
+		Response response = target("testpath/text/1000").request()
+			.get();
+		assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING)).isNull();
+		assertThat(response.readEntity(String.class)).isEqualTo(text(1000));
+	}
+
+	@Test
+	public void testGzip() throws IOException {
+		Response response = target("testpath/text/" + MIN_SIZE).request()
+			.acceptEncoding("gzip", "deflate")
+			.get();
+		assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		byte[] body = response.readEntity(byte[].class);
+		assertThat(decompress(new GZIPInputStream(new ByteArrayInputStream(body))))
+			.isEqualTo(text(MIN_SIZE));
+	}
+
+	@Test
+	public void testDeflate() throws IOException {
+		Response response = target("testpath/text/10000").request()
+			.acceptEncoding("gzip;q=0.5", "deflate")
+			.get();
+		assertThat(response.getHeaderString(HttpHeaders.CONTENT_ENCODING)).isEqualTo("deflate");
+		byte[] body = response.readEntity(byte[].class);
+		assertThat(body.length).isLessThan(10000);
+		assertThat(decompress(new InflaterInputStream(new ByteArrayInputStream(body))))
+			.isEqualTo(text(10000));
+	}
+
+	@Test
+	public void testETagsOfCompressedBodies() {
+		assertThat(target("testpath/tagged/" + (MIN_SIZE - 1)).request()
+			.acceptEncoding("gzip")
+			.get().getEntityTag()).isEqualTo(new EntityTag("1"));
+		assertThat(target("testpath/tagged/" + MIN_SIZE).request()
+			.get().getEntityTag()).isEqualTo(new EntityTag("1"));
+		assertThat(target("testpath/tagged/" + MIN_SIZE).request()
+			.acceptEncoding("gzip")
+			.get().getEntityTag()).isEqualTo(new EntityTag("1-gzip"));
+		assertThat(target("testpath/tagged/" + MIN_SIZE).request()
+			.acceptEncoding("deflate")
+			.get().getEntityTag()).isEqualTo(new EntityTag("1-deflate"));
+	}
+
+	@Test
+	public void testConditionalRequestsWithCompressedETags() {
+		Response notModified = target("testpath/tagged/" + MIN_SIZE).request()
+			.acceptEncoding("gzip")
+			.header(HttpHeaders.IF_NONE_MATCH, "\"1-gzip\"")
+			.get();
+		assertThat(notModified.getStatus()).isEqualTo(304);
+		assertThat(notModified.getEntityTag()).isEqualTo(new EntityTag("1-gzip"));
+		// the client does not have the deflate representation
+		Response modified = target("testpath/tagged/" + MIN_SIZE).request()
+			.acceptEncoding("deflate")
+			.header(HttpHeaders.IF_NONE_MATCH, "\"1-gzip\"")
+			.get();
+		assertThat(modified.getStatus()).isEqualTo(200);
+		assertThat(modified.getEntityTag()).isEqualTo(new EntityTag("1-deflate"));
+		// nor the identity one
+		assertThat(target("testpath/tagged/" + MIN_SIZE).request()
+			.header(HttpHeaders.IF_NONE_MATCH, "\"1-gzip\"")
+			.get().getStatus()).isEqualTo(200);
+		assertThat(target("testpath/tagged/" + MIN_SIZE).request()
+			.acceptEncoding("gzip")
+			.header(HttpHeaders.IF_NONE_MATCH, "\"0-gzip\", \"1\"")
+			.get().getStatus()).isEqualTo(304);
+	}
+
+	@Test
+	public void testCompressedRequests() throws IOException {
+		String text = text(1000);
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(gzipped)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+		ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+		try (OutputStream out = new DeflaterOutputStream(deflated)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+		// the Jersey client does not send the Content-Encoding
+		given().
+			contentType(MediaType.TEXT_PLAIN).
+			header(HttpHeaders.CONTENT_ENCODING, "gzip").
+			body(gzipped.toByteArray()).
+		when().
+			post("testpath/echo").
+		then().
+			statusCode(200).
+			body(equalTo(text));
+		given().
+			contentType(MediaType.TEXT_PLAIN).
+			header(HttpHeaders.CONTENT_ENCODING, "deflate").
+			body(deflated.toByteArray()).
+		when().
+			post("testpath/echo").
+		then().
+			statusCode(200).
+			body(equalTo(text));
+	}
+
+	@Test
+	public void testFlushedPrefixIsSentAsItIs() throws IOException {
+		HttpURLConnection connection =
+			(HttpURLConnection) getBaseUri().resolve("testpath/flushed/1000").toURL().openConnection();
+		connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+			// read before the rest of the body is written
+			assertThat(reader.readLine()).isEqualTo("prefix");
+			PREFIX_READ.countDown();
+			assertThat(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING)).isNull();
+			assertThat(reader.readLine()).isEqualTo(text(1000));
+		}
+	}
+
+	@Test
+	public void testTooLargeCompressedRequests() throws IOException {
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(gzipped)) {
+			out.write(text(MAX_INFLATED_SIZE + 1).getBytes(StandardCharsets.UTF_8));
+		}
+		given().
+			contentType(MediaType.TEXT_PLAIN).
+			header(HttpHeaders.CONTENT_ENCODING, "gzip").
+			body(gzipped.toByteArray()).
+		when().
+			post("testpath/echo").
+		then().
+			statusCode(413);
+		ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+		try (OutputStream out = new DeflaterOutputStream(deflated)) {
+			out.write(text(MAX_INFLATED_SIZE).getBytes(StandardCharsets.UTF_8));
+		}
+		given().
+			contentType(MediaType.TEXT_PLAIN).
+			header(HttpHeaders.CONTENT_ENCODING, "deflate").
+			body(deflated.toByteArray()).
+		when().
+			post("testpath/echo").
+		then().
+			statusCode(200).
+			body(equalTo(text(MAX_INFLATED_SIZE)));
+	}
+
+	@Test
+	public void testUnsupportedRequestEncoding() {
+		given().
+			contentType(MediaType.TEXT_PLAIN).
+			header(HttpHeaders.CONTENT_ENCODING, "br").
+			body("text").
+		when().
+			post("testpath/echo").
+		then().
+			statusCode(415);
+	}
+
+	@Test
+	public void testNegotiate() {
+		assertThat(CompressionInterceptor.negotiate(null)).isNull();
+		assertThat(CompressionInterceptor.negotiate("identity")).isNull();
+		assertThat(CompressionInterceptor.negotiate("gzip;q=0")).isNull();
+		assertThat(CompressionInterceptor.negotiate("deflate, gzip")).isEqualTo("gzip");
+		assertThat(CompressionInterceptor.negotiate("gzip;q=0.5, deflate;q=0.8")).isEqualTo("deflate");
+		assertThat(CompressionInterceptor.negotiate("*")).isEqualTo("gzip");
+		assertThat(CompressionInterceptor.negotiate("gzip;q=0, *")).isEqualTo("deflate");
+	}
+
+	private static String text(int length) {
+		return String.join("", Collections.nCopies(length, "a"));
+	}
+
+	private static String decompress(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int read; (read = input.read(buffer)) != -1;) {
+			output.write(buffer, 0, read);
+		}
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,217 @@
+package com.examples;
+
+import static io.restassured.RestAssured.given;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeLookup;
+
+import io.restassured.RestAssured;
+
+public class EmployeeBinaryProviderTest extends JerseyTest {
+
+	private static final String ALL_CHARS = IntStream.rangeClosed(0, 0xFFFF)
+		.mapToObj(c -> String.valueOf((char) c))
+		.collect(Collectors.joining());
+
+	private static final List<Employee> EMPLOYEES = asList(
+		new Employee("ID1", "First Employee", 1000),
+		new Employee("ID2", null, Integer.MIN_VALUE),
+		new Employee(null, "Special \"chars\" <&> \\ / è\n 😀", Integer.MAX_VALUE),
+		new Employee("", "", 0),
+		new Employee(null, null, -1),
+		new Employee("ID6", ALL_CHARS, 63),
+		new Employee("ID7", "\uDC00\uD800 unpaired surrogates", -64));
+
+	/**
+	 * A mock REST resource echoing employees in the binary format.
+	 */
+	@Path("testpath")
+	@Consumes(EmployeeBinaryProvider.APPLICATION_EMPLOYEE)
+	@Produces(EmployeeBinaryProvider.APPLICATION_EMPLOYEE)
+	public static class MockResource {
+		@POST
+		@Path("employee")
+		public Employee employee(Employee employee) {
+			return employee;
+		}
+
+		@POST
+		@Path("employees")
+		public List<Employee> employees(List<Employee> employees) {
+			return employees;
+		}
+
+		@POST
+		@Path("lookup")
+		public EmployeeLookup lookup(EmployeeLookup lookup) {
+			return lookup;
+		}
+
+		@GET
+		@Path("stream")
+		public Response stream() {
+			return Response
+				.ok(new GenericEntity<Stream<Employee>>(EMPLOYEES.stream()) {})
+				.build();
+		}
+	}
+
+	@Override
+	protected Application configure() {
+		return new ResourceConfig()
+			.register(EmployeeBinaryProvider.class)
+			.register(MockResource.class);
+	}
+
+	@Before
+	public void configureRestAssured() {
+		RestAssured.baseURI = getBaseUri().toString();
+	}
+
+	@Test
+	public void testEmployeesAreEchoed() throws IOException {
+		for (Employee employee : EMPLOYEES) {
+			assertThat(EmployeeBinaryCodec.readEmployee(
+					post("testpath/employee", write(employee))))
+				.isEqualTo(employee);
+		}
+		assertThat(EmployeeBinaryCodec.readEmployees(
+				post("testpath/employees", writeAll(EMPLOYEES))))
+			.isEqualTo(EMPLOYEES);
+		assertThat(EmployeeBinaryCodec.readEmployees(
+				post("testpath/employees", writeAll(Collections.emptyList()))))
+			.isEmpty();
+	}
+
+	@Test
+	public void testLookupIsEchoed() throws IOException {
+		EmployeeLookup lookup = new EmployeeLookup(EMPLOYEES, asList("ID8", "", "è"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EmployeeBinaryCodec.writeLookup(lookup, out);
+		assertThat(EmployeeBinaryCodec.readLookup(post("testpath/lookup", out.toByteArray())))
+			.isEqualTo(lookup);
+	}
+
+	@Test
+	public void testStreamIsWrittenAsAList() throws IOException {
+		byte[] body = given().
+			when().
+				get("testpath/stream").
+			then().
+				statusCode(200).
+				extract().asByteArray();
+		assertThat(body).isEqualTo(writeAll(EMPLOYEES));
+	}
+
+	@Test
+	public void testWriteEmployeesLargerThanTheBuffer() throws IOException {
+		List<Employee> employees = IntStream.range(0, 10000)
+			.mapToObj(i -> new Employee("ID" + i, "Employee è " + i, i * 1000))
+			.collect(Collectors.toList());
+		byte[] bytes = writeAll(employees);
+		assertThat(EmployeeBinaryCodec.readEmployees(new ByteArrayInputStream(bytes)))
+			.isEqualTo(employees);
+	}
+
+	@Test
+	public void testEncoding() throws IOException {
+		// header, id length and bytes, name length and bytes, zig-zag salary
+		assertThat(write(new Employee("ID", "è", -2)))
+			.isEqualTo(bytes(0x83, 2, 'I', 'D', 2, 0xC3, 0xA8, 3));
+		assertThat(write(new Employee(null, null, 64)))
+			.isEqualTo(bytes(0x80, 0x80, 0x01));
+		assertThat(writeAll(Collections.emptyList()))
+			.isEqualTo(bytes(0));
+	}
+
+	@Test
+	public void testReadEmpty() throws IOException {
+		assertThat(EmployeeBinaryCodec.readEmployee(new ByteArrayInputStream(new byte[0])))
+			.isNull();
+		assertThat(EmployeeBinaryCodec.readEmployees(new ByteArrayInputStream(new byte[0])))
+			.isNull();
+	}
+
+	@Test
+	public void testReadMalformed() {
+		assertMalformed(bytes(0x01), 1);
+		assertMalformed(bytes(0x80), 1);
+		assertMalformed(bytes(0x81, 5, 'I', 'D', 0), 2);
+		assertMalformed(bytes(0x80, 0, 0), 2);
+		assertMalformed(bytes(0x80, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF), 6);
+		assertMalformed(bytes(0x81, 2, 0xC3, 'x', 0), 4);
+		assertMalformed(bytes(0x81, 1, 0xC3, 0), 3);
+		assertMalformed(bytes(0x81, 1, 0xF0, 0), 3);
+		assertMalformed(bytes(0x81, 0x80, 0x80, 0x80, 0x80, 0x08, 0), 6);
+		assertThatThrownBy(() -> EmployeeBinaryCodec.readEmployees(
+				new ByteArrayInputStream(bytes(0x80, 0))))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Malformed binary employee at position 2");
+	}
+
+	private static void assertMalformed(byte[] bytes, int position) {
+		assertThatThrownBy(() -> EmployeeBinaryCodec.readEmployee(new ByteArrayInputStream(bytes)))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Malformed binary employee at position " + position);
+	}
+
+	private static ByteArrayInputStream post(String path, byte[] body) {
+		return new ByteArrayInputStream(given().
+				contentType(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+				accept(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+				body(body).
+			when().
+				post(path).
+			then().
+				statusCode(200).
+				contentType(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+				extract().asByteArray());
+	}
+
+	private static byte[] write(Employee employee) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EmployeeBinaryCodec.writeEmployee(employee, out);
+		return out.toByteArray();
+	}
+
+	private static byte[] writeAll(List<Employee> employees) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EmployeeBinaryCodec.writeEmployees(employees.iterator(), out, Integer.MAX_VALUE);
+		return out.toByteArray();
+	}
+
+	private static byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			bytes[i] = (byte) values[i];
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,142 @@
+package com.examples;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+import com.examples.repository.ConcurrentInMemoryEmployeeRepository;
+import com.examples.service.EmployeeServiceImpl;
+
+public class EmployeeImportTest {
+
+	private ConcurrentInMemoryEmployeeRepository repository;
+
+	private EmployeeServiceImpl employeeService;
+
+	@Before
+	public void setup() {
+		repository = new ConcurrentInMemoryEmployeeRepository();
+		employeeService = new EmployeeServiceImpl(repository);
+	}
+
+	@Test
+	public void testImportInBatches() throws IOException {
+		int count = EmployeeImport.BATCH_SIZE * 2 + 500;
+		String input = IntStream.range(0, count)
+			.mapToObj(i -> "{\"name\":\"Imported " + i + "\",\"salary\":" + i + "}")
+			.collect(Collectors.joining("\n", "", "\n"));
+
+		assertThat(importEmployees(input)).containsExactly(
+			"{\"lines\":1000,\"imported\":1000,\"failed\":0}",
+			"{\"lines\":2000,\"imported\":2000,\"failed\":0}",
+			"{\"lines\":2500,\"imported\":2500,\"failed\":0}",
+			"{\"lines\":2500,\"imported\":2500,\"failed\":0,\"done\":true}");
+		List<Employee> all = repository.findAll();
+		// the three initial employees
+		assertThat(all).hasSize(count + 3);
+		assertThat(all.get(count + 2).getName()).isEqualTo("Imported " + (count - 1));
+		assertThat(all.get(count + 2).getSalary()).isEqualTo(count - 1);
+	}
+
+	@Test
+	public void testErrorsAreReportedPerLine() throws IOException {
+		String input = String.join("\n",
+			"{\"name\":\"First\",\"salary\":1000}",
+			"{\"name\":\"Malformed\"",
+			"{\"id\":\"ID1\",\"name\":\"With id\"}",
+			"",
+			"null",
+			"{\"salary\":\"many\"}",
+			"{\"name\":\"Last\",\"salary\":2000}");
+
+		assertThat(importEmployees(input)).containsExactly(
+			"{\"line\":2,\"status\":400,\"message\":\"Malformed JSON at position 19\"}",
+			"{\"line\":6,\"status\":400,\"message\":\"Invalid salary many\"}",
+			"{\"line\":3,\"status\":400,\"message\":\"Unexpected id specification for Employee\"}",
+			"{\"line\":5,\"status\":400,\"message\":\"Missing values for Employee\"}",
+			"{\"lines\":7,\"imported\":2,\"failed\":4}",
+			"{\"lines\":7,\"imported\":2,\"failed\":4,\"done\":true}");
+		assertThat(repository.findAll())
+			.extracting(Employee::getName)
+			.endsWith("First", "Last");
+	}
+
+	@Test
+	public void testMessagesAreEscaped() throws IOException {
+		String input = "{\"salary\":\"a \\\"quoted\\\"\\n\\\\ salary\"}";
+
+		assertThat(importEmployees(input)).containsExactly(
+			"{\"line\":1,\"status\":400,\"message\":\"Invalid salary a \\\"quoted\\\"\\n\\\\ salary\"}",
+			"{\"lines\":1,\"imported\":0,\"failed\":1,\"done\":true}");
+	}
+
+	@Test
+	public void testLineTooLong() throws IOException {
+		StringBuilder name = new StringBuilder();
+		while (name.length() <= EmployeeImport.MAX_LINE_LENGTH) {
+			name.append("a long name ");
+		}
+		String input = "{\"name\":\"" + name + "\"}\r\n{\"name\":\"Short\"}\r\n";
+
+		assertThat(importEmployees(input)).containsExactly(
+			"{\"line\":1,\"status\":400,\"message\":\"Line longer than 65536 bytes\"}",
+			"{\"lines\":2,\"imported\":1,\"failed\":1}",
+			"{\"lines\":2,\"imported\":1,\"failed\":1,\"done\":true}");
+	}
+
+	@Test
+	public void testEmptyInput() throws IOException {
+		assertThat(importEmployees("")).containsExactly(
+			"{\"lines\":0,\"imported\":0,\"failed\":0,\"done\":true}");
+		assertThat(importEmployees("\n  \n")).containsExactly(
+			"{\"lines\":2,\"imported\":0,\"failed\":0,\"done\":true}");
+	}
+
+	@Test
+	public void testInputIsReadInSmallChunks() throws IOException {
+		String input = "{\"name\":\"First\",\"salary\":1000}\n{\"name\":\"Sécond\",\"salary\":2000}";
+		byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+		// returns at most 3 bytes at a time
+		InputStream in = new ByteArrayInputStream(bytes) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 3));
+			}
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new EmployeeImport(employeeService, in).write(out);
+
+		assertThat(lines(out)).containsExactly(
+			"{\"lines\":2,\"imported\":2,\"failed\":0}",
+			"{\"lines\":2,\"imported\":2,\"failed\":0,\"done\":true}");
+		assertThat(repository.findAll())
+			.extracting(Employee::getName)
+			.endsWith("First", "Sécond");
+	}
+
+	private List<String> importEmployees(String input) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new EmployeeImport(employeeService,
+			new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)))
+			.write(out);
+		return lines(out);
+	}
+
+	private static List<String> lines(ByteArrayOutputStream out) {
+		String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		assertThat(output).endsWith("\n");
+		return Arrays.asList(output.split("\n"));
+	}
+}
@@ -0,0 +1,192 @@
+package com.examples;
+
+import static io.restassured.RestAssured.given;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.Providers;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.eclipse.persistence.jaxb.MarshallerProperties;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+
+import io.restassured.RestAssured;
+
+public class EmployeeJsonProviderTest extends JerseyTest {
+
+	private static final String ALL_CHARS = IntStream.rangeClosed(0, 0xFFFF)
+		.mapToObj(c -> String.valueOf((char) c))
+		.collect(Collectors.joining());
+
+	private static final List<Employee> EMPLOYEES = asList(
+		new Employee("ID1", "First Employee", 1000),
+		new Employee("ID2", null, Integer.MIN_VALUE),
+		new Employee(null, "Special \"chars\" <&> \\ / è\n 😀", Integer.MAX_VALUE),
+		new Employee("", "", 0),
+		new Employee("ID5", ALL_CHARS, -1));
+
+	/**
+	 * A mock REST resource echoing employees and telling which providers are
+	 * used.
+	 */
+	@Path("testpath")
+	public static class MockResource {
+		@Context
+		private Providers providers;
+
+		@POST
+		@Path("employee")
+		@Consumes(MediaType.APPLICATION_JSON)
+		@Produces(MediaType.APPLICATION_JSON)
+		public Employee employee(Employee employee) {
+			return employee;
+		}
+
+		@POST
+		@Path("employees")
+		@Consumes(MediaType.APPLICATION_JSON)
+		@Produces(MediaType.APPLICATION_JSON)
+		public List<Employee> employees(List<Employee> employees) {
+			return employees;
+		}
+
+		@GET
+		@Path("providers")
+		@Produces(MediaType.TEXT_PLAIN)
+		public String providers() {
+			return providers.getMessageBodyWriter(Employee.class, Employee.class,
+					new Annotation[0], MediaType.APPLICATION_JSON_TYPE).getClass().getSimpleName()
+				+ " " + providers.getMessageBodyReader(Employee.class, Employee.class,
+					new Annotation[0], MediaType.APPLICATION_JSON_TYPE).getClass().getSimpleName();
+		}
+	}
+
+	@Override
+	protected Application configure() {
+		return new ResourceConfig()
+			.register(EmployeeJsonProvider.class)
+			.register(MockResource.class);
+	}
+
+	@Before
+	public void configureRestAssured() {
+		RestAssured.baseURI = getBaseUri().toString();
+	}
+
+	@Test
+	public void testTheProviderTakesPrecedenceOverMOXy() {
+		given().
+		when().
+			get("testpath/providers").
+		then().
+			body(equalTo("EmployeeJsonProvider EmployeeJsonProvider"));
+	}
+
+	@Test
+	public void testEmployeesAreEchoedAsMOXyWouldDo() throws JAXBException {
+		for (Employee employee : EMPLOYEES) {
+			String json = moxy(employee);
+			assertThat(given().
+					contentType(MediaType.APPLICATION_JSON).
+					accept(MediaType.APPLICATION_JSON).
+					body(json.getBytes(StandardCharsets.UTF_8)).
+				when().
+					post("testpath/employee").
+				then().
+					statusCode(200).
+					extract().asByteArray())
+				.isEqualTo(json.getBytes(StandardCharsets.UTF_8));
+		}
+		String json = moxy(EMPLOYEES);
+		assertThat(given().
+				contentType(MediaType.APPLICATION_JSON).
+				accept(MediaType.APPLICATION_JSON).
+				body(json.getBytes(StandardCharsets.UTF_8)).
+			when().
+				post("testpath/employees").
+			then().
+				statusCode(200).
+				extract().asByteArray())
+			.isEqualTo(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testWriteEmployeesLargerThanTheBuffer() throws Exception {
+		List<Employee> employees = IntStream.range(0, 10000)
+			.mapToObj(i -> new Employee("ID" + i, "Employee è " + i, i))
+			.collect(Collectors.toList());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EmployeeJsonCodec.writeEmployees(employees, out);
+		assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8))
+			.isEqualTo(moxy(employees));
+		assertThat(EmployeeJsonCodec.readEmployees(new ByteArrayInputStream(out.toByteArray())))
+			.isEqualTo(employees);
+	}
+
+	@Test
+	public void testReadIsLenientLikeMOXy() throws IOException {
+		assertThat(read(" { \"salary\" : \"12\" , \"other\" : [1, {\"a\": null}, true, -1.5e3],"
+				+ " \"id\" : null, \"name\": \"\\u00e8\\/\\t\" } "))
+			.isEqualTo(new Employee(null, "è/\t", 12));
+		assertThat(read("{}"))
+			.isEqualTo(new Employee());
+		assertThat(read("")).isNull();
+		assertThat(read("null")).isNull();
+	}
+
+	@Test
+	public void testReadMalformedJSON() {
+		assertThatThrownBy(() -> read("{\"name\":\"x\""))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Malformed JSON at position 11");
+		assertThatThrownBy(() -> read("{\"name\":\"x\"} x"))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Malformed JSON at position 13");
+		assertThatThrownBy(() -> read("{\"salary\":1.5}"))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Invalid salary 1.5");
+	}
+
+	private static Employee read(String json) throws IOException {
+		return EmployeeJsonCodec.readEmployee(
+			new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String moxy(Object employees) throws JAXBException {
+		Marshaller marshaller = JAXBContextFactory
+			.createContext(new Class<?>[] { Employee.class }, null)
+			.createMarshaller();
+		marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON);
+		marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		marshaller.marshal(employees, out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
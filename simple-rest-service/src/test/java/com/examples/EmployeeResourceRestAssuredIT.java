@@ -7,6 +7,10 @@ import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -23,6 +27,8 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.examples.model.Employee;
+
 import io.restassured.RestAssured;
 import io.restassured.response.Response;
 
@@ -84,6 +90,54 @@ public class EmployeeResourceRestAssuredIT {
 				body(equalTo("Got it!"));
 	}
 
+	@Test
+	public void testGetEmployeesByPages() {
+		// the initial contents are ID1, ID2 and ID3
+		Response response = given().
+				accept(MediaType.APPLICATION_JSON).
+				queryParam("limit", 2).
+			when().
+				get(EMPLOYEES);
+
+		response.
+			then().
+			statusCode(200).
+			body("id", contains("ID1", "ID2"));
+
+		String next = response.header("Link");
+		assertThat(next, containsString("rel=\"next\""));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+		when().
+			get(next.substring(next.indexOf('<') + 1, next.indexOf('>'))).
+		then().
+			statusCode(200).
+			body("id", contains("ID3")).
+			header("Link", nullValue());
+	}
+
+	@Test
+	public void testLookupEmployees() {
+		given().
+			accept(MediaType.APPLICATION_JSON).
+		when().
+			get(EMPLOYEES + "/lookup?ids=ID3,foo,ID1").
+		then().
+			statusCode(200).
+			body(
+				"employees.id", contains("ID3", "ID1"),
+				"employees.name", contains("Third Employee", "First Employee"),
+				"missing", contains("foo")
+			);
+
+		when().
+			get(EMPLOYEES + "/lookup").
+		then().
+			statusCode(400).
+			body(equalTo("Missing ids"));
+	}
+
 	@Test
 	public void testPostNewEmployee() {
 		JsonObject newObject = Json.createObjectBuilder()
@@ -117,6 +171,38 @@ public class EmployeeResourceRestAssuredIT {
 			);
 	}
 
+	@Test
+	public void testPostNewEmployeeBinary() throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		EmployeeBinaryCodec.writeEmployee(new Employee(null, "binary employee", 1000), body);
+
+		Response response = given().
+				contentType(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+				accept(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+				body(body.toByteArray()).
+			when().
+				post(EMPLOYEES);
+
+		Employee saved = EmployeeBinaryCodec.readEmployee(
+			new ByteArrayInputStream(response.asByteArray()));
+		assertThat(response.header("Location"), endsWith(saved.getEmployeeId()));
+		assertThat(saved.getName(), equalTo("binary employee"));
+
+		// the same employee in JSON
+		given().
+			accept(MediaType.APPLICATION_JSON).
+		when().
+			get(response.header("Location")).
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"id", equalTo(saved.getEmployeeId()),
+				"name", equalTo("binary employee"),
+				"salary", equalTo(1000)
+			);
+	}
+
 	@Test
 	public void testPostNewEmployeeConcurrent() {
 		JsonObject newObject = Json.createObjectBuilder()
@@ -149,6 +235,228 @@ public class EmployeeResourceRestAssuredIT {
 		assertThat(ids).doesNotHaveDuplicates();
 	}
 
+	@Test
+	public void testGetAllEmployeesAfterChanges() {
+		// the list is cached after the first request
+		given().
+			accept(MediaType.APPLICATION_JSON).
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			body("id", contains("ID1", "ID2", "ID3"));
+
+		given().
+			contentType(MediaType.APPLICATION_JSON).
+			body(Json.createObjectBuilder()
+				.add("name", "test employee")
+				.add("salary", 1000)
+				.build().toString()).
+		when().
+			post(EMPLOYEES).
+		then().
+			statusCode(201);
+
+		when().
+			delete(EMPLOYEES + "/ID2").
+		then().
+			statusCode(202);
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			body("id", contains("ID1", "ID3", "ID4"));
+	}
+
+	@Test
+	public void testGetOneEmployeeAfterReplace() {
+		// the employee is cached after the first request
+		given().
+			accept(MediaType.APPLICATION_XML).
+		when().
+			get(EMPLOYEES + "/ID3").
+		then().
+			statusCode(200).
+			body("employee.name", equalTo("Third Employee"));
+
+		given().
+			contentType(MediaType.APPLICATION_JSON).
+			body(Json.createObjectBuilder()
+				.add("name", "modified employee")
+				.add("salary", 2000)
+				.build().toString()).
+		when().
+			put(EMPLOYEES + "/ID3").
+		then().
+			statusCode(200);
+
+		given().
+			accept(MediaType.APPLICATION_XML).
+		when().
+			get(EMPLOYEES + "/ID3").
+		then().
+			statusCode(200).
+			body("employee.name", equalTo("modified employee"));
+	}
+
+	@Test
+	public void testConditionalRequests() {
+		String eTag = given().
+				accept(MediaType.APPLICATION_JSON).
+			when().
+				get(EMPLOYEES + "/ID1").
+			then().
+				statusCode(200).
+				header("Last-Modified", notNullValue()).
+			extract().
+				header("ETag");
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			header("If-None-Match", eTag).
+		when().
+			get(EMPLOYEES + "/ID1").
+		then().
+			statusCode(304);
+
+		JsonObject newObject = Json.createObjectBuilder()
+				.add("name", "modified employee")
+				.add("salary", 2000)
+				.build();
+
+		given().
+			contentType(MediaType.APPLICATION_JSON).
+			header("If-Match", eTag).
+			body(newObject.toString()).
+		when().
+			put(EMPLOYEES + "/ID1").
+		then().
+			statusCode(200);
+
+		// the employee has been modified since we got the tag
+		given().
+			contentType(MediaType.APPLICATION_JSON).
+			header("If-Match", eTag).
+			body(newObject.toString()).
+		when().
+			put(EMPLOYEES + "/ID1").
+		then().
+			statusCode(412);
+		given().
+			header("If-Match", eTag).
+		when().
+			delete(EMPLOYEES + "/ID1").
+		then().
+			statusCode(412);
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			header("If-None-Match", eTag).
+		when().
+			get(EMPLOYEES + "/ID1").
+		then().
+			statusCode(200).
+			header("ETag", not(equalTo(eTag))).
+			body("name", equalTo("modified employee"));
+
+		// no precondition holds for a missing employee
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			header("If-None-Match", eTag).
+		when().
+			get(EMPLOYEES + "/missing").
+		then().
+			statusCode(404);
+		given().
+			header("If-Match", "*").
+		when().
+			delete(EMPLOYEES + "/missing").
+		then().
+			statusCode(412);
+	}
+
+	@Test
+	public void testBatch() {
+		String operations = Json.createArrayBuilder()
+			.add(Json.createObjectBuilder()
+				.add("op", "create")
+				.add("employee", Json.createObjectBuilder()
+					.add("name", "Batch Employee")
+					.add("salary", 4000)))
+			.add(Json.createObjectBuilder()
+				.add("op", "replace")
+				.add("id", "ID1")
+				.add("employee", Json.createObjectBuilder()
+					.add("name", "Replaced Employee")
+					.add("salary", 1500)))
+			.add(Json.createObjectBuilder()
+				.add("op", "delete")
+				.add("id", "ID2"))
+			.add(Json.createObjectBuilder()
+				.add("op", "replace")
+				.add("id", "ID2")
+				.add("employee", Json.createObjectBuilder()
+					.add("name", "Not Replaced")
+					.add("salary", 0)))
+			.build().toString();
+
+		given().
+			contentType(MediaType.APPLICATION_JSON).
+			body(operations).
+		when().
+			post(EMPLOYEES + "/batch").
+		then().
+			statusCode(200).
+			body(
+				"status", contains(201, 200, 202, 404),
+				"id", contains("ID4", "ID1", "ID2", "ID2")
+			);
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			body(
+				"id", contains("ID1", "ID3", "ID4"),
+				"name", contains("Replaced Employee", "Third Employee", "Batch Employee")
+			);
+	}
+
+	@Test
+	public void testImportEmployees() {
+		String input = IntStream.range(0, 1500)
+			.mapToObj(i -> "{\"name\":\"imported " + i + "\",\"salary\":" + i + "}")
+			.collect(Collectors.joining("\n"));
+
+		String report = given().
+				contentType("application/x-ndjson").
+				body((input + "\n{\"name\":\n").getBytes(StandardCharsets.UTF_8)).
+			when().
+				post(EMPLOYEES + "/import").
+			then().
+				statusCode(200).
+				extract().asString();
+
+		assertThat(report, endsWith(
+			"{\"lines\":1501,\"imported\":1500,\"failed\":1,\"done\":true}\n"));
+		assertThat(report, containsString(
+			"{\"line\":1501,\"status\":400,\"message\":\"Malformed JSON at position 8\"}"));
+
+		given().
+			accept(MediaType.TEXT_PLAIN).
+		when().
+			get(EMPLOYEES + "/count").
+		then().
+			statusCode(200).
+			// the three initial employees
+			body(equalTo("1503"));
+	}
+
 	@Test
 	public void testPutReplaceEmployee() {
 		// we want to replace Employee("ID1", "First Employee", 1000)
@@ -3,17 +3,36 @@ package com.examples;
 import static io.restassured.RestAssured.given;
 import static io.restassured.RestAssured.when;
 import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
 
 import javax.json.Json;
+import javax.json.JsonArray;
 import javax.json.JsonObject;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.core.Application;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
 
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.server.ResourceConfig;
@@ -25,6 +44,13 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import com.examples.model.Employee;
+import com.examples.model.EmployeeLookup;
+import com.examples.model.EmployeeOperation;
+import com.examples.model.EmployeeOperation.Kind;
+import com.examples.model.EmployeeOperationResult;
+import com.examples.model.EmployeeStatistics;
+import com.examples.model.SalaryBucket;
+import com.examples.repository.EmployeePage;
 import com.examples.service.EmployeeService;
 
 import io.restassured.RestAssured;
@@ -33,6 +59,10 @@ public class EmployeeResourceRestAssuredTest extends JerseyTest {
 
 	private static final String EMPLOYEES = "employees";
 
+	private static final long LAST_MODIFIED = 1_000_000_000_000L;
+
+	private static final String LAST_MODIFIED_HTTP_DATE = "Sun, 09 Sep 2001 01:46:40 GMT";
+
 	@Mock
 	private EmployeeService employeeService;
 
@@ -41,6 +71,10 @@ public class EmployeeResourceRestAssuredTest extends JerseyTest {
 		MockitoAnnotations.initMocks(this);
 		// register only the EmployeeResource
 		return new ResourceConfig(EmployeeResource.class)
+			// for streaming the employees
+			.register(EmployeeStreamWriter.class)
+			// for the binary media type
+			.register(EmployeeBinaryProvider.class)
 			// inject the mock in our EmployeeResource
 			.register(new AbstractBinder() {
 				@Override
@@ -124,6 +158,230 @@ public class EmployeeResourceRestAssuredTest extends JerseyTest {
 				);
 	}
 
+	@Test
+	public void testGetAllEmployeesStreamJSON() {
+		when(employeeService.streamAllEmployees())
+			.thenReturn(Stream.of(
+				new Employee("ID1", "First Employee", 1000),
+				new Employee("ID2", "Second Employee", 2000)
+			));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			queryParam("stream", true).
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"id", contains("ID1", "ID2"),
+				"name", contains("First Employee", "Second Employee"),
+				"salary", contains(1000, 2000)
+			);
+	}
+
+	@Test
+	public void testGetAllEmployeesStreamXML() {
+		when(employeeService.streamAllEmployees())
+			.thenReturn(Stream.of(
+				new Employee("ID1", "First Employee", 1000)
+			));
+
+		given().
+			accept(MediaType.APPLICATION_XML).
+			queryParam("stream", true).
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"employees.employee[0].id", equalTo("ID1"),
+				"employees.employee[0].name", equalTo("First Employee"),
+				"employees.employee[0].salary", equalTo("1000")
+			);
+	}
+
+	@Test
+	public void testGetAllEmployeesStreamBinary() throws IOException {
+		when(employeeService.streamAllEmployees())
+			.thenReturn(Stream.of(
+				new Employee("ID1", "First Employee", 1000),
+				new Employee("ID2", null, -2000)
+			));
+
+		byte[] body = given().
+			accept(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+			queryParam("stream", true).
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			contentType(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+			extract().asByteArray();
+		assertThat(EmployeeBinaryCodec.readEmployees(new ByteArrayInputStream(body)))
+			.containsExactly(
+				new Employee("ID1", "First Employee", 1000),
+				new Employee("ID2", null, -2000));
+	}
+
+	@Test
+	public void testGetEmployeesPage() {
+		when(employeeService.employeesPage(null, 2))
+			.thenReturn(new EmployeePage(asList(
+				new Employee("ID1", "First Employee", 1000),
+				new Employee("ID2", "Second Employee", 2000)
+			), "next-cursor"));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			queryParam("limit", 2).
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"id", contains("ID1", "ID2")
+			).
+			header("Link",
+				allOf(
+					containsString(EMPLOYEES + "?limit=2&cursor=next-cursor"),
+					containsString("rel=\"next\"")));
+	}
+
+	@Test
+	public void testGetLastEmployeesPageWithDefaultLimit() {
+		when(employeeService.employeesPage("a-cursor", 100))
+			.thenReturn(new EmployeePage(asList(
+				new Employee("ID3", "Third Employee", 3000)
+			), null));
+
+		given().
+			accept(MediaType.APPLICATION_XML).
+			queryParam("cursor", "a-cursor").
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"employees.employee[0].id", equalTo("ID3")
+			).
+			header("Link", nullValue());
+	}
+
+	@Test
+	public void testGetEmployeesBySalary() {
+		when(employeeService.employeesBySalary(1000, null, "name"))
+			.thenReturn(asList(
+				new Employee("ID2", "A Employee", 2000),
+				new Employee("ID1", "B Employee", 1000)
+			));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			queryParam("minSalary", 1000).
+			queryParam("sort", "name").
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"id", contains("ID2", "ID1")
+			);
+	}
+
+	@Test
+	public void testGetFilteredEmployees() {
+		when(employeeService.filterEmployees("salary>1000 and name~\"Employee\""))
+			.thenReturn(Stream.of(
+				new Employee("ID2", "Second Employee", 2000)
+			));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			queryParam("filter", "salary>1000 and name~\"Employee\"").
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"id", contains("ID2")
+			);
+	}
+
+	@Test
+	public void testGetFilteredEmployeesCannotBeSorted() {
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			queryParam("filter", "salary>1000").
+			queryParam("sort", "name").
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(400);
+
+		verify(employeeService, never()).filterEmployees(any());
+		verify(employeeService, never()).employeesBySalary(any(), any(), any());
+	}
+
+	@Test
+	public void testGetEmployeesBySalaryCannotBePaged() {
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			queryParam("maxSalary", 1000).
+			queryParam("limit", 10).
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(400);
+
+		verify(employeeService, never()).employeesBySalary(any(), any(), any());
+		verify(employeeService, never()).employeesPage(any(), any(Integer.class));
+	}
+
+	@Test
+	public void testSearchEmployees() {
+		when(employeeService.searchEmployees("sec emp", null, 10))
+			.thenReturn(asList(
+				new Employee("ID2", "Second Employee", 2000)
+			));
+		when(employeeService.searchEmployees("first", "token", 5))
+			.thenReturn(asList(
+				new Employee("ID1", "First Employee", 1000)
+			));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			queryParam("q", "sec emp").
+		when().
+			get(EMPLOYEES + "/search").
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"id", contains("ID2")
+			);
+
+		given().
+			accept(MediaType.APPLICATION_XML).
+			queryParam("q", "first").
+			queryParam("match", "token").
+			queryParam("limit", 5).
+		when().
+			get(EMPLOYEES + "/search").
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"employees.employee[0].id", equalTo("ID1")
+			);
+	}
+
 	@Test
 	public void testGetOneEmployee() {
 		when(employeeService.getEmployeeById(anyString()))
@@ -144,6 +402,104 @@ public class EmployeeResourceRestAssuredTest extends JerseyTest {
 			);
 	}
 
+	@Test
+	public void testGetOneEmployeeHasValidators() {
+		when(employeeService.versionOf("ID1"))
+			.thenReturn(3L);
+		when(employeeService.lastModifiedOf("ID1"))
+			.thenReturn(LAST_MODIFIED);
+		when(employeeService.getEmployeeById("ID1"))
+			.thenReturn(new Employee("ID1", "An Employee", 2000));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+		when().
+			get(EMPLOYEES + "/ID1").
+		then().
+			statusCode(200).
+			header("ETag", "\"3-json\"").
+			header("Last-Modified", LAST_MODIFIED_HTTP_DATE);
+	}
+
+	@Test
+	public void testGetOneEmployeeBinary() throws IOException {
+		when(employeeService.versionOf("ID1"))
+			.thenReturn(3L);
+		when(employeeService.getEmployeeById("ID1"))
+			.thenReturn(new Employee("ID1", "An Employee", 2000));
+
+		byte[] body = given().
+			accept(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+		when().
+			get(EMPLOYEES + "/ID1").
+		then().
+			statusCode(200).
+			contentType(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+			header("ETag", "\"3-x-employee\"").
+			extract().asByteArray();
+		assertThat(EmployeeBinaryCodec.readEmployee(new ByteArrayInputStream(body)))
+			.isEqualTo(new Employee("ID1", "An Employee", 2000));
+	}
+
+	@Test
+	public void testGetOneEmployeeNotModified() {
+		when(employeeService.versionOf("ID1"))
+			.thenReturn(3L);
+
+		given().
+			accept(MediaType.APPLICATION_XML).
+			header("If-None-Match", "\"3-xml\"").
+		when().
+			get(EMPLOYEES + "/ID1").
+		then().
+			statusCode(304).
+			header("ETag", "\"3-xml\"");
+
+		// the employee is not even retrieved
+		verify(employeeService, never()).getEmployeeById(anyString());
+	}
+
+	@Test
+	public void testGetOneEmployeeNotFoundWithPreconditions() {
+		when(employeeService.versionOf("ID1"))
+			.thenThrow(new NotFoundException("Employee not found with id ID1"));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			header("If-None-Match", "\"0-json\"").
+			header("If-Modified-Since", LAST_MODIFIED_HTTP_DATE).
+		when().
+			get(EMPLOYEES + "/ID1").
+		then().
+			statusCode(404);
+	}
+
+	@Test
+	public void testGetAllEmployeesNotModified() {
+		when(employeeService.collectionVersion())
+			.thenReturn(5L);
+		when(employeeService.collectionLastModified())
+			.thenReturn(LAST_MODIFIED);
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			header("If-None-Match", "\"5-json\"").
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(304);
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			header("If-Modified-Since", LAST_MODIFIED_HTTP_DATE).
+		when().
+			get(EMPLOYEES).
+		then().
+			statusCode(304);
+
+		verify(employeeService, never()).allEmployees();
+	}
+
 	@Test
 	public void testGetAllEmployeesJSON() {
 		when(employeeService.allEmployees())
@@ -195,16 +551,106 @@ public class EmployeeResourceRestAssuredTest extends JerseyTest {
 
 	@Test
 	public void testCount() {
-		List<Employee> employees = asList(new Employee(), new Employee());
-		when(employeeService.allEmployees())
-			.thenReturn(employees);
+		when(employeeService.countEmployees())
+			.thenReturn(2L);
 
 		when().
 			get(EMPLOYEES + "/count").
 		then().
 			statusCode(200).
 			assertThat().
-			body(equalTo("" + employees.size()));
+			body(equalTo("2"));
+
+		verify(employeeService, never()).allEmployees();
+	}
+
+	@Test
+	public void testStatistics() {
+		when(employeeService.salaryStatistics())
+			.thenReturn(new EmployeeStatistics(2, 3000, 1000, 2000, asList(
+				new SalaryBucket(512, 1023, 1),
+				new SalaryBucket(1024, 2047, 1))));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+		when().
+			get(EMPLOYEES + "/statistics").
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"count", equalTo(2),
+				"sum", equalTo(3000),
+				"min", equalTo(1000),
+				"max", equalTo(2000),
+				"mean", equalTo(1500.0f),
+				"histogram.min", contains(512, 1024),
+				"histogram.count", contains(1, 1)
+			);
+	}
+
+	@Test
+	public void testLookupEmployeesJSON() {
+		when(employeeService.lookupEmployees(asList("ID1", "ID2", "ID3")))
+			.thenReturn(new EmployeeLookup(
+				asList(new Employee("ID1", "First Employee", 1000),
+					new Employee("ID3", "Third Employee", 3000)),
+				asList("ID2")));
+
+		given().
+			accept(MediaType.APPLICATION_JSON).
+			queryParam("ids", "ID1, ID2").
+			queryParam("ids", "ID3").
+		when().
+			get(EMPLOYEES + "/lookup").
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"employees.id", contains("ID1", "ID3"),
+				"employees.name", contains("First Employee", "Third Employee"),
+				"missing", contains("ID2")
+			);
+	}
+
+	@Test
+	public void testLookupEmployeesXML() {
+		when(employeeService.lookupEmployees(asList("ID1", "ID2")))
+			.thenReturn(new EmployeeLookup(
+				asList(new Employee("ID1", "First Employee", 1000)),
+				asList("ID2")));
+
+		given().
+			accept(MediaType.APPLICATION_XML).
+		when().
+			get(EMPLOYEES + "/lookup?ids=ID1,ID2").
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"employeeLookup.employees.id", equalTo("ID1"),
+				"employeeLookup.missing", equalTo("ID2")
+			);
+	}
+
+	@Test
+	public void testLookupEmployeesBinary() throws IOException {
+		EmployeeLookup lookup = new EmployeeLookup(
+			asList(new Employee("ID1", "First Employee", 1000)),
+			asList("ID3"));
+		when(employeeService.lookupEmployees(asList("ID1", "ID3")))
+			.thenReturn(lookup);
+
+		byte[] body = given().
+			accept(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+			queryParam("ids", "ID1,ID3").
+		when().
+			get(EMPLOYEES + "/lookup").
+		then().
+			statusCode(200).
+			extract().asByteArray();
+		assertThat(EmployeeBinaryCodec.readLookup(new ByteArrayInputStream(body)))
+			.isEqualTo(lookup);
 	}
 
 	@Test
@@ -240,6 +686,116 @@ public class EmployeeResourceRestAssuredTest extends JerseyTest {
 				response -> endsWith(EMPLOYEES + "/ID"));
 	}
 
+	@Test
+	public void testPostNewEmployeeBinary() throws IOException {
+		when(employeeService.addEmployee(new Employee(null, "passed name", 1000)))
+			.thenReturn(new Employee("ID", "returned name", 2000));
+
+		byte[] body = given().
+			contentType(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+			accept(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+			body(binary(new Employee(null, "passed name", 1000))).
+		when().
+			post(EMPLOYEES).
+		then().
+			statusCode(201).
+			header("Location",
+				response -> endsWith(EMPLOYEES + "/ID")).
+			extract().asByteArray();
+		assertThat(EmployeeBinaryCodec.readEmployee(new ByteArrayInputStream(body)))
+			.isEqualTo(new Employee("ID", "returned name", 2000));
+	}
+
+	@Test
+	public void testPostMalformedBinary() {
+		given().
+			contentType(EmployeeBinaryProvider.APPLICATION_EMPLOYEE).
+			body(new byte[] { (byte) 0x81, 5, 'I', 'D' }).
+		when().
+			post(EMPLOYEES).
+		then().
+			statusCode(400);
+
+		verify(employeeService, never()).addEmployee(any());
+	}
+
+	@Test
+	public void testPostBatch() {
+		JsonArray operations = Json.createArrayBuilder()
+			.add(Json.createObjectBuilder()
+				.add("op", "create")
+				.add("employee", Json.createObjectBuilder()
+					.add("name", "passed name")
+					.add("salary", 1000)))
+			.add(Json.createObjectBuilder()
+				.add("op", "delete")
+				.add("id", "ID2"))
+			.build();
+
+		when(employeeService.applyOperations(any()))
+			.thenAnswer(invocation -> {
+				List<EmployeeOperation> passed = invocation.getArgument(0);
+				assertThat(passed).hasSize(2);
+				assertThat(passed.get(0).getOp()).isEqualTo(Kind.CREATE);
+				assertThat(passed.get(0).getEmployee())
+					.isEqualTo(new Employee(null, "passed name", 1000));
+				assertThat(passed.get(1).getOp()).isEqualTo(Kind.DELETE);
+				assertThat(passed.get(1).getId()).isEqualTo("ID2");
+				return asList(
+					new EmployeeOperationResult(201, "ID4", null),
+					new EmployeeOperationResult(404, "ID2", "Employee not found with id ID2"));
+			});
+
+		given().
+			contentType(MediaType.APPLICATION_JSON).
+			body(operations.toString()).
+		when().
+			post(EMPLOYEES + "/batch").
+		then().
+			statusCode(200).
+			assertThat().
+			body(
+				"status", contains(201, 404),
+				"id", contains("ID4", "ID2"),
+				"[0].message", nullValue(),
+				"[1].message", equalTo("Employee not found with id ID2")
+			);
+	}
+
+	@Test
+	public void testImportEmployees() {
+		when(employeeService.applyOperations(any()))
+			.thenAnswer(invocation -> {
+				List<EmployeeOperation> passed = invocation.getArgument(0);
+				assertThat(passed).hasSize(2);
+				assertThat(passed.get(0).getOp()).isEqualTo(Kind.CREATE);
+				assertThat(passed.get(0).getEmployee())
+					.isEqualTo(new Employee(null, "First", 1000));
+				assertThat(passed.get(1).getEmployee())
+					.isEqualTo(new Employee("ID1", "Second", 2000));
+				return asList(
+					new EmployeeOperationResult(201, "ID4", null),
+					new EmployeeOperationResult(400, null,
+						"Unexpected id specification for Employee"));
+			});
+
+		given().
+			contentType(EmployeeImport.APPLICATION_NDJSON).
+			body(("{\"name\":\"First\",\"salary\":1000}\n"
+				+ "{\"id\":\"ID1\",\"name\":\"Second\",\"salary\":2000}\n")
+					.getBytes(StandardCharsets.UTF_8)).
+		when().
+			post(EMPLOYEES + "/import").
+		then().
+			statusCode(200).
+			contentType(EmployeeImport.APPLICATION_NDJSON).
+			body(equalTo(
+				"{\"line\":2,\"status\":400,"
+					+ "\"message\":\"Unexpected id specification for Employee\"}\n"
+				+ "{\"lines\":2,\"imported\":1,\"failed\":1}\n"
+				+ "{\"lines\":2,\"imported\":1,\"failed\":1,\"done\":true}\n"));
+	}
+
 	@Test
 	public void testPutEmployee() {
 		// values for the new Employee in the request body
@@ -272,6 +828,98 @@ public class EmployeeResourceRestAssuredTest extends JerseyTest {
 			);
 	}
 
+	@Test
+	public void testPutEmployeeWithIfMatch() {
+		// the employee has version 3
+		when(employeeService.replaceEmployeeById(
+				eq("ID"), eq(new Employee(null, "passed name", 1000)), any()))
+			.thenAnswer(invocation -> {
+				LongPredicate precondition = invocation.getArgument(2);
+				if (!precondition.test(3))
+					throw new ClientErrorException(Status.PRECONDITION_FAILED);
+				return new Employee("ID", "passed name", 1000);
+			});
+		JsonObject newObject = Json.createObjectBuilder()
+				.add("name", "passed name")
+				.add("salary", 1000)
+				.build();
+
+		// the tag of any representation matches
+		given().
+			contentType(MediaType.APPLICATION_JSON).
+			header("If-Match", "\"3-xml\"").
+			body(newObject.toString()).
+		when().
+			put(EMPLOYEES + "/ID").
+		then().
+			statusCode(200).
+			body("id", equalTo("ID"));
+
+		given().
+			contentType(MediaType.APPLICATION_JSON).
+			header("If-Match", "\"2-json\"").
+			body(newObject.toString()).
+		when().
+			put(EMPLOYEES + "/ID").
+		then().
+			statusCode(412);
+	}
+
+	@Test
+	public void testDeleteEmployeeWithIfMatch() {
+		// the employee has version 3
+		when(employeeService.deleteEmployeeById(eq("ID"), any()))
+			.thenAnswer(invocation -> {
+				LongPredicate precondition = invocation.getArgument(1);
+				if (!precondition.test(3))
+					throw new ClientErrorException(Status.PRECONDITION_FAILED);
+				return new Employee("ID", "employee", 1000);
+			});
+
+		given().
+			header("If-Match", "W/\"3-json\"").
+		when().
+			delete(EMPLOYEES + "/ID").
+		then().
+			// weak tags never match
+			statusCode(412);
+
+		given().
+			header("If-Match", "\"2-json\", \"3-json\"").
+		when().
+			delete(EMPLOYEES + "/ID").
+		then().
+			statusCode(202).
+			body("id", equalTo("ID"));
+	}
+
+	@Test
+	public void testPutAndDeleteMissingEmployeeWithIfMatch() {
+		// a precondition on an employee that does not exist always fails
+		when(employeeService.replaceEmployeeById(eq("missing"), any(), any()))
+			.thenThrow(new ClientErrorException(
+				"Employee not found with id missing", Status.PRECONDITION_FAILED));
+		when(employeeService.deleteEmployeeById(eq("missing"), any()))
+			.thenThrow(new ClientErrorException(
+				"Employee not found with id missing", Status.PRECONDITION_FAILED));
+
+		given().
+			contentType(MediaType.APPLICATION_JSON).
+			header("If-Match", "\"3-json\"").
+			body("{\"name\":\"passed name\",\"salary\":1000}").
+		when().
+			put(EMPLOYEES + "/missing").
+		then().
+			statusCode(412);
+
+		given().
+			header("If-Match", "*").
+		when().
+			delete(EMPLOYEES + "/missing").
+		then().
+			statusCode(412);
+	}
+
 	@Test
 	public void testDeleteEmployee() {
 		when(employeeService.deleteEmployeeById("ID"))
@@ -297,4 +945,10 @@ public class EmployeeResourceRestAssuredTest extends JerseyTest {
 			assertThat().
 			body(Matchers.isEmptyString());
 	}
+
+	private static byte[] binary(Employee employee) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EmployeeBinaryCodec.writeEmployee(employee, out);
+		return out.toByteArray();
+	}
 }
@@ -0,0 +1,152 @@
+package com.examples;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EmployeeResponseCacheTest {
+
+	private static final MediaType JSON = MediaType.APPLICATION_JSON_TYPE;
+
+	private static final MediaType XML = MediaType.APPLICATION_XML_TYPE;
+
+	private EmployeeResponseCache cache;
+
+	private AtomicInteger encodings;
+
+	@Before
+	public void setup() {
+		cache = new EmployeeResponseCache(100);
+		encodings = new AtomicInteger();
+	}
+
+	private Supplier<byte[]> encoder(String body) {
+		return () -> {
+			encodings.incrementAndGet();
+			return body.getBytes();
+		};
+	}
+
+	@Test
+	public void testSameVersionIsEncodedOnlyOnce() {
+		assertThat(cache.get("ID1", 0, JSON, encoder("first"))).isEqualTo("first".getBytes());
+		assertThat(cache.get("ID1", 0, JSON, encoder("second"))).isEqualTo("first".getBytes());
+		assertThat(encodings).hasValue(1);
+		assertThat(cache.getHits()).isEqualTo(1);
+		assertThat(cache.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	public void testNewVersionIsEncodedAgain() {
+		cache.get("ID1", 0, JSON, encoder("first"));
+		assertThat(cache.get("ID1", 1, JSON, encoder("second"))).isEqualTo("second".getBytes());
+		assertThat(cache.get("ID1", 1, JSON, encoder("third"))).isEqualTo("second".getBytes());
+		assertThat(encodings).hasValue(2);
+	}
+
+	@Test
+	public void testOlderVersionDoesNotReplaceNewerOne() {
+		cache.get("ID1", 2, JSON, encoder("newer"));
+		// e.g., a slow reader that read the version before a change
+		assertThat(cache.get("ID1", 1, JSON, encoder("older"))).isEqualTo("older".getBytes());
+		assertThat(cache.get("ID1", 2, JSON, encoder("other"))).isEqualTo("newer".getBytes());
+	}
+
+	@Test
+	public void testBodiesAreSeparatedByIdAndMediaType() {
+		cache.get("ID1", 0, JSON, encoder("json"));
+		cache.get("ID1", 0, XML, encoder("xml"));
+		cache.get(null, 0, JSON, encoder("list"));
+		assertThat(cache.get("ID1", 0, JSON, encoder("other"))).isEqualTo("json".getBytes());
+		assertThat(cache.get("ID1", 0, XML, encoder("other"))).isEqualTo("xml".getBytes());
+		assertThat(cache.get(null, 0, JSON, encoder("other"))).isEqualTo("list".getBytes());
+		assertThat(encodings).hasValue(3);
+	}
+
+	@Test
+	public void testExceptionsAreNotCached() {
+		assertThatThrownBy(() -> cache.get("ID1", 0, JSON, () -> {
+			throw new NotFoundException();
+		})).isInstanceOf(NotFoundException.class);
+		assertThat(cache.size()).isZero();
+	}
+
+	@Test
+	public void testBytesAreBounded() {
+		for (int i = 0; i < 20; i++) {
+			cache.get("ID" + i, 0, JSON, encoder("ten bytes!"));
+		}
+		assertThat(cache.size()).isEqualTo(10);
+		assertThat(cache.bytes()).isEqualTo(100);
+		assertThat(cache.getEvictions()).isEqualTo(10);
+	}
+
+	@Test
+	public void testReplacedBodiesAreNotCounted() {
+		cache.get("ID1", 0, JSON, encoder("first"));
+		cache.get("ID1", 1, JSON, encoder("second"));
+		assertThat(cache.bytes()).isEqualTo("second".length());
+		assertThatThrownBy(() -> cache.get("ID1", 2, JSON, () -> {
+			throw new NotFoundException();
+		})).isInstanceOf(NotFoundException.class);
+		assertThat(cache.bytes()).isZero();
+	}
+
+	@Test
+	public void testUsedBodiesAreNotEvicted() {
+		cache.get(null, 0, JSON, encoder("a list of forty bytes, used very often.."));
+		for (int i = 0; i < 20; i++) {
+			cache.get("ID" + i, 0, JSON, encoder("ten bytes!"));
+			cache.get(null, 0, JSON, encoder("other"));
+		}
+		assertThat(encodings).hasValue(21);
+		assertThat(cache.bytes()).isLessThanOrEqualTo(100);
+	}
+
+	@Test
+	public void testConcurrentMissesEncodeOnce() throws Exception {
+		int threads = 8;
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<byte[]>> bodies = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				bodies.add(executor.submit(() -> cache.get(null, 0, JSON, () -> {
+					encodings.incrementAndGet();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return "list".getBytes();
+				})));
+			}
+			// all the requests are either encoding or waiting
+			await().until(() -> cache.getHits() + cache.getMisses() == threads);
+			release.countDown();
+			for (Future<byte[]> body : bodies) {
+				assertThat(body.get(5, TimeUnit.SECONDS)).isEqualTo("list".getBytes());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertThat(encodings).hasValue(1);
+		assertThat(cache.getMisses()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,127 @@
+package com.examples;
+
+import static io.restassured.RestAssured.given;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+
+import io.restassured.RestAssured;
+
+public class EmployeeStreamWriterTest extends JerseyTest {
+
+	private static final List<Employee> SOME_EMPLOYEES = asList(
+		new Employee("ID1", "First Employee", 1000),
+		new Employee("ID2", null, 2000),
+		new Employee("ID3", "Special \"chars\" <&> è\n", -1));
+
+	private static final List<Employee> MANY_EMPLOYEES = IntStream.range(0, 1000)
+		.mapToObj(i -> new Employee("ID" + i, "Employee " + i, i))
+		.collect(Collectors.toList());
+
+	/**
+	 * A mock REST resource returning the same employees both as a list, which is
+	 * written by the default providers, and as a stream.
+	 */
+	@Path("testpath")
+	public static class MockResource {
+		@GET
+		@Path("list/{which}")
+		@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+		public List<Employee> list(@PathParam("which") String which) {
+			return employees(which);
+		}
+
+		@GET
+		@Path("stream/{which}")
+		@Produces({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+		public Response stream(@PathParam("which") String which) {
+			return Response
+				.ok(new GenericEntity<Stream<Employee>>(employees(which).stream()) {})
+				.build();
+		}
+
+		private List<Employee> employees(String which) {
+			switch (which) {
+			case "some":
+				return SOME_EMPLOYEES;
+			case "many":
+				return MANY_EMPLOYEES;
+			default:
+				return Collections.emptyList();
+			}
+		}
+	}
+
+	@Override
+	protected Application configure() {
+		return new ResourceConfig()
+			.register(EmployeeStreamWriter.class)
+			.register(MockResource.class);
+	}
+
+	@Before
+	public void configureRestAssured() {
+		// retrieve the base URI of the JerseyTest server
+		RestAssured.baseURI = getBaseUri().toString();
+	}
+
+	@Test
+	public void testSameOutputAsListJSON() {
+		assertSameOutput(MediaType.APPLICATION_JSON, "some");
+		assertSameOutput(MediaType.APPLICATION_JSON, "many");
+		assertSameOutput(MediaType.APPLICATION_JSON, "none");
+	}
+
+	@Test
+	public void testSameOutputAsListXML() {
+		assertSameOutput(MediaType.APPLICATION_XML, "some");
+		assertSameOutput(MediaType.APPLICATION_XML, "many");
+	}
+
+	@Test
+	public void testEmptyStreamXML() {
+		// JAXB writes an empty list as a self-closing element
+		// while we write a start and an end element, which is equivalent
+		assertThat(get(MediaType.APPLICATION_XML, "stream/none"))
+			.isEqualTo("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+				+ "<employees></employees>");
+	}
+
+	private void assertSameOutput(String mediaType, String which) {
+		assertThat(get(mediaType, "stream/" + which))
+			.isEqualTo(get(mediaType, "list/" + which));
+	}
+
+	private String get(String mediaType, String path) {
+		return given().
+				accept(mediaType).
+			when().
+				get("testpath/" + path).
+			then().
+				statusCode(200).
+				contentType(mediaType).
+			extract().
+				asString();
+	}
+}
@@ -0,0 +1,65 @@
+package com.examples;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.junit.After;
+import org.junit.Test;
+
+public class ServerConfigurationTest {
+
+	private static final String[] PROPERTIES = {
+		"worker.threads", "worker.queue.limit", "selector.runners",
+		"keepalive.max.requests", "keepalive.idle.timeout",
+		"max.header.size", "tcp.nodelay", "backlog"
+	};
+
+	@After
+	public void clearProperties() {
+		for (String property : PROPERTIES) {
+			System.clearProperty("simple.rest.service." + property);
+		}
+	}
+
+	@Test
+	public void testPropertiesAreAppliedToTheListener() {
+		System.setProperty("simple.rest.service.worker.threads", "7");
+		System.setProperty("simple.rest.service.worker.queue.limit", "500");
+		System.setProperty("simple.rest.service.selector.runners", "3");
+		System.setProperty("simple.rest.service.keepalive.max.requests", "100");
+		System.setProperty("simple.rest.service.keepalive.idle.timeout", "20");
+		System.setProperty("simple.rest.service.max.header.size", "16384");
+		System.setProperty("simple.rest.service.tcp.nodelay", "false");
+		System.setProperty("simple.rest.service.backlog", "2048");
+		NetworkListener listener = new NetworkListener("test");
+
+		new ServerConfiguration().applyTo(listener);
+
+		TCPNIOTransport transport = listener.getTransport();
+		assertThat(transport.getWorkerThreadPoolConfig().getCorePoolSize()).isEqualTo(7);
+		assertThat(transport.getWorkerThreadPoolConfig().getMaxPoolSize()).isEqualTo(7);
+		assertThat(transport.getWorkerThreadPoolConfig().getQueueLimit()).isEqualTo(500);
+		assertThat(transport.getSelectorRunnersCount()).isEqualTo(3);
+		assertThat(transport.isTcpNoDelay()).isFalse();
+		assertThat(transport.getServerConnectionBackLog()).isEqualTo(2048);
+		assertThat(listener.getKeepAlive().getMaxRequestsCount()).isEqualTo(100);
+		assertThat(listener.getKeepAlive().getIdleTimeoutInSeconds()).isEqualTo(20);
+		assertThat(listener.getMaxHttpHeaderSize()).isEqualTo(16384);
+		assertThat(ServerConfiguration.describe(listener))
+			.isEqualTo("worker threads: 7-7, worker queue limit: 500, selector runners: 3, "
+				+ "keep-alive max requests: 100, keep-alive idle timeout: 20s, "
+				+ "max header size: 16384, TCP_NODELAY: false, backlog: 2048");
+	}
+
+	@Test
+	public void testMissingPropertiesKeepTheDefaults() {
+		NetworkListener listener = new NetworkListener("test");
+		String defaults = ServerConfiguration.describe(listener);
+
+		new ServerConfiguration().applyTo(listener);
+
+		assertThat(ServerConfiguration.describe(listener))
+			.isEqualTo(defaults);
+	}
+}
@@ -0,0 +1,133 @@
+package com.examples.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+
+import com.examples.Main;
+
+/**
+ * Compares, for each response encoding, the bytes sent for a GET request with
+ * the CPU time spent for it, see {@link com.examples.CompressionInterceptor}.
+ *
+ * The CPU time is the one of the whole process, so it includes the client,
+ * whose cost does not depend on the encoding (the body is not decompressed):
+ * the differences between the encodings are the cost of the compression.
+ *
+ * This is not run as a test, see the README for running it.
+ *
+ * The system properties "employees" (default 1000), "threads" (default 4) and
+ * "requests" (default 2000 per thread) can be used to tune the run; the
+ * response cache is disabled, so that every response is encoded again.
+ */
+public class CompressionBenchmark {
+
+	private static final String BASE_URI =
+		"http://localhost:" + System.getProperty("simple.rest.service.port", "8080") + "/myapp/";
+
+	private static final com.sun.management.OperatingSystemMXBean OS =
+		(com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+	public static void main(String[] args) throws Exception {
+		int employees = Integer.getInteger("employees", 1000);
+		int threads = Integer.getInteger("threads", 4);
+		int requests = Integer.getInteger("requests", 2000);
+
+		System.setProperty("simple.rest.service.response.cache.bytes", "0");
+		HttpServer server = Main.startServer();
+		try {
+			for (int i = 0; i < employees; i++) {
+				post("{\"name\":\"Employee " + i + "\",\"salary\":" + i + "}");
+			}
+			for (String path : new String[] { "employees/ID1", "employees" }) {
+				for (String accept : new String[] { "application/json", "application/xml" }) {
+					for (String encoding : new String[] { "identity", "gzip", "deflate" }) {
+						// warm up
+						run(path, accept, encoding, threads, requests / 4);
+						long cpu = OS.getProcessCpuTime();
+						long start = System.nanoTime();
+						long bytes = run(path, accept, encoding, threads, requests);
+						double seconds = (System.nanoTime() - start) / 1e9;
+						int total = threads * requests;
+						System.out.println(String.format(
+							"GET %-15s %-16s %-8s %8d bytes %10.0f req/s %8.1f us CPU/req",
+							path, accept, encoding, bytes / total, total / seconds,
+							(OS.getProcessCpuTime() - cpu) / 1e3 / total));
+					}
+				}
+			}
+		} finally {
+			server.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the total number of bytes received
+	 */
+	private static long run(String path, String accept, String encoding, int threads,
+			int requests) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Long>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					long bytes = 0;
+					for (int i = 0; i < requests; i++) {
+						bytes += get(path, accept, encoding);
+					}
+					return bytes;
+				}));
+			}
+			long bytes = 0;
+			for (Future<Long> future : futures) {
+				bytes += future.get();
+			}
+			return bytes;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static long get(String path, String accept, String encoding) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+		connection.setRequestProperty("Accept", accept);
+		connection.setRequestProperty("Accept-Encoding", encoding);
+		return consume(connection);
+	}
+
+	private static void post(String json) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + "employees").openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", "application/json");
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(json.getBytes(StandardCharsets.UTF_8));
+		}
+		consume(connection);
+	}
+
+	private static long consume(HttpURLConnection connection) throws IOException {
+		if (connection.getResponseCode() >= 300)
+			throw new IOException("Unexpected status " + connection.getResponseCode());
+		// reading the whole body allows the connection to be kept alive
+		long bytes = 0;
+		try (InputStream in = connection.getInputStream()) {
+			byte[] buffer = new byte[8192];
+			for (int read; (read = in.read(buffer)) != -1;) {
+				bytes += read;
+			}
+		}
+		return bytes;
+	}
+}
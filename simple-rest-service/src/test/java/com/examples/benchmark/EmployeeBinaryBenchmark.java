@@ -0,0 +1,211 @@
+package com.examples.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.eclipse.persistence.jaxb.MarshallerProperties;
+import org.eclipse.persistence.jaxb.UnmarshallerProperties;
+
+import com.examples.EmployeeBinaryProvider;
+import com.examples.model.Employee;
+
+/**
+ * Compares the binary format of {@link EmployeeBinaryProvider} with JSON, with
+ * MOXy, and with XML, with the JDK JAXB, both configured as Jersey does, in
+ * writing and reading a list of employees, reporting the size of the encoded
+ * list, and the time and the bytes allocated for each operation.
+ *
+ * This is not run as a test, see the README for running it.
+ *
+ * The system properties "employees" (default 1000, the size of the list) and
+ * "iterations" (default 2000) can be used to tune the run.
+ */
+public class EmployeeBinaryBenchmark {
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static final Type LIST_TYPE = new GenericType<List<Employee>>() {}.getType();
+
+	private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+	private static final byte[] XML_START =
+		("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+			+ "<employees>").getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] XML_END = "</employees>".getBytes(StandardCharsets.UTF_8);
+
+	private static final XMLInputFactory XML_INPUT = XMLInputFactory.newInstance();
+
+	@FunctionalInterface
+	private interface Operation {
+		void run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int size = Integer.getInteger("employees", 1000);
+		int iterations = Integer.getInteger("iterations", 2000);
+
+		List<Employee> employees = IntStream.range(0, size)
+			.mapToObj(i -> new Employee("ID" + i, "Employee " + i, i * 10))
+			.collect(Collectors.toList());
+		Employee employee = employees.get(0);
+
+		JAXBContext jsonContext =
+			JAXBContextFactory.createContext(new Class<?>[] { Employee.class }, null);
+		JAXBContext xmlContext = JAXBContext.newInstance(Employee.class);
+		EmployeeBinaryProvider provider = new EmployeeBinaryProvider();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		jsonMarshaller(jsonContext).marshal(employees, out);
+		byte[] json = out.toByteArray();
+		out.reset();
+		jsonMarshaller(jsonContext).marshal(employee, out);
+		byte[] singleJson = out.toByteArray();
+		out.reset();
+		xmlContext.createMarshaller().marshal(employee, out);
+		byte[] singleXml = out.toByteArray();
+		out.reset();
+		provider.writeTo(employees, List.class, LIST_TYPE, NO_ANNOTATIONS,
+			EmployeeBinaryProvider.APPLICATION_EMPLOYEE_TYPE, new MultivaluedHashMap<>(), out);
+		byte[] binary = out.toByteArray();
+		out.reset();
+		provider.writeTo(employee, Employee.class, Employee.class, NO_ANNOTATIONS,
+			EmployeeBinaryProvider.APPLICATION_EMPLOYEE_TYPE, new MultivaluedHashMap<>(), out);
+		byte[] singleBinary = out.toByteArray();
+
+		System.out.println(String.format("%-22s %12s %12s", "size (bytes)", "1 employee",
+			size + " employees"));
+		System.out.println(String.format("%-22s %12d %12d", "XML", singleXml.length,
+			xml(xmlContext, employees).length));
+		System.out.println(String.format("%-22s %12d %12d", "JSON", singleJson.length,
+			json.length));
+		System.out.println(String.format("%-22s %12d %12d", "binary", singleBinary.length,
+			binary.length));
+
+		run("write " + size + " employees", iterations, out,
+			() -> xmlMarshal(xmlContext, employees, out),
+			() -> jsonMarshaller(jsonContext).marshal(employees, out),
+			() -> provider.writeTo(employees, List.class, LIST_TYPE, NO_ANNOTATIONS,
+				EmployeeBinaryProvider.APPLICATION_EMPLOYEE_TYPE, new MultivaluedHashMap<>(), out));
+		byte[] xml = xml(xmlContext, employees);
+		run("read " + size + " employees", iterations, out,
+			() -> xmlUnmarshal(xmlContext, xml),
+			() -> jsonUnmarshaller(jsonContext).unmarshal(
+				new StreamSource(new ByteArrayInputStream(json)), Employee.class),
+			() -> provider.readFrom(type(List.class), LIST_TYPE, NO_ANNOTATIONS,
+				EmployeeBinaryProvider.APPLICATION_EMPLOYEE_TYPE, new MultivaluedHashMap<>(),
+				new ByteArrayInputStream(binary)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<Object> type(Class<?> type) {
+		return (Class<Object>) type;
+	}
+
+	private static byte[] xml(JAXBContext context, List<Employee> employees) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		xmlMarshal(context, employees, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Like Jersey, the employees as fragments inside a root element.
+	 */
+	private static void xmlMarshal(JAXBContext context, List<Employee> employees,
+			ByteArrayOutputStream out) throws Exception {
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+		out.write(XML_START);
+		for (Employee employee : employees) {
+			marshaller.marshal(employee, out);
+		}
+		out.write(XML_END);
+	}
+
+	/**
+	 * Like Jersey, each employee is unmarshalled from a StAX reader.
+	 */
+	private static List<Employee> xmlUnmarshal(JAXBContext context, byte[] xml) throws Exception {
+		Unmarshaller unmarshaller = context.createUnmarshaller();
+		XMLStreamReader reader = XML_INPUT.createXMLStreamReader(new ByteArrayInputStream(xml));
+		List<Employee> employees = new ArrayList<>();
+		// the root element
+		reader.nextTag();
+		reader.nextTag();
+		while (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+			employees.add(unmarshaller.unmarshal(reader, Employee.class).getValue());
+			// the reader is left after the end of the employee
+			while (!reader.isStartElement() && !reader.isEndElement()) {
+				reader.next();
+			}
+		}
+		return employees;
+	}
+
+	/**
+	 * Like Jersey, a new marshaller for each entity.
+	 */
+	private static Marshaller jsonMarshaller(JAXBContext context) throws Exception {
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON);
+		marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+		return marshaller;
+	}
+
+	private static Unmarshaller jsonUnmarshaller(JAXBContext context) throws Exception {
+		Unmarshaller unmarshaller = context.createUnmarshaller();
+		unmarshaller.setProperty(UnmarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON);
+		unmarshaller.setProperty(UnmarshallerProperties.JSON_INCLUDE_ROOT, false);
+		return unmarshaller;
+	}
+
+	private static void run(String label, int iterations, ByteArrayOutputStream out,
+			Operation xml, Operation json, Operation binary) throws Exception {
+		String[] names = { "XML", "JSON", "binary" };
+		Operation[] operations = { xml, json, binary };
+		for (int i = 0; i < names.length; i++) {
+			// warm up
+			measure(iterations, out, operations[i]);
+			long[] result = measure(iterations, out, operations[i]);
+			System.out.println(String.format("%-22s %-9s %12.0f ns/op %12d bytes/op",
+				label, names[i], (double) result[0] / iterations, result[1] / iterations));
+		}
+	}
+
+	/**
+	 * @return the elapsed nanoseconds and the allocated bytes
+	 */
+	private static long[] measure(int iterations, ByteArrayOutputStream out, Operation operation)
+			throws Exception {
+		long threadId = Thread.currentThread().getId();
+		long allocated = THREADS.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			out.reset();
+			operation.run();
+		}
+		return new long[] { System.nanoTime() - start,
+			THREADS.getThreadAllocatedBytes(threadId) - allocated };
+	}
+}
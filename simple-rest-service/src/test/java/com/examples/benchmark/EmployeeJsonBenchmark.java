@@ -0,0 +1,145 @@
+package com.examples.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+
+import org.eclipse.persistence.jaxb.JAXBContextFactory;
+import org.eclipse.persistence.jaxb.MarshallerProperties;
+import org.eclipse.persistence.jaxb.UnmarshallerProperties;
+
+import com.examples.EmployeeJsonProvider;
+import com.examples.model.Employee;
+
+/**
+ * Compares MOXy, configured as Jersey does, with the
+ * {@link EmployeeJsonProvider}, in writing and reading a single employee and a
+ * list of employees, reporting the time and the bytes allocated for each
+ * operation.
+ *
+ * This is not run as a test, see the README for running it.
+ *
+ * The system properties "employees" (default 1000, the size of the list) and
+ * "iterations" (default 2000) can be used to tune the run.
+ */
+public class EmployeeJsonBenchmark {
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static final Type LIST_TYPE = new GenericType<List<Employee>>() {}.getType();
+
+	private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+	@FunctionalInterface
+	private interface Operation {
+		void run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int size = Integer.getInteger("employees", 1000);
+		int iterations = Integer.getInteger("iterations", 2000);
+
+		List<Employee> employees = IntStream.range(0, size)
+			.mapToObj(i -> new Employee("ID" + i, "Employee " + i, i * 10))
+			.collect(Collectors.toList());
+		Employee employee = employees.get(0);
+
+		JAXBContext context = JAXBContextFactory.createContext(new Class<?>[] { Employee.class }, null);
+		EmployeeJsonProvider provider = new EmployeeJsonProvider();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON);
+		marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+		marshaller.marshal(employees, out);
+		byte[] list = out.toByteArray();
+		out.reset();
+		marshaller.marshal(employee, out);
+		byte[] single = out.toByteArray();
+
+		run("write 1 employee", iterations * 100, out,
+			() -> moxyMarshaller(context).marshal(employee, out),
+			() -> provider.writeTo(employee, Employee.class, Employee.class, NO_ANNOTATIONS,
+				MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), out));
+		run("write " + size + " employees", iterations, out,
+			() -> moxyMarshaller(context).marshal(employees, out),
+			() -> provider.writeTo(employees, List.class, LIST_TYPE, NO_ANNOTATIONS,
+				MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(), out));
+		run("read 1 employee", iterations * 100, out,
+			() -> moxyUnmarshaller(context).unmarshal(
+				new StreamSource(new ByteArrayInputStream(single)), Employee.class),
+			() -> provider.readFrom(type(Employee.class), Employee.class, NO_ANNOTATIONS,
+				MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(),
+				new ByteArrayInputStream(single)));
+		run("read " + size + " employees", iterations, out,
+			() -> moxyUnmarshaller(context).unmarshal(
+				new StreamSource(new ByteArrayInputStream(list)), Employee.class),
+			() -> provider.readFrom(type(List.class), LIST_TYPE, NO_ANNOTATIONS,
+				MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<>(),
+				new ByteArrayInputStream(list)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<Object> type(Class<?> type) {
+		return (Class<Object>) type;
+	}
+
+	/**
+	 * Like Jersey, a new marshaller for each entity.
+	 */
+	private static Marshaller moxyMarshaller(JAXBContext context) throws Exception {
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(MarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON);
+		marshaller.setProperty(MarshallerProperties.JSON_INCLUDE_ROOT, false);
+		return marshaller;
+	}
+
+	private static Unmarshaller moxyUnmarshaller(JAXBContext context) throws Exception {
+		Unmarshaller unmarshaller = context.createUnmarshaller();
+		unmarshaller.setProperty(UnmarshallerProperties.MEDIA_TYPE, MediaType.APPLICATION_JSON);
+		unmarshaller.setProperty(UnmarshallerProperties.JSON_INCLUDE_ROOT, false);
+		return unmarshaller;
+	}
+
+	private static void run(String label, int iterations, ByteArrayOutputStream out,
+			Operation moxy, Operation provider) throws Exception {
+		for (String name : new String[] { "MOXy", "provider" }) {
+			Operation operation = "MOXy".equals(name) ? moxy : provider;
+			// warm up
+			measure(iterations, out, operation);
+			long[] result = measure(iterations, out, operation);
+			System.out.println(String.format("%-22s %-9s %12.0f ns/op %12d bytes/op",
+				label, name, (double) result[0] / iterations, result[1] / iterations));
+		}
+	}
+
+	/**
+	 * @return the elapsed nanoseconds and the allocated bytes
+	 */
+	private static long[] measure(int iterations, ByteArrayOutputStream out, Operation operation)
+			throws Exception {
+		long threadId = Thread.currentThread().getId();
+		long allocated = THREADS.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			out.reset();
+			operation.run();
+		}
+		return new long[] { System.nanoTime() - start,
+			THREADS.getThreadAllocatedBytes(threadId) - allocated };
+	}
+}
@@ -0,0 +1,114 @@
+package com.examples.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+
+import com.examples.Main;
+
+/**
+ * Compares the throughput of GET requests with and without the
+ * {@link com.examples.EmployeeResponseCache}.
+ *
+ * This is not run as a test, see the README for running it.
+ *
+ * The system properties "employees" (default 1000), "threads" (default 4) and
+ * "requests" (default 2000 per thread) can be used to tune the run.
+ */
+public class EmployeeResponseCacheBenchmark {
+
+	private static final String CACHE_SIZE_PROPERTY = "simple.rest.service.response.cache.bytes";
+
+	private static final String BASE_URI =
+		"http://localhost:" + System.getProperty("simple.rest.service.port", "8080") + "/myapp/";
+
+	public static void main(String[] args) throws Exception {
+		int employees = Integer.getInteger("employees", 1000);
+		int threads = Integer.getInteger("threads", 4);
+		int requests = Integer.getInteger("requests", 2000);
+
+		for (String cacheSize : new String[] { "0", "67108864" }) {
+			System.setProperty(CACHE_SIZE_PROPERTY, cacheSize);
+			HttpServer server = Main.startServer();
+			try {
+				for (int i = 0; i < employees; i++) {
+					post("{\"name\":\"Employee " + i + "\",\"salary\":" + i + "}");
+				}
+				String label = "0".equals(cacheSize) ? "uncached" : "cached";
+				for (String path : new String[] { "employees/ID1", "employees" }) {
+					for (String accept : new String[] { "application/json", "application/xml" }) {
+						// warm up
+						run(path, accept, threads, requests / 4);
+						double perSecond = run(path, accept, threads, requests);
+						System.out.println(String.format("%-8s GET %-15s %-16s %10.0f req/s",
+							label, path, accept, perSecond));
+					}
+				}
+			} finally {
+				server.shutdownNow();
+			}
+		}
+	}
+
+	private static double run(String path, String accept, int threads, int requests)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < requests; i++) {
+						get(path, accept);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			return (double) threads * requests / ((System.nanoTime() - start) / 1e9);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void get(String path, String accept) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+		connection.setRequestProperty("Accept", accept);
+		consume(connection);
+	}
+
+	private static void post(String json) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + "employees").openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", "application/json");
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(json.getBytes(StandardCharsets.UTF_8));
+		}
+		consume(connection);
+	}
+
+	private static void consume(HttpURLConnection connection) throws IOException {
+		if (connection.getResponseCode() >= 300)
+			throw new IOException("Unexpected status " + connection.getResponseCode());
+		// reading the whole body allows the connection to be kept alive
+		try (InputStream in = connection.getInputStream()) {
+			byte[] buffer = new byte[8192];
+			while (in.read(buffer) != -1) {
+				// discard
+			}
+		}
+	}
+}
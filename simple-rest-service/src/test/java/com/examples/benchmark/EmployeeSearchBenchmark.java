@@ -0,0 +1,138 @@
+package com.examples.benchmark;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import com.examples.model.Employee;
+import com.examples.repository.ConcurrentInMemoryEmployeeRepository;
+import com.examples.repository.EmployeeRepository;
+
+/**
+ * Measures the latency of
+ * {@link EmployeeRepository#searchByName(String, boolean, int)}, as used by a
+ * type-ahead, with the name index of the
+ * {@link ConcurrentInMemoryEmployeeRepository}, compared with the default
+ * implementation, which scans all the employees.
+ *
+ * The names are made of random syllables, e.g., "Kaloni Temarudo", and the
+ * queries are prefixes of 1 to 3 letters, whole tokens and two prefixes, with
+ * a limit of 10; also the time for saving the employees, which includes
+ * updating the indexes, is reported.
+ *
+ * This is not run as a test, see the README for running it; with 1 million
+ * employees it needs about 2 GB of heap, e.g., -Xmx2g.
+ *
+ * The system properties "employees" (default "100000,1000000", comma
+ * separated) and "queries" (default 2000, for each kind of query) can be used
+ * to tune the run.
+ */
+public class EmployeeSearchBenchmark {
+
+	private static final String[] SYLLABLES = { "ka", "lo", "ni", "te", "ma", "ru", "do", "si",
+		"ve", "ba", "ho", "ri", "gu", "pe", "an", "el", "mi", "so", "ta", "ze" };
+
+	private static final int LIMIT = 10;
+
+	@FunctionalInterface
+	private interface Query {
+		String next(Random random);
+	}
+
+	public static void main(String[] args) {
+		String[] sizes = System.getProperty("employees", "100000,1000000").split(",");
+		int queries = Integer.getInteger("queries", 2000);
+		for (String size : sizes) {
+			run(Integer.parseInt(size.trim()), queries);
+		}
+	}
+
+	private static void run(int size, int queries) {
+		Random random = new Random(42);
+		long start = System.nanoTime();
+		ConcurrentInMemoryEmployeeRepository indexed = new ConcurrentInMemoryEmployeeRepository();
+		for (int i = 0; i < size; i++) {
+			indexed.save(new Employee(null, name(random, 2, 3) + " " + name(random, 2, 4), i));
+		}
+		System.out.println(String.format("%,d employees saved in %.0f ms",
+			size, (System.nanoTime() - start) / 1e6));
+		EmployeeRepository scanning = scanning(indexed);
+		Query[] kinds = {
+			r -> name(r, 1, 1).substring(0, 1),
+			r -> name(r, 1, 1),
+			r -> name(r, 2, 2).substring(0, 3),
+			r -> name(r, 3, 3),
+			r -> name(r, 1, 1) + " " + name(r, 1, 1).substring(0, 1),
+		};
+		String[] labels = { "1 letter", "2 letters", "3 letters", "whole token", "two prefixes" };
+		for (int k = 0; k < kinds.length; k++) {
+			measure(labels[k] + ", index", indexed, kinds[k], queries);
+			// much slower, so fewer queries
+			measure(labels[k] + ", scan", scanning, kinds[k], Math.max(queries / 20, 1));
+		}
+	}
+
+	private static void measure(String label, EmployeeRepository repository, Query query,
+			int queries) {
+		// warm up
+		search(repository, query, Math.max(queries / 10, 1));
+		long start = System.nanoTime();
+		long found = search(repository, query, queries);
+		long elapsed = System.nanoTime() - start;
+		System.out.println(String.format("  %-26s %10.1f us/query %6.1f found/query",
+			label, elapsed / 1e3 / queries, (double) found / queries));
+	}
+
+	private static long search(EmployeeRepository repository, Query query, int queries) {
+		// the same queries for the index and the scan
+		Random random = new Random(queries);
+		long found = 0;
+		for (int i = 0; i < queries; i++) {
+			found += repository.searchByName(query.next(random), true, LIMIT).size();
+		}
+		return found;
+	}
+
+	private static String name(Random random, int minSyllables, int maxSyllables) {
+		StringBuilder name = new StringBuilder();
+		int syllables = minSyllables + random.nextInt(maxSyllables - minSyllables + 1);
+		for (int i = 0; i < syllables; i++) {
+			name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+		}
+		name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+		return name.toString();
+	}
+
+	/**
+	 * The same employees, with the default searchByName.
+	 */
+	private static EmployeeRepository scanning(EmployeeRepository repository) {
+		return new EmployeeRepository() {
+			@Override
+			public List<Employee> findAll() {
+				return repository.findAll();
+			}
+
+			@Override
+			public Stream<Employee> streamAll() {
+				return repository.streamAll();
+			}
+
+			@Override
+			public Optional<Employee> findOne(String id) {
+				return repository.findOne(id);
+			}
+
+			@Override
+			public Employee save(Employee employee) {
+				return repository.save(employee);
+			}
+
+			@Override
+			public Employee deleteById(String id) {
+				return repository.deleteById(id);
+			}
+		};
+	}
+}
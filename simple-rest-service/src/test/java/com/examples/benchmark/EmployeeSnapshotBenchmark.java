@@ -0,0 +1,109 @@
+package com.examples.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import com.examples.model.Employee;
+import com.examples.repository.ConcurrentInMemoryEmployeeRepository;
+import com.examples.repository.EmployeeSnapshot;
+
+/**
+ * Measures the startup time with an {@link EmployeeSnapshot}: the time for
+ * loading a repository from a snapshot, decoding the segments with all the
+ * processors and with a single one, compared with saving the same employees one
+ * by one in a new repository, as the startup did before.
+ *
+ * This is not run as a test, see the README for running it; with 10 million
+ * employees it needs about 4 GB of heap, e.g., -Xmx4g.
+ *
+ * The system property "employees" (default "1000000,10000000", comma
+ * separated) can be used to tune the run.
+ */
+public class EmployeeSnapshotBenchmark {
+
+	private static final int RUNS = 3;
+
+	@FunctionalInterface
+	private interface Load {
+		ConcurrentInMemoryEmployeeRepository run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] sizes = System.getProperty("employees", "1000000,10000000").split(",");
+		Path file = Files.createTempFile("employees", ".dat");
+		try {
+			for (String size : sizes) {
+				run(file, Integer.parseInt(size.trim()));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static void run(Path file, int size) throws Exception {
+		// generated when iterated, so that they are not all in memory
+		List<Employee> employees = new AbstractList<Employee>() {
+			@Override
+			public Employee get(int index) {
+				return new Employee("ID" + (index + 1), "Employee " + index, index);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+		long start = System.nanoTime();
+		EmployeeSnapshot.write(file, employees);
+		System.out.println(String.format("%,d employees: snapshot of %,d bytes written in %.0f ms",
+			size, Files.size(file), (System.nanoTime() - start) / 1e6));
+		int processors = Runtime.getRuntime().availableProcessors();
+		measure(processors > 1 ? "load, " + processors + " processors" : "load",
+			() -> EmployeeSnapshot.load(file));
+		if (processors > 1) {
+			ForkJoinPool single = new ForkJoinPool(1);
+			try {
+				measure("load, 1 processor",
+					() -> single.submit(() -> EmployeeSnapshot.load(file)).get());
+			} finally {
+				single.shutdown();
+			}
+		}
+		measure("save one by one", () -> {
+			ConcurrentInMemoryEmployeeRepository repository = new ConcurrentInMemoryEmployeeRepository();
+			for (Employee employee : employees) {
+				repository.save(employee);
+			}
+			return repository;
+		});
+	}
+
+	/**
+	 * Reports the best of {@value #RUNS} runs, after a warm up, and the heap
+	 * taken by the repository.
+	 */
+	private static void measure(String label, Load load) throws Exception {
+		Runtime runtime = Runtime.getRuntime();
+		long best = Long.MAX_VALUE;
+		long heap = 0;
+		long employees = 0;
+		for (int run = 0; run <= RUNS; run++) {
+			System.gc();
+			long used = runtime.totalMemory() - runtime.freeMemory();
+			long start = System.nanoTime();
+			ConcurrentInMemoryEmployeeRepository repository = load.run();
+			long elapsed = System.nanoTime() - start;
+			System.gc();
+			heap = runtime.totalMemory() - runtime.freeMemory() - used;
+			employees = repository.streamAll().count();
+			// the first one warms up
+			if (run > 0)
+				best = Math.min(best, elapsed);
+		}
+		System.out.println(String.format("  %-22s %8.0f ms %,12d employees %6d MB of heap",
+			label, best / 1e6, employees, heap >> 20));
+	}
+}
@@ -0,0 +1,152 @@
+package com.examples.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import com.examples.model.Employee;
+import com.examples.repository.FileEmployeeRepository;
+import com.examples.repository.FileEmployeeRepository.FsyncPolicy;
+
+/**
+ * Measures the {@link FileEmployeeRepository}: the throughput and the average
+ * latency of saves, with each {@link FsyncPolicy}, from a single thread and from
+ * many threads, and the time for recovering a repository, by replaying only the
+ * log or by loading a snapshot.
+ *
+ * The numbers depend much on the cost of an fsync on the file system of the
+ * directory, which is a temporary one unless the system property "dir" is set.
+ *
+ * This is not run as a test, see the README for running it.
+ *
+ * The system properties "saves" (default 5000, per thread), "threads"
+ * (default 8) and "employees" (default 100000, for recovering) can be used to
+ * tune the run.
+ */
+public class FileEmployeeRepositoryBenchmark {
+
+	private static final long NO_SNAPSHOTS = Long.MAX_VALUE;
+
+	private static final long GROUP_COMMIT_MILLIS = 2;
+
+	public static void main(String[] args) throws Exception {
+		int saves = Integer.getInteger("saves", 5000);
+		int threads = Integer.getInteger("threads", 8);
+		int employees = Integer.getInteger("employees", 100000);
+		String dir = System.getProperty("dir");
+		Path base = dir != null ? Files.createDirectories(Paths.get(dir))
+			: Files.createTempDirectory("employees");
+		try {
+			for (FsyncPolicy policy : FsyncPolicy.values()) {
+				for (int count : new int[] { 1, threads }) {
+					writes(base.resolve("writes"), policy, count, saves);
+				}
+			}
+			recovery(base.resolve("recovery"), employees);
+		} finally {
+			delete(base.resolve("writes"));
+			delete(base.resolve("recovery"));
+			if (dir == null)
+				Files.delete(base);
+		}
+	}
+
+	private static void writes(Path directory, FsyncPolicy policy, int threads, int saves)
+			throws Exception {
+		// warm up
+		runWrites(directory, policy, threads, Math.min(saves, 1000));
+		long elapsed = runWrites(directory, policy, threads, saves);
+		long total = (long) threads * saves;
+		System.out.println(String.format("save %-6s %2d threads %10.0f saves/s %10.1f us/save",
+			policy, threads, total * 1e9 / elapsed, elapsed / 1e3 * threads / total));
+	}
+
+	/**
+	 * @return the elapsed nanoseconds
+	 */
+	private static long runWrites(Path directory, FsyncPolicy policy, int threads, int saves)
+			throws Exception {
+		delete(directory);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (FileEmployeeRepository repository =
+				new FileEmployeeRepository(directory, policy, GROUP_COMMIT_MILLIS, NO_SNAPSHOTS)) {
+			long start = System.nanoTime();
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < saves; i++) {
+						repository.save(new Employee(null, "Employee " + i, i));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			return System.nanoTime() - start;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void recovery(Path directory, int employees) throws IOException {
+		delete(directory);
+		try (FileEmployeeRepository repository = new FileEmployeeRepository(directory,
+				FsyncPolicy.OS, GROUP_COMMIT_MILLIS, NO_SNAPSHOTS)) {
+			List<Employee> batch = new ArrayList<>();
+			for (int i = 0; i < employees; i++) {
+				batch.add(new Employee(null, "Employee " + i, i));
+				if (batch.size() == 1000) {
+					repository.saveAll(batch);
+					batch = new ArrayList<>();
+				}
+			}
+			repository.saveAll(batch);
+			// half of them are updated, so the log is longer than a snapshot
+			for (int i = 0; i < employees; i += 2) {
+				repository.save(new Employee("ID" + (i + 4), "Updated " + i, i));
+			}
+		}
+		recover(directory, "log");
+		try (FileEmployeeRepository repository = new FileEmployeeRepository(directory,
+				FsyncPolicy.OS, GROUP_COMMIT_MILLIS, NO_SNAPSHOTS)) {
+			repository.snapshot();
+		}
+		recover(directory, "snapshot");
+	}
+
+	private static void recover(Path directory, String label) throws IOException {
+		long bytes;
+		try (Stream<Path> files = Files.list(directory)) {
+			bytes = files.mapToLong(file -> file.toFile().length()).sum();
+		}
+		// warm up
+		new FileEmployeeRepository(directory, FsyncPolicy.OS, GROUP_COMMIT_MILLIS, NO_SNAPSHOTS)
+			.close();
+		long start = System.nanoTime();
+		int recovered;
+		try (FileEmployeeRepository repository = new FileEmployeeRepository(directory,
+				FsyncPolicy.OS, GROUP_COMMIT_MILLIS, NO_SNAPSHOTS)) {
+			recovered = repository.findAll().size();
+		}
+		System.out.println(String.format("recover from %-8s %8d employees %10d bytes %8.1f ms",
+			label, recovered, bytes, (System.nanoTime() - start) / 1e6));
+	}
+
+	private static void delete(Path directory) throws IOException {
+		if (!Files.exists(directory))
+			return;
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+				Files.delete(file);
+			}
+		}
+	}
+}
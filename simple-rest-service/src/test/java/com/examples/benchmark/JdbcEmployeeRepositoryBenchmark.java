@@ -0,0 +1,128 @@
+package com.examples.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.examples.model.Employee;
+import com.examples.repository.ConcurrentInMemoryEmployeeRepository;
+import com.examples.repository.EmployeeRepository;
+import com.examples.repository.JdbcEmployeeRepository;
+
+/**
+ * Compares the {@link JdbcEmployeeRepository}, with an in-memory and a file H2
+ * database, with the {@link ConcurrentInMemoryEmployeeRepository}, reporting
+ * the throughput and the average latency of the main operations, from a single
+ * thread and from many threads.
+ *
+ * This is not run as a test, see the README for running it.
+ *
+ * The system properties "employees" (default 10000, initially saved),
+ * "operations" (default 20000, per thread), "threads" (default 8) and
+ * "pool" (default 10, the size of the pool of connections) can be used to
+ * tune the run.
+ */
+public class JdbcEmployeeRepositoryBenchmark {
+
+	@FunctionalInterface
+	private interface Operation {
+		void run(EmployeeRepository repository, int i);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int employees = Integer.getInteger("employees", 10000);
+		int operations = Integer.getInteger("operations", 20000);
+		int threads = Integer.getInteger("threads", 8);
+		int pool = Integer.getInteger("pool", 10);
+		Path directory = Files.createTempDirectory("employees");
+		try {
+			benchmark("in-memory", new ConcurrentInMemoryEmployeeRepository(),
+				employees, operations, threads);
+			try (JdbcEmployeeRepository repository = new JdbcEmployeeRepository(
+					"jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1", new Properties(), pool, 5000)) {
+				benchmark("H2 in-memory", repository, employees, operations, threads);
+			}
+			try (JdbcEmployeeRepository repository = new JdbcEmployeeRepository(
+					"jdbc:h2:" + directory.resolve("employees"), new Properties(), pool, 5000)) {
+				benchmark("H2 file", repository, employees, operations, threads);
+			}
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				for (Path file : files.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	private static void benchmark(String label, EmployeeRepository repository, int employees,
+			int operations, int threads) throws Exception {
+		repository.saveAll(IntStream.range(0, employees)
+			.mapToObj(i -> new Employee("E" + i, "Employee " + i, i))
+			.collect(Collectors.toList()));
+		System.out.println(label + ", " + employees + " employees");
+		Operation findOne = (r, i) -> r.findOne("E" + random(employees));
+		Operation update = (r, i) -> r.save(new Employee("E" + random(employees), "Updated", i));
+		Operation insert = (r, i) -> r.save(new Employee(null, "Inserted", i));
+		Operation findPage = (r, i) -> r.findPage(null, 100);
+		for (int count : new int[] { 1, threads }) {
+			run("findOne", repository, operations, count, findOne);
+			run("save (update)", repository, operations, count, update);
+			run("save (insert)", repository, operations, count, insert);
+			run("findPage of 100", repository, operations / 10, count, findPage);
+		}
+		run("saveAll of 1000", repository, 20, 1, (r, i) -> r.saveAll(
+			IntStream.range(0, 1000)
+				.mapToObj(j -> new Employee(null, "Batch", j))
+				.collect(Collectors.toList())));
+	}
+
+	private static void run(String label, EmployeeRepository repository, int operations,
+			int threads, Operation operation) throws Exception {
+		// warm up
+		measure(repository, Math.max(operations / 10, 1), threads, operation);
+		long elapsed = measure(repository, operations, threads, operation);
+		long total = (long) operations * threads;
+		System.out.println(String.format("  %-16s %2d threads %10.0f ops/s %10.1f us/op",
+			label, threads, total * 1e9 / elapsed, elapsed / 1e3 * threads / total));
+	}
+
+	/**
+	 * @return the elapsed nanoseconds
+	 */
+	private static long measure(EmployeeRepository repository, int operations, int threads,
+			Operation operation) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long start = System.nanoTime();
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < operations; i++) {
+						operation.run(repository, i);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			return System.nanoTime() - start;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static int random(int bound) {
+		return ThreadLocalRandom.current().nextInt(bound);
+	}
+}
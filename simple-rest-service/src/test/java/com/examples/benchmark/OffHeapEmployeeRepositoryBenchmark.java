@@ -0,0 +1,186 @@
+package com.examples.benchmark;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import com.examples.model.Employee;
+import com.examples.repository.EmployeeRepository;
+import com.examples.repository.InMemoryEmployeeRepository;
+import com.examples.repository.OffHeapEmployeeRepository;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Measures the {@link OffHeapEmployeeRepository}, compared with the
+ * {@link InMemoryEmployeeRepository}: the bytes per employee, on the heap
+ * and in direct buffers, after a full collection, and the number of
+ * collections, their total and maximum pause, while saving all the employees,
+ * while looking up and replacing random ones, and while deleting random ones
+ * and saving new ones, which makes the off-heap repository compact its arena
+ * and renumber the positions, with the slowest of such operations, and the
+ * pause of a full collection with all the employees alive.
+ *
+ * This is not run as a test, see the README for running it; with the default
+ * number of employees it needs a large heap for the in-memory repository and
+ * enough direct memory for the off-heap one, e.g., -Xmx4g
+ * -XX:MaxDirectMemorySize=2g.
+ *
+ * The system properties "employees" (default 10000000), "operations" (default
+ * 5000000), "churn" (default 1.5 times the employees, the deletions and
+ * insertions) and "repository" ("inmemory", "offheap" or "both", the default;
+ * running one per JVM keeps the other one out of the measures) can be used to
+ * tune the run.
+ */
+public class OffHeapEmployeeRepositoryBenchmark {
+
+	/**
+	 * The collections seen by the notifications of the collectors.
+	 */
+	private static final class Pauses {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalMillis = new AtomicLong();
+		private final AtomicLong maxMillis = new AtomicLong();
+
+		void add(long millis) {
+			count.incrementAndGet();
+			totalMillis.addAndGet(millis);
+			maxMillis.accumulateAndGet(millis, Math::max);
+		}
+
+		void reset() {
+			count.set(0);
+			totalMillis.set(0);
+			maxMillis.set(0);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%5d collections, total %7d ms, max %5d ms",
+				count.get(), totalMillis.get(), maxMillis.get());
+		}
+	}
+
+	private static final Pauses PAUSES = new Pauses();
+
+	public static void main(String[] args) throws Exception {
+		int employees = Integer.getInteger("employees", 10000000);
+		int operations = Integer.getInteger("operations", 5000000);
+		int churn = Integer.getInteger("churn", employees / 2 * 3);
+		String repository = System.getProperty("repository", "both");
+		listenToCollections();
+		if (!repository.equals("offheap"))
+			run("inmemory", () -> new InMemoryEmployeeRepository(new HashMap<>()),
+				employees, operations, churn);
+		if (!repository.equals("inmemory"))
+			run("offheap", OffHeapEmployeeRepository::new, employees, operations, churn);
+	}
+
+	private interface RepositorySupplier {
+		EmployeeRepository get();
+	}
+
+	private static void run(String label, RepositorySupplier supplier, int employees,
+			int operations, int churn) {
+		long heapBefore = usedHeap();
+		long directBefore = usedDirect();
+		PAUSES.reset();
+		long start = System.nanoTime();
+		EmployeeRepository repository = supplier.get();
+		List<Employee> batch = new ArrayList<>();
+		for (int i = 0; i < employees; i++) {
+			batch.add(new Employee("E" + i, "Employee " + i, i));
+			if (batch.size() == 1000) {
+				repository.saveAll(batch);
+				batch = new ArrayList<>();
+			}
+		}
+		repository.saveAll(batch);
+		System.out.println(String.format("%-8s save %,d %8.0f ms, %s",
+			label, employees, (System.nanoTime() - start) / 1e6, PAUSES));
+		long heap = usedHeap() - heapBefore;
+		long direct = usedDirect() - directBefore;
+		System.out.println(String.format(
+			"%-8s %6.1f bytes/employee: %6.1f on the heap, %6.1f in direct buffers",
+			label, (double) (heap + direct) / employees, (double) heap / employees,
+			(double) direct / employees));
+		PAUSES.reset();
+		start = System.nanoTime();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < operations; i++) {
+			int id = random.nextInt(employees);
+			Employee employee = repository.findOne("E" + id).get();
+			if (i % 4 == 0) {
+				employee.setSalary(random.nextInt());
+				repository.save(employee);
+			}
+		}
+		System.out.println(String.format("%-8s %,d lookups, 1 in 4 replaced %8.0f ms, %s",
+			label, operations, (System.nanoTime() - start) / 1e6, PAUSES));
+		PAUSES.reset();
+		// the ids of the employees, replaced by the new ones
+		int[] ids = new int[employees];
+		for (int i = 0; i < employees; i++) {
+			ids[i] = i;
+		}
+		long slowest = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < churn; i++) {
+			int index = random.nextInt(employees);
+			long operationStart = System.nanoTime();
+			repository.deleteById("E" + ids[index]);
+			repository.save(new Employee("E" + (employees + i), "Employee " + i, i));
+			slowest = Math.max(slowest, System.nanoTime() - operationStart);
+			ids[index] = employees + i;
+		}
+		System.out.println(String.format(
+			"%-8s %,d deletions and insertions %8.0f ms, slowest %6.1f ms, %s",
+			label, churn, (System.nanoTime() - start) / 1e6, slowest / 1e6, PAUSES));
+		System.out.println(String.format("%-8s %6.1f bytes/employee after the churn",
+			label, (double) (usedHeap() - heapBefore + usedDirect() - directBefore) / employees));
+		start = System.nanoTime();
+		System.gc();
+		System.out.println(String.format("%-8s full collection %8.0f ms",
+			label, (System.nanoTime() - start) / 1e6));
+		// keeps the repository alive until here
+		System.out.println(String.format("%-8s %,d employees", label, repository.count()));
+	}
+
+	private static void listenToCollections() {
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+				if (notification.getType()
+						.equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+					PAUSES.add(GarbageCollectionNotificationInfo
+						.from((CompositeData) notification.getUserData())
+						.getGcInfo().getDuration());
+				}
+			}, null, null);
+		}
+	}
+
+	private static long usedHeap() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	private static long usedDirect() {
+		long used = 0;
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct"))
+				used += pool.getMemoryUsed();
+		}
+		return used;
+	}
+}
@@ -0,0 +1,117 @@
+package com.examples.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import com.examples.model.Employee;
+import com.examples.repository.ConcurrentInMemoryEmployeeRepository;
+import com.examples.repository.EmployeeRepository;
+import com.examples.repository.ShardedEmployeeRepository;
+
+/**
+ * Measures how the throughput of the {@link ShardedEmployeeRepository} scales
+ * with the number of threads, compared with a single
+ * {@link ConcurrentInMemoryEmployeeRepository}: each thread replaces or looks
+ * up random employees, or creates new ones, for a fixed time; also the time
+ * of {@link EmployeeRepository#findAll()}, which merges the shards, is
+ * reported.
+ *
+ * The numbers are meaningful only with at least as many cores as threads.
+ *
+ * This is not run as a test, see the README for running it.
+ *
+ * The system properties "threads" (default "1,2,4,8,16,32", comma separated),
+ * "shards" (default 16), "employees" (default 100000), "writes" (the
+ * percentage of operations that are writes, half of them creating a new
+ * employee, default 50) and "millis" (default 2000, for each number of
+ * threads) can be used to tune the run.
+ */
+public class ShardedEmployeeRepositoryBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String[] threads = System.getProperty("threads", "1,2,4,8,16,32").split(",");
+		int shards = Integer.getInteger("shards", 16);
+		int employees = Integer.getInteger("employees", 100000);
+		int writes = Integer.getInteger("writes", 50);
+		long millis = Long.getLong("millis", 2000);
+		System.out.println(String.format("%d processors, %d%% writes",
+			Runtime.getRuntime().availableProcessors(), writes));
+		run("single map", ConcurrentInMemoryEmployeeRepository::new,
+			threads, employees, writes, millis);
+		run(shards + " shards", () -> new ShardedEmployeeRepository(shards),
+			threads, employees, writes, millis);
+	}
+
+	private static void run(String label, Supplier<EmployeeRepository> supplier, String[] threads,
+			int employees, int writes, long millis) throws Exception {
+		for (String count : threads) {
+			EmployeeRepository repository = filled(supplier.get(), employees);
+			int threadCount = Integer.parseInt(count.trim());
+			// warm up
+			operations(repository, threadCount, employees, writes, millis / 4);
+			long operations = operations(repository, threadCount, employees, writes, millis);
+			System.out.println(String.format("%-12s %2d threads %12.0f ops/s",
+				label, threadCount, operations * 1e3 / millis));
+		}
+		EmployeeRepository repository = filled(supplier.get(), employees);
+		// warm up
+		for (int i = 0; i < 20; i++) {
+			repository.findAll();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < 10; i++) {
+			repository.findAll();
+		}
+		System.out.println(String.format("%-12s findAll of %,d employees %8.1f ms",
+			label, repository.count(), (System.nanoTime() - start) / 1e6 / 10));
+	}
+
+	private static EmployeeRepository filled(EmployeeRepository repository, int employees) {
+		for (int i = 0; i < employees; i++) {
+			repository.save(new Employee("E" + i, "Employee " + i, i));
+		}
+		return repository;
+	}
+
+	/**
+	 * @return the number of operations of all the threads
+	 */
+	private static long operations(EmployeeRepository repository, int threads, int employees,
+			int writes, long millis) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long end = System.nanoTime() + millis * 1_000_000;
+			List<Future<Long>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				futures.add(executor.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					long operations = 0;
+					while (System.nanoTime() < end) {
+						int i = random.nextInt(employees);
+						int operation = random.nextInt(200);
+						if (operation >= writes * 2)
+							repository.findOne("E" + i);
+						else if (operation % 2 == 0)
+							repository.save(new Employee("E" + i, "Employee " + i, operation));
+						else
+							repository.save(new Employee(null, "New Employee", i));
+						operations++;
+					}
+					return operations;
+				}));
+			}
+			long operations = 0;
+			for (Future<Long> future : futures) {
+				operations += future.get();
+			}
+			return operations;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.examples.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.examples.model.Employee;
+import com.examples.repository.ConcurrentInMemoryEmployeeRepository;
+import com.examples.repository.EmployeeRepository;
+import com.examples.repository.VersionedEmployeeRepository;
+
+/**
+ * Measures the {@link VersionedEmployeeRepository}, compared with the
+ * {@link ConcurrentInMemoryEmployeeRepository}: the time for saving the
+ * employees one by one and in batches, which copy the nodes of the trie once
+ * per batch, the throughput of lookups by id while a writer keeps replacing
+ * employees, and the time for streaming all the employees.
+ *
+ * This is not run as a test, see the README for running it.
+ *
+ * The system properties "employees" (default 100000), "batch" (default 1000),
+ * "threads" (default "1,4,16", comma separated, the readers) and "millis"
+ * (default 2000, for each number of readers) can be used to tune the run.
+ */
+public class VersionedEmployeeRepositoryBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int employees = Integer.getInteger("employees", 100000);
+		int batch = Integer.getInteger("batch", 1000);
+		String[] threads = System.getProperty("threads", "1,4,16").split(",");
+		long millis = Long.getLong("millis", 2000);
+		run("concurrent", ConcurrentInMemoryEmployeeRepository::new,
+			employees, batch, threads, millis);
+		run("versioned", VersionedEmployeeRepository::new,
+			employees, batch, threads, millis);
+	}
+
+	private static void run(String label, Supplier<EmployeeRepository> supplier, int employees,
+			int batch, String[] threads, long millis) throws Exception {
+		// warm up
+		fill(supplier.get(), employees, 1);
+		fill(supplier.get(), employees, batch);
+		for (int size : new int[] { 1, batch }) {
+			long start = System.nanoTime();
+			fill(supplier.get(), employees, size);
+			System.out.println(String.format("%-10s save %,d in batches of %4d %8.0f ms",
+				label, employees, size, (System.nanoTime() - start) / 1e6));
+		}
+		EmployeeRepository repository = fill(supplier.get(), employees, batch);
+		for (String count : threads) {
+			int readers = Integer.parseInt(count.trim());
+			System.out.println(String.format("%-10s %2d readers, 1 writer %12.0f lookups/s",
+				label, readers, lookups(repository, employees, readers, millis) * 1e3 / millis));
+		}
+		for (int i = 0; i < 20; i++) {
+			count(repository);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < 20; i++) {
+			count(repository);
+		}
+		System.out.println(String.format("%-10s streamAll of %,d employees %8.1f ms",
+			label, employees, (System.nanoTime() - start) / 1e6 / 20));
+	}
+
+	private static EmployeeRepository fill(EmployeeRepository repository, int employees,
+			int batch) {
+		List<Employee> toSave = new ArrayList<>();
+		for (int i = 0; i < employees; i++) {
+			toSave.add(new Employee("E" + i, "Employee " + i, i));
+			if (toSave.size() == batch) {
+				repository.saveAll(toSave);
+				toSave = new ArrayList<>();
+			}
+		}
+		repository.saveAll(toSave);
+		return repository;
+	}
+
+	private static long count(EmployeeRepository repository) {
+		try (Stream<Employee> employees = repository.streamAll()) {
+			return employees.count();
+		}
+	}
+
+	/**
+	 * @return the number of lookups of all the readers
+	 */
+	private static long lookups(EmployeeRepository repository, int employees, int readers,
+			long millis) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+		AtomicBoolean done = new AtomicBoolean();
+		try {
+			long end = System.nanoTime() + millis * 1_000_000;
+			executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (!done.get()) {
+					int i = random.nextInt(employees);
+					repository.save(new Employee("E" + i, "Employee " + i, random.nextInt()));
+				}
+			});
+			List<Future<Long>> futures = new ArrayList<>();
+			for (int t = 0; t < readers; t++) {
+				futures.add(executor.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					long lookups = 0;
+					while (System.nanoTime() < end) {
+						repository.findOne("E" + random.nextInt(employees));
+						lookups++;
+					}
+					return lookups;
+				}));
+			}
+			long lookups = 0;
+			for (Future<Long> future : futures) {
+				lookups += future.get();
+			}
+			return lookups;
+		} finally {
+			done.set(true);
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package com.examples.repository;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.examples.model.Employee;
+import com.examples.repository.CachingEmployeeRepository.WritePolicy;
+
+public class CachingEmployeeRepositoryTest {
+
+	private ConcurrentInMemoryEmployeeRepository delegate;
+
+	private CachingEmployeeRepository repository;
+
+	@Before
+	public void setup() {
+		delegate = spy(new ConcurrentInMemoryEmployeeRepository());
+		repository = new CachingEmployeeRepository(delegate, 100, WritePolicy.WRITE_THROUGH);
+	}
+
+	@Test
+	public void testFindOneIsReadThrough() {
+		assertThat(repository.findOne("ID1").get().getName()).isEqualTo("First Employee");
+		assertThat(repository.findOne("ID1").get().getName()).isEqualTo("First Employee");
+		verify(delegate, times(1)).findOne("ID1");
+		assertThat(repository.getMisses()).isEqualTo(1);
+		assertThat(repository.getHits()).isEqualTo(1);
+		assertThat(repository.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void testMissingIdsAreCached() {
+		assertThat(repository.findOne("missing")).isEmpty();
+		assertThat(repository.findOne("missing")).isEmpty();
+		verify(delegate, times(1)).findOne("missing");
+		assertThat(repository.getHits()).isEqualTo(1);
+	}
+
+	@Test
+	public void testWriteThrough() {
+		repository.findOne("ID1");
+		repository.findOne("ID4");
+		Employee replaced = repository.save(new Employee("ID1", "Replaced", 1500));
+		Employee added = repository.save(new Employee(null, "Added", 4000));
+		assertThat(repository.findOne("ID1")).contains(replaced);
+		assertThat(repository.findOne("ID4")).contains(added);
+		repository.deleteById("ID1");
+		assertThat(repository.findOne("ID1")).isEmpty();
+		verify(delegate, times(1)).findOne("ID1");
+		verify(delegate, times(1)).findOne("ID4");
+		assertThat(repository.getMisses()).isEqualTo(2);
+		assertThat(repository.getHits()).isEqualTo(3);
+	}
+
+	@Test
+	public void testInvalidate() {
+		repository = new CachingEmployeeRepository(delegate, 100, WritePolicy.INVALIDATE);
+		repository.findOne("ID1");
+		repository.findOne("ID4");
+		repository.save(new Employee("ID1", "Replaced", 1500));
+		repository.save(new Employee(null, "Added", 4000));
+		assertThat(repository.findOne("ID1").get().getName()).isEqualTo("Replaced");
+		assertThat(repository.findOne("ID4").get().getName()).isEqualTo("Added");
+		repository.deleteById("ID1");
+		assertThat(repository.findOne("ID1")).isEmpty();
+		verify(delegate, times(3)).findOne("ID1");
+		verify(delegate, times(2)).findOne("ID4");
+	}
+
+	@Test
+	public void testSaveAllAndDeleteAll() {
+		repository.findOne("ID1");
+		repository.findOne("ID2");
+		repository.saveAll(asList(new Employee("ID1", "Replaced", 1), new Employee(null, "New", 2)));
+		assertThat(repository.deleteAll(asList("ID2", "missing")))
+			.containsExactly(new Employee("ID2", "Second Employee", 2000), null);
+		assertThat(repository.findOne("ID1").get().getName()).isEqualTo("Replaced");
+		assertThat(repository.findOne("ID4").get().getName()).isEqualTo("New");
+		assertThat(repository.findOne("ID2")).isEmpty();
+		assertThat(repository.findOne("missing")).isEmpty();
+		assertThat(repository.getHits()).isEqualTo(4);
+	}
+
+	@Test
+	public void testFailedWriteIsNotCached() {
+		repository.findOne("ID1");
+		doThrow(new IllegalStateException("failure")).when(delegate).saveAll(any());
+		assertThatThrownBy(() -> repository.save(new Employee("ID1", "Replaced", 1500)))
+			.isInstanceOf(IllegalStateException.class);
+		assertThat(repository.findOne("ID1").get().getName()).isEqualTo("First Employee");
+		verify(delegate, times(2)).findOne("ID1");
+	}
+
+	@Test
+	public void testFindAllByIdReadsOnlyTheMissingOnesInABatch() {
+		repository.findOne("ID1");
+		repository.findOne("missing");
+		assertThat(repository.findAllById(asList("ID2", "ID1", "missing", "other", "ID3")))
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID2", "ID1", "ID3");
+		verify(delegate).findAllById(asList("ID2", "other", "ID3"));
+		assertThat(repository.findAllById(asList("ID3", "other")))
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID3");
+		verify(delegate, times(1)).findAllById(any());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		// a single segment
+		repository = new CachingEmployeeRepository(delegate, 1, WritePolicy.WRITE_THROUGH);
+		repository.findOne("ID1");
+		repository.findOne("ID2");
+		assertThat(repository.getEvictions()).isEqualTo(1);
+		assertThat(repository.size()).isEqualTo(1);
+		repository.findOne("ID2");
+		repository.findOne("ID1");
+		verify(delegate, times(2)).findOne("ID1");
+		verify(delegate, times(1)).findOne("ID2");
+		assertThat(repository.describe())
+			.isEqualTo("cached ids: 1, hits: 1, misses: 3, hit ratio: 25.0%, evictions: 2");
+	}
+
+	@Test
+	public void testSizeIsBounded() {
+		repository = new CachingEmployeeRepository(delegate, 10, WritePolicy.WRITE_THROUGH);
+		for (int i = 0; i < 100; i++) {
+			repository.findOne("E" + i);
+		}
+		assertThat(repository.size()).isLessThanOrEqualTo(10);
+		assertThat(repository.getEvictions()).isEqualTo(100 - repository.size());
+	}
+
+	@Test
+	public void testOtherQueriesAreDelegated() {
+		assertThat(repository.findAll()).hasSize(3);
+		assertThat(repository.streamAll()).hasSize(3);
+		assertThat(repository.findPage(null, 2).getEmployees()).hasSize(2);
+		assertThat(repository.findBySalaryRange(2000, 3000)).hasSize(2);
+		assertThat(repository.searchByName("employee", true, 10)).hasSize(3);
+		assertThat(repository.count()).isEqualTo(3);
+		assertThat(repository.statistics().getSum()).isEqualTo(6000);
+		assertThat(repository.size()).isZero();
+	}
+
+	@Test
+	public void testCloseClosesTheDelegate() throws IOException {
+		EmployeeRepository closeable = Mockito.mock(EmployeeRepository.class,
+			Mockito.withSettings().extraInterfaces(Closeable.class));
+		new CachingEmployeeRepository(closeable, 10, WritePolicy.WRITE_THROUGH).close();
+		verify((Closeable) closeable).close();
+		// not closeable
+		repository.close();
+	}
+
+	@Test
+	public void testConcurrentReadsAndWritesDoNotLeaveStaleEntries() throws Exception {
+		repository = new CachingEmployeeRepository(new ConcurrentInMemoryEmployeeRepository(), 4,
+			WritePolicy.WRITE_THROUGH);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < 2000; i++) {
+						String id = "E" + random.nextInt(8);
+						if (thread % 2 == 0)
+							repository.findOne(id);
+						else if (random.nextBoolean())
+							repository.save(new Employee(id, "Employee", i));
+						else
+							repository.deleteById(id);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		for (int i = 0; i < 8; i++) {
+			String id = "E" + i;
+			Optional<Employee> cached = repository.findOne(id);
+			assertThat(cached.map(Employee::getSalary))
+				.isEqualTo(repository.findAll().stream()
+					.filter(employee -> employee.getEmployeeId().equals(id))
+					.findFirst()
+					.map(Employee::getSalary));
+		}
+	}
+}
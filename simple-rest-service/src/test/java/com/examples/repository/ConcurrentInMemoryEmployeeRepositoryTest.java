@@ -0,0 +1,305 @@
+package com.examples.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
+import com.examples.model.SalaryBucket;
+
+public class ConcurrentInMemoryEmployeeRepositoryTest {
+
+	private ConcurrentInMemoryEmployeeRepository repository;
+
+	@Before
+	public void setup() {
+		repository = new ConcurrentInMemoryEmployeeRepository();
+		// make sure the repository is always empty
+		repository.findAll()
+			.forEach(e -> repository.deleteById(e.getEmployeeId()));
+	}
+
+	@Test
+	public void testFindAllKeepsInsertionOrder() {
+		Employee e1 = new Employee("B", "Test Employee", 0);
+		Employee e2 = new Employee("A", "Test Employee", 0);
+		Employee e3 = new Employee("C", "Test Employee", 0);
+		repository.save(e1);
+		repository.save(e2);
+		repository.save(e3);
+		Employee modified = new Employee("B", "Modified", 0);
+		repository.save(modified);
+		assertThat(repository.findAll())
+			.containsExactly(modified, e2, e3);
+	}
+
+	@Test
+	public void testStreamAllKeepsInsertionOrder() {
+		Employee e1 = new Employee("B", "Test Employee", 0);
+		Employee e2 = new Employee("A", "Test Employee", 0);
+		repository.save(e1);
+		repository.save(e2);
+		assertThat(repository.streamAll())
+			.containsExactly(e1, e2);
+	}
+
+	@Test
+	public void testFindOne() {
+		assertThat(repository.findOne("ID1")).isEmpty();
+		Employee e1 = new Employee("ID1", "Test Employee", 0);
+		repository.save(e1);
+		assertThat(repository.findOne("ID1")).contains(e1);
+	}
+
+	@Test
+	public void testFindAllById() {
+		Employee e1 = repository.save(new Employee("ID1", "First", 0));
+		Employee e2 = repository.save(new Employee("ID2", "Second", 0));
+		assertThat(repository.findAllById(Arrays.asList("ID2", "ID3", "ID1")))
+			.containsExactly(e2, e1);
+	}
+
+	@Test
+	public void testSaveWithoutIdCreatesAnIdAutomatically() {
+		Employee e = new Employee(null, "Test Employee", 0);
+		Employee saved = repository.save(e);
+		String generatedId = saved.getEmployeeId();
+		assertThat(generatedId).isNotNull();
+		assertThat(repository.findOne(generatedId)).contains(saved);
+	}
+
+	@Test
+	public void testGeneratedIdsAreNotReusedAfterDeletion() {
+		Employee first = repository.save(new Employee(null, "First", 0));
+		Employee second = repository.save(new Employee(null, "Second", 0));
+		repository.deleteById(first.getEmployeeId());
+		Employee third = repository.save(new Employee(null, "Third", 0));
+		assertThat(third.getEmployeeId())
+			.isNotIn(first.getEmployeeId(), second.getEmployeeId());
+		assertThat(repository.findAll())
+			.containsExactly(second, third);
+	}
+
+	@Test
+	public void testExplicitIdsAreNotGeneratedLater() {
+		Employee explicit = new Employee("ID100", "Explicit", 0);
+		repository.save(explicit);
+		Employee saved = repository.save(new Employee(null, "Generated", 0));
+		assertThat(saved.getEmployeeId()).isEqualTo("ID101");
+		assertThat(repository.findOne("ID100")).contains(explicit);
+	}
+
+	@Test
+	public void testSaveWithIdReplacesTheExistingEmployee() {
+		String id = "ID1";
+		Employee original = new Employee(id, "Test Employee", 0);
+		repository.save(original);
+		Employee modified = new Employee(id, "Modified", 0);
+		Employee saved = repository.save(modified);
+		assertThat(saved).isSameAs(modified);
+		assertThat(repository.findOne(id).get())
+			.isSameAs(modified)
+			.isNotSameAs(original);
+	}
+
+	@Test
+	public void testDeleteById() {
+		String id = "ID1";
+		Employee employee = new Employee(id, "Test Employee", 0);
+		repository.save(employee);
+		assertThat(repository.deleteById(id))
+			.isSameAs(employee);
+		assertThat(repository.deleteById("non-existent"))
+			.isNull();
+		assertThat(repository.findAll()).isEmpty();
+	}
+
+	@Test
+	public void testFindPageIsStableInCaseOfDeletions() {
+		Employee e1 = repository.save(new Employee(null, "First", 0));
+		Employee e2 = repository.save(new Employee(null, "Second", 0));
+		Employee e3 = repository.save(new Employee(null, "Third", 0));
+		Employee e4 = repository.save(new Employee(null, "Fourth", 0));
+		EmployeePage first = repository.findPage(null, 2);
+		assertThat(first.getEmployees()).containsExactly(e1, e2);
+		// deleting an employee of the previous page must not
+		// shift the following pages
+		repository.deleteById(e1.getEmployeeId());
+		repository.deleteById(e2.getEmployeeId());
+		EmployeePage second = repository.findPage(first.getNextCursor(), 2);
+		assertThat(second.getEmployees()).containsExactly(e3, e4);
+		assertThat(second.getNextCursor()).isNull();
+	}
+
+	@Test
+	public void testFindPageWithInvalidCursor() {
+		assertThatThrownBy(() -> repository.findPage("foo", 2))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Invalid cursor foo");
+	}
+
+	@Test
+	public void testFindBySalaryRange() {
+		Employee e1 = repository.save(new Employee("A", "A", 3000));
+		Employee e2 = repository.save(new Employee("B", "B", 1000));
+		Employee e3 = repository.save(new Employee("C", "C", 2000));
+		Employee e4 = repository.save(new Employee("D", "D", 1000));
+		assertThat(repository.findBySalaryRange(1000, 2000))
+			.containsExactly(e2, e4, e3);
+		assertThat(repository.findBySalaryRange(Integer.MIN_VALUE, Integer.MAX_VALUE))
+			.containsExactly(e2, e4, e3, e1);
+		assertThat(repository.findBySalaryRange(2001, 2999)).isEmpty();
+		assertThat(repository.findBySalaryRange(2000, 1000)).isEmpty();
+	}
+
+	@Test
+	public void testSalaryIndexIsUpdatedBySaveAndDelete() {
+		repository.save(new Employee("A", "A", 1000));
+		repository.save(new Employee("B", "B", 2000));
+		Employee raised = repository.save(new Employee("A", "Raised", 3000));
+		Employee renamed = repository.save(new Employee("B", "Renamed", 2000));
+		assertThat(repository.findBySalaryRange(0, 2000)).containsExactly(renamed);
+		assertThat(repository.findBySalaryRange(3000, 3000)).containsExactly(raised);
+		repository.deleteById("A");
+		assertThat(repository.findBySalaryRange(0, 5000)).containsExactly(renamed);
+	}
+
+	@Test
+	public void testIndexesAfterConcurrentUpdates() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = IntStream.range(0, 2000)
+				.mapToObj(i -> executor.submit(() -> {
+					String id = "E" + i % 50;
+					if (i % 7 == 0)
+						repository.deleteById(id);
+					else
+						repository.save(new Employee(id, "Employee " + i % 3, i % 13));
+				}))
+				.collect(Collectors.toList());
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		assertThat(repository.findBySalaryRange(Integer.MIN_VALUE, Integer.MAX_VALUE))
+			.containsExactlyElementsOf(repository.findAll().stream()
+				.sorted(Comparator.comparingInt(Employee::getSalary))
+				.collect(Collectors.toList()));
+		IntSummaryStatistics expected = repository.findAll().stream()
+			.mapToInt(Employee::getSalary)
+			.summaryStatistics();
+		assertThat(repository.count()).isEqualTo(expected.getCount());
+		EmployeeStatistics statistics = repository.statistics();
+		assertThat(statistics.getSum()).isEqualTo(expected.getSum());
+		assertThat(statistics.getMin()).isEqualTo(expected.getMin());
+		assertThat(statistics.getMax()).isEqualTo(expected.getMax());
+		for (String name : Arrays.asList("0", "1", "2")) {
+			assertThat(repository.searchByName(name, false, 100))
+				.containsExactlyInAnyOrderElementsOf(repository.findAll().stream()
+					.filter(employee -> employee.getName().endsWith(name))
+					.collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void testCountAndStatistics() {
+		assertThat(repository.count()).isZero();
+		assertThat(repository.statistics())
+			.isEqualTo(new EmployeeStatistics(0, 0, null, null, new ArrayList<>()));
+		repository.save(new Employee("A", "A", 1000));
+		repository.save(new Employee("B", "B", 1500));
+		repository.save(new Employee("C", "C", -10));
+		repository.save(new Employee("D", "D", 0));
+		repository.save(new Employee("A", "Renamed", 1000));
+		repository.save(new Employee("B", "B", 3000));
+		repository.deleteById("C");
+		repository.deleteById("C");
+		assertThat(repository.count()).isEqualTo(3);
+		EmployeeStatistics statistics = repository.statistics();
+		assertThat(statistics).isEqualTo(new EmployeeStatistics(3, 4000, 0, 3000, Arrays.asList(
+			new SalaryBucket(0, 0, 1),
+			new SalaryBucket(512, 1023, 1),
+			new SalaryBucket(2048, 4095, 1))));
+		assertThat(statistics.getMean()).isEqualTo(4000 / 3.0);
+		repository.save(new Employee("E", "E", Integer.MIN_VALUE));
+		repository.save(new Employee("F", "F", Integer.MAX_VALUE));
+		assertThat(repository.statistics().getHistogram())
+			.startsWith(new SalaryBucket(Integer.MIN_VALUE, -1, 1))
+			.endsWith(new SalaryBucket(1 << 30, Integer.MAX_VALUE, 1));
+	}
+
+	@Test
+	public void testSearchByName() {
+		Employee e1 = repository.save(new Employee("A", "Smith Bob", 0));
+		Employee e2 = repository.save(new Employee("B", "Mary-Ann Smith", 0));
+		Employee e3 = repository.save(new Employee("C", "Ann Smithson Smithers", 0));
+		repository.save(new Employee("D", null, 0));
+		// in order of the matching token, then of insertion
+		assertThat(repository.searchByName("SMITH", true, 10))
+			.containsExactly(e1, e2, e3);
+		assertThat(repository.searchByName("smith", false, 10))
+			.containsExactly(e1, e2);
+		assertThat(repository.searchByName("smiths", true, 10))
+			.containsExactly(e3);
+		assertThat(repository.searchByName("smith", true, 2))
+			.containsExactly(e1, e2);
+		assertThat(repository.searchByName("an sm", true, 10))
+			.containsExactly(e2, e3);
+		assertThat(repository.searchByName("ann mary", false, 10))
+			.containsExactly(e2);
+		assertThat(repository.searchByName("smithe", false, 10)).isEmpty();
+		assertThat(repository.searchByName("!", true, 10)).isEmpty();
+	}
+
+	@Test
+	public void testNameIndexIsUpdatedBySaveAndDelete() {
+		repository.save(new Employee("A", "Smith Bob", 0));
+		repository.save(new Employee("B", "Jones", 0));
+		Employee renamed = repository.save(new Employee("A", "Bob Brown", 0));
+		Employee raised = repository.save(new Employee("B", "Jones", 1000));
+		assertThat(repository.searchByName("smith", true, 10)).isEmpty();
+		assertThat(repository.searchByName("b", true, 10)).containsExactly(renamed);
+		assertThat(repository.searchByName("jones", true, 10)).containsExactly(raised);
+		repository.deleteById("A");
+		assertThat(repository.searchByName("bob", true, 10)).isEmpty();
+	}
+
+	@Test
+	public void testConcurrentSavesGenerateDistinctIds() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Employee>> futures = IntStream.range(0, 1000)
+				.mapToObj(i -> executor.submit(
+					() -> repository.save(new Employee(null, "Employee " + i, i))))
+				.collect(Collectors.toList());
+			for (Future<Employee> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		List<Employee> all = repository.findAll();
+		assertThat(all).hasSize(1000);
+		assertThat(all.stream().map(Employee::getEmployeeId))
+			.doesNotHaveDuplicates();
+	}
+}
@@ -0,0 +1,132 @@
+package com.examples.repository;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.examples.model.Employee;
+
+public class EmployeeSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path file;
+
+	@Before
+	public void setup() {
+		file = folder.getRoot().toPath().resolve("employees.dat");
+	}
+
+	@Test
+	public void testWriteAndLoad() throws IOException {
+		List<Employee> employees = asList(
+			new Employee("ID1", "First Employee", 1000),
+			new Employee("X", null, -1),
+			new Employee("Y", "", Integer.MIN_VALUE),
+			new Employee("è", "è 😀 \uD800 Ā", Integer.MAX_VALUE));
+		EmployeeSnapshot.write(file, employees);
+		assertThat(EmployeeSnapshot.load(file).findAll())
+			.containsExactlyElementsOf(employees);
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		EmployeeSnapshot.write(file, Collections.emptyList());
+		assertThat(Files.size(file)).isEqualTo(EmployeeSnapshot.HEADER_SIZE);
+		assertThat(EmployeeSnapshot.load(file).findAll()).isEmpty();
+	}
+
+	@Test
+	public void testManySegmentsKeepTheOrder() throws IOException {
+		List<Employee> employees = IntStream.range(0, EmployeeSnapshot.SEGMENT_EMPLOYEES * 2 + 10)
+			.mapToObj(i -> new Employee("E" + i, "Employee " + i, i))
+			.collect(Collectors.toList());
+		EmployeeSnapshot.write(file, employees);
+		ConcurrentInMemoryEmployeeRepository repository = EmployeeSnapshot.load(file);
+		assertThat(repository.findAll()).containsExactlyElementsOf(employees);
+		assertThat(repository.findPage(null, 2).getEmployees())
+			.containsExactly(employees.get(0), employees.get(1));
+	}
+
+	@Test
+	public void testLoadedRepositoryCanBeChanged() throws IOException {
+		EmployeeSnapshot.write(file, asList(
+			new Employee("ID7", "Seventh", 7), new Employee("A", "A", 1)));
+		ConcurrentInMemoryEmployeeRepository repository = EmployeeSnapshot.load(file);
+		// generated ids follow the loaded ones
+		assertThat(repository.save(new Employee(null, "New", 0)).getEmployeeId())
+			.isEqualTo("ID8");
+		repository.save(new Employee("ID7", "Replaced", 70));
+		repository.deleteById("A");
+		assertThat(repository.findAll())
+			.extracting(Employee::getName)
+			.containsExactly("Replaced", "New");
+	}
+
+	@Test
+	public void testIdSequenceIsRestored() throws IOException {
+		EmployeeSnapshot.write(file, 10, asList(new Employee("ID1", "First", 1)));
+		assertThat(EmployeeSnapshot.load(file).save(new Employee(null, "New", 0)).getEmployeeId())
+			.isEqualTo("ID11");
+	}
+
+	@Test
+	public void testNotASnapshot() throws IOException {
+		Files.write(file, new byte[EmployeeSnapshot.HEADER_SIZE]);
+		assertThatThrownBy(() -> EmployeeSnapshot.load(file))
+			.isInstanceOf(IOException.class)
+			.hasMessageEndingWith("not a snapshot");
+		Files.write(file, new byte[3]);
+		assertThatThrownBy(() -> EmployeeSnapshot.load(file))
+			.isInstanceOf(IOException.class)
+			.hasMessageEndingWith("too short");
+	}
+
+	@Test
+	public void testTruncatedSnapshot() throws IOException {
+		EmployeeSnapshot.write(file, asList(new Employee("ID1", "First", 1)));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 1);
+		}
+		assertThatThrownBy(() -> EmployeeSnapshot.load(file))
+			.isInstanceOf(IOException.class)
+			.hasMessageEndingWith("invalid header");
+	}
+
+	@Test
+	public void testCorruptedSegment() throws IOException {
+		EmployeeSnapshot.write(file, asList(new Employee("ID1", "First", 1)));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 'x' }), EmployeeSnapshot.HEADER_SIZE + 2);
+		}
+		assertThatThrownBy(() -> EmployeeSnapshot.load(file))
+			.isInstanceOf(IOException.class)
+			.hasMessageEndingWith("invalid checksum of segment 0");
+	}
+
+	@Test
+	public void testDuplicateIds() throws IOException {
+		EmployeeSnapshot.write(file, asList(
+			new Employee("ID1", "First", 1), new Employee("ID1", "Again", 2)));
+		assertThatThrownBy(() -> EmployeeSnapshot.load(file))
+			.isInstanceOf(IOException.class)
+			.hasMessageEndingWith("duplicate id ID1");
+	}
+}
@@ -0,0 +1,304 @@
+package com.examples.repository;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.examples.model.Employee;
+import com.examples.repository.FileEmployeeRepository.FsyncPolicy;
+
+public class FileEmployeeRepositoryTest {
+
+	private static final long NO_SNAPSHOTS = Long.MAX_VALUE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+
+	private FileEmployeeRepository repository;
+
+	@Before
+	public void setup() throws IOException {
+		directory = folder.getRoot().toPath().resolve("data");
+		repository = open(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+	}
+
+	@After
+	public void closeRepository() throws IOException {
+		repository.close();
+	}
+
+	@Test
+	public void testNewRepositoryHasTheInitialEmployees() {
+		assertThat(repository.findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID1", "ID2", "ID3");
+	}
+
+	@Test
+	public void testInitialEmployeesAreNotSavedAgainAfterReopening() throws IOException {
+		repository.deleteAll(asList("ID1", "ID2", "ID3"));
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.findAll()).isEmpty();
+	}
+
+	@Test
+	public void testChangesSurviveReopening() throws IOException {
+		Employee added = repository.save(new Employee(null, "Added", 4000));
+		Employee replaced = repository.save(new Employee("ID1", "Replaced", 1500));
+		// longer than a chunk, with chars that take more than a byte
+		String longName = "è 😀 \uD800 " + String.join("", Collections.nCopies(30000, "ab"));
+		Employee special = repository.save(new Employee("X", longName, -1));
+		Employee nameless = repository.save(new Employee("Y", null, 0));
+		repository.deleteById("ID2");
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.findAll())
+			.containsExactly(replaced, new Employee("ID3", "Third Employee", 3000),
+				added, special, nameless);
+		assertThat(added.getEmployeeId()).isEqualTo("ID4");
+	}
+
+	@Test
+	public void testEachFsyncPolicy() throws IOException {
+		for (FsyncPolicy policy : FsyncPolicy.values()) {
+			reopen(policy, NO_SNAPSHOTS);
+			repository.save(new Employee(policy.name(), "Employee", policy.ordinal()));
+		}
+		reopen(FsyncPolicy.OS, NO_SNAPSHOTS);
+		assertThat(repository.findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID1", "ID2", "ID3", "ALWAYS", "GROUP", "OS");
+	}
+
+	@Test
+	public void testGeneratedIdsAreNotReusedAfterReopening() throws IOException {
+		repository.save(new Employee(null, "Deleted", 0));
+		repository.deleteById("ID4");
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.save(new Employee(null, "New", 0)).getEmployeeId())
+			.isEqualTo("ID5");
+		repository.deleteById("ID5");
+		repository.snapshot();
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.save(new Employee(null, "New", 0)).getEmployeeId())
+			.isEqualTo("ID6");
+	}
+
+	@Test
+	public void testGeneratedIdsSkipExplicitIds() {
+		repository.save(new Employee("ID5", "Explicit", 0));
+		repository.deleteById("ID5");
+		repository.save(new Employee("ID6", "Explicit", 0));
+		assertThat(repository.save(new Employee(null, "Generated", 0)).getEmployeeId())
+			.isEqualTo("ID7");
+	}
+
+	@Test
+	public void testSaveAllAndDeleteAll() throws IOException {
+		List<Employee> saved = repository.saveAll(asList(
+			new Employee(null, "A", 1), new Employee("B", "B", 2), new Employee(null, "C", 3)));
+		assertThat(saved).extracting(Employee::getEmployeeId).containsExactly("ID4", "B", "ID5");
+		assertThat(repository.deleteAll(asList("ID1", "missing", "B", "ID1")))
+			.containsExactly(new Employee("ID1", "First Employee", 1000), null,
+				new Employee("B", "B", 2), null);
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID2", "ID3", "ID4", "ID5");
+	}
+
+	@Test
+	public void testDeletingAMissingEmployeeDoesNotWriteTheLog() throws IOException {
+		long size = logSize();
+		assertThat(repository.deleteById("missing")).isNull();
+		assertThat(logSize()).isEqualTo(size);
+	}
+
+	@Test
+	public void testSnapshotCompactsTheLog() throws IOException {
+		repository.save(new Employee(null, "Before", 0));
+		repository.snapshot();
+		repository.save(new Employee(null, "After", 0));
+		repository.deleteById("ID1");
+		assertThat(fileNames()).containsExactlyInAnyOrder("snapshot-1.dat", "wal-1.log");
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.findAll())
+			.extracting(Employee::getName)
+			.containsExactly("Second Employee", "Third Employee", "Before", "After");
+		// a new segment for each opening
+		assertThat(fileNames()).containsExactlyInAnyOrder("snapshot-1.dat", "wal-1.log", "wal-2.log");
+		repository.snapshot();
+		assertThat(fileNames()).containsExactlyInAnyOrder("snapshot-3.dat", "wal-3.log");
+	}
+
+	@Test
+	public void testIndexesAndStatisticsAfterReopening() throws IOException {
+		repository.save(new Employee("ID1", "Raised", 2500));
+		repository.snapshot();
+		repository.save(new Employee(null, "New", 1500));
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.findBySalaryRange(1500, 2500))
+			.extracting(Employee::getName)
+			.containsExactly("New", "Second Employee", "Raised");
+		assertThat(repository.count()).isEqualTo(4);
+		assertThat(repository.statistics().getSum()).isEqualTo(9000);
+	}
+
+	@Test
+	public void testSnapshotIsWrittenWhenTheLogExceedsTheThreshold() throws IOException {
+		reopen(FsyncPolicy.OS, 1000);
+		for (int i = 0; i < 100; i++) {
+			repository.save(new Employee(null, "Employee " + i, i));
+		}
+		await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+			assertThat(fileNames()).anyMatch(name -> name.startsWith("snapshot-")));
+		List<Employee> employees = repository.findAll();
+		reopen(FsyncPolicy.OS, 1000);
+		assertThat(repository.findAll()).isEqualTo(employees);
+	}
+
+	@Test
+	public void testIncompleteRecordAtTheEndIsDiscarded() throws IOException {
+		repository.save(new Employee("A", "Complete", 1));
+		repository.save(new Employee("B", "Incomplete", 2));
+		repository.close();
+		Path log = directory.resolve("wal-0.log");
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID1", "ID2", "ID3", "A");
+		repository.save(new Employee("C", "After the recovery", 3));
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID1", "ID2", "ID3", "A", "C");
+	}
+
+	@Test
+	public void testCorruptedRecordAtTheEndIsDiscarded() throws IOException {
+		repository.save(new Employee("A", "Corrupted", 1));
+		repository.close();
+		Path log = directory.resolve("wal-0.log");
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 'x' }), channel.size() - 1);
+			// garbage after the record
+			channel.write(ByteBuffer.wrap(new byte[] { 0, 0 }), channel.size());
+		}
+		reopen(FsyncPolicy.ALWAYS, NO_SNAPSHOTS);
+		assertThat(repository.findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID1", "ID2", "ID3");
+	}
+
+	@Test
+	public void testCorruptedRecordBeforeTheLastSegmentIsAnError() throws IOException {
+		repository.close();
+		Path log = directory.resolve("wal-0.log");
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 'x' }), 10);
+		}
+		// reopening starts a new segment
+		Files.createFile(directory.resolve("wal-1.log"));
+		assertThatThrownBy(() -> open(FsyncPolicy.ALWAYS, NO_SNAPSHOTS))
+			.isInstanceOf(IOException.class)
+			.hasMessageContaining("Corrupted log");
+		repository = open(FsyncPolicy.ALWAYS, NO_SNAPSHOTS, directory.resolve("other"));
+	}
+
+	@Test
+	public void testClosedRepositoryCannotBeWritten() throws IOException {
+		repository.close();
+		assertThatThrownBy(() -> repository.save(new Employee(null, "Closed", 0)))
+			.isInstanceOf(IllegalStateException.class)
+			.hasMessage("The repository is closed");
+		// still readable
+		assertThat(repository.findAll()).hasSize(3);
+	}
+
+	@Test
+	public void testConcurrentWritesWithGroupCommit() throws Exception {
+		reopen(FsyncPolicy.GROUP, 4096);
+		int threads = 8;
+		int savesPerThread = 200;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < savesPerThread; i++) {
+						repository.save(new Employee("T" + thread + "-" + i, "Employee", i));
+						if (i % 10 == 0)
+							repository.deleteById("T" + thread + "-" + (i / 2));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		List<Employee> employees = repository.findAll();
+		reopen(FsyncPolicy.GROUP, 4096);
+		assertThat(repository.findAll())
+			.containsExactlyInAnyOrderElementsOf(employees);
+	}
+
+	private long logSize() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().startsWith("wal-"))
+				.mapToLong(file -> file.toFile().length())
+				.sum();
+		}
+	}
+
+	private List<String> fileNames() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString())
+				.collect(Collectors.toList());
+		}
+	}
+
+	private void reopen(FsyncPolicy policy, long snapshotThreshold) throws IOException {
+		repository.close();
+		repository = open(policy, snapshotThreshold);
+	}
+
+	private FileEmployeeRepository open(FsyncPolicy policy, long snapshotThreshold)
+			throws IOException {
+		return open(policy, snapshotThreshold, directory);
+	}
+
+	private static FileEmployeeRepository open(FsyncPolicy policy, long snapshotThreshold,
+			Path directory) throws IOException {
+		return new FileEmployeeRepository(directory, policy, 2, snapshotThreshold);
+	}
+}
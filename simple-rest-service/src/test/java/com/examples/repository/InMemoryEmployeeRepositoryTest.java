@@ -1,14 +1,18 @@
 package com.examples.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
+import com.examples.model.SalaryBucket;
 
 /**
  * In spite of {@link InMemoryEmployeeRepositoryTest} being an in-memory,
@@ -24,7 +28,7 @@ public class InMemoryEmployeeRepositoryTest {
 
 	@Before
 	public void setup() {
-		map = new HashMap<>();
+		map = new LinkedHashMap<>();
 		repository = new InMemoryEmployeeRepository(map);
 		// make sure the repository is always empty
 		map.clear();
@@ -80,4 +84,55 @@ public class InMemoryEmployeeRepositoryTest {
 		assertThat(repository.deleteById("non-existent"))
 			.isNull();
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testFindPage() {
+		Employee e1 = new Employee("ID1", "Test Employee", 0);
+		Employee e2 = new Employee("ID2", "Test Employee", 0);
+		Employee e3 = new Employee("ID3", "Test Employee", 0);
+		map.put("ID1", e1);
+		map.put("ID2", e2);
+		map.put("ID3", e3);
+		EmployeePage first = repository.findPage(null, 2);
+		assertThat(first.getEmployees()).containsExactly(e1, e2);
+		EmployeePage second = repository.findPage(first.getNextCursor(), 2);
+		assertThat(second.getEmployees()).containsExactly(e3);
+		assertThat(second.getNextCursor()).isNull();
+	}
+
+	@Test
+	public void testDefaultQueriesScanAll() {
+		Employee e1 = new Employee("ID1", "Mary-Ann Smith", 2000);
+		Employee e2 = new Employee("ID2", "John Smithson", 1000);
+		Employee e3 = new Employee("ID3", null, 1500);
+		map.put("ID1", e1);
+		map.put("ID2", e2);
+		map.put("ID3", e3);
+		assertThat(repository.findBySalaryRange(1000, 2000))
+			.containsExactly(e2, e3, e1);
+		assertThat(repository.searchByName("SMITH", true, 10))
+			.containsExactly(e1, e2);
+		assertThat(repository.searchByName("smith", false, 10))
+			.containsExactly(e1);
+		assertThat(repository.searchByName("smith", true, 1))
+			.containsExactly(e1);
+		assertThat(repository.searchByName("ann m", true, 10))
+			.containsExactly(e1);
+		assertThat(repository.searchByName(" - ", true, 10)).isEmpty();
+		assertThat(repository.count()).isEqualTo(3);
+		assertThat(repository.statistics())
+			.isEqualTo(new EmployeeStatistics(3, 4500, 1000, 2000, Arrays.asList(
+				new SalaryBucket(512, 1023, 1),
+				new SalaryBucket(1024, 2047, 2))));
+	}
+
+	@Test
+	public void testFindPageWithInvalidCursor() {
+		assertThatThrownBy(() -> repository.findPage("foo", 2))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Invalid cursor foo");
+		assertThatThrownBy(() -> repository.findPage("-1", 2))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Invalid cursor -1");
+	}
+}
@@ -0,0 +1,98 @@
+package com.examples.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.repository.JdbcConnectionPool.PooledConnection;
+
+public class JdbcConnectionPoolTest {
+
+	private JdbcConnectionPool pool;
+
+	@Before
+	public void setup() {
+		pool = new JdbcConnectionPool("jdbc:h2:mem:pool", new Properties(), 2, 100);
+	}
+
+	@After
+	public void closePool() {
+		pool.close();
+	}
+
+	@Test
+	public void testConnectionsAndStatementsAreReused() throws SQLException {
+		Connection connection;
+		PreparedStatement statement;
+		try (PooledConnection pooled = pool.borrow()) {
+			connection = pooled.connection();
+			statement = pooled.prepare("SELECT 1");
+			assertThat(pooled.prepare("SELECT 1")).isSameAs(statement);
+		}
+		try (PooledConnection pooled = pool.borrow()) {
+			assertThat(pooled.connection()).isSameAs(connection);
+			assertThat(pooled.prepare("SELECT 1")).isSameAs(statement);
+		}
+	}
+
+	@Test
+	public void testTheSizeIsBounded() throws SQLException {
+		try (PooledConnection first = pool.borrow(); PooledConnection second = pool.borrow()) {
+			assertThat(first.connection()).isNotSameAs(second.connection());
+			assertThatThrownBy(() -> pool.borrow())
+				.isInstanceOf(SQLTransientConnectionException.class)
+				.hasMessage("No connection available within 100 ms");
+		}
+		pool.borrow().close();
+	}
+
+	@Test
+	public void testConnectionsLeftInATransactionAreNotReused() throws SQLException {
+		Connection connection;
+		try (PooledConnection pooled = pool.borrow()) {
+			connection = pooled.connection();
+			connection.setAutoCommit(false);
+		}
+		assertThat(connection.isClosed()).isTrue();
+		try (PooledConnection pooled = pool.borrow()) {
+			assertThat(pooled.connection()).isNotSameAs(connection);
+		}
+	}
+
+	@Test
+	public void testBrokenConnectionsAreNotReused() throws SQLException {
+		Connection connection;
+		try (PooledConnection pooled = pool.borrow()) {
+			connection = pooled.connection();
+			connection.close();
+			pooled.failed();
+		}
+		try (PooledConnection pooled = pool.borrow()) {
+			assertThat(pooled.connection()).isNotSameAs(connection);
+		}
+	}
+
+	@Test
+	public void testClosedPool() throws SQLException {
+		PooledConnection borrowed = pool.borrow();
+		PooledConnection idle = pool.borrow();
+		idle.close();
+		pool.close();
+		assertThat(idle.connection().isClosed()).isTrue();
+		assertThat(borrowed.connection().isClosed()).isFalse();
+		borrowed.close();
+		assertThat(borrowed.connection().isClosed()).isTrue();
+		assertThatThrownBy(() -> pool.borrow())
+			.isInstanceOf(SQLException.class)
+			.hasMessage("The pool is closed");
+	}
+}
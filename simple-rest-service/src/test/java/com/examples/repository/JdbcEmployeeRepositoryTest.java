@@ -0,0 +1,298 @@
+package com.examples.repository;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
+import com.examples.model.SalaryBucket;
+
+public class JdbcEmployeeRepositoryTest {
+
+	private static final AtomicInteger DATABASES = new AtomicInteger();
+
+	private String url;
+
+	private JdbcEmployeeRepository repository;
+
+	@Before
+	public void setup() {
+		// a new in-memory database for each test, kept until the JVM exits
+		url = "jdbc:h2:mem:employees" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+		repository = open(2);
+	}
+
+	@After
+	public void closeRepository() {
+		repository.close();
+	}
+
+	@Test
+	public void testNewRepositoryHasTheInitialEmployees() {
+		assertThat(repository.findAll())
+			.containsExactly(
+				new Employee("ID1", "First Employee", 1000),
+				new Employee("ID2", "Second Employee", 2000),
+				new Employee("ID3", "Third Employee", 3000));
+	}
+
+	@Test
+	public void testInitialEmployeesAreNotSavedAgainAfterReopening() {
+		repository.deleteAll(asList("ID1", "ID2", "ID3"));
+		reopen();
+		assertThat(repository.findAll()).isEmpty();
+	}
+
+	@Test
+	public void testFindOne() {
+		assertThat(repository.findOne("ID2"))
+			.contains(new Employee("ID2", "Second Employee", 2000));
+		assertThat(repository.findOne("missing")).isEmpty();
+	}
+
+	@Test
+	public void testSaveNewAndReplace() {
+		Employee added = repository.save(new Employee(null, "Added", 4000));
+		assertThat(added.getEmployeeId()).isEqualTo("ID4");
+		repository.save(new Employee("ID1", "Replaced", 1500));
+		repository.save(new Employee("X", null, -1));
+		// replacing keeps the position
+		assertThat(repository.findAll())
+			.containsExactly(
+				new Employee("ID1", "Replaced", 1500),
+				new Employee("ID2", "Second Employee", 2000),
+				new Employee("ID3", "Third Employee", 3000),
+				added,
+				new Employee("X", null, -1));
+	}
+
+	@Test
+	public void testGeneratedIdsAreNotReused() {
+		repository.save(new Employee(null, "Deleted", 0));
+		repository.deleteById("ID4");
+		assertThat(repository.save(new Employee(null, "New", 0)).getEmployeeId())
+			.isEqualTo("ID5");
+		reopen();
+		// a new block of ids after reopening
+		assertThat(repository.save(new Employee(null, "New", 0)).getEmployeeId())
+			.isEqualTo("ID" + (JdbcEmployeeRepository.ID_BLOCK_SIZE + 1));
+	}
+
+	@Test
+	public void testGeneratedIdsSkipExplicitIds() {
+		repository.save(new Employee("ID4", "Explicit", 0));
+		assertThat(repository.save(new Employee(null, "Generated", 0)).getEmployeeId())
+			.isEqualTo("ID5");
+		repository.save(new Employee("ID6", "Explicit", 0));
+		assertThat(repository.saveAll(asList(new Employee(null, "Generated", 0))))
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID7");
+		assertThat(repository.findOne("ID6").get().getName()).isEqualTo("Explicit");
+	}
+
+	@Test
+	public void testDeleteById() {
+		assertThat(repository.deleteById("ID2"))
+			.isEqualTo(new Employee("ID2", "Second Employee", 2000));
+		assertThat(repository.deleteById("ID2")).isNull();
+		assertThat(repository.findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID1", "ID3");
+	}
+
+	@Test
+	public void testSaveAll() {
+		List<Employee> saved = repository.saveAll(asList(
+			new Employee(null, "A", 1),
+			new Employee("ID2", "Replaced", 2),
+			new Employee("B", "B", 3),
+			new Employee(null, "C", 4)));
+		assertThat(saved)
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID4", "ID2", "B", "ID5");
+		assertThat(repository.findAll())
+			.extracting(Employee::getName)
+			.containsExactly("First Employee", "Replaced", "Third Employee", "A", "B", "C");
+	}
+
+	@Test
+	public void testSaveAllWithTheSameNewIdTwice() {
+		repository.saveAll(asList(new Employee("B", "First", 1), new Employee("B", "Second", 2)));
+		assertThat(repository.findAll())
+			.extracting(Employee::getName)
+			.containsExactly("First Employee", "Second Employee", "Third Employee", "Second");
+	}
+
+	@Test
+	public void testSaveAllWithAGeneratedIdAndTheSameNewIdTwice() {
+		List<Employee> saved = repository.saveAll(asList(
+			new Employee(null, "Generated", 0),
+			new Employee("X", "First", 1),
+			new Employee("X", "Second", 2)));
+		assertThat(saved)
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID5", "X", "X");
+		assertThat(repository.count()).isEqualTo(5);
+		assertThat(repository.findAll())
+			.extracting(Employee::getName)
+			.containsExactly("First Employee", "Second Employee", "Third Employee",
+				"Generated", "Second");
+	}
+
+	@Test
+	public void testDeleteAll() {
+		assertThat(repository.deleteAll(asList("ID1", "missing", "ID3", "ID1")))
+			.containsExactly(
+				new Employee("ID1", "First Employee", 1000),
+				null,
+				new Employee("ID3", "Third Employee", 3000),
+				null);
+		assertThat(repository.deleteAll(asList("missing"))).containsExactly((Employee) null);
+		assertThat(repository.findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID2");
+	}
+
+	@Test
+	public void testFindPage() {
+		EmployeePage first = repository.findPage(null, 2);
+		assertThat(first.getEmployees())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID1", "ID2");
+		// stable in case of deletions and insertions
+		repository.deleteById("ID2");
+		repository.save(new Employee(null, "New", 0));
+		EmployeePage second = repository.findPage(first.getNextCursor(), 2);
+		assertThat(second.getEmployees())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID3", "ID4");
+		assertThat(second.getNextCursor()).isNull();
+		assertThat(repository.findPage(null, Integer.MAX_VALUE).getEmployees()).hasSize(3);
+		assertThatThrownBy(() -> repository.findPage("abc", 2))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Invalid cursor abc");
+	}
+
+	@Test
+	public void testFindBySalaryRange() {
+		repository.save(new Employee("ID1", "Raised", 2500));
+		repository.save(new Employee(null, "New", 2000));
+		assertThat(repository.findBySalaryRange(2000, 2500))
+			.extracting(Employee::getName)
+			.containsExactly("Second Employee", "New", "Raised");
+		assertThat(repository.findBySalaryRange(Integer.MIN_VALUE, 1999)).isEmpty();
+		assertThat(repository.findBySalaryRange(3000, Integer.MAX_VALUE))
+			.containsExactly(new Employee("ID3", "Third Employee", 3000));
+	}
+
+	@Test
+	public void testCountAndStatistics() {
+		repository.save(new Employee(null, "New", 2000));
+		assertThat(repository.count()).isEqualTo(4);
+		assertThat(repository.statistics())
+			.isEqualTo(new EmployeeStatistics(4, 8000, 1000, 3000, asList(
+				new SalaryBucket(512, 1023, 1),
+				new SalaryBucket(1024, 2047, 2),
+				new SalaryBucket(2048, 4095, 1))));
+		repository.deleteAll(asList("ID1", "ID2", "ID3", "ID4"));
+		assertThat(repository.count()).isZero();
+		assertThat(repository.statistics())
+			.isEqualTo(new EmployeeStatistics(0, 0, null, null, new ArrayList<>()));
+	}
+
+	@Test
+	public void testSearchByName() {
+		repository.save(new Employee(null, "Secondo", 0));
+		assertThat(repository.searchByName("SEC", true, 10))
+			.extracting(Employee::getName)
+			.containsExactly("Second Employee", "Secondo");
+		assertThat(repository.searchByName("second", false, 10))
+			.extracting(Employee::getName)
+			.containsExactly("Second Employee");
+		assertThat(repository.searchByName("employee", true, 2))
+			.extracting(Employee::getName)
+			.containsExactly("First Employee", "Second Employee");
+		// contains "cond", but does not start with it
+		assertThat(repository.searchByName("cond", true, 10)).isEmpty();
+	}
+
+	@Test
+	public void testFindAllAndStreamAllReadManyPages() {
+		List<Employee> employees = IntStream.range(0, JdbcEmployeeRepository.PAGE_SIZE * 2 + 1)
+			.mapToObj(i -> new Employee(null, "Employee " + i, i))
+			.collect(Collectors.toList());
+		repository.saveAll(employees);
+		assertThat(repository.findAll()).hasSize(employees.size() + 3);
+		try (Stream<Employee> stream = repository.streamAll()) {
+			assertThat(stream.skip(3)).containsExactlyElementsOf(employees);
+		}
+	}
+
+	@Test
+	public void testConcurrentWritesWithASmallPool() throws Exception {
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 50; i++) {
+						repository.save(new Employee(null, "Employee", i));
+						repository.save(new Employee("T" + thread, "Thread", i));
+						repository.saveAll(asList(new Employee(null, "Batch", i)));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		List<Employee> all = repository.findAll();
+		assertThat(all).hasSize(3 + threads * 101);
+		assertThat(all.stream().map(Employee::getEmployeeId).distinct()).hasSize(all.size());
+	}
+
+	@Test
+	public void testDatabaseFailure() throws SQLException {
+		try (Connection connection = DriverManager.getConnection(url);
+				Statement statement = connection.createStatement()) {
+			statement.executeUpdate("DROP TABLE employee");
+		}
+		assertThatThrownBy(() -> repository.findOne("ID1"))
+			.isInstanceOf(IllegalStateException.class)
+			.hasMessageStartingWith("Failed to access the database")
+			.hasCauseInstanceOf(SQLException.class);
+	}
+
+	private void reopen() {
+		repository.close();
+		repository = open(2);
+	}
+
+	private JdbcEmployeeRepository open(int poolSize) {
+		return new JdbcEmployeeRepository(url, new Properties(), poolSize, 1000);
+	}
+}
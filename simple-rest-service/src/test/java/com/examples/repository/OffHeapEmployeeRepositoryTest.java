@@ -0,0 +1,237 @@
+package com.examples.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+
+public class OffHeapEmployeeRepositoryTest {
+
+	// small chunks, so that records are spread over many of them
+	private static final int CHUNK_SIZE = 256;
+
+	private OffHeapEmployeeRepository repository;
+
+	@Before
+	public void setup() {
+		repository = new OffHeapEmployeeRepository(CHUNK_SIZE);
+	}
+
+	@Test
+	public void testInitialEmployees() {
+		assertThat(new OffHeapEmployeeRepository().findAll())
+			.containsExactly(
+				new Employee("ID1", "First Employee", 1000),
+				new Employee("ID2", "Second Employee", 2000),
+				new Employee("ID3", "Third Employee", 3000));
+	}
+
+	@Test
+	public void testSaveFindAndDelete() {
+		repository.save(new Employee("B", "Test Employee", 0));
+		Employee e2 = repository.save(new Employee("A", null, -5));
+		Employee e3 = repository.save(new Employee("C", "è中", Integer.MAX_VALUE));
+		Employee modified = repository.save(new Employee("B", "Modified", 10));
+		assertThat(repository.findAll()).containsExactly(modified, e2, e3);
+		assertThat(repository.streamAll()).containsExactly(modified, e2, e3);
+		assertThat(repository.findOne("C")).contains(e3);
+		assertThat(repository.findOne("D")).isEmpty();
+		assertThat(repository.findAllById(Arrays.asList("C", "D", "B")))
+			.containsExactly(e3, modified);
+		assertThat(repository.count()).isEqualTo(3);
+		assertThat(repository.deleteById("A")).isEqualTo(e2);
+		assertThat(repository.deleteById("A")).isNull();
+		assertThat(repository.findAll()).containsExactly(modified, e3);
+		assertThat(repository.count()).isEqualTo(2);
+	}
+
+	@Test
+	public void testReturnedEmployeesAreCopies() {
+		Employee saved = repository.save(new Employee("A", "A", 0));
+		saved.setName("Changed");
+		Employee found = repository.findOne("A").get();
+		assertThat(found.getName()).isEqualTo("A");
+		found.setName("Changed again");
+		assertThat(repository.findOne("A").get().getName()).isEqualTo("A");
+	}
+
+	@Test
+	public void testGeneratedIds() {
+		assertThat(repository.save(new Employee(null, "First", 0)).getEmployeeId())
+			.isEqualTo("ID1");
+		repository.deleteById("ID1");
+		repository.save(new Employee("ID10", "Explicit", 0));
+		assertThat(repository.save(new Employee(null, "Second", 0)).getEmployeeId())
+			.isEqualTo("ID11");
+	}
+
+	@Test
+	public void testFindPageIsStableInCaseOfDeletions() {
+		Employee e1 = repository.save(new Employee(null, "First", 0));
+		Employee e2 = repository.save(new Employee(null, "Second", 0));
+		Employee e3 = repository.save(new Employee(null, "Third", 0));
+		Employee e4 = repository.save(new Employee(null, "Fourth", 0));
+		EmployeePage first = repository.findPage(null, 2);
+		assertThat(first.getEmployees()).containsExactly(e1, e2);
+		repository.deleteById(e1.getEmployeeId());
+		repository.deleteById(e2.getEmployeeId());
+		EmployeePage second = repository.findPage(first.getNextCursor(), 2);
+		assertThat(second.getEmployees()).containsExactly(e3, e4);
+		assertThat(second.getNextCursor()).isNull();
+		repository.deleteById(e4.getEmployeeId());
+		assertThat(repository.findPage(null, 1).getNextCursor()).isNull();
+		assertThatThrownBy(() -> repository.findPage("foo", 2))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Invalid cursor foo");
+	}
+
+	@Test
+	public void testFindPageAfterRenumbering() {
+		for (int i = 0; i < 10; i++) {
+			repository.save(new Employee("K" + i, "Kept " + i, i));
+		}
+		EmployeePage first = repository.findPage(null, 4);
+		// enough deleted positions for renumbering the live ones once, and
+		// enough writes for completing it
+		churn(OffHeapOrder.MIN_RENUMBERED_POSITIONS + OffHeapOrder.RENUMBERING_STEP);
+		repository.deleteById("K4");
+		EmployeePage second = repository.findPage(first.getNextCursor(), 4);
+		assertThat(second.getEmployees())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("K5", "K6", "K7", "K8");
+		assertThat(repository.findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("K0", "K1", "K2", "K3", "K5", "K6", "K7", "K8", "K9");
+		// the second page is still valid after another renumbering
+		churn(OffHeapOrder.MIN_RENUMBERED_POSITIONS + OffHeapOrder.RENUMBERING_STEP);
+		assertThat(repository.findPage(second.getNextCursor(), 4).getEmployees())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("K9");
+		assertThatThrownBy(() -> repository.findPage(first.getNextCursor(), 4))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Expired cursor " + first.getNextCursor());
+	}
+
+	@Test
+	public void testChurnDoesNotGrowTheBuffers() {
+		for (int i = 0; i < 10; i++) {
+			repository.save(new Employee("K" + i, "Kept " + i, i));
+		}
+		churn(100000);
+		assertThat(repository.offHeapBytes()).isLessThan(128 * 1024);
+		assertThat(repository.findAll())
+			.extracting(Employee::getName)
+			.containsExactlyElementsOf(IntStream.range(0, 10).mapToObj(i -> "Kept " + i)
+				.collect(Collectors.toList()));
+	}
+
+	private void churn(int times) {
+		for (int i = 0; i < times; i++) {
+			repository.save(new Employee("T" + i, "Temporary " + i, i));
+			repository.deleteById("T" + i);
+		}
+	}
+
+	@Test
+	public void testTooLargeEmployee() {
+		char[] name = new char[CHUNK_SIZE];
+		Arrays.fill(name, 'a');
+		assertThatThrownBy(() -> repository.save(new Employee("A", new String(name), 0)))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageStartingWith("Employee too large: ");
+		assertThat(repository.findAll()).isEmpty();
+	}
+
+	@Test
+	public void testRandomUpdatesWithCompactionsAndRehashes() {
+		Random random = new Random(42);
+		Map<String, Employee> expected = new LinkedHashMap<>();
+		for (int i = 0; i < 20000; i++) {
+			String id = "E" + random.nextInt(2000);
+			if (random.nextInt(4) == 0) {
+				assertThat(repository.deleteById(id)).isEqualTo(expected.remove(id));
+			} else {
+				Employee employee = new Employee(id, "Employee " + i, i);
+				repository.save(employee);
+				expected.merge(id, employee, (previous, saved) -> saved);
+			}
+		}
+		assertThat(repository.findAll()).containsExactlyElementsOf(expected.values());
+		assertThat(repository.streamAll()).containsExactlyElementsOf(expected.values());
+		assertThat(repository.count()).isEqualTo(expected.size());
+		for (String id : expected.keySet()) {
+			assertThat(repository.findOne(id)).contains(expected.get(id));
+		}
+		// the garbage has been reclaimed
+		assertThat(repository.garbageBytes()).isLessThan(repository.offHeapBytes() / 2);
+	}
+
+	@Test
+	public void testRandomUpdatesWhileRenumberingAndResizing() {
+		Random random = new Random(42);
+		Map<String, Employee> expected = new LinkedHashMap<>();
+		for (int i = 0; i < 60000; i++) {
+			// grows, then mostly deletes, then grows again
+			int phase = i / 20000;
+			String id = "E" + random.nextInt(20000);
+			if (phase == 1 ? random.nextInt(8) != 0 : random.nextInt(8) == 0) {
+				assertThat(repository.deleteById(id)).isEqualTo(expected.remove(id));
+			} else {
+				Employee employee = new Employee(id, "Employee " + i, i);
+				repository.save(employee);
+				expected.merge(id, employee, (previous, saved) -> saved);
+			}
+			if (i % 1000 == 0) {
+				assertThat(repository.findAll()).containsExactlyElementsOf(expected.values());
+				for (String expectedId : expected.keySet()) {
+					assertThat(repository.findOne(expectedId)).contains(expected.get(expectedId));
+				}
+			}
+		}
+		assertThat(repository.streamAll()).containsExactlyElementsOf(expected.values());
+	}
+
+	@Test
+	public void testConcurrentReadsAndWrites() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = IntStream.range(0, 4000)
+				.mapToObj(i -> executor.submit(() -> {
+					if (i % 5 == 0)
+						repository.save(new Employee(null, "New " + i, i));
+					else if (i % 7 == 0)
+						repository.deleteById("E" + i % 50);
+					else if (i % 2 == 0)
+						repository.save(new Employee("E" + i % 50, "Employee " + i, i));
+					else
+						assertThat(repository.streamAll().count()).isNotNegative();
+				}))
+				.collect(Collectors.toList());
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		List<Employee> all = repository.findAll();
+		assertThat(all.stream().map(Employee::getEmployeeId)).doesNotHaveDuplicates();
+		assertThat(all.stream().filter(e -> e.getName().startsWith("New"))).hasSize(800);
+		assertThat(repository.count()).isEqualTo(all.size());
+	}
+}
@@ -0,0 +1,122 @@
+package com.examples.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class PersistentHashTrieTest {
+
+	private PersistentHashTrie<Long, String> empty = PersistentHashTrie.empty(Long::longValue);
+
+	@Test
+	public void testPutGetAndRemove() {
+		PersistentHashTrie<Long, String> trie = empty.put(1L, "a").put(2L, "b");
+		assertThat(trie.get(1L)).isEqualTo("a");
+		assertThat(trie.get(3L)).isNull();
+		assertThat(trie.size()).isEqualTo(2);
+		PersistentHashTrie<Long, String> replaced = trie.put(1L, "c");
+		assertThat(replaced.get(1L)).isEqualTo("c");
+		assertThat(replaced.size()).isEqualTo(2);
+		PersistentHashTrie<Long, String> removed = replaced.remove(2L).remove(4L);
+		assertThat(removed.get(2L)).isNull();
+		assertThat(removed.size()).isEqualTo(1);
+		// the previous versions are not changed
+		assertThat(trie.get(1L)).isEqualTo("a");
+		assertThat(replaced.get(2L)).isEqualTo("b");
+		assertThat(empty.size()).isZero();
+		assertThat(empty.remove(1L).size()).isZero();
+	}
+
+	@Test
+	public void testValuesInOrderOfTheHashes() {
+		PersistentHashTrie<Long, String> trie = empty;
+		for (long key : new long[] { 70, 3, Long.MAX_VALUE, 64, 1L << 40, 4095, 0, -1 }) {
+			trie = trie.put(key, String.valueOf(key));
+		}
+		// unsigned order
+		assertThat(values(trie.values())).containsExactly("0", "3", "64", "70", "4095",
+			String.valueOf(1L << 40), String.valueOf(Long.MAX_VALUE), "-1");
+		assertThat(values(trie.valuesAfter(64))).containsExactly("70", "4095",
+			String.valueOf(1L << 40), String.valueOf(Long.MAX_VALUE), "-1");
+		assertThat(values(trie.valuesAfter(65))).startsWith("70");
+		assertThat(values(trie.valuesAfter(-1))).isEmpty();
+		assertThat(values(empty.valuesAfter(0))).isEmpty();
+	}
+
+	@Test
+	public void testCollisions() {
+		// only the parity is the hash
+		PersistentHashTrie<Integer, String> trie =
+			PersistentHashTrie.<Integer, String> empty(key -> key % 2)
+				.put(1, "a").put(3, "b").put(5, "c").put(2, "d");
+		assertThat(trie.get(3)).isEqualTo("b");
+		assertThat(trie.get(7)).isNull();
+		assertThat(values(trie.values())).containsExactly("d", "a", "b", "c");
+		trie = trie.put(3, "e").remove(1);
+		assertThat(values(trie.values())).containsExactly("d", "e", "c");
+		trie = trie.remove(5);
+		assertThat(values(trie.values())).containsExactly("d", "e");
+		assertThat(trie.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void testEditorDoesNotChangeTheInitialVersion() {
+		PersistentHashTrie<Long, String> trie = empty.put(1L, "a");
+		PersistentHashTrie.Editor<Long, String> editor = trie.edit();
+		editor.put(2L, "b");
+		editor.put(2L, "c");
+		editor.remove(1L);
+		assertThat(editor.get(2L)).isEqualTo("c");
+		PersistentHashTrie<Long, String> edited = editor.done();
+		assertThat(values(edited.values())).containsExactly("c");
+		assertThat(values(trie.values())).containsExactly("a");
+		// further edits copy the nodes of the edited version
+		PersistentHashTrie<Long, String> next = edited.put(3L, "d");
+		assertThat(values(edited.values())).containsExactly("c");
+		assertThat(values(next.values())).containsExactly("c", "d");
+	}
+
+	@Test
+	public void testRandomUpdatesLikeASortedMap() {
+		Random random = new Random(42);
+		TreeMap<Long, String> expected = new TreeMap<>();
+		PersistentHashTrie<Long, String> trie = empty;
+		for (int i = 0; i < 20000; i++) {
+			long key = random.nextInt(5000) * 997L;
+			if (random.nextInt(3) == 0) {
+				expected.remove(key);
+				trie = trie.remove(key);
+			} else if (i % 2 == 0) {
+				expected.put(key, "v" + i);
+				trie = trie.put(key, "v" + i);
+			} else {
+				PersistentHashTrie.Editor<Long, String> editor = trie.edit();
+				for (int j = 0; j < 10; j++) {
+					expected.put(key + j, "w" + i);
+					editor.put(key + j, "w" + i);
+				}
+				trie = editor.done();
+			}
+		}
+		assertThat(trie.size()).isEqualTo(expected.size());
+		assertThat(values(trie.values())).containsExactlyElementsOf(expected.values());
+		long middle = expected.keySet().stream().skip(expected.size() / 2).findFirst().get();
+		assertThat(values(trie.valuesAfter(middle)))
+			.containsExactlyElementsOf(expected.tailMap(middle, false).values());
+		for (long key : expected.keySet()) {
+			assertThat(trie.get(key)).isEqualTo(expected.get(key));
+		}
+	}
+
+	private static <V> List<V> values(Iterator<V> iterator) {
+		List<V> values = new ArrayList<>();
+		iterator.forEachRemaining(values::add);
+		return values;
+	}
+}
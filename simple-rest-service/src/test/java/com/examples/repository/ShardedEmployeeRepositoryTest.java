@@ -0,0 +1,157 @@
+package com.examples.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+import com.examples.model.EmployeeStatistics;
+import com.examples.model.SalaryBucket;
+
+public class ShardedEmployeeRepositoryTest {
+
+	private ShardedEmployeeRepository repository;
+
+	@Before
+	public void setup() {
+		repository = new ShardedEmployeeRepository(4);
+		// make sure the repository is always empty
+		repository.findAll()
+			.forEach(e -> repository.deleteById(e.getEmployeeId()));
+	}
+
+	@Test
+	public void testInitialEmployees() {
+		assertThat(new ShardedEmployeeRepository(4).findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID1", "ID2", "ID3");
+	}
+
+	@Test
+	public void testInvalidNumberOfShards() {
+		assertThatThrownBy(() -> new ShardedEmployeeRepository(0))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Invalid number of shards 0");
+	}
+
+	@Test
+	public void testFindAllKeepsInsertionOrderAcrossShards() {
+		List<Employee> saved = IntStream.range(0, 20)
+			.mapToObj(i -> repository.save(new Employee("E" + i, "Employee " + i, i)))
+			.collect(Collectors.toList());
+		Employee modified = repository.save(new Employee("E3", "Modified", 3));
+		saved.set(3, modified);
+		assertThat(repository.findAll()).containsExactlyElementsOf(saved);
+		assertThat(repository.streamAll()).containsExactlyElementsOf(saved);
+		assertThat(repository.findOne("E3")).contains(modified);
+	}
+
+	@Test
+	public void testGeneratedIdsAreNotReusedAfterDeletion() {
+		Employee e1 = repository.save(new Employee(null, "First", 0));
+		repository.deleteById(e1.getEmployeeId());
+		repository.save(new Employee("ID10", "Explicit", 0));
+		Employee e2 = repository.save(new Employee(null, "Second", 0));
+		assertThat(e2.getEmployeeId()).isEqualTo("ID11");
+	}
+
+	@Test
+	public void testFindPageAcrossShards() {
+		List<Employee> saved = IntStream.range(0, 5)
+			.mapToObj(i -> repository.save(new Employee(null, "Employee " + i, i)))
+			.collect(Collectors.toList());
+		EmployeePage first = repository.findPage(null, 2);
+		assertThat(first.getEmployees()).containsExactly(saved.get(0), saved.get(1));
+		repository.deleteById(saved.get(0).getEmployeeId());
+		EmployeePage second = repository.findPage(first.getNextCursor(), 2);
+		assertThat(second.getEmployees()).containsExactly(saved.get(2), saved.get(3));
+		EmployeePage third = repository.findPage(second.getNextCursor(), 2);
+		assertThat(third.getEmployees()).containsExactly(saved.get(4));
+		assertThat(third.getNextCursor()).isNull();
+		assertThatThrownBy(() -> repository.findPage("foo", 2))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Invalid cursor foo");
+	}
+
+	@Test
+	public void testFindBySalaryRangeAndSearchByName() {
+		Employee e1 = repository.save(new Employee("A", "Smith Bob", 3000));
+		Employee e2 = repository.save(new Employee("B", "Mary-Ann Smith", 1000));
+		Employee e3 = repository.save(new Employee("C", "Ann Smithson", 2000));
+		Employee e4 = repository.save(new Employee("D", "Jones", 1000));
+		assertThat(repository.findBySalaryRange(1000, 2000))
+			.containsExactly(e2, e4, e3);
+		assertThat(repository.findBySalaryRange(Integer.MIN_VALUE, Integer.MAX_VALUE))
+			.containsExactly(e2, e4, e3, e1);
+		assertThat(repository.searchByName("smith", true, 10))
+			.containsExactly(e1, e2, e3);
+		assertThat(repository.searchByName("smith", true, 2))
+			.containsExactly(e1, e2);
+		assertThat(repository.searchByName("ann", false, 10))
+			.containsExactly(e2, e3);
+	}
+
+	@Test
+	public void testCountAndStatistics() {
+		assertThat(repository.count()).isZero();
+		assertThat(repository.statistics())
+			.isEqualTo(new EmployeeStatistics(0, 0, null, null, new ArrayList<>()));
+		repository.save(new Employee("A", "A", 1000));
+		repository.save(new Employee("B", "B", 3000));
+		repository.save(new Employee("C", "C", 0));
+		repository.save(new Employee("D", "D", -10));
+		repository.deleteById("D");
+		assertThat(repository.count()).isEqualTo(3);
+		assertThat(repository.statistics())
+			.isEqualTo(new EmployeeStatistics(3, 4000, 0, 3000, Arrays.asList(
+				new SalaryBucket(0, 0, 1),
+				new SalaryBucket(512, 1023, 1),
+				new SalaryBucket(2048, 4095, 1))));
+	}
+
+	@Test
+	public void testConcurrentUpdates() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = IntStream.range(0, 2000)
+				.mapToObj(i -> executor.submit(() -> {
+					if (i % 5 == 0)
+						repository.save(new Employee(null, "New " + i, i));
+					else if (i % 7 == 0)
+						repository.deleteById("E" + i % 50);
+					else
+						repository.save(new Employee("E" + i % 50, "Employee " + i, i % 13));
+				}))
+				.collect(Collectors.toList());
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		List<Employee> all = repository.findAll();
+		assertThat(all.stream().map(Employee::getEmployeeId))
+			.doesNotHaveDuplicates();
+		assertThat(all.stream().filter(e -> e.getName().startsWith("New")))
+			.hasSize(400);
+		assertThat(repository.count()).isEqualTo(all.size());
+		assertThat(repository.findBySalaryRange(Integer.MIN_VALUE, Integer.MAX_VALUE))
+			.containsExactlyElementsOf(all.stream()
+				.sorted(Comparator.comparingInt(Employee::getSalary))
+				.collect(Collectors.toList()));
+	}
+}
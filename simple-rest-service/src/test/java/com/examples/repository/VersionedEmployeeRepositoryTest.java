@@ -0,0 +1,204 @@
+package com.examples.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.assertj.core.api.Condition;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+
+public class VersionedEmployeeRepositoryTest {
+
+	private VersionedEmployeeRepository repository;
+
+	@Before
+	public void setup() {
+		repository = new VersionedEmployeeRepository();
+		// make sure the repository is always empty
+		repository.findAll()
+			.forEach(e -> repository.deleteById(e.getEmployeeId()));
+	}
+
+	@Test
+	public void testInitialEmployees() {
+		assertThat(new VersionedEmployeeRepository().findAll())
+			.extracting(Employee::getEmployeeId)
+			.containsExactly("ID1", "ID2", "ID3");
+	}
+
+	@Test
+	public void testFindAllKeepsInsertionOrder() {
+		repository.save(new Employee("B", "Test Employee", 0));
+		Employee e2 = repository.save(new Employee("A", "Test Employee", 0));
+		Employee e3 = repository.save(new Employee("C", "Test Employee", 0));
+		Employee modified = repository.save(new Employee("B", "Modified", 0));
+		assertThat(repository.findAll()).containsExactly(modified, e2, e3);
+		assertThat(repository.streamAll()).containsExactly(modified, e2, e3);
+		assertThat(repository.findOne("B")).contains(modified);
+		assertThat(repository.findOne("D")).isEmpty();
+		assertThat(repository.findAllById(Arrays.asList("C", "D", "B")))
+			.containsExactly(e3, modified);
+		assertThat(repository.count()).isEqualTo(3);
+		assertThat(repository.deleteById("A")).isEqualTo(e2);
+		assertThat(repository.deleteById("A")).isNull();
+		assertThat(repository.findAll()).containsExactly(modified, e3);
+	}
+
+	@Test
+	public void testStreamIsASnapshot() {
+		Employee e1 = repository.save(new Employee("A", "A", 0));
+		try (Stream<Employee> employees = repository.streamAll()) {
+			repository.deleteById("A");
+			repository.save(new Employee("B", "B", 0));
+			assertThat(employees).containsExactly(e1);
+		}
+	}
+
+	@Test
+	public void testGeneratedIds() {
+		Employee e1 = repository.save(new Employee(null, "First", 0));
+		assertThat(e1.getEmployeeId()).isEqualTo("ID4");
+		repository.deleteById(e1.getEmployeeId());
+		repository.save(new Employee("ID10", "Explicit", 0));
+		assertThat(repository.save(new Employee(null, "Second", 0)).getEmployeeId())
+			.isEqualTo("ID11");
+	}
+
+	@Test
+	public void testBatches() {
+		repository.save(new Employee("A", "A", 0));
+		List<Employee> saved = repository.saveAll(Arrays.asList(
+			new Employee(null, "New", 1),
+			new Employee("A", "Replaced", 2),
+			new Employee(null, "Newer", 3)));
+		assertThat(saved).extracting(Employee::getEmployeeId)
+			.containsExactly("ID4", "A", "ID5");
+		assertThat(repository.findAll()).extracting(Employee::getName)
+			.containsExactly("Replaced", "New", "Newer");
+		assertThat(repository.deleteAll(Arrays.asList("ID4", "B", "ID4")))
+			.extracting(e -> e != null ? e.getName() : null)
+			.containsExactly("New", null, null);
+		assertThat(repository.findAll()).extracting(Employee::getName)
+			.containsExactly("Replaced", "Newer");
+	}
+
+	@Test
+	public void testFindPageIsStableInCaseOfDeletions() {
+		Employee e1 = repository.save(new Employee(null, "First", 0));
+		Employee e2 = repository.save(new Employee(null, "Second", 0));
+		Employee e3 = repository.save(new Employee(null, "Third", 0));
+		Employee e4 = repository.save(new Employee(null, "Fourth", 0));
+		EmployeePage first = repository.findPage(null, 2);
+		assertThat(first.getEmployees()).containsExactly(e1, e2);
+		repository.deleteById(e1.getEmployeeId());
+		repository.deleteById(e2.getEmployeeId());
+		EmployeePage second = repository.findPage(first.getNextCursor(), 2);
+		assertThat(second.getEmployees()).containsExactly(e3, e4);
+		assertThat(second.getNextCursor()).isNull();
+		assertThatThrownBy(() -> repository.findPage("foo", 2))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Invalid cursor foo");
+	}
+
+	@Test
+	public void testConcurrentWrites() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = IntStream.range(0, 2000)
+				.mapToObj(i -> executor.submit(() -> {
+					if (i % 5 == 0)
+						repository.saveAll(Arrays.asList(
+							new Employee(null, "New " + i, i), new Employee(null, "New " + i, i)));
+					else if (i % 7 == 0)
+						repository.deleteById("E" + i % 50);
+					else
+						repository.save(new Employee("E" + i % 50, "Employee " + i, i));
+				}))
+				.collect(Collectors.toList());
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		List<Employee> all = repository.findAll();
+		assertThat(all.stream().map(Employee::getEmployeeId)).doesNotHaveDuplicates();
+		assertThat(all.stream().filter(e -> e.getName().startsWith("New"))).hasSize(800);
+		assertThat(repository.count()).isEqualTo(all.size());
+	}
+
+	@Test
+	public void testFailedWritesAreLeftOut() {
+		Employee e1 = repository.save(new Employee(null, "First", 0));
+		Employee generated = new Employee(null, "New", 1);
+		assertThatThrownBy(() -> repository.saveAll(Arrays.asList(generated, null)))
+			.isInstanceOf(NullPointerException.class);
+		assertThat(generated.getEmployeeId()).isNull();
+		assertThat(repository.findAll()).containsExactly(e1);
+		assertThat(repository.save(new Employee(null, "Second", 0)).getEmployeeId())
+			.isEqualTo("ID5");
+	}
+
+	@Test
+	public void testLargeBatchWithContendedWrites() throws Exception {
+		int size = 50000;
+		List<Employee> batch = IntStream.range(0, size)
+			.mapToObj(i -> new Employee(null, "Batch " + i, i))
+			.collect(Collectors.toList());
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		AtomicBoolean batchDone = new AtomicBoolean();
+		AtomicInteger writes = new AtomicInteger();
+		long versionsBefore = repository.versions();
+		try {
+			List<Future<?>> writers = IntStream.range(0, 7)
+				.mapToObj(t -> executor.submit(() -> {
+					for (int i = 0; !batchDone.get() || i < 100; i++) {
+						if (i % 3 == 0)
+							repository.deleteById("E" + t);
+						else
+							repository.save(new Employee("E" + t, "Employee " + i, i));
+						writes.incrementAndGet();
+						// the batch is never seen partially applied
+						assertThat(repository.count()).is(new Condition<>(
+							count -> count <= 7 || count >= size, "before or after the batch"));
+					}
+				}))
+				.collect(Collectors.toList());
+			Future<List<Employee>> saved = executor.submit(() -> {
+				try {
+					return repository.saveAll(batch);
+				} finally {
+					batchDone.set(true);
+				}
+			});
+			assertThat(saved.get(10, TimeUnit.SECONDS)).hasSize(size);
+			for (Future<?> writer : writers) {
+				writer.get(10, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		assertThat(repository.findAll().stream().filter(e -> e.getName().startsWith("Batch")))
+			.extracting(Employee::getEmployeeId)
+			.containsExactlyElementsOf(batch.stream().map(Employee::getEmployeeId)
+				.collect(Collectors.toList()));
+		// the writes queued while the batch was applied were combined
+		assertThat(repository.versions() - versionsBefore).isLessThan(writes.get());
+	}
+}
@@ -0,0 +1,52 @@
+package com.examples.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import com.examples.model.Employee;
+
+public class EmployeeFilterCacheTest {
+
+	private EmployeeFilterCache cache = new EmployeeFilterCache(2);
+
+	@Test
+	public void testCompiledOnlyOnce() {
+		Predicate<Employee> predicate = cache.get("salary > 1000");
+
+		assertThat(cache.get("salary > 1000")).isSameAs(predicate);
+		assertThat(predicate.test(new Employee("ID1", "First Employee", 2000))).isTrue();
+		assertThat(cache.getHits()).isEqualTo(1);
+		assertThat(cache.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	public void testInvalidFiltersAreNotCached() {
+		assertThatThrownBy(() -> cache.get("salary >"))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> cache.get("salary >"))
+			.isInstanceOf(IllegalArgumentException.class);
+
+		assertThat(cache.size()).isZero();
+		assertThat(cache.getMisses()).isEqualTo(2);
+	}
+
+	@Test
+	public void testEviction() {
+		cache.get("salary > 1");
+		cache.get("salary > 2");
+		cache.get("salary > 3");
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.getMisses()).isEqualTo(3);
+	}
+
+	@Test
+	public void testInvalidSize() {
+		assertThatThrownBy(() -> new EmployeeFilterCache(0))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage("Invalid cache size 0");
+	}
+}
@@ -0,0 +1,89 @@
+package com.examples.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.examples.model.Employee;
+
+public class EmployeeFilterTest {
+
+	private static final Employee FIRST = new Employee("ID1", "First Employee", 1000);
+
+	private static final Employee SECOND = new Employee("ID2", "Second \"Quoted\" Employee", 2000);
+
+	private static final Employee THIRD = new Employee("ID3", null, 3000);
+
+	private static final List<Employee> EMPLOYEES = Arrays.asList(FIRST, SECOND, THIRD);
+
+	@Test
+	public void testSalaryComparisons() {
+		assertThat(filter("salary = 2000")).containsExactly(SECOND);
+		assertThat(filter("salary != 2000")).containsExactly(FIRST, THIRD);
+		assertThat(filter("salary < 2000")).containsExactly(FIRST);
+		assertThat(filter("salary <= 2000")).containsExactly(FIRST, SECOND);
+		assertThat(filter("salary>2000")).containsExactly(THIRD);
+		assertThat(filter("salary >= -2000")).containsExactly(FIRST, SECOND, THIRD);
+		// does not overflow
+		assertThat(filter("salary < 9999999999")).containsExactly(FIRST, SECOND, THIRD);
+	}
+
+	@Test
+	public void testStringComparisons() {
+		assertThat(filter("id = \"ID1\"")).containsExactly(FIRST);
+		assertThat(filter("id != \"ID1\"")).containsExactly(SECOND, THIRD);
+		assertThat(filter("name ~ \"employee\"")).containsExactly(FIRST, SECOND);
+		assertThat(filter("name ~ \"\\\"quoted\\\"\"")).containsExactly(SECOND);
+		assertThat(filter("name = \"First Employee\"")).containsExactly(FIRST);
+		// a missing name is not equal to any string
+		assertThat(filter("name != \"First Employee\"")).containsExactly(SECOND, THIRD);
+		assertThat(filter("name ~ \"\"")).containsExactly(FIRST, SECOND);
+	}
+
+	@Test
+	public void testBooleanOperators() {
+		assertThat(filter("salary > 1000 and name ~ \"First\"")).isEmpty();
+		assertThat(filter("salary > 1000 or name ~ \"First\"")).containsExactly(FIRST, SECOND, THIRD);
+		assertThat(filter("NOT Salary > 1000")).containsExactly(FIRST);
+		assertThat(filter("not not salary > 1000")).containsExactly(SECOND, THIRD);
+		// "and" before "or"
+		assertThat(filter("id = \"ID1\" or id = \"ID2\" and salary > 2000")).containsExactly(FIRST);
+		assertThat(filter("(id = \"ID1\" or id = \"ID2\") and salary > 1000")).containsExactly(SECOND);
+		assertThat(filter("not (id = \"ID1\" or salary <= 2000)")).containsExactly(THIRD);
+	}
+
+	@Test
+	public void testInvalidFilters() {
+		assertInvalid("", "Invalid filter at position 0: expected id, name, salary, not or (");
+		assertInvalid("age > 10", "Invalid filter at position 0: expected id, name, salary, not or (");
+		assertInvalid("salary", "Invalid filter at position 6: expected an operator");
+		assertInvalid("salary ~ 10", "Invalid filter at position 7: expected =, !=, <, <=, > or >=");
+		assertInvalid("salary > x", "Invalid filter at position 9: expected an integer");
+		assertInvalid("id < \"ID1\"", "Invalid filter at position 3: expected =, != or ~");
+		assertInvalid("id = ID1", "Invalid filter at position 5: expected a string in double quotes");
+		assertInvalid("id = \"ID1", "Invalid filter at position 9: unterminated string");
+		assertInvalid("id = \"\\n\"", "Invalid filter at position 6: expected \\\" or \\\\");
+		assertInvalid("(salary > 1", "Invalid filter at position 11: expected )");
+		assertInvalid("salary > 1 salary < 2",
+			"Invalid filter at position 11: expected and, or, or the end of the filter");
+		char[] tooLong = new char[EmployeeFilter.MAX_LENGTH + 1];
+		Arrays.fill(tooLong, '(');
+		assertInvalid(new String(tooLong), "Invalid filter: longer than 1000 chars");
+	}
+
+	private static List<Employee> filter(String expression) {
+		return EMPLOYEES.stream()
+			.filter(EmployeeFilter.compile(expression))
+			.collect(Collectors.toList());
+	}
+
+	private static void assertInvalid(String expression, String message) {
+		assertThatThrownBy(() -> EmployeeFilter.compile(expression))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessage(message);
+	}
+}
@@ -0,0 +1,165 @@
+package com.examples.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.NotFoundException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.examples.model.Employee;
+import com.examples.repository.EmployeeRepository;
+
+/**
+ * Runs writes against a repository where each write takes some time, to show
+ * that writes to different ids are not serialized by the service anymore, while
+ * writes to the same id still are.
+ */
+public class EmployeeServiceImplContentionTest {
+
+	private static final int WRITE_MILLIS = 5;
+
+	private static final int WRITES_PER_THREAD = 20;
+
+	/**
+	 * A repository simulating a slow backend; it also records whether two
+	 * writes to the same id ever overlapped.
+	 */
+	private static class SlowRepository implements EmployeeRepository {
+
+		private final Map<String, Employee> employees = new ConcurrentHashMap<>();
+
+		private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+		private volatile boolean overlappingWrites = false;
+
+		@Override
+		public List<Employee> findAll() {
+			return new ArrayList<>(employees.values());
+		}
+
+		@Override
+		public Optional<Employee> findOne(String id) {
+			return Optional.ofNullable(employees.get(id));
+		}
+
+		@Override
+		public Employee save(Employee employee) {
+			write(employee.getEmployeeId());
+			employees.put(employee.getEmployeeId(), employee);
+			return employee;
+		}
+
+		@Override
+		public Employee deleteById(String id) {
+			write(id);
+			return employees.remove(id);
+		}
+
+		private void write(String id) {
+			AtomicInteger writers = inFlight.computeIfAbsent(id, k -> new AtomicInteger());
+			if (writers.incrementAndGet() > 1)
+				overlappingWrites = true;
+			try {
+				Thread.sleep(WRITE_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				writers.decrementAndGet();
+			}
+		}
+	}
+
+	private SlowRepository repository;
+
+	private EmployeeServiceImpl employeeService;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setup() {
+		repository = new SlowRepository();
+		employeeService = new EmployeeServiceImpl(repository);
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		executor.shutdownNow();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testThroughputScalesWithThreadsWritingDifferentIds() throws Exception {
+		double oneThread = replacesPerSecond(1);
+		double eightThreads = replacesPerSecond(8);
+		// with the old global monitor the two values were the same;
+		// we leave some room for slow CI machines
+		assertThat(eightThreads).isGreaterThan(3 * oneThread);
+		assertThat(repository.overlappingWrites).isFalse();
+	}
+
+	@Test
+	public void testWritesToTheSameIdAreSerialized() throws Exception {
+		repository.employees.put("ID", new Employee("ID", "employee", 0));
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < 5; j++) {
+					employeeService.replaceEmployeeById("ID", new Employee(null, "employee", j));
+					employeeService.deleteEmployeeById("ID");
+					repository.employees.put("ID", new Employee("ID", "employee", 0));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				// a replace can find the employee concurrently deleted: that's
+				// the expected 404, what we care about are overlapping writes
+				assertThat(e.getCause())
+					.isInstanceOf(NotFoundException.class);
+			}
+		}
+		assertThat(repository.overlappingWrites).isFalse();
+	}
+
+	/**
+	 * Each thread repeatedly replaces its own employee.
+	 */
+	private double replacesPerSecond(int threads) throws Exception {
+		for (int i = 0; i < threads; i++) {
+			String id = "ID" + i;
+			repository.employees.put(id, new Employee(id, "employee", 0));
+		}
+		List<Future<?>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++) {
+			String id = "ID" + i;
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < WRITES_PER_THREAD; j++) {
+					employeeService.replaceEmployeeById(id, new Employee(null, "employee", j));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		long elapsed = System.nanoTime() - start;
+		return threads * WRITES_PER_THREAD / (elapsed / 1e9);
+	}
+}
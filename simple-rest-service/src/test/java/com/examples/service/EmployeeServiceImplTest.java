@@ -4,9 +4,17 @@ import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.NotFoundException;
 
 import org.junit.Before;
@@ -16,6 +24,12 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import com.examples.model.Employee;
+import com.examples.model.EmployeeLookup;
+import com.examples.model.EmployeeOperation;
+import com.examples.model.EmployeeOperation.Kind;
+import com.examples.model.EmployeeOperationResult;
+import com.examples.model.EmployeeStatistics;
+import com.examples.repository.EmployeePage;
 import com.examples.repository.EmployeeRepository;
 
 public class EmployeeServiceImplTest {
@@ -42,6 +56,146 @@ public class EmployeeServiceImplTest {
 			.containsExactly(e1, e2);
 	}
 
+	@Test
+	public void testCountAndStatistics() {
+		EmployeeStatistics statistics = new EmployeeStatistics();
+		when(employeeRepository.count()).thenReturn(5L);
+		when(employeeRepository.statistics()).thenReturn(statistics);
+
+		assertThat(employeeService.countEmployees()).isEqualTo(5);
+		assertThat(employeeService.salaryStatistics()).isSameAs(statistics);
+		verify(employeeRepository, never()).findAll();
+	}
+
+	@Test
+	public void testEmployeesBySalary() {
+		Employee e1 = new Employee("ID1", "B", 1000);
+		Employee e2 = new Employee("ID2", "A", 2000);
+		Employee e3 = new Employee("ID3", null, 2000);
+		when(employeeRepository.findBySalaryRange(Integer.MIN_VALUE, 2000))
+			.thenReturn(Arrays.asList(e1, e2, e3));
+		when(employeeRepository.findBySalaryRange(1000, Integer.MAX_VALUE))
+			.thenReturn(Arrays.asList(e1, e2, e3));
+
+		assertThat(employeeService.employeesBySalary(null, 2000, null))
+			.containsExactly(e1, e2, e3);
+		assertThat(employeeService.employeesBySalary(null, 2000, "salary"))
+			.containsExactly(e1, e2, e3);
+		assertThat(employeeService.employeesBySalary(1000, null, "name"))
+			.containsExactly(e2, e1, e3);
+	}
+
+	@Test
+	public void testEmployeesBySalaryWithInvalidParameters() {
+		assertThatThrownBy(() -> employeeService.employeesBySalary(2000, 1000, null))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("The minimum salary is greater than the maximum salary");
+		assertThatThrownBy(() -> employeeService.employeesBySalary(null, null, "id"))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Sort must be salary or name");
+
+		verifyNoMoreInteractions(employeeRepository);
+	}
+
+	@Test
+	public void testSearchEmployees() {
+		List<Employee> found = Arrays.asList(new Employee());
+		when(employeeRepository.searchByName("a query", true, 10))
+			.thenReturn(found);
+		when(employeeRepository.searchByName("a query", false, 1000))
+			.thenReturn(found);
+
+		assertThat(employeeService.searchEmployees("a query", null, 10))
+			.isSameAs(found);
+		assertThat(employeeService.searchEmployees("a query", "prefix", 10))
+			.isSameAs(found);
+		assertThat(employeeService.searchEmployees("a query", "token", 1000))
+			.isSameAs(found);
+	}
+
+	@Test
+	public void testFilterEmployees() {
+		// more than a chunk
+		List<Employee> employees = IntStream.range(0, 10000)
+			.mapToObj(i -> new Employee("ID" + i, "Employee " + i, i))
+			.collect(Collectors.toList());
+		AtomicBoolean closed = new AtomicBoolean();
+		when(employeeRepository.streamAll())
+			.thenReturn(employees.stream().onClose(() -> closed.set(true)));
+
+		try (Stream<Employee> filtered =
+				employeeService.filterEmployees("salary >= 9990 or name ~ \"employee 5\"")) {
+			assertThat(filtered.map(Employee::getSalary))
+				.containsExactlyElementsOf(IntStream.range(0, 10000)
+					.filter(i -> i >= 9990 || Integer.toString(i).startsWith("5"))
+					.boxed()
+					.collect(Collectors.toList()));
+		}
+		assertThat(closed).isTrue();
+	}
+
+	@Test
+	public void testFilterEmployeesWithInvalidFilter() {
+		assertThatThrownBy(() -> employeeService.filterEmployees(" "))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Missing filter");
+		assertThatThrownBy(() -> employeeService.filterEmployees("salary > "))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Invalid filter at position 9: expected an integer");
+
+		verifyNoMoreInteractions(employeeRepository);
+	}
+
+	@Test
+	public void testSearchEmployeesWithInvalidParameters() {
+		assertThatThrownBy(() -> employeeService.searchEmployees(null, null, 10))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Missing search query");
+		assertThatThrownBy(() -> employeeService.searchEmployees(" - ", null, 10))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Missing search query");
+		assertThatThrownBy(() -> employeeService.searchEmployees("a", "suffix", 10))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Match must be prefix or token");
+		assertThatThrownBy(() -> employeeService.searchEmployees("a", null, 0))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Search limit must be between 1 and 1000");
+
+		verifyNoMoreInteractions(employeeRepository);
+	}
+
+	@Test
+	public void testEmployeesPage() {
+		EmployeePage page = new EmployeePage(Arrays.asList(new Employee()), null);
+		when(employeeRepository.findPage("a cursor", 10))
+			.thenReturn(page);
+
+		assertThat(employeeService.employeesPage("a cursor", 10))
+			.isSameAs(page);
+	}
+
+	@Test
+	public void testEmployeesPageWithInvalidLimit() {
+		assertThatThrownBy(() -> employeeService.employeesPage(null, 0))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Page limit must be between 1 and 1000");
+		assertThatThrownBy(() -> employeeService.employeesPage(null, 1001))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Page limit must be between 1 and 1000");
+
+		verifyNoMoreInteractions(employeeRepository);
+	}
+
+	@Test
+	public void testEmployeesPageWithInvalidCursor() {
+		when(employeeRepository.findPage("a cursor", 10))
+			.thenThrow(new IllegalArgumentException("Invalid cursor a cursor"));
+
+		assertThatThrownBy(() -> employeeService.employeesPage("a cursor", 10))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Invalid cursor a cursor");
+	}
+
 	@Test
 	public void testGetEmployeeByIdWhenEmployeeIsFound() {
 		Employee employee = new Employee();
@@ -62,12 +216,49 @@ public class EmployeeServiceImplTest {
 			.hasMessage("Employee not found with id an id");
 	}
 
+	@Test
+	public void testLookupEmployees() {
+		Employee e1 = new Employee("ID1", "first", 1000);
+		Employee e3 = new Employee("ID3", "third", 3000);
+		when(employeeRepository.findAllById(new LinkedHashSet<>(Arrays.asList("ID3", "ID2", "ID1"))))
+			.thenReturn(Arrays.asList(e3, e1));
+
+		assertThat(employeeService.lookupEmployees(Arrays.asList("ID3", "ID2", "ID1", "ID3")))
+			.isEqualTo(new EmployeeLookup(Arrays.asList(e3, e1), Arrays.asList("ID2")));
+	}
+
+	@Test
+	public void testLookupEmployeesWithoutIds() {
+		assertThatThrownBy(() -> employeeService.lookupEmployees(null))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Missing ids");
+		assertThatThrownBy(() -> employeeService.lookupEmployees(Collections.emptyList()))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Missing ids");
+
+		verifyNoMoreInteractions(employeeRepository);
+	}
+
+	@Test
+	public void testLookupEmployeesWithTooManyIds() {
+		List<String> ids = IntStream.rangeClosed(1, 1001)
+			.mapToObj(i -> "ID" + i)
+			.collect(Collectors.toList());
+
+		assertThatThrownBy(() -> employeeService.lookupEmployees(ids))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("At most 1000 ids are allowed");
+
+		verifyNoMoreInteractions(employeeRepository);
+	}
+
 	@Test
 	public void testAddEmployeeWhenIdIsNullReturnsTheSavedEmployee() {
 		// the id of the employee to save must be null
 		Employee toAdd = new Employee();
 		// we don't care about the contents of the saved employee
-		Employee toReturn = new Employee();
+		// apart from the generated id
+		Employee toReturn = new Employee("ID", null, 0);
 
 		when(employeeRepository.save(toAdd))
 			.thenReturn(toReturn);
@@ -141,6 +332,137 @@ public class EmployeeServiceImplTest {
 		verifyNoMoreInteractions(ignoreStubs(employeeRepository));
 	}
 
+	@Test
+	public void testVersionsChangeOnlyWhenEmployeesChange() {
+		long initial = employeeService.collectionVersion();
+		when(employeeRepository.findOne("ID"))
+			.thenReturn(Optional.of(new Employee("ID", null, 0)));
+		assertThat(employeeService.versionOf("ID")).isEqualTo(initial);
+
+		when(employeeRepository.save(any()))
+			.thenReturn(new Employee("ID", null, 0));
+		employeeService.addEmployee(new Employee());
+		long added = employeeService.versionOf("ID");
+		assertThat(added).isGreaterThan(initial);
+		assertThat(employeeService.collectionVersion()).isEqualTo(added);
+
+		employeeService.replaceEmployeeById("ID", new Employee());
+		long replaced = employeeService.versionOf("ID");
+		assertThat(replaced).isGreaterThan(added);
+
+		when(employeeRepository.deleteById("ID"))
+			.thenReturn(new Employee())
+			.thenReturn(null);
+		employeeService.deleteEmployeeById("ID");
+		long deleted = employeeService.collectionVersion();
+		assertThat(deleted).isGreaterThan(replaced);
+		// deleting a non existing employee does not change anything
+		employeeService.deleteEmployeeById("ID");
+		assertThat(employeeService.collectionVersion()).isEqualTo(deleted);
+
+		// failed writes do not change anything
+		when(employeeRepository.findOne("ID2"))
+			.thenReturn(Optional.empty());
+		assertThatThrownBy(() -> employeeService.replaceEmployeeById("ID2", new Employee()))
+			.isInstanceOf(NotFoundException.class);
+		assertThat(employeeService.collectionVersion()).isEqualTo(deleted);
+	}
+
+	@Test
+	public void testVersionsOfANewProcessAreGreater() throws InterruptedException {
+		long previous = new EmployeeVersions().collectionVersion();
+		Thread.sleep(2);
+		// a restarted service does not reuse the versions of the previous one
+		assertThat(new EmployeeVersions().collectionVersion())
+			.isGreaterThan(previous + 1000000);
+	}
+
+	@Test
+	public void testVersionOfNonExistingEmployee() {
+		when(employeeRepository.findOne("ID"))
+			.thenReturn(Optional.empty());
+		assertThatThrownBy(() -> employeeService.versionOf("ID"))
+			.isInstanceOf(NotFoundException.class)
+			.hasMessage("Employee not found with id ID");
+		assertThatThrownBy(() -> employeeService.lastModifiedOf("ID"))
+			.isInstanceOf(NotFoundException.class);
+
+		// a deleted employee is not tracked anymore
+		when(employeeRepository.save(any()))
+			.thenReturn(new Employee("ID", null, 0));
+		employeeService.addEmployee(new Employee());
+		assertThat(employeeService.versionOf("ID")).isPositive();
+		when(employeeRepository.deleteById("ID"))
+			.thenReturn(new Employee());
+		employeeService.deleteEmployeeById("ID");
+		assertThatThrownBy(() -> employeeService.versionOf("ID"))
+			.isInstanceOf(NotFoundException.class);
+	}
+
+	@Test
+	public void testReplaceEmployeeWithPrecondition() {
+		Employee toPass = new Employee();
+		when(employeeRepository.findOne("an id"))
+			.thenReturn(Optional.of(new Employee("an id", null, 0)));
+		when(employeeRepository.save(toPass))
+			.thenReturn(toPass);
+
+		long version = employeeService.versionOf("an id");
+		assertThat(employeeService.replaceEmployeeById("an id", toPass, v -> v == version))
+			.isSameAs(toPass);
+
+		// now the version has changed
+		assertThatThrownBy(() ->
+				employeeService.replaceEmployeeById("an id", new Employee(), v -> v == version))
+			.isInstanceOf(ClientErrorException.class)
+			.hasMessage("Employee with id an id has been modified")
+			.extracting(e -> ((ClientErrorException) e).getResponse().getStatus())
+			.isEqualTo(412);
+		verify(employeeRepository, times(1)).save(any());
+	}
+
+	@Test
+	public void testReplaceEmployeeWithPreconditionWhenEmployeeIsNotFound() {
+		when(employeeRepository.findOne(anyString()))
+			.thenReturn(Optional.empty());
+		assertThatThrownBy(() ->
+				employeeService.replaceEmployeeById("AN ID", new Employee(), v -> true))
+			.isInstanceOf(ClientErrorException.class)
+			.hasMessage("Employee not found with id AN ID")
+			.extracting(e -> ((ClientErrorException) e).getResponse().getStatus())
+			.isEqualTo(412);
+		verify(employeeRepository, never()).save(any());
+	}
+
+	@Test
+	public void testDeleteEmployeeWithPrecondition() {
+		when(employeeRepository.findOne("an id"))
+			.thenReturn(Optional.of(new Employee("an id", null, 0)));
+
+		assertThatThrownBy(() -> employeeService.deleteEmployeeById("an id", v -> false))
+			.isInstanceOf(ClientErrorException.class)
+			.hasMessage("Employee with id an id has been modified");
+		verify(employeeRepository, never()).deleteById(anyString());
+
+		Employee employee = new Employee();
+		when(employeeRepository.deleteById("an id"))
+			.thenReturn(employee);
+		assertThat(employeeService.deleteEmployeeById("an id", v -> true))
+			.isSameAs(employee);
+	}
+
+	@Test
+	public void testDeleteEmployeeWithPreconditionWhenEmployeeIsNotFound() {
+		when(employeeRepository.findOne(anyString()))
+			.thenReturn(Optional.empty());
+		assertThatThrownBy(() -> employeeService.deleteEmployeeById("an id", v -> true))
+			.isInstanceOf(ClientErrorException.class)
+			.hasMessage("Employee not found with id an id")
+			.extracting(e -> ((ClientErrorException) e).getResponse().getStatus())
+			.isEqualTo(412);
+		verify(employeeRepository, never()).deleteById(anyString());
+	}
+
 	@Test
 	public void testDeleteEmployeeByIdJustDelegatesToRepository() {
 		Employee employee = new Employee();
@@ -150,4 +472,100 @@ public class EmployeeServiceImplTest {
 			.isSameAs(employee);
 	}
 
+
+	@Test
+	public void testApplyOperationsSendsConsecutiveWritesTogether() {
+		long initial = employeeService.collectionVersion();
+		Employee toCreate = new Employee(null, "new", 1000);
+		Employee toReplace = new Employee(null, "replaced", 2000);
+		Employee anotherToCreate = new Employee(null, "another new", 3000);
+		when(employeeRepository.findOne("ID1"))
+			.thenReturn(Optional.of(new Employee("ID1", null, 0)));
+		when(employeeRepository.saveAll(Arrays.asList(toCreate, new Employee("ID1", "replaced", 2000))))
+			.thenReturn(Arrays.asList(new Employee("ID4", "new", 1000), toReplace));
+		when(employeeRepository.deleteAll(Arrays.asList("ID2", "ID3")))
+			.thenReturn(Arrays.asList(new Employee("ID2", null, 0), null));
+		when(employeeRepository.saveAll(Arrays.asList(anotherToCreate)))
+			.thenReturn(Arrays.asList(new Employee("ID5", "another new", 3000)));
+
+		assertThat(employeeService.applyOperations(Arrays.asList(
+				new EmployeeOperation(Kind.CREATE, null, toCreate),
+				new EmployeeOperation(Kind.REPLACE, "ID1", toReplace),
+				new EmployeeOperation(Kind.DELETE, "ID2", null),
+				new EmployeeOperation(Kind.DELETE, "ID3", null),
+				new EmployeeOperation(Kind.CREATE, null, anotherToCreate))))
+			.containsExactly(
+				new EmployeeOperationResult(201, "ID4", null),
+				new EmployeeOperationResult(200, "ID1", null),
+				new EmployeeOperationResult(202, "ID2", null),
+				new EmployeeOperationResult(202, "ID3", null),
+				new EmployeeOperationResult(201, "ID5", null));
+
+		// only actual changes create new versions
+		assertThat(employeeService.versionOf("ID1")).isEqualTo(initial + 2);
+		assertThat(employeeService.versionOf("ID5")).isEqualTo(initial + 4);
+		assertThat(employeeService.collectionVersion()).isEqualTo(initial + 4);
+	}
+
+	@Test
+	public void testApplyOperationsReportsInvalidOperations() {
+		when(employeeRepository.findOne("ID1"))
+			.thenReturn(Optional.empty());
+
+		assertThat(employeeService.applyOperations(Arrays.asList(
+				null,
+				new EmployeeOperation(Kind.CREATE, "ID", new Employee()),
+				new EmployeeOperation(Kind.CREATE, null, null),
+				new EmployeeOperation(Kind.REPLACE, null, new Employee()),
+				new EmployeeOperation(Kind.REPLACE, "ID1", new Employee()),
+				new EmployeeOperation(Kind.DELETE, null, null))))
+			.containsExactly(
+				new EmployeeOperationResult(400, null, "Missing operation"),
+				new EmployeeOperationResult(400, "ID", "Unexpected id specification for Employee"),
+				new EmployeeOperationResult(400, null, "Missing values for Employee"),
+				new EmployeeOperationResult(400, null, "Missing id"),
+				new EmployeeOperationResult(404, "ID1", "Employee not found with id ID1"),
+				new EmployeeOperationResult(400, null, "Missing id"));
+
+		verify(employeeRepository, never()).saveAll(anyList());
+		verify(employeeRepository, never()).deleteAll(anyList());
+	}
+
+	@Test
+	public void testApplyOperationsTakesIntoConsiderationPreviousOperations() {
+		Employee toReplace = new Employee(null, "replaced", 2000);
+		when(employeeRepository.findOne("ID1"))
+			.thenReturn(Optional.of(new Employee("ID1", null, 0)));
+		when(employeeRepository.deleteAll(Arrays.asList("ID1")))
+			.thenReturn(Arrays.asList(new Employee("ID1", null, 0)));
+
+		assertThat(employeeService.applyOperations(Arrays.asList(
+				new EmployeeOperation(Kind.DELETE, "ID1", null),
+				new EmployeeOperation(Kind.REPLACE, "ID1", toReplace))))
+			.containsExactly(
+				new EmployeeOperationResult(202, "ID1", null),
+				new EmployeeOperationResult(404, "ID1", "Employee not found with id ID1"));
+	}
+
+	@Test
+	public void testApplyOperationsWithoutOperations() {
+		assertThatThrownBy(() -> employeeService.applyOperations(null))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Missing operations");
+		assertThatThrownBy(() -> employeeService.applyOperations(Collections.emptyList()))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("Missing operations");
+	}
+
+	@Test
+	public void testApplyOperationsWithTooManyOperations() {
+		List<EmployeeOperation> operations = Collections.nCopies(1001,
+			new EmployeeOperation(Kind.DELETE, "ID1", null));
+
+		assertThatThrownBy(() -> employeeService.applyOperations(operations))
+			.isInstanceOf(BadRequestException.class)
+			.hasMessage("At most 1000 operations are allowed");
+
+		verifyNoMoreInteractions(employeeRepository);
+	}
 }